@@ -2,6 +2,7 @@ package com.fernando.bookservice.controllers;
 
 import com.fernando.bookservice.dto.*;
 import com.fernando.bookservice.services.BookService;
+import com.fernando.bookservice.services.CopyHoldService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +23,7 @@ import java.util.List;
 public class BookController {
     
     private final BookService bookService;
+    private final CopyHoldService copyHoldService;
     
     @GetMapping("/health")
     public ResponseEntity<ApiResponse<String>> health() {
@@ -122,6 +124,24 @@ public class BookController {
         }
     }
     
+    // Get several books by ISBN in one call (used by borrow-service to enrich loan listings in bulk)
+    @GetMapping("/batch")
+    public ResponseEntity<ApiResponse<List<BookResponse>>> getBooksByIsbns(@RequestParam List<String> isbns) {
+        log.info("Fetching {} books by ISBN", isbns.size());
+        
+        try {
+            List<BookResponse> books = bookService.getBooksByIsbns(isbns);
+            return ResponseEntity.ok(ApiResponse.success("Books retrieved successfully", books));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching books by ISBN", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch books"));
+        }
+    }
+    
     // Update book details (Librarian/Admin only)
     @PutMapping("/{isbn}")
     public ResponseEntity<ApiResponse<BookResponse>> updateBook(
@@ -312,4 +332,101 @@ public class BookController {
                     .body(ApiResponse.error("Failed to increase available copies"));
         }
     }
+    
+    // Adjust available copies for several books at once (called by borrow-service for cart checkout and bulk returns)
+    @PutMapping("/copies/batch")
+    public ResponseEntity<ApiResponse<List<CopyAdjustmentResult>>> adjustAvailableCopies(
+            @Valid @RequestBody AdjustCopiesBatchRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.info("Applying {} batched copy adjustments", request.getAdjustments().size());
+        
+        try {
+            List<CopyAdjustmentResult> results = bookService.adjustAvailableCopies(request, idempotencyKey);
+            return ResponseEntity.ok(ApiResponse.success("Copy adjustments processed", results));
+        } catch (Exception e) {
+            log.error("Error applying batched copy adjustments", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to adjust available copies"));
+        }
+    }
+    
+    // Take one copy if available and return a short-lived hold token (called by borrow-service at checkout)
+    @PostMapping("/{isbn}/holds")
+    public ResponseEntity<ApiResponse<CopyHoldResponse>> tryReserveCopy(@PathVariable String isbn) {
+        log.info("Holding a copy of book with ISBN: {}", isbn);
+        
+        try {
+            CopyHoldResponse hold = copyHoldService.tryReserveCopy(isbn);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(ApiResponse.success("Copy held successfully", hold));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error holding a copy for ISBN: {}", isbn, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to hold a copy"));
+        }
+    }
+    
+    // Hold one copy of each of several books in one call (cart checkout); results are per ISBN
+    @PostMapping("/holds/batch")
+    public ResponseEntity<ApiResponse<List<CopyHoldResult>>> tryReserveCopies(
+            @Valid @RequestBody HoldCopiesBatchRequest request) {
+        log.info("Holding copies of {} books", request.getIsbns().size());
+        
+        try {
+            List<CopyHoldResult> results = copyHoldService.tryReserveCopies(request.getIsbns());
+            return ResponseEntity.ok(ApiResponse.success("Copy holds processed", results));
+        } catch (Exception e) {
+            log.error("Error holding copies in batch", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to hold copies"));
+        }
+    }
+    
+    // Confirm a hold once the loan is committed
+    @PostMapping("/holds/{token}/confirm")
+    public ResponseEntity<ApiResponse<CopyHoldResponse>> confirmHold(@PathVariable String token) {
+        log.info("Confirming copy hold: {}", token);
+        
+        try {
+            CopyHoldResponse hold = copyHoldService.confirmHold(token);
+            return ResponseEntity.ok(ApiResponse.success("Hold confirmed successfully", hold));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error confirming copy hold: {}", token, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to confirm hold"));
+        }
+    }
+    
+    // Release a hold and return its copy (checkout failed or was abandoned)
+    @DeleteMapping("/holds/{token}")
+    public ResponseEntity<ApiResponse<CopyHoldResponse>> releaseHold(@PathVariable String token) {
+        log.info("Releasing copy hold: {}", token);
+        
+        try {
+            CopyHoldResponse hold = copyHoldService.releaseHold(token);
+            return ResponseEntity.ok(ApiResponse.success("Hold released successfully", hold));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error releasing copy hold: {}", token, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to release hold"));
+        }
+    }
 }
\ No newline at end of file
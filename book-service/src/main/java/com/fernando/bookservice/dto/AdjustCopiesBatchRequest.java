@@ -0,0 +1,31 @@
+package com.fernando.bookservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdjustCopiesBatchRequest {
+    
+    @NotEmpty(message = "At least one adjustment is required")
+    @Size(max = 500, message = "A batch may contain at most 500 adjustments")
+    private List<@Valid CopyAdjustment> adjustments;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CopyAdjustment {
+        
+        @NotBlank(message = "Book ISBN is required")
+        private String isbn;
+        
+        @NotNull(message = "Copy delta is required")
+        private Integer delta; // Negative to check copies out, positive to return them
+    }
+}
@@ -0,0 +1,21 @@
+package com.fernando.bookservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CopyHoldResponse {
+    
+    private String token;
+    private String isbn;
+    private String status;
+    private LocalDateTime expiresAt;
+    private BookResponse book; // Book state after the copy was taken (only on try-reserve)
+}
@@ -0,0 +1,18 @@
+package com.fernando.bookservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CopyHoldResult {
+    
+    private String isbn;
+    private boolean success;
+    private String message;
+    private CopyHoldResponse hold; // Token and book state after the copy was taken (null on failure)
+}
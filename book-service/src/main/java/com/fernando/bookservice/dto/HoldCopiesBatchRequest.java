@@ -0,0 +1,18 @@
+package com.fernando.bookservice.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HoldCopiesBatchRequest {
+    
+    @NotEmpty(message = "At least one book ISBN is required")
+    @Size(max = 500, message = "A batch may hold at most 500 copies")
+    private List<@NotBlank(message = "Book ISBN is required") String> isbns;
+}
@@ -0,0 +1,27 @@
+package com.fernando.bookservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Idempotency key of a batched copy adjustment that was applied; a retried batch with the same key
+// is acknowledged without touching the books again. Keys are purged after a retention period.
+@Entity
+@Table(name = "applied_copy_adjustments", indexes = {
+        @Index(name = "idx_applied_copy_adjustment_at", columnList = "applied_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppliedCopyAdjustment {
+    
+    @Id
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+    
+    @Column(name = "applied_at", nullable = false)
+    private LocalDateTime appliedAt;
+}
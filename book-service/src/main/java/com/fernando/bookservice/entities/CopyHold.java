@@ -0,0 +1,60 @@
+package com.fernando.bookservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+// A copy taken out of availableCopies for a checkout in progress; the caller confirms or releases it,
+// and holds still HELD after expiresAt are released by the expiry job
+@Entity
+@Table(name = "copy_holds", indexes = {
+        @Index(name = "idx_copy_hold_status_expires", columnList = "status, expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CopyHold {
+    
+    @Id
+    @Column(length = 36)
+    private String token;
+    
+    @Column(nullable = false)
+    private String isbn;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private HoldStatus status;
+    
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+        if (status == null) {
+            status = HoldStatus.HELD;
+        }
+    }
+    
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+    
+    public enum HoldStatus {
+        HELD, CONFIRMED, RELEASED, EXPIRED
+    }
+}
@@ -0,0 +1,25 @@
+package com.fernando.bookservice.repositories;
+
+import com.fernando.bookservice.entities.AppliedCopyAdjustment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface AppliedCopyAdjustmentRepository extends JpaRepository<AppliedCopyAdjustment, String> {
+    
+    // Record the key in the caller's transaction; 0 means a batch with this key was already applied.
+    // A concurrent batch with the same key waits on the row until the first one commits or rolls back.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO applied_copy_adjustments (idempotency_key, applied_at) VALUES (:key, :now)",
+            nativeQuery = true)
+    int claim(@Param("key") String key, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("DELETE FROM AppliedCopyAdjustment a WHERE a.appliedAt < :cutoff")
+    int deleteAppliedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -5,10 +5,12 @@ import com.fernando.bookservice.entities.Book.BookStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -52,6 +54,26 @@ public interface BookRepository extends JpaRepository<Book, String> {
     @Query("SELECT b FROM Book b WHERE b.availableCopies < :threshold AND b.status = 'AVAILABLE'")
     List<Book> findLowStockBooks(@Param("threshold") Integer threshold);
     
+    // Take one copy if any is available, in a single conditional UPDATE (returns 0 when none is left)
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - 1, b.updatedAt = :now " +
+           "WHERE b.isbn = :isbn AND b.availableCopies > 0 AND b.status = 'AVAILABLE'")
+    int takeAvailableCopy(@Param("isbn") String isbn, @Param("now") LocalDateTime now);
+    
+    // Put copies back, never above the total
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = LEAST(b.availableCopies + :count, b.totalCopies), b.updatedAt = :now " +
+           "WHERE b.isbn = :isbn")
+    int returnCopies(@Param("isbn") String isbn, @Param("count") int count, @Param("now") LocalDateTime now);
+    
+    // Apply a copy delta in one conditional UPDATE: the count stays within 0..total and copies are only
+    // taken from lendable books (returns 0 when the guard rejects the change)
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + :delta, b.updatedAt = :now " +
+           "WHERE b.isbn = :isbn AND b.availableCopies + :delta >= 0 AND b.availableCopies + :delta <= b.totalCopies " +
+           "AND (:delta >= 0 OR b.status = 'AVAILABLE')")
+    int adjustAvailableCopies(@Param("isbn") String isbn, @Param("delta") int delta, @Param("now") LocalDateTime now);
+    
     // Get all distinct genres
     @Query("SELECT DISTINCT b.genre FROM Book b WHERE b.genre IS NOT NULL ORDER BY b.genre")
     List<String> findAllGenres();
@@ -0,0 +1,33 @@
+package com.fernando.bookservice.repositories;
+
+import com.fernando.bookservice.entities.CopyHold;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CopyHoldRepository extends JpaRepository<CopyHold, String> {
+    
+    // Lock a hold so confirm, release and expiry cannot both act on it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM CopyHold h WHERE h.token = :token")
+    Optional<CopyHold> lockByToken(@Param("token") String token);
+    
+    // Tokens of the next chunk of holds that were neither confirmed nor released in time
+    @Query("SELECT h.token FROM CopyHold h WHERE h.status = 'HELD' AND h.expiresAt < :now ORDER BY h.expiresAt")
+    List<String> findExpiredHoldTokens(@Param("now") LocalDateTime now, Pageable limit);
+    
+    // Lock the given holds that are still HELD
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM CopyHold h WHERE h.token IN :tokens AND h.status = 'HELD'")
+    List<CopyHold> lockHeldByTokens(@Param("tokens") Collection<String> tokens);
+}
@@ -2,23 +2,35 @@ package com.fernando.bookservice.services;
 
 import com.fernando.bookservice.dto.*;
 import com.fernando.bookservice.entities.Book;
+import com.fernando.bookservice.repositories.AppliedCopyAdjustmentRepository;
 import com.fernando.bookservice.repositories.BookRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BookService {
     
+    // How long idempotency keys of applied copy adjustments are remembered
+    private static final int APPLIED_ADJUSTMENT_RETENTION_DAYS = 7;
+    
     private final BookRepository bookRepository;
     private final BookMetadataService bookMetadataService;
+    private final AppliedCopyAdjustmentRepository appliedCopyAdjustmentRepository;
     
     // Enhanced book creation with metadata auto-fill
     @Transactional
@@ -156,6 +168,17 @@ public class BookService {
         return bookRepository.findAll(pageable).map(this::mapToBookResponse);
     }
     
+    // Books that do not exist are simply left out of the result
+    public List<BookResponse> getBooksByIsbns(List<String> isbns) {
+        if (isbns.size() > 500) {
+            throw new IllegalArgumentException("At most 500 ISBNs can be fetched at once");
+        }
+        return bookRepository.findAllById(isbns)
+                .stream()
+                .map(this::mapToBookResponse)
+                .toList();
+    }
+    
     public BookResponse getBookByIsbn(String isbn) {
         log.info("Fetching book with ISBN: {}", isbn);
         Book book = bookRepository.findById(isbn)
@@ -365,6 +388,108 @@ public class BookService {
                 book.getTitle(), book.getAvailableCopies());
     }
     
+    // Apply several copy adjustments in one transaction (used by borrow-service batch checkout/return).
+    // Each adjustment succeeds or fails on its own; failed items leave their book untouched.
+    // Every delta is applied with a guarded UPDATE on the current row, so concurrent batches cannot
+    // overwrite each other's counts.
+    @Transactional
+    public List<CopyAdjustmentResult> adjustAvailableCopies(AdjustCopiesBatchRequest request) {
+        return adjustAvailableCopies(request, null);
+    }
+    
+    // Same as above, applied at most once per idempotency key: a retried batch (borrow-service delivers
+    // copy returns at least once) is acknowledged with the current counts and changes nothing.
+    @Transactional
+    public List<CopyAdjustmentResult> adjustAvailableCopies(AdjustCopiesBatchRequest request, String idempotencyKey) {
+        // Fold repeated ISBNs together so each book row is written once
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (AdjustCopiesBatchRequest.CopyAdjustment adjustment : request.getAdjustments()) {
+            deltas.merge(adjustment.getIsbn(), adjustment.getDelta(), Integer::sum);
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        if (idempotencyKey != null && appliedCopyAdjustmentRepository.claim(idempotencyKey, now) == 0) {
+            log.info("Copy adjustment batch {} was already applied", idempotencyKey);
+            return alreadyApplied(deltas);
+        }
+        
+        Map<String, Boolean> applied = new LinkedHashMap<>();
+        deltas.forEach((isbn, delta) -> applied.put(isbn, bookRepository.adjustAvailableCopies(isbn, delta, now) > 0));
+        
+        // Read the books after the updates so the results show the counts as written
+        Map<String, Book> books = bookRepository.findAllById(deltas.keySet()).stream()
+                .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+        
+        List<CopyAdjustmentResult> results = new ArrayList<>();
+        int appliedCount = 0;
+        
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            String isbn = entry.getKey();
+            int delta = entry.getValue();
+            Book book = books.get(isbn);
+            
+            if (book == null) {
+                results.add(CopyAdjustmentResult.builder()
+                        .isbn(isbn)
+                        .delta(delta)
+                        .success(false)
+                        .message("Book not found with ISBN: " + isbn)
+                        .build());
+                continue;
+            }
+            
+            // The guard rejected the change; explain it from the current row
+            String failure = null;
+            if (applied.get(isbn)) {
+                appliedCount++;
+            } else if (delta < 0 && book.getStatus() != Book.BookStatus.AVAILABLE) {
+                failure = "Book is not available for borrowing: " + book.getTitle();
+            } else if (delta < 0) {
+                failure = "Not enough available copies for book: " + book.getTitle();
+            } else {
+                failure = "Available copies cannot exceed total copies for book: " + book.getTitle();
+            }
+            
+            results.add(CopyAdjustmentResult.builder()
+                    .isbn(isbn)
+                    .delta(delta)
+                    .success(failure == null)
+                    .message(failure == null ? "Available copies adjusted" : failure)
+                    .book(mapToBookResponse(book))
+                    .build());
+        }
+        
+        log.info("Applied {} of {} batched copy adjustments", appliedCount, deltas.size());
+        
+        return results;
+    }
+    
+    private List<CopyAdjustmentResult> alreadyApplied(Map<String, Integer> deltas) {
+        Map<String, Book> books = bookRepository.findAllById(deltas.keySet()).stream()
+                .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+        List<CopyAdjustmentResult> results = new ArrayList<>();
+        deltas.forEach((isbn, delta) -> {
+            Book book = books.get(isbn);
+            results.add(CopyAdjustmentResult.builder()
+                    .isbn(isbn)
+                    .delta(delta)
+                    .success(true)
+                    .message("Already applied")
+                    .book(book != null ? mapToBookResponse(book) : null)
+                    .build());
+        });
+        return results;
+    }
+    
+    // Nightly, forget idempotency keys old enough that no retry of their batch can still arrive
+    @Scheduled(cron = "0 30 3 * * *")
+    @Transactional
+    public void purgeAppliedCopyAdjustments() {
+        int purged = appliedCopyAdjustmentRepository.deleteAppliedBefore(
+                LocalDateTime.now().minusDays(APPLIED_ADJUSTMENT_RETENTION_DAYS));
+        log.info("Purged {} applied copy adjustment keys", purged);
+    }
+    
     private BookResponse mapToBookResponse(Book book) {
         return BookResponse.builder()
                 .isbn(book.getIsbn())
@@ -384,4 +509,4 @@ public class BookService {
                 .updatedAt(book.getUpdatedAt())
                 .build();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.fernando.bookservice.services;
+
+import com.fernando.bookservice.dto.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collection;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BorrowServiceClient {
+    
+    private final RestTemplate restTemplate;
+    
+    @Value("${borrow-service.url}")
+    private String borrowServiceUrl;
+    
+    // Hold tokens, among the given ones, that borrow-service created a loan with.
+    // Throws RestClientException when borrow-service cannot answer, so callers never guess.
+    public List<String> findLoanedHoldTokens(Collection<String> tokens) {
+        String url = borrowServiceUrl + "/api/loans/holds/loaned";
+        ResponseEntity<ApiResponse<List<String>>> response = restTemplate.exchange(
+                url, HttpMethod.POST, new HttpEntity<>(tokens),
+                new ParameterizedTypeReference<ApiResponse<List<String>>>() {});
+        
+        ApiResponse<List<String>> body = response.getBody();
+        if (body == null || !body.isSuccess() || body.getData() == null) {
+            throw new RestClientException("Borrow service did not return loaned hold tokens: "
+                    + (body != null ? body.getMessage() : "empty response"));
+        }
+        return body.getData();
+    }
+}
@@ -0,0 +1,243 @@
+package com.fernando.bookservice.services;
+
+import com.fernando.bookservice.dto.BookResponse;
+import com.fernando.bookservice.dto.CopyHoldResponse;
+import com.fernando.bookservice.dto.CopyHoldResult;
+import com.fernando.bookservice.entities.CopyHold;
+import com.fernando.bookservice.entities.CopyHold.HoldStatus;
+import com.fernando.bookservice.repositories.BookRepository;
+import com.fernando.bookservice.repositories.CopyHoldRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Short-lived copy holds for checkout.
+ *
+ * tryReserveCopy takes a copy with one conditional UPDATE and hands back a token together with the
+ * book, so a caller learns "available?" and "taken" from a single round trip. The caller then confirms
+ * the hold once its loan is committed, or releases it if the loan fails. Holds that are neither
+ * confirmed nor released within the TTL are settled by the expiry job, which first asks borrow-service
+ * whether a loan was created with them: those are confirmed, and only the others are expired and their
+ * copies returned. A confirm that still arrives for an expired hold takes a copy again.
+ */
+@Service
+@Slf4j
+public class CopyHoldService {
+    
+    // Expired holds processed per transaction
+    private static final int EXPIRY_CHUNK_SIZE = 500;
+    
+    private final CopyHoldRepository copyHoldRepository;
+    private final BookRepository bookRepository;
+    private final BookService bookService;
+    private final BorrowServiceClient borrowServiceClient;
+    private final TransactionTemplate transactionTemplate;
+    private final long holdTtlSeconds;
+    
+    public CopyHoldService(CopyHoldRepository copyHoldRepository,
+                           BookRepository bookRepository,
+                           BookService bookService,
+                           BorrowServiceClient borrowServiceClient,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${holds.ttl-seconds:120}") long holdTtlSeconds) {
+        this.copyHoldRepository = copyHoldRepository;
+        this.bookRepository = bookRepository;
+        this.bookService = bookService;
+        this.borrowServiceClient = borrowServiceClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.holdTtlSeconds = holdTtlSeconds;
+    }
+    
+    @Transactional
+    public CopyHoldResponse tryReserveCopy(String isbn) {
+        LocalDateTime now = LocalDateTime.now();
+        if (bookRepository.takeAvailableCopy(isbn, now) == 0) {
+            BookResponse book = bookService.getBookByIsbn(isbn);
+            throw new IllegalStateException("No available copies for book: " + book.getTitle());
+        }
+        
+        CopyHold hold = copyHoldRepository.save(CopyHold.builder()
+                .token(UUID.randomUUID().toString())
+                .isbn(isbn)
+                .status(HoldStatus.HELD)
+                .expiresAt(now.plusSeconds(holdTtlSeconds))
+                .build());
+        log.info("Copy of book {} held with token {}", isbn, hold.getToken());
+        
+        return mapToHoldResponse(hold, bookService.getBookByIsbn(isbn));
+    }
+    
+    // Hold one copy of each distinct ISBN in one transaction (cart checkout). Each ISBN succeeds or fails
+    // on its own; the books are read once, after all copies were taken.
+    @Transactional
+    public List<CopyHoldResult> tryReserveCopies(List<String> isbns) {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> distinct = isbns.stream().distinct().toList();
+        List<CopyHold> holds = new ArrayList<>();
+        for (String isbn : distinct) {
+            if (bookRepository.takeAvailableCopy(isbn, now) > 0) {
+                holds.add(CopyHold.builder()
+                        .token(UUID.randomUUID().toString())
+                        .isbn(isbn)
+                        .status(HoldStatus.HELD)
+                        .expiresAt(now.plusSeconds(holdTtlSeconds))
+                        .build());
+            }
+        }
+        Map<String, CopyHold> holdsByIsbn = copyHoldRepository.saveAll(holds).stream()
+                .collect(Collectors.toMap(CopyHold::getIsbn, Function.identity()));
+        Map<String, BookResponse> books = bookService.getBooksByIsbns(distinct).stream()
+                .collect(Collectors.toMap(BookResponse::getIsbn, Function.identity()));
+        
+        List<CopyHoldResult> results = new ArrayList<>();
+        for (String isbn : distinct) {
+            CopyHold hold = holdsByIsbn.get(isbn);
+            BookResponse book = books.get(isbn);
+            String failure = null;
+            if (hold == null && book == null) {
+                failure = "Book not found with ISBN: " + isbn;
+            } else if (hold == null && !"AVAILABLE".equals(book.getStatus())) {
+                failure = "Book is not available for borrowing: " + book.getTitle();
+            } else if (hold == null) {
+                failure = "No available copies for book: " + book.getTitle();
+            }
+            results.add(CopyHoldResult.builder()
+                    .isbn(isbn)
+                    .success(failure == null)
+                    .message(failure == null ? "Copy held successfully" : failure)
+                    .hold(hold != null ? mapToHoldResponse(hold, book) : null)
+                    .build());
+        }
+        log.info("Held copies of {} of {} books", holds.size(), distinct.size());
+        return results;
+    }
+    
+    // Make the hold permanent. A hold past its expiry that the expiry job has not reached yet can still
+    // be confirmed, since its copy was never returned; confirming twice is a no-op. A hold that was
+    // already given up belongs to a loan that committed late, so a copy is taken again; with none left
+    // this fails and borrow-service retries the confirm until a copy comes back.
+    @Transactional
+    public CopyHoldResponse confirmHold(String token) {
+        CopyHold hold = copyHoldRepository.lockByToken(token)
+                .orElseThrow(() -> new IllegalArgumentException("Hold not found: " + token));
+        
+        switch (hold.getStatus()) {
+            case HELD -> {
+                hold.setStatus(HoldStatus.CONFIRMED);
+                log.info("Hold {} on book {} confirmed", token, hold.getIsbn());
+            }
+            case CONFIRMED -> log.debug("Hold {} already confirmed", token);
+            case EXPIRED, RELEASED -> {
+                if (bookRepository.takeAvailableCopy(hold.getIsbn(), LocalDateTime.now()) == 0) {
+                    throw new IllegalStateException("Hold " + token + " is " + hold.getStatus() 
+                            + " and no copy of book " + hold.getIsbn() + " is left to confirm it");
+                }
+                log.warn("Hold {} on book {} confirmed after it was {}; a copy was taken again", 
+                        token, hold.getIsbn(), hold.getStatus());
+                hold.setStatus(HoldStatus.CONFIRMED);
+            }
+        }
+        return mapToHoldResponse(hold, null);
+    }
+    
+    // Give the copy back. Releasing a hold that was already released or expired is a no-op.
+    @Transactional
+    public CopyHoldResponse releaseHold(String token) {
+        CopyHold hold = copyHoldRepository.lockByToken(token)
+                .orElseThrow(() -> new IllegalArgumentException("Hold not found: " + token));
+        
+        switch (hold.getStatus()) {
+            case HELD -> {
+                hold.setStatus(HoldStatus.RELEASED);
+                bookRepository.returnCopies(hold.getIsbn(), 1, LocalDateTime.now());
+                log.info("Hold {} on book {} released", token, hold.getIsbn());
+            }
+            case RELEASED, EXPIRED -> log.debug("Hold {} already {}", token, hold.getStatus());
+            default -> throw new IllegalStateException("Hold " + token + " is already " + hold.getStatus());
+        }
+        return mapToHoldResponse(hold, null);
+    }
+    
+    // Expired and confirmed holds of one expiry chunk
+    private record ExpiryOutcome(int expired, int confirmed) {
+    }
+    
+    // Every 30 seconds, settle the holds nobody confirmed or released in time. A copy only goes back on
+    // the shelf once borrow-service has said no loan was checked out with the hold; if it cannot be
+    // asked, nothing is expired in this run.
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void expireStaleHolds() {
+        try {
+            int expired = 0;
+            int confirmed = 0;
+            List<String> tokens;
+            do {
+                LocalDateTime now = LocalDateTime.now();
+                tokens = copyHoldRepository.findExpiredHoldTokens(now, PageRequest.of(0, EXPIRY_CHUNK_SIZE));
+                if (tokens.isEmpty()) {
+                    break;
+                }
+                
+                Set<String> loanedTokens = new HashSet<>(borrowServiceClient.findLoanedHoldTokens(tokens));
+                List<String> chunk = tokens;
+                ExpiryOutcome outcome = transactionTemplate.execute(status -> settleExpired(chunk, loanedTokens, now));
+                expired += outcome.expired();
+                confirmed += outcome.confirmed();
+            } while (tokens.size() == EXPIRY_CHUNK_SIZE);
+            
+            if (expired > 0 || confirmed > 0) {
+                log.info("Settled stale copy holds: {} expired, {} confirmed for existing loans", expired, confirmed);
+            }
+        } catch (RestClientException e) {
+            log.warn("Borrow service unavailable, stale copy holds are kept until the next run: {}", e.getMessage());
+        } catch (Exception e) {
+            log.error("Error expiring stale copy holds", e);
+        }
+    }
+    
+    private ExpiryOutcome settleExpired(List<String> tokens, Set<String> loanedTokens, LocalDateTime now) {
+        Map<String, Integer> copiesByIsbn = new HashMap<>();
+        int confirmed = 0;
+        for (CopyHold hold : copyHoldRepository.lockHeldByTokens(tokens)) {
+            if (loanedTokens.contains(hold.getToken())) {
+                hold.setStatus(HoldStatus.CONFIRMED);
+                confirmed++;
+            } else {
+                hold.setStatus(HoldStatus.EXPIRED);
+                copiesByIsbn.merge(hold.getIsbn(), 1, Integer::sum);
+            }
+        }
+        
+        // One UPDATE per book rather than per hold
+        copiesByIsbn.forEach((isbn, count) -> bookRepository.returnCopies(isbn, count, now));
+        return new ExpiryOutcome(copiesByIsbn.values().stream().mapToInt(Integer::intValue).sum(), confirmed);
+    }
+    
+    private CopyHoldResponse mapToHoldResponse(CopyHold hold, BookResponse book) {
+        return CopyHoldResponse.builder()
+                .token(hold.getToken())
+                .isbn(hold.getIsbn())
+                .status(hold.getStatus().name())
+                .expiresAt(hold.getExpiresAt())
+                .book(book)
+                .build();
+    }
+}
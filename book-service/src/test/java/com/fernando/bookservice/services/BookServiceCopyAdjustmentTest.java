@@ -0,0 +1,110 @@
+package com.fernando.bookservice.services;
+
+import com.fernando.bookservice.dto.AdjustCopiesBatchRequest;
+import com.fernando.bookservice.dto.AdjustCopiesBatchRequest.CopyAdjustment;
+import com.fernando.bookservice.dto.CopyAdjustmentResult;
+import com.fernando.bookservice.entities.Book;
+import com.fernando.bookservice.repositories.AppliedCopyAdjustmentRepository;
+import com.fernando.bookservice.repositories.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BookServiceCopyAdjustmentTest {
+
+    private BookRepository bookRepository;
+    private AppliedCopyAdjustmentRepository appliedCopyAdjustmentRepository;
+    private BookService bookService;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        appliedCopyAdjustmentRepository = mock(AppliedCopyAdjustmentRepository.class);
+        bookService = new BookService(bookRepository, mock(BookMetadataService.class), appliedCopyAdjustmentRepository);
+    }
+
+    @Test
+    void repeatedIsbnsAreFoldedIntoOneGuardedUpdate() {
+        when(bookRepository.adjustAvailableCopies(eq("111"), eq(-2), any())).thenReturn(1);
+        when(bookRepository.findAllById(any())).thenReturn(List.of(book("111", 1, 3, Book.BookStatus.AVAILABLE)));
+
+        List<CopyAdjustmentResult> results = bookService.adjustAvailableCopies(request(
+                new CopyAdjustment("111", -1), new CopyAdjustment("111", -1)));
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(-2, results.get(0).getDelta());
+        assertEquals(1, results.get(0).getBook().getAvailableCopies());
+        verify(bookRepository, times(1)).adjustAvailableCopies(eq("111"), anyInt(), any());
+        verify(bookRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void rejectedUpdatesAreExplainedFromTheCurrentRow() {
+        when(bookRepository.adjustAvailableCopies(any(), anyInt(), any())).thenReturn(0);
+        when(bookRepository.findAllById(any())).thenReturn(List.of(
+                book("111", 0, 2, Book.BookStatus.AVAILABLE),
+                book("222", 2, 2, Book.BookStatus.AVAILABLE),
+                book("333", 1, 2, Book.BookStatus.MAINTENANCE)));
+
+        List<CopyAdjustmentResult> results = bookService.adjustAvailableCopies(request(
+                new CopyAdjustment("111", -1), new CopyAdjustment("222", 1),
+                new CopyAdjustment("333", -1), new CopyAdjustment("444", 1)));
+
+        assertTrue(results.stream().noneMatch(CopyAdjustmentResult::isSuccess));
+        assertTrue(results.get(0).getMessage().startsWith("Not enough available copies"));
+        assertTrue(results.get(1).getMessage().startsWith("Available copies cannot exceed total copies"));
+        assertTrue(results.get(2).getMessage().startsWith("Book is not available for borrowing"));
+        assertTrue(results.get(3).getMessage().startsWith("Book not found"));
+        assertNull(results.get(3).getBook());
+    }
+
+    @Test
+    void batchWithANewKeyIsApplied() {
+        when(appliedCopyAdjustmentRepository.claim(eq("return-1"), any())).thenReturn(1);
+        when(bookRepository.adjustAvailableCopies(eq("111"), eq(1), any())).thenReturn(1);
+        when(bookRepository.findAllById(any())).thenReturn(List.of(book("111", 2, 3, Book.BookStatus.AVAILABLE)));
+
+        List<CopyAdjustmentResult> results = bookService.adjustAvailableCopies(
+                request(new CopyAdjustment("111", 1)), "return-1");
+
+        assertTrue(results.get(0).isSuccess());
+        verify(bookRepository).adjustAvailableCopies(eq("111"), eq(1), any());
+    }
+
+    @Test
+    void retriedBatchIsAcknowledgedWithoutChangingCopies() {
+        when(appliedCopyAdjustmentRepository.claim(eq("return-1"), any())).thenReturn(0);
+        when(bookRepository.findAllById(any())).thenReturn(List.of(book("111", 2, 3, Book.BookStatus.AVAILABLE)));
+
+        List<CopyAdjustmentResult> results = bookService.adjustAvailableCopies(
+                request(new CopyAdjustment("111", 1)), "return-1");
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("Already applied", results.get(0).getMessage());
+        assertEquals(2, results.get(0).getBook().getAvailableCopies());
+        verify(bookRepository, never()).adjustAvailableCopies(any(), anyInt(), any());
+    }
+
+    private static AdjustCopiesBatchRequest request(CopyAdjustment... adjustments) {
+        return new AdjustCopiesBatchRequest(List.of(adjustments));
+    }
+
+    private static Book book(String isbn, int available, int total, Book.BookStatus status) {
+        return Book.builder()
+                .isbn(isbn)
+                .title("Title " + isbn)
+                .author("Author")
+                .availableCopies(available)
+                .totalCopies(total)
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.fernando.bookservice.services;
+
+import com.fernando.bookservice.dto.BookResponse;
+import com.fernando.bookservice.dto.CopyHoldResult;
+import com.fernando.bookservice.entities.CopyHold;
+import com.fernando.bookservice.entities.CopyHold.HoldStatus;
+import com.fernando.bookservice.repositories.BookRepository;
+import com.fernando.bookservice.repositories.CopyHoldRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestClientException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CopyHoldServiceTest {
+
+    private CopyHoldRepository copyHoldRepository;
+    private BookRepository bookRepository;
+    private BorrowServiceClient borrowServiceClient;
+    private BookService bookService;
+    private CopyHoldService copyHoldService;
+
+    @BeforeEach
+    void setUp() {
+        copyHoldRepository = mock(CopyHoldRepository.class);
+        bookRepository = mock(BookRepository.class);
+        borrowServiceClient = mock(BorrowServiceClient.class);
+        bookService = mock(BookService.class);
+        copyHoldService = new CopyHoldService(copyHoldRepository, bookRepository, bookService,
+                borrowServiceClient, mock(PlatformTransactionManager.class), 120);
+    }
+
+    @Test
+    void expiryConfirmsHoldsThatHaveLoansAndReturnsOnlyTheOthers() {
+        CopyHold loaned = hold("t-loaned", "111");
+        CopyHold abandoned = hold("t-abandoned", "111");
+        CopyHold other = hold("t-other", "222");
+        List<String> tokens = List.of("t-loaned", "t-abandoned", "t-other");
+        when(copyHoldRepository.findExpiredHoldTokens(any(), any())).thenReturn(tokens);
+        when(borrowServiceClient.findLoanedHoldTokens(tokens)).thenReturn(List.of("t-loaned"));
+        when(copyHoldRepository.lockHeldByTokens(tokens)).thenReturn(List.of(loaned, abandoned, other));
+
+        copyHoldService.expireStaleHolds();
+
+        assertEquals(HoldStatus.CONFIRMED, loaned.getStatus());
+        assertEquals(HoldStatus.EXPIRED, abandoned.getStatus());
+        assertEquals(HoldStatus.EXPIRED, other.getStatus());
+        verify(bookRepository).returnCopies(eq("111"), eq(1), any());
+        verify(bookRepository).returnCopies(eq("222"), eq(1), any());
+        verifyNoMoreInteractions(bookRepository);
+    }
+
+    @Test
+    void expiryReturnsNothingWhenBorrowServiceCannotBeAsked() {
+        List<String> tokens = List.of("t-1");
+        when(copyHoldRepository.findExpiredHoldTokens(any(), any())).thenReturn(tokens);
+        when(borrowServiceClient.findLoanedHoldTokens(tokens)).thenThrow(new RestClientException("connection refused"));
+
+        copyHoldService.expireStaleHolds();
+
+        verify(copyHoldRepository, never()).lockHeldByTokens(any());
+        verifyNoInteractions(bookRepository);
+    }
+
+    @Test
+    void lateConfirmOfExpiredHoldTakesACopyAgain() {
+        CopyHold hold = hold("t-1", "111");
+        hold.setStatus(HoldStatus.EXPIRED);
+        when(copyHoldRepository.lockByToken("t-1")).thenReturn(Optional.of(hold));
+        when(bookRepository.takeAvailableCopy(eq("111"), any())).thenReturn(1);
+
+        copyHoldService.confirmHold("t-1");
+
+        assertEquals(HoldStatus.CONFIRMED, hold.getStatus());
+    }
+
+    @Test
+    void lateConfirmFailsWhileNoCopyIsLeft() {
+        CopyHold hold = hold("t-1", "111");
+        hold.setStatus(HoldStatus.EXPIRED);
+        when(copyHoldRepository.lockByToken("t-1")).thenReturn(Optional.of(hold));
+        when(bookRepository.takeAvailableCopy(eq("111"), any())).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> copyHoldService.confirmHold("t-1"));
+        assertEquals(HoldStatus.EXPIRED, hold.getStatus());
+    }
+
+    @Test
+    void confirmingTwiceDoesNotTakeAnotherCopy() {
+        CopyHold hold = hold("t-1", "111");
+        when(copyHoldRepository.lockByToken("t-1")).thenReturn(Optional.of(hold));
+
+        copyHoldService.confirmHold("t-1");
+        copyHoldService.confirmHold("t-1");
+
+        assertEquals(HoldStatus.CONFIRMED, hold.getStatus());
+        verify(bookRepository, never()).takeAvailableCopy(any(), any());
+        verify(bookRepository, never()).returnCopies(any(), anyInt(), any());
+    }
+
+    @Test
+    void batchHoldsEachAvailableIsbnOnceAndExplainsTheRest() {
+        when(bookRepository.takeAvailableCopy(eq("111"), any())).thenReturn(1);
+        when(bookRepository.takeAvailableCopy(eq("222"), any())).thenReturn(0);
+        when(bookRepository.takeAvailableCopy(eq("333"), any())).thenReturn(0);
+        when(copyHoldRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(bookService.getBooksByIsbns(List.of("111", "222", "333"))).thenReturn(List.of(
+                book("111", "AVAILABLE"), book("222", "AVAILABLE")));
+
+        List<CopyHoldResult> results = copyHoldService.tryReserveCopies(List.of("111", "222", "111", "333"));
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertNotNull(results.get(0).getHold().getToken());
+        assertEquals("111", results.get(0).getHold().getBook().getIsbn());
+        assertTrue(results.get(1).getMessage().startsWith("No available copies"));
+        assertTrue(results.get(2).getMessage().startsWith("Book not found"));
+        verify(bookRepository, times(1)).takeAvailableCopy(eq("111"), any());
+    }
+
+    private static BookResponse book(String isbn, String status) {
+        return BookResponse.builder().isbn(isbn).title("Title " + isbn).status(status).build();
+    }
+
+    private static CopyHold hold(String token, String isbn) {
+        return CopyHold.builder()
+                .token(token)
+                .isbn(isbn)
+                .status(HoldStatus.HELD)
+                .expiresAt(LocalDateTime.now().minusMinutes(1))
+                .build();
+    }
+}
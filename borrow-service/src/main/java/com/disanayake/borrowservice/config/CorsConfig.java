@@ -1,5 +1,6 @@
 package com.disanayake.borrowservice.config;
 
+import com.disanayake.borrowservice.services.IdempotencyStore;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
@@ -24,6 +25,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 )
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS")
                 .allowedHeaders("*")
+                .exposedHeaders(IdempotencyStore.REPLAYED_HEADER)
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -48,6 +50,9 @@ public class CorsConfig implements WebMvcConfigurer {
         // Allow all headers
         configuration.setAllowedHeaders(Arrays.asList("*"));
         
+        // Let clients see when a retried request was answered from the idempotency store
+        configuration.setExposedHeaders(Arrays.asList(IdempotencyStore.REPLAYED_HEADER));
+        
         // Allow credentials
         configuration.setAllowCredentials(true);
         
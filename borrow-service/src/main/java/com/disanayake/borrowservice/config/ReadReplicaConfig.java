@@ -0,0 +1,73 @@
+package com.disanayake.borrowservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Read/write datasource routing, enabled by setting datasource.replica.url.
+ *
+ * The application DataSource becomes a lazy proxy over the primary pool. Connections are fetched only
+ * at the first statement, by which point a @Transactional(readOnly = true) transaction has marked
+ * the connection read-only, and those connections come from {@link ReplicaRoutingDataSource} instead:
+ * the replica pool while it is healthy and within the lag tolerance, the primary pool otherwise.
+ * Without the property the default Spring Boot single-pool DataSource is used.
+ */
+@Configuration
+@ConditionalOnExpression("!'${datasource.replica.url:}'.isEmpty()")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${datasource.replica.url}") String url,
+                                              @Value("${datasource.replica.username}") String username,
+                                              @Value("${datasource.replica.password}") String password,
+                                              @Value("${datasource.replica.maximum-pool-size:10}") int maximumPoolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setDriverClassName(properties.getDriverClassName());
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setReadOnly(true);
+        // Do not block startup on the replica; the health check keeps reads on the primary until it is reachable
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                                             @Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                             @Value("${datasource.replica.max-lag-seconds:5}") long maxLagSeconds) {
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(replicaDataSource, primaryDataSource, maxLagSeconds);
+        routingDataSource.checkReplica();
+        return routingDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,106 @@
+package com.disanayake.borrowservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Read-only side of the read/write split: hands out replica connections while the replica is
+ * reachable and no further behind the primary than the configured lag, and primary connections
+ * otherwise. Replica health is re-checked on a fixed delay, and a replica that refuses a connection
+ * is taken out of rotation straight away so the read falls back to the primary.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource replica;
+    private final DataSource primary;
+    private final long maxLagSeconds;
+
+    // Reads stay on the primary until the first check passes
+    private volatile boolean replicaUsable = false;
+
+    public ReplicaRoutingDataSource(DataSource replica, DataSource primary, long maxLagSeconds) {
+        this.replica = replica;
+        this.primary = primary;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    // Open the connection on the replica when it is usable, on the primary otherwise
+    private Connection connect(ConnectionOpener opener) throws SQLException {
+        if (replicaUsable) {
+            try {
+                return opener.open(replica);
+            } catch (SQLException e) {
+                markUnusable("connection failed: " + e.getMessage());
+            }
+        }
+        return opener.open(primary);
+    }
+
+    @FunctionalInterface
+    private interface ConnectionOpener {
+        Connection open(DataSource dataSource) throws SQLException;
+    }
+
+    /**
+     * Compare the replica's replication lag with the tolerance. A server that is not replicating
+     * (e.g. a second local instance used for testing) counts as in sync; one whose replication
+     * threads have stopped does not.
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.lag-check-interval-ms:5000}")
+    public void checkReplica() {
+        Long lagSeconds;
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet status = statement.executeQuery("SHOW REPLICA STATUS")) {
+            if (status.next()) {
+                long lag = status.getLong("Seconds_Behind_Source");
+                lagSeconds = status.wasNull() ? null : lag;
+            } else {
+                lagSeconds = 0L;
+            }
+        } catch (SQLException e) {
+            markUnusable("health check failed: " + e.getMessage());
+            return;
+        }
+
+        if (lagSeconds == null) {
+            markUnusable("replication is not running");
+        } else if (lagSeconds > maxLagSeconds) {
+            markUnusable("replication lag " + lagSeconds + "s exceeds " + maxLagSeconds + "s");
+        } else if (!replicaUsable) {
+            replicaUsable = true;
+            log.info("Read replica in use for read-only transactions (replication lag {}s)", lagSeconds);
+        }
+    }
+
+    private void markUnusable(String reason) {
+        if (replicaUsable) {
+            replicaUsable = false;
+            log.warn("Read replica taken out of rotation, read-only transactions fall back to the primary: {}", reason);
+        } else {
+            log.debug("Read replica still unavailable: {}", reason);
+        }
+    }
+}
@@ -1,19 +1,41 @@
 package com.disanayake.borrowservice.controllers;
 
 import com.disanayake.borrowservice.dto.*;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.CirculationDailyRollup;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.disanayake.borrowservice.services.AutoRenewalJob;
 import com.disanayake.borrowservice.services.BorrowService;
+import com.disanayake.borrowservice.services.CirculationRollupService;
+import com.disanayake.borrowservice.services.IdempotencyStore;
+import com.disanayake.borrowservice.services.LoanExportService;
 import com.disanayake.borrowservice.services.ReservationService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/loans")
@@ -24,6 +46,14 @@ public class BorrowController {
     
     private final BorrowService borrowService;
     private final ReservationService reservationService;
+    private final LoanExportService loanExportService;
+    private final CirculationRollupService circulationRollupService;
+    private final AutoRenewalJob autoRenewalJob;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectMapper objectMapper;
+    
+    // Number of uploaded returns processed per transaction in a bulk return
+    private static final int BULK_RETURN_CHUNK_SIZE = 100;
     
     // ========== RESERVATION ENDPOINTS (for Students) ==========
     
@@ -110,15 +140,53 @@ public class BorrowController {
     // ========== LOAN CREATION ENDPOINTS (for Librarians) ==========
     
     // Create loan (Librarian checkout - replaces the old borrow endpoint)
+    // An Idempotency-Key makes retries replay the first outcome on this instance only (see IdempotencyStore)
     @PostMapping("/checkout")
-    public ResponseEntity<ApiResponse<BorrowRecordResponse>> createLoan(@Valid @RequestBody CreateLoanRequest request) {
+    public ResponseEntity<ApiResponse<BorrowRecordResponse>> createLoan(
+            @Valid @RequestBody CreateLoanRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
         log.info("Processing loan creation request for user {} and book {} by librarian {}", 
                 request.getUserId(), request.getIsbn(), request.getLibrarianId());
         
+        return idempotencyStore.execute("checkout", idempotencyKey, request, () -> {
+            try {
+                BorrowRecordResponse loanResponse = borrowService.createLoan(request);
+                return ResponseEntity.status(HttpStatus.CREATED)
+                        .body(ApiResponse.success("Loan created successfully", loanResponse));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (Exception e) {
+                log.error("Error processing loan creation request", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ApiResponse.error("Failed to create loan"));
+            }
+        });
+    }
+    
+    // Cart checkout (Librarian checks out several books for one student at once)
+    @PostMapping("/checkout/cart")
+    public ResponseEntity<ApiResponse<CartCheckoutResponse>> checkoutCart(@Valid @RequestBody CartCheckoutRequest request) {
+        log.info("Processing cart checkout of {} books for user {} by librarian {}", 
+                request.getIsbns().size(), request.getUserId(), request.getLibrarianId());
+        
         try {
-            BorrowRecordResponse loanResponse = borrowService.createLoan(request);
+            CartCheckoutResponse cartResponse = borrowService.checkoutCart(request);
+            String message = "Checked out " + cartResponse.getCheckedOutCount() + " of " 
+                    + cartResponse.getRequestedCount() + " books";
+            if (cartResponse.getCheckedOutCount() == 0) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.<CartCheckoutResponse>builder()
+                                .success(false)
+                                .message(message)
+                                .data(cartResponse)
+                                .build());
+            }
             return ResponseEntity.status(HttpStatus.CREATED)
-                    .body(ApiResponse.success("Loan created successfully", loanResponse));
+                    .body(ApiResponse.success(message, cartResponse));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(ApiResponse.error(e.getMessage()));
@@ -126,9 +194,22 @@ public class BorrowController {
             return ResponseEntity.status(HttpStatus.CONFLICT)
                     .body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
-            log.error("Error processing loan creation request", e);
+            log.error("Error processing cart checkout request", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to check out cart"));
+        }
+    }
+    
+    // Which of these copy hold tokens a loan was checked out with (book-service asks before expiring holds)
+    @PostMapping("/holds/loaned")
+    public ResponseEntity<ApiResponse<List<String>>> getLoanedHoldTokens(@RequestBody List<String> tokens) {
+        try {
+            List<String> loanedTokens = borrowService.findLoanedHoldTokens(tokens);
+            return ResponseEntity.ok(ApiResponse.success(loanedTokens));
+        } catch (Exception e) {
+            log.error("Error looking up loans by hold token", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("Failed to create loan"));
+                    .body(ApiResponse.error("Failed to look up loans by hold token"));
         }
     }
     
@@ -177,43 +258,140 @@ public class BorrowController {
     }
     
     // Return a book (Student/Librarian) - Return/Update
+    // An Idempotency-Key makes retries replay the first outcome on this instance only (see IdempotencyStore)
     @PostMapping("/return")
-    public ResponseEntity<ApiResponse<BorrowRecordResponse>> returnBook(@Valid @RequestBody ReturnBookRequest request) {
+    public ResponseEntity<ApiResponse<BorrowRecordResponse>> returnBook(
+            @Valid @RequestBody ReturnBookRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
         log.info("Processing return request for user {} and book {}", request.getUserId(), request.getIsbn());
         
+        return idempotencyStore.execute("return", idempotencyKey, request, () -> {
+            try {
+                BorrowRecordResponse returnResponse = borrowService.returnBook(request);
+                return ResponseEntity.ok(ApiResponse.success("Book returned successfully", returnResponse));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (Exception e) {
+                log.error("Error processing return request", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ApiResponse.error("Failed to return book"));
+            }
+        });
+    }
+    
+    // Bulk return for book-drop scanning (Librarian) - upload one return request per line (NDJSON).
+    // Items are processed in chunks and a result line is streamed back for each item as its chunk completes.
+    @PostMapping(value = "/return/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> returnBooksInBulk(HttpServletRequest request) throws IOException {
+        log.info("Processing bulk return upload");
+        
+        InputStream upload = request.getInputStream();
+        StreamingResponseBody results = out -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8));
+            List<ReturnBookRequest> chunk = new ArrayList<>();
+            List<Integer> chunkLines = new ArrayList<>();
+            int lineNumber = 0;
+            String line;
+            
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                
+                ReturnBookRequest item;
+                try {
+                    item = objectMapper.readValue(line, ReturnBookRequest.class);
+                } catch (JsonProcessingException e) {
+                    writeNdjson(out, BulkReturnResult.builder()
+                            .line(lineNumber).success(false).message("Invalid return request: " + e.getOriginalMessage()).build());
+                    continue;
+                }
+                if (item.getUserId() == null || item.getIsbn() == null || item.getIsbn().isBlank()) {
+                    writeNdjson(out, BulkReturnResult.builder()
+                            .line(lineNumber).userId(item.getUserId()).isbn(item.getIsbn())
+                            .success(false).message("User ID and book ISBN are required").build());
+                    continue;
+                }
+                
+                chunk.add(item);
+                chunkLines.add(lineNumber);
+                if (chunk.size() == BULK_RETURN_CHUNK_SIZE) {
+                    processReturnChunk(chunk, chunkLines, out);
+                }
+            }
+            processReturnChunk(chunk, chunkLines, out);
+        };
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results);
+    }
+    
+    private void processReturnChunk(List<ReturnBookRequest> chunk, List<Integer> chunkLines, OutputStream out) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        
+        List<BulkReturnResult> results;
         try {
-            BorrowRecordResponse returnResponse = borrowService.returnBook(request);
-            return ResponseEntity.ok(ApiResponse.success("Book returned successfully", returnResponse));
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error(e.getMessage()));
+            results = borrowService.returnBooks(chunk);
         } catch (Exception e) {
-            log.error("Error processing return request", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("Failed to return book"));
+            log.error("Error processing bulk return chunk of {} items", chunk.size(), e);
+            results = chunk.stream()
+                    .map(item -> BulkReturnResult.builder()
+                            .userId(item.getUserId())
+                            .isbn(item.getIsbn())
+                            .success(false)
+                            .message("Failed to return book")
+                            .build())
+                    .toList();
+        }
+        
+        for (int i = 0; i < results.size(); i++) {
+            BulkReturnResult result = results.get(i);
+            result.setLine(chunkLines.get(i));
+            writeNdjson(out, result);
         }
+        out.flush();
+        chunk.clear();
+        chunkLines.clear();
+    }
+    
+    private void writeNdjson(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
     }
     
     // Renew a loan (Student) - Renew/Update
+    // An Idempotency-Key makes retries replay the first outcome on this instance only (see IdempotencyStore)
     @PostMapping("/renew")
-    public ResponseEntity<ApiResponse<BorrowRecordResponse>> renewLoan(@Valid @RequestBody RenewLoanRequest request) {
+    public ResponseEntity<ApiResponse<BorrowRecordResponse>> renewLoan(
+            @Valid @RequestBody RenewLoanRequest request,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
         log.info("Processing renewal request for user {} and borrow record {}", 
                 request.getUserId(), request.getBorrowRecordId());
         
-        try {
-            BorrowRecordResponse renewResponse = borrowService.renewLoan(request);
-            return ResponseEntity.ok(ApiResponse.success("Loan renewed successfully", renewResponse));
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error(e.getMessage()));
-        } catch (IllegalStateException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(ApiResponse.error(e.getMessage()));
-        } catch (Exception e) {
-            log.error("Error processing renewal request", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("Failed to renew loan"));
-        }
+        return idempotencyStore.execute("renew", idempotencyKey, request, () -> {
+            try {
+                BorrowRecordResponse renewResponse = borrowService.renewLoan(request);
+                return ResponseEntity.ok(ApiResponse.success("Loan renewed successfully", renewResponse));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(ApiResponse.error(e.getMessage()));
+            } catch (Exception e) {
+                log.error("Error processing renewal request", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(ApiResponse.error("Failed to renew loan"));
+            }
+        });
     }
     
     // Get user's loan history
@@ -236,6 +414,27 @@ public class BorrowController {
         }
     }
     
+    // Get user's loan history with cursor (keyset) pagination - cost does not grow with page depth
+    @GetMapping("/user/{userId}/history/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<BorrowRecordResponse>>> getUserLoanHistoryByCursor(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        log.info("Fetching loan history page for user: {}", userId);
+        
+        try {
+            CursorPage<BorrowRecordResponse> loanHistory = borrowService.getUserBorrowHistory(userId, cursor, size);
+            return ResponseEntity.ok(ApiResponse.success("Loan history retrieved successfully", loanHistory));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching loan history page for user: {}", userId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch loan history"));
+        }
+    }
+    
     // Get book's loan history
     @GetMapping("/book/{isbn}/history")
     public ResponseEntity<ApiResponse<Page<BorrowRecordResponse>>> getBookLoanHistory(
@@ -256,6 +455,45 @@ public class BorrowController {
         }
     }
     
+    // Get book's loan history with cursor (keyset) pagination
+    @GetMapping("/book/{isbn}/history/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<BorrowRecordResponse>>> getBookLoanHistoryByCursor(
+            @PathVariable String isbn,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        log.info("Fetching loan history page for book: {}", isbn);
+        
+        try {
+            CursorPage<BorrowRecordResponse> loanHistory = borrowService.getBookBorrowHistory(isbn, cursor, size);
+            return ResponseEntity.ok(ApiResponse.success("Book loan history retrieved successfully", loanHistory));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching loan history page for book: {}", isbn, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch book loan history"));
+        }
+    }
+    
+    // "Students who borrowed this also borrowed" recommendations for a book
+    @GetMapping("/book/{isbn}/recommendations")
+    public ResponseEntity<ApiResponse<List<BookRecommendation>>> getBookRecommendations(
+            @PathVariable String isbn,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "false") boolean enrich) {
+        log.info("Fetching recommendations for book: {}", isbn);
+        
+        try {
+            List<BookRecommendation> recommendations = borrowService.getRecommendations(isbn, limit, enrich);
+            return ResponseEntity.ok(ApiResponse.success("Recommendations retrieved successfully", recommendations));
+        } catch (Exception e) {
+            log.error("Error fetching recommendations for book: {}", isbn, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch recommendations"));
+        }
+    }
+    
     // Get user's active loans
     @GetMapping("/user/{userId}/active")
     public ResponseEntity<ApiResponse<List<BorrowRecordResponse>>> getUserActiveLoans(@PathVariable Long userId) {
@@ -271,6 +509,99 @@ public class BorrowController {
         }
     }
     
+    // Student dashboard: open loans, reservations with queue position and fine estimate in one call
+    @GetMapping("/user/{userId}/dashboard")
+    public ResponseEntity<ApiResponse<StudentDashboardResponse>> getStudentDashboard(@PathVariable Long userId) {
+        log.info("Fetching dashboard for user: {}", userId);
+        
+        try {
+            StudentDashboardResponse dashboard = borrowService.getStudentDashboard(userId);
+            return ResponseEntity.ok(ApiResponse.success("Dashboard retrieved successfully", dashboard));
+        } catch (Exception e) {
+            log.error("Error fetching dashboard for user: {}", userId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch dashboard"));
+        }
+    }
+    
+    // Get user's account summary (active loans and reservations against their limits)
+    @GetMapping("/user/{userId}/summary")
+    public ResponseEntity<ApiResponse<UserAccountSummary>> getUserAccountSummary(@PathVariable Long userId) {
+        log.info("Fetching account summary for user: {}", userId);
+        
+        try {
+            UserAccountSummary summary = borrowService.getUserAccountSummary(userId);
+            return ResponseEntity.ok(ApiResponse.success("Account summary retrieved successfully", summary));
+        } catch (Exception e) {
+            log.error("Error fetching account summary for user: {}", userId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch account summary"));
+        }
+    }
+    
+    // ========== CIRCULATION REPORTS (Librarian/Admin) ==========
+    
+    // Daily checkouts, returns, overdues and average loan length per ISBN, GENRE or DEPARTMENT
+    @GetMapping("/reports/daily")
+    public ResponseEntity<ApiResponse<List<CirculationRollupResponse>>> getDailyCirculation(
+            @RequestParam CirculationDailyRollup.Dimension dimension,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        log.info("Fetching daily circulation by {} from {} to {}", dimension, from, to);
+        
+        try {
+            List<CirculationRollupResponse> rollups = circulationRollupService.getDailyRollups(dimension, from, to);
+            return ResponseEntity.ok(ApiResponse.success("Daily circulation retrieved successfully", rollups));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching daily circulation by {}", dimension, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch daily circulation"));
+        }
+    }
+    
+    // Most borrowed ISBNs, genres or departments over a date range (e.g. a term)
+    @GetMapping("/reports/top")
+    public ResponseEntity<ApiResponse<List<CirculationRollupResponse>>> getTopCirculation(
+            @RequestParam CirculationDailyRollup.Dimension dimension,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "10") int limit) {
+        log.info("Fetching top {} by checkouts from {} to {}", dimension, from, to);
+        
+        try {
+            List<CirculationRollupResponse> totals = circulationRollupService.getTopValues(dimension, from, to, limit);
+            return ResponseEntity.ok(ApiResponse.success("Circulation totals retrieved successfully", totals));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching top {} by checkouts", dimension, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch circulation totals"));
+        }
+    }
+    
+    // Get a loan's event history (checkout, renewals, return, overdue, lost)
+    @GetMapping("/{borrowRecordId}/events")
+    public ResponseEntity<ApiResponse<List<LoanEventResponse>>> getLoanEvents(@PathVariable Long borrowRecordId) {
+        log.info("Fetching events for borrow record: {}", borrowRecordId);
+        
+        try {
+            List<LoanEventResponse> events = borrowService.getLoanEvents(borrowRecordId);
+            return ResponseEntity.ok(ApiResponse.success("Loan events retrieved successfully", events));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching events for borrow record: {}", borrowRecordId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch loan events"));
+        }
+    }
+    
     // Get all loan records (Librarian/Admin only)
     @GetMapping
     public ResponseEntity<ApiResponse<Page<BorrowRecordResponse>>> getAllLoanRecords(
@@ -287,6 +618,71 @@ public class BorrowController {
         }
     }
     
+    // Get all loan records with cursor (keyset) pagination (Librarian/Admin only)
+    @GetMapping("/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<BorrowRecordResponse>>> getAllLoanRecordsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        log.info("Fetching loan records page by cursor");
+        
+        try {
+            CursorPage<BorrowRecordResponse> allLoans = borrowService.getAllBorrowRecords(cursor, size);
+            return ResponseEntity.ok(ApiResponse.success("All loan records retrieved successfully", allLoans));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error fetching loan records page", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to fetch loan records"));
+        }
+    }
+    
+    // Filtered loan query for batch consumers (Internal/Librarian/Admin).
+    // status takes a comma-separated set; due dates are inclusive; enrich=false skips book-service lookups.
+    @GetMapping("/query")
+    public ResponseEntity<ApiResponse<CursorPage<BorrowRecordResponse>>> queryLoans(
+            @RequestParam(required = false) List<String> status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dueFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dueTo,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String isbn,
+            @RequestParam(defaultValue = "true") boolean enrich,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int size) {
+        log.info("Querying loans with status {}, due {} to {}, user {}, book {}", status, dueFrom, dueTo, userId, isbn);
+        
+        try {
+            Set<BorrowRecord.BorrowStatus> statuses = EnumSet.noneOf(BorrowRecord.BorrowStatus.class);
+            if (status != null) {
+                for (String value : status) {
+                    try {
+                        statuses.add(BorrowRecord.BorrowStatus.valueOf(value.trim().toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Invalid loan status: " + value);
+                    }
+                }
+            }
+            
+            LoanQueryCriteria criteria = LoanQueryCriteria.builder()
+                    .statuses(statuses)
+                    .dueFrom(dueFrom)
+                    .dueTo(dueTo)
+                    .userId(userId)
+                    .isbn(isbn)
+                    .build();
+            CursorPage<BorrowRecordResponse> loans = borrowService.queryLoans(criteria, enrich, cursor, size);
+            return ResponseEntity.ok(ApiResponse.success("Loans retrieved successfully", loans));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error querying loans", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to query loans"));
+        }
+    }
+    
     // Get overdue books (Librarian/Admin only)
     @GetMapping("/overdue")
     public ResponseEntity<ApiResponse<List<BorrowRecordResponse>>> getOverdueBooks() {
@@ -318,6 +714,28 @@ public class BorrowController {
         }
     }
     
+    // Stream overdue books as NDJSON (Librarian/Admin only) - constant memory however large the backlog
+    @GetMapping(value = "/overdue/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamOverdueBooks() {
+        log.info("Streaming overdue books");
+        
+        StreamingResponseBody export = loanExportService::exportOverdueBooks;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(export);
+    }
+    
+    // Stream books due soon as NDJSON (Librarian/Admin only)
+    @GetMapping(value = "/due-soon/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamBooksDueSoon(@RequestParam(defaultValue = "3") int days) {
+        log.info("Streaming books due within {} days", days);
+        
+        StreamingResponseBody export = out -> loanExportService.exportBooksDueSoon(days, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(export);
+    }
+    
     // Mark book as lost (Librarian/Admin only)
     @PostMapping("/mark-lost")
     public ResponseEntity<ApiResponse<BorrowRecordResponse>> markBookAsLost(@Valid @RequestBody MarkBookAsLostRequest request) {
@@ -353,4 +771,19 @@ public class BorrowController {
                     .body(ApiResponse.error("Failed to update overdue status"));
         }
     }
+    
+    // Run the auto-renewal batch now (Librarian/Admin); returns one notice per student with renewed loans
+    @PostMapping("/auto-renew")
+    public ResponseEntity<ApiResponse<List<AutoRenewalNotice>>> autoRenewLoans() {
+        log.info("Running auto-renewal for loans due soon");
+        
+        try {
+            List<AutoRenewalNotice> notices = autoRenewalJob.renewEligibleLoans();
+            return ResponseEntity.ok(ApiResponse.success("Auto-renewal completed successfully", notices));
+        } catch (Exception e) {
+            log.error("Error running auto-renewal", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to run auto-renewal"));
+        }
+    }
 }
\ No newline at end of file
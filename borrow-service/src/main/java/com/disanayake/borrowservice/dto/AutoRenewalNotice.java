@@ -0,0 +1,31 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Everything one auto-renewal run renewed for a single student, so they get one notice rather than one per loan
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AutoRenewalNotice {
+    
+    private Long userId;
+    private List<RenewedLoan> loans;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class RenewedLoan {
+        private Long borrowRecordId;
+        private String isbn;
+        private LocalDate previousDueDate;
+        private LocalDate newDueDate;
+    }
+}
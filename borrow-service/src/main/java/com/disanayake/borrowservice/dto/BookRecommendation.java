@@ -0,0 +1,17 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookRecommendation {
+    
+    private String isbn;
+    private int coBorrowCount;  // Students who borrowed both books
+    private BookResponse book;  // Book details from book-service, only when enrich=true
+}
@@ -0,0 +1,21 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkReturnResult {
+    
+    private int line;  // 1-based position of the item in the uploaded stream
+    private Long userId;
+    private String isbn;
+    private boolean success;
+    private String message;
+    private Long borrowRecordId;
+    private Double fineAmount;
+}
@@ -0,0 +1,27 @@
+package com.disanayake.borrowservice.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartCheckoutRequest {
+    
+    @NotNull(message = "User ID is required")
+    private Long userId;
+    
+    @NotNull(message = "Librarian ID is required")
+    private Long librarianId;
+    
+    @NotEmpty(message = "At least one book ISBN is required")
+    private List<@NotBlank(message = "Book ISBN is required") String> isbns;
+    
+    private String notes; // Optional notes applied to every loan in the cart
+}
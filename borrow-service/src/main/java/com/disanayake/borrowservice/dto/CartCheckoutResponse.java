@@ -0,0 +1,33 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartCheckoutResponse {
+    
+    private Long userId;
+    private Long librarianId;
+    private int requestedCount;
+    private int checkedOutCount;
+    private int failedCount;
+    private List<ItemResult> items;  // One entry per requested ISBN, in request order
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class ItemResult {
+        private String isbn;
+        private boolean success;
+        private String message;
+        private BorrowRecordResponse loan;  // Present only when the item was checked out
+    }
+}
@@ -0,0 +1,24 @@
+package com.disanayake.borrowservice.dto;
+
+import com.disanayake.borrowservice.entities.CirculationDailyRollup;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CirculationRollupResponse {
+    
+    private LocalDate date;  // Null for totals over a date range
+    private CirculationDailyRollup.Dimension dimension;
+    private String value;    // ISBN, genre or department
+    private long checkouts;
+    private long returns;
+    private long overdues;
+    private Double averageLoanDays;  // Over the returns; null when there were none
+}
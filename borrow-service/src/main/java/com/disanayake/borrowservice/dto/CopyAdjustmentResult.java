@@ -0,0 +1,19 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CopyAdjustmentResult {
+    
+    private String isbn;
+    private Integer delta;
+    private boolean success;
+    private String message;
+    private BookResponse book;  // Book state after the adjustment, as reported by book-service
+}
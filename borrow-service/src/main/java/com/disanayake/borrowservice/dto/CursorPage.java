@@ -0,0 +1,20 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPage<T> {
+    
+    private List<T> items;
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;  // Pass back as ?cursor= to fetch the next page; null on the last page
+}
@@ -0,0 +1,22 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LoanEventResponse {
+    
+    private Long id;
+    private Long borrowRecordId;
+    private String eventType;
+    private Long actorUserId;
+    private String note;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,23 @@
+package com.disanayake.borrowservice.dto;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LoanQueryCriteria {
+    
+    private Set<BorrowRecord.BorrowStatus> statuses;  // Empty or null means any status
+    private LocalDate dueFrom;  // Inclusive
+    private LocalDate dueTo;    // Inclusive
+    private Long userId;
+    private String isbn;
+}
@@ -0,0 +1,51 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StudentDashboardResponse {
+    
+    private Long userId;
+    private List<LoanItem> loans;
+    private List<ReservationItem> reservations;
+    private double outstandingFineEstimate;  // Fines accrued so far on loans still out; settled fines live in payment-service
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class LoanItem {
+        private Long borrowRecordId;
+        private String isbn;
+        private String title;
+        private String author;
+        private LocalDate borrowDate;
+        private LocalDate dueDate;
+        private String status;
+        private long daysOverdue;
+        private double fineEstimate;
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class ReservationItem {
+        private Long reservationId;
+        private String isbn;
+        private String title;
+        private String author;
+        private LocalDate reservationDate;
+        private LocalDate expiryDate;
+        private int queuePosition;  // 1 = next in line; 0 if unknown
+    }
+}
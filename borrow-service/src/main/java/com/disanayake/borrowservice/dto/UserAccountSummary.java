@@ -0,0 +1,21 @@
+package com.disanayake.borrowservice.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserAccountSummary {
+    
+    private Long userId;
+    private int activeLoans;
+    private int maxLoans;
+    private int remainingLoans;
+    private int activeReservations;
+    private int maxReservations;
+    private int remainingReservations;
+}
@@ -25,5 +25,6 @@ public class UserValidationResponse {
         private String email;
         private String role;
         private String status;
+        private String department;  // Students only
     }
 }
\ No newline at end of file
@@ -10,7 +10,17 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "borrow_records")
+@Table(name = "borrow_records", indexes = {
+        @Index(name = "idx_borrow_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_borrow_user_borrow_date", columnList = "user_id, borrow_date, id"),
+        @Index(name = "idx_borrow_user_isbn_status", columnList = "user_id, book_isbn, status"),
+        // Status/due-date filters of the loan query, then its (borrow_date DESC, id DESC) keyset order
+        @Index(name = "idx_borrow_status_due_borrow_date", columnList = "status, due_date, borrow_date, id"),
+        @Index(name = "idx_borrow_isbn_borrow_date", columnList = "book_isbn, borrow_date, id"),
+        @Index(name = "idx_borrow_borrow_date", columnList = "borrow_date, id"),
+        @Index(name = "idx_borrow_return_date", columnList = "return_date"),
+        @Index(name = "idx_borrow_hold_token", columnList = "hold_token")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -49,6 +59,10 @@ public class BorrowRecord {
     @Column(columnDefinition = "TEXT")
     private String notes;
     
+    // book-service copy hold the loan was checked out with; book-service looks loans up by it before expiring a hold
+    @Column(name = "hold_token", length = 36)
+    private String holdToken;
+    
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
@@ -0,0 +1,54 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+
+// Circulation totals for one day and one dimension value (an ISBN, a genre or a student department);
+// rows are only ever incremented by the rollup job from loan events
+@Entity
+@Table(name = "circulation_daily_rollups", indexes = {
+        @Index(name = "idx_rollup_dimension_date", columnList = "dimension, rollup_date")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollup_day_value", columnNames = {"rollup_date", "dimension", "dimension_value"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CirculationDailyRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Dimension dimension;
+    
+    @Column(name = "dimension_value", nullable = false, length = 100)
+    private String dimensionValue;
+    
+    @Column(name = "checkout_count", nullable = false)
+    private long checkoutCount;
+    
+    @Column(name = "return_count", nullable = false)
+    private long returnCount;
+    
+    @Column(name = "overdue_count", nullable = false)
+    private long overdueCount;
+    
+    @Column(name = "returned_loan_days", nullable = false)
+    private long returnedLoanDays;  // Sum of loan durations of the returns, for the average
+    
+    public enum Dimension {
+        ISBN, GENRE, DEPARTMENT
+    }
+}
@@ -0,0 +1,24 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+// Watermark of a rollup pipeline: the last loan event folded into the rollups
+@Entity
+@Table(name = "circulation_rollup_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CirculationRollupState {
+    
+    @Id
+    @Column(length = 50)
+    private String name;
+    
+    @Column(name = "last_event_id", nullable = false)
+    private Long lastEventId;
+}
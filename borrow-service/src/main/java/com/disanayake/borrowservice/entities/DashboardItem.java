@@ -0,0 +1,60 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDate;
+
+// Denormalized row of the student dashboard read model: one per open loan or active reservation,
+// carrying the book details so the dashboard is served without calling book-service
+@Entity
+@Table(name = "student_dashboard_items", indexes = {
+        @Index(name = "idx_dashboard_user", columnList = "user_id, item_type")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_dashboard_item_ref", columnNames = {"item_type", "ref_id"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DashboardItem {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "item_type", nullable = false, length = 20)
+    private ItemType itemType;
+    
+    @Column(name = "ref_id", nullable = false)
+    private Long refId;  // Borrow record ID or reservation ID
+    
+    @Column(name = "book_isbn", nullable = false, length = 20)
+    private String bookIsbn;
+    
+    @Column(name = "book_title")
+    private String bookTitle;
+    
+    @Column(name = "book_author")
+    private String bookAuthor;
+    
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;  // Borrow date or reservation date
+    
+    @Column(name = "due_date", nullable = false)
+    private LocalDate dueDate;  // Loan due date or reservation expiry date
+    
+    @Column(nullable = false, length = 20)
+    private String status;
+    
+    public enum ItemType {
+        LOAN, RESERVATION
+    }
+}
@@ -0,0 +1,45 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+// Append-only audit entry for a loan; rows are written in batches and never updated
+@Entity
+@Table(name = "loan_events", indexes = {
+        @Index(name = "idx_loan_event_borrow_record", columnList = "borrow_record_id, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LoanEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "borrow_record_id", nullable = false)
+    private Long borrowRecordId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 20)
+    private EventType eventType;
+    
+    @Column(name = "actor_user_id")
+    private Long actorUserId;  // Who triggered the event; null for system events
+    
+    @Column(length = 500)
+    private String note;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    public enum EventType {
+        CHECKED_OUT, RETURNED, RENEWED, OVERDUE, LOST
+    }
+}
@@ -0,0 +1,64 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+// A call to another service that must happen once the transaction that wrote it commits. Rows are
+// written with the local change, delivered by OutboxRelay and deleted once the call succeeds; a call
+// the remote side rejects, or that keeps failing past the attempt limit, is kept as FAILED.
+@Entity
+@Table(name = "outbox_messages", indexes = {
+        @Index(name = "idx_outbox_status_next_attempt", columnList = "status, next_attempt_at, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxMessage {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private MessageType type;
+    
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;  // JSON, shape depends on the type
+    
+    // PENDING until delivered; FAILED messages are no longer retried and wait for someone to look at them
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10, columnDefinition = "varchar(10) default 'PENDING'")
+    @Builder.Default
+    private MessageStatus status = MessageStatus.PENDING;
+    
+    @Column(nullable = false)
+    private int attempts;
+    
+    // Not delivered before this time; a relay claiming the message pushes it forward by the lease
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    public enum MessageStatus {
+        PENDING,
+        FAILED
+    }
+    
+    public enum MessageType {
+        CONFIRM_HOLD,
+        RETURN_COPIES,
+        CREATE_FINES
+    }
+}
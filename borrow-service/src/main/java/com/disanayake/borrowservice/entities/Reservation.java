@@ -12,7 +12,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reservations")
+@Table(name = "reservations", indexes = {
+        @Index(name = "idx_reservation_user_status", columnList = "user_id, status"),
+        @Index(name = "idx_reservation_isbn_status_date", columnList = "book_isbn, status, reservation_date"),
+        @Index(name = "idx_reservation_status_expiry", columnList = "status, expiry_date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,27 @@
+package com.disanayake.borrowservice.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+// One row per borrower, row-locked by every checkout and reservation for that user until its transaction
+// ends, so the duplicate and limit checks of two requests for the same user never run side by side on any instance
+@Entity
+@Table(name = "user_locks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserLock {
+    
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(name = "locked_at", nullable = false)
+    private LocalDateTime lockedAt;
+}
@@ -0,0 +1,65 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC access for bulk writes that JPA cannot batch (IDENTITY keys disable Hibernate insert batching)
+@Repository
+@RequiredArgsConstructor
+public class BorrowRecordJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO borrow_records (user_id, book_isbn, borrow_date, due_date, return_date, status, " +
+            "is_overdue, fine_amount, notes, hold_token, created_at, updated_at) " +
+            "VALUES (:userId, :bookIsbn, :borrowDate, :dueDate, :returnDate, :status, " +
+            ":isOverdue, :fineAmount, :notes, :holdToken, :createdAt, :updatedAt)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Insert all records in one JDBC batch and copy the generated IDs and timestamps back onto them
+    public void insertAll(List<BorrowRecord> borrowRecords) {
+        if (borrowRecords.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        SqlParameterSource[] batchArgs = new SqlParameterSource[borrowRecords.size()];
+        for (int i = 0; i < borrowRecords.size(); i++) {
+            BorrowRecord borrowRecord = borrowRecords.get(i);
+            borrowRecord.setCreatedAt(now);
+            borrowRecord.setUpdatedAt(now);
+            batchArgs[i] = new MapSqlParameterSource()
+                    .addValue("userId", borrowRecord.getUserId())
+                    .addValue("bookIsbn", borrowRecord.getBookIsbn())
+                    .addValue("borrowDate", borrowRecord.getBorrowDate())
+                    .addValue("dueDate", borrowRecord.getDueDate())
+                    .addValue("returnDate", borrowRecord.getReturnDate())
+                    .addValue("status", borrowRecord.getStatus().name())
+                    .addValue("isOverdue", borrowRecord.getIsOverdue())
+                    .addValue("fineAmount", borrowRecord.getFineAmount())
+                    .addValue("notes", borrowRecord.getNotes())
+                    .addValue("holdToken", borrowRecord.getHoldToken())
+                    .addValue("createdAt", now)
+                    .addValue("updatedAt", now);
+        }
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs, keyHolder, new String[] {"id"});
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < borrowRecords.size() && i < keys.size(); i++) {
+            Object id = keys.get(i).values().iterator().next();
+            borrowRecords.get(i).setId(((Number) id).longValue());
+        }
+    }
+}
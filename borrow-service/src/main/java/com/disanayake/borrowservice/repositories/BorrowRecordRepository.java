@@ -2,29 +2,75 @@ package com.disanayake.borrowservice.repositories;
 
 import com.disanayake.borrowservice.entities.BorrowRecord;
 import com.disanayake.borrowservice.entities.BorrowRecord.BorrowStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long> {
+public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long>, JpaSpecificationExecutor<BorrowRecord> {
     
     // Find active borrow record for user and book
     Optional<BorrowRecord> findByUserIdAndBookIsbnAndStatus(Long userId, String bookIsbn, BorrowStatus status);
     
+    // Resolve a batch of returns in one query (callers match the exact user/book pairs in memory)
+    List<BorrowRecord> findByUserIdInAndBookIsbnInAndStatus(Collection<Long> userIds, Collection<String> bookIsbns, BorrowStatus status);
+    
+    // The ACTIVE loan being returned, locked so a concurrent return of the same loan on any instance waits
+    // for this one and then no longer finds it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.userId = :userId AND br.bookIsbn = :isbn AND br.status = 'ACTIVE'")
+    Optional<BorrowRecord> findActiveLoanForUpdate(@Param("userId") Long userId, @Param("isbn") String isbn);
+    
+    // Locking variant of findByUserIdInAndBookIsbnInAndStatus for ACTIVE loans (bulk returns)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.userId IN :userIds AND br.bookIsbn IN :isbns AND br.status = 'ACTIVE' ORDER BY br.id")
+    List<BorrowRecord> findActiveLoansForUpdate(@Param("userIds") Collection<Long> userIds, @Param("isbns") Collection<String> isbns);
+    
+    // Hold tokens among the given ones that a loan was checked out with
+    @Query("SELECT br.holdToken FROM BorrowRecord br WHERE br.holdToken IN :tokens")
+    List<String> findHoldTokensIn(@Param("tokens") Collection<String> tokens);
+    
     // Find all active borrows for a user
     List<BorrowRecord> findByUserIdAndStatus(Long userId, BorrowStatus status);
     
+    // A user's ACTIVE loans as a locking read, which sees the latest committed rows rather than the
+    // transaction's snapshot (callers hold the user's lock, see UserLockRepository)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.userId = :userId AND br.status = 'ACTIVE'")
+    List<BorrowRecord> findActiveLoansForUpdate(@Param("userId") Long userId);
+    
+    // (id, userId, bookIsbn) of loans created after the given ID, in ID order (feeds the co-borrow recommender)
+    @Query("SELECT br.id, br.userId, br.bookIsbn FROM BorrowRecord br WHERE br.id > :afterId ORDER BY br.id")
+    List<Object[]> findLoanPairsAfter(@Param("afterId") Long afterId, Pageable limit);
+    
+    // All loans in any of the given statuses (used to rebuild read models)
+    List<BorrowRecord> findByStatusIn(Collection<BorrowStatus> statuses);
+    
     // Count active borrows for a user
     long countByUserIdAndStatus(Long userId, BorrowStatus status);
     
+    // Counts for a set of users in one pass, from idx_borrow_user_status (used to reconcile the in-memory
+    // user counters); rows are [userId, count] and users with none are left out
+    @Query("SELECT br.userId, COUNT(br) FROM BorrowRecord br WHERE br.userId IN :userIds AND br.status = :status GROUP BY br.userId")
+    List<Object[]> countByStatusGroupByUserId(@Param("status") BorrowStatus status, @Param("userIds") Collection<Long> userIds);
+    
     // Find all borrows by user
     Page<BorrowRecord> findByUserId(Long userId, Pageable pageable);
     
@@ -35,6 +81,30 @@ public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long
     @Query("SELECT br FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.dueDate < :currentDate")
     List<BorrowRecord> findOverdueBooks(@Param("currentDate") LocalDate currentDate);
     
+    // IDs of ACTIVE loans past due, read from idx_borrow_status_due_borrow_date alone (daily overdue sweep)
+    @Query("SELECT br.id FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.dueDate < :currentDate")
+    List<Long> findOverdueLoanIds(@Param("currentDate") LocalDate currentDate);
+    
+    // (id, dueDate) of every ACTIVE loan, used to rebuild the in-memory due date index
+    @Query("SELECT br.id, br.dueDate FROM BorrowRecord br WHERE br.status = 'ACTIVE'")
+    List<Object[]> findActiveLoanDueDates();
+    
+    // Forward-only streaming variants for NDJSON exports. The MySQL driver only streams rows
+    // (instead of buffering the whole result) when the fetch size is Integer.MIN_VALUE.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT br FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.dueDate < :currentDate ORDER BY br.dueDate, br.id")
+    Stream<BorrowRecord> streamOverdueBooks(@Param("currentDate") LocalDate currentDate);
+    
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT br FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.dueDate <= :dueDate AND br.dueDate >= :currentDate ORDER BY br.dueDate, br.id")
+    Stream<BorrowRecord> streamBooksDueSoon(@Param("currentDate") LocalDate currentDate, @Param("dueDate") LocalDate dueDate);
+    
     // Find books due soon (within specified days)
     @Query("SELECT br FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.dueDate <= :dueDate AND br.dueDate >= :currentDate")
     List<BorrowRecord> findBooksDueSoon(@Param("currentDate") LocalDate currentDate, @Param("dueDate") LocalDate dueDate);
@@ -52,6 +122,52 @@ public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long
     // Get user's borrowing history
     Page<BorrowRecord> findByUserIdOrderByBorrowDateDesc(Long userId, Pageable pageable);
     
+    // Keyset pages ordered by (borrowDate DESC, id DESC): the first page, then the page after a cursor.
+    // Callers pass an unsorted Pageable that only carries the limit, so no COUNT query is issued.
+    @Query("SELECT br FROM BorrowRecord br WHERE br.userId = :userId ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findUserHistoryFirstPage(@Param("userId") Long userId, Pageable limit);
+    
+    @Query("SELECT br FROM BorrowRecord br WHERE br.userId = :userId AND " +
+           "(br.borrowDate < :borrowDate OR (br.borrowDate = :borrowDate AND br.id < :id)) " +
+           "ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findUserHistoryPageAfter(@Param("userId") Long userId, @Param("borrowDate") LocalDate borrowDate,
+                                                @Param("id") Long id, Pageable limit);
+    
+    @Query("SELECT br FROM BorrowRecord br WHERE br.bookIsbn = :isbn ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findBookHistoryFirstPage(@Param("isbn") String isbn, Pageable limit);
+    
+    @Query("SELECT br FROM BorrowRecord br WHERE br.bookIsbn = :isbn AND " +
+           "(br.borrowDate < :borrowDate OR (br.borrowDate = :borrowDate AND br.id < :id)) " +
+           "ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findBookHistoryPageAfter(@Param("isbn") String isbn, @Param("borrowDate") LocalDate borrowDate,
+                                                @Param("id") Long id, Pageable limit);
+    
+    @Query("SELECT br FROM BorrowRecord br ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findAllFirstPage(Pageable limit);
+    
+    @Query("SELECT br FROM BorrowRecord br WHERE " +
+           "br.borrowDate < :borrowDate OR (br.borrowDate = :borrowDate AND br.id < :id) " +
+           "ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecord> findAllPageAfter(@Param("borrowDate") LocalDate borrowDate, @Param("id") Long id, Pageable limit);
+    
+    // Next chunk of loans eligible for auto-renewal, locked so the bulk update below affects exactly these rows:
+    // ACTIVE and due within the window, no active reservation on the book, and a borrower with nothing overdue
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.status = 'ACTIVE' AND br.isOverdue = false AND br.id > :afterId " +
+           "AND br.dueDate >= :currentDate AND br.dueDate <= :dueBy " +
+           "AND NOT EXISTS (SELECT r.id FROM Reservation r WHERE r.bookIsbn = br.bookIsbn AND r.status = 'ACTIVE') " +
+           "AND NOT EXISTS (SELECT o.id FROM BorrowRecord o WHERE o.userId = br.userId " +
+           "AND (o.status = 'OVERDUE' OR (o.status = 'ACTIVE' AND o.dueDate < :currentDate))) " +
+           "ORDER BY br.id")
+    List<BorrowRecord> lockAutoRenewalCandidates(@Param("afterId") Long afterId, @Param("currentDate") LocalDate currentDate,
+                                                 @Param("dueBy") LocalDate dueBy, Pageable limit);
+    
+    // Renew loans that share a due date in one statement (clears the persistence context so no stale entity is flushed back)
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BorrowRecord br SET br.dueDate = :newDueDate, br.status = 'RENEWED', br.updatedAt = :now " +
+           "WHERE br.id IN :ids AND br.status = 'ACTIVE'")
+    int renewByIds(@Param("ids") Collection<Long> ids, @Param("newDueDate") LocalDate newDueDate, @Param("now") LocalDateTime now);
+    
     // Find borrows by date range
     Page<BorrowRecord> findByBorrowDateBetween(LocalDate startDate, LocalDate endDate, Pageable pageable);
     
@@ -0,0 +1,46 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.dto.LoanQueryCriteria;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Criteria-API filters for the loan query endpoint; each filter maps onto one of the borrow_records indexes
+public final class BorrowRecordSpecifications {
+
+    private BorrowRecordSpecifications() {
+    }
+
+    public static Specification<BorrowRecord> matching(LoanQueryCriteria criteria) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (criteria.getStatuses() != null && !criteria.getStatuses().isEmpty()) {
+                predicates.add(root.get("status").in(criteria.getStatuses()));
+            }
+            if (criteria.getDueFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("dueDate"), criteria.getDueFrom()));
+            }
+            if (criteria.getDueTo() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("dueDate"), criteria.getDueTo()));
+            }
+            if (criteria.getUserId() != null) {
+                predicates.add(cb.equal(root.get("userId"), criteria.getUserId()));
+            }
+            if (criteria.getIsbn() != null && !criteria.getIsbn().isBlank()) {
+                predicates.add(cb.equal(root.get("bookIsbn"), criteria.getIsbn()));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // Rows strictly after the cursor in (borrowDate DESC, id DESC) order
+    public static Specification<BorrowRecord> after(LocalDate borrowDate, Long id) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("borrowDate"), borrowDate),
+                cb.and(cb.equal(root.get("borrowDate"), borrowDate), cb.lessThan(root.get("id"), id)));
+    }
+}
@@ -0,0 +1,74 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.CirculationDailyRollup;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Plain JDBC for the rollup job: reading loan events with their loan, and additive upserts of daily totals
+@Repository
+@RequiredArgsConstructor
+public class CirculationRollupJdbcRepository {
+
+    private static final String EVENTS_AFTER_SQL =
+            "SELECT e.id, e.event_type, e.created_at, r.user_id, r.book_isbn, r.borrow_date " +
+            "FROM loan_events e JOIN borrow_records r ON r.id = e.borrow_record_id " +
+            "WHERE e.id > :afterId ORDER BY e.id LIMIT :limit";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO circulation_daily_rollups (rollup_date, dimension, dimension_value, " +
+            "checkout_count, return_count, overdue_count, returned_loan_days) " +
+            "VALUES (:rollupDate, :dimension, :dimensionValue, :checkoutCount, :returnCount, :overdueCount, :returnedLoanDays) " +
+            "ON DUPLICATE KEY UPDATE checkout_count = checkout_count + VALUES(checkout_count), " +
+            "return_count = return_count + VALUES(return_count), " +
+            "overdue_count = overdue_count + VALUES(overdue_count), " +
+            "returned_loan_days = returned_loan_days + VALUES(returned_loan_days)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // A loan event with the loan fields the rollups group by
+    public record LoanEventRow(long id, String eventType, LocalDateTime createdAt,
+                               Long userId, String bookIsbn, LocalDate borrowDate) {
+    }
+
+    // Events in ID order, starting after the given watermark
+    public List<LoanEventRow> findEventsAfter(long afterId, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("afterId", afterId)
+                .addValue("limit", limit);
+        return jdbcTemplate.query(EVENTS_AFTER_SQL, params, (rs, rowNum) -> new LoanEventRow(
+                rs.getLong("id"),
+                rs.getString("event_type"),
+                rs.getTimestamp("created_at").toLocalDateTime(),
+                rs.getLong("user_id"),
+                rs.getString("book_isbn"),
+                rs.getDate("borrow_date").toLocalDate()));
+    }
+
+    // Add each delta to its day's row, creating the row on first use, in one JDBC batch
+    public void addAll(List<CirculationDailyRollup> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batchArgs = new SqlParameterSource[deltas.size()];
+        for (int i = 0; i < deltas.size(); i++) {
+            CirculationDailyRollup delta = deltas.get(i);
+            batchArgs[i] = new MapSqlParameterSource()
+                    .addValue("rollupDate", delta.getRollupDate())
+                    .addValue("dimension", delta.getDimension().name())
+                    .addValue("dimensionValue", delta.getDimensionValue())
+                    .addValue("checkoutCount", delta.getCheckoutCount())
+                    .addValue("returnCount", delta.getReturnCount())
+                    .addValue("overdueCount", delta.getOverdueCount())
+                    .addValue("returnedLoanDays", delta.getReturnedLoanDays());
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+}
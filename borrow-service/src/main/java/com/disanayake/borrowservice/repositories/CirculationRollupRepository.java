@@ -0,0 +1,28 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.CirculationDailyRollup;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface CirculationRollupRepository extends JpaRepository<CirculationDailyRollup, Long> {
+    
+    // Day-by-day rows of one dimension, served from the (dimension, rollup_date) index
+    List<CirculationDailyRollup> findByDimensionAndRollupDateBetweenOrderByRollupDateAscDimensionValueAsc(
+            CirculationDailyRollup.Dimension dimension, LocalDate from, LocalDate to);
+    
+    // Range totals per value, busiest first: [value, checkouts, returns, overdues, returned loan days]
+    @Query("SELECT r.dimensionValue, SUM(r.checkoutCount), SUM(r.returnCount), SUM(r.overdueCount), SUM(r.returnedLoanDays) " +
+           "FROM CirculationDailyRollup r WHERE r.dimension = :dimension AND r.rollupDate BETWEEN :from AND :to " +
+           "GROUP BY r.dimensionValue ORDER BY SUM(r.checkoutCount) DESC, r.dimensionValue ASC")
+    List<Object[]> sumByDimensionValue(@Param("dimension") CirculationDailyRollup.Dimension dimension,
+                                       @Param("from") LocalDate from,
+                                       @Param("to") LocalDate to,
+                                       Pageable limit);
+}
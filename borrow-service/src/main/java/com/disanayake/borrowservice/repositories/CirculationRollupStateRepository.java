@@ -0,0 +1,20 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.CirculationRollupState;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CirculationRollupStateRepository extends JpaRepository<CirculationRollupState, String> {
+    
+    // Lock the watermark so only one instance applies a given batch of events
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM CirculationRollupState s WHERE s.name = :name")
+    Optional<CirculationRollupState> lockByName(@Param("name") String name);
+}
@@ -0,0 +1,35 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.DashboardItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DashboardItemRepository extends JpaRepository<DashboardItem, Long> {
+    
+    // Everything on a student's dashboard in one query
+    List<DashboardItem> findByUserIdOrderByDueDateAscIdAsc(Long userId);
+    
+    @Modifying
+    @Query("DELETE FROM DashboardItem d WHERE d.itemType = :itemType AND d.refId IN :refIds")
+    int deleteByItemTypeAndRefIdIn(@Param("itemType") DashboardItem.ItemType itemType, @Param("refIds") Collection<Long> refIds);
+    
+    @Modifying
+    @Query("UPDATE DashboardItem d SET d.status = :status, d.dueDate = :dueDate WHERE d.itemType = 'LOAN' AND d.refId = :refId")
+    int updateLoan(@Param("refId") Long refId, @Param("status") String status, @Param("dueDate") LocalDate dueDate);
+    
+    @Modifying
+    @Query("UPDATE DashboardItem d SET d.status = :status, d.dueDate = :dueDate WHERE d.itemType = 'LOAN' AND d.refId IN :refIds")
+    int updateLoans(@Param("refIds") Collection<Long> refIds, @Param("status") String status, @Param("dueDate") LocalDate dueDate);
+    
+    @Modifying
+    @Query("UPDATE DashboardItem d SET d.status = :status WHERE d.itemType = 'LOAN' AND d.refId IN :refIds")
+    int updateLoanStatus(@Param("refIds") Collection<Long> refIds, @Param("status") String status);
+}
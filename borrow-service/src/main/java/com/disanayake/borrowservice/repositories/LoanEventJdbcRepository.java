@@ -0,0 +1,40 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.LoanEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+// Plain JDBC batch insert for loan events (IDENTITY keys disable Hibernate insert batching)
+@Repository
+@RequiredArgsConstructor
+public class LoanEventJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO loan_events (borrow_record_id, event_type, actor_user_id, note, created_at) " +
+            "VALUES (:borrowRecordId, :eventType, :actorUserId, :note, :createdAt)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<LoanEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batchArgs = new SqlParameterSource[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            LoanEvent event = events.get(i);
+            batchArgs[i] = new MapSqlParameterSource()
+                    .addValue("borrowRecordId", event.getBorrowRecordId())
+                    .addValue("eventType", event.getEventType().name())
+                    .addValue("actorUserId", event.getActorUserId())
+                    .addValue("note", event.getNote())
+                    .addValue("createdAt", event.getCreatedAt());
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+    }
+}
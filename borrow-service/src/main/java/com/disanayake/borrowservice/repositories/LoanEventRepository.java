@@ -0,0 +1,14 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.LoanEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LoanEventRepository extends JpaRepository<LoanEvent, Long> {
+    
+    // Full history of a loan in the order it happened
+    List<LoanEvent> findByBorrowRecordIdOrderByIdAsc(Long borrowRecordId);
+}
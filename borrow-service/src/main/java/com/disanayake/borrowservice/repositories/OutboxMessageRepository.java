@@ -0,0 +1,40 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.OutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+    
+    // IDs of pending messages due for delivery, oldest first
+    @Query("SELECT m.id FROM OutboxMessage m WHERE m.status = 'PENDING' AND m.nextAttemptAt <= :now " +
+           "ORDER BY m.nextAttemptAt, m.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable limit);
+    
+    // Claim a due message for one delivery attempt; returns 0 if another relay claimed it first
+    @Modifying
+    @Query("UPDATE OutboxMessage m SET m.nextAttemptAt = :leaseUntil " +
+           "WHERE m.id = :id AND m.status = 'PENDING' AND m.nextAttemptAt <= :now")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+    
+    // Schedule the next attempt after a failed delivery
+    @Modifying
+    @Query("UPDATE OutboxMessage m SET m.attempts = m.attempts + 1, m.nextAttemptAt = :nextAttemptAt, " +
+           "m.lastError = :lastError WHERE m.id = :id")
+    int reschedule(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("lastError") String lastError);
+    
+    // Stop retrying a message the remote side rejected or that ran out of attempts
+    @Modifying
+    @Query("UPDATE OutboxMessage m SET m.attempts = m.attempts + 1, m.status = 'FAILED', m.lastError = :lastError " +
+           "WHERE m.id = :id")
+    int markFailed(@Param("id") Long id, @Param("lastError") String lastError);
+}
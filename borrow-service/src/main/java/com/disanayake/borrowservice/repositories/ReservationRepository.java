@@ -1,14 +1,19 @@
 package com.disanayake.borrowservice.repositories;
 
 import com.disanayake.borrowservice.entities.Reservation;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,17 +32,41 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
     // Find active reservation for a specific user and book
     Optional<Reservation> findByUserIdAndBookIsbnAndStatus(Long userId, String bookIsbn, Reservation.ReservationStatus status);
     
+    // A user's ACTIVE reservations as a locking read, which sees the latest committed rows rather than the
+    // transaction's snapshot (callers hold the user's lock, see UserLockRepository)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reservation r WHERE r.userId = :userId AND r.status = 'ACTIVE'")
+    List<Reservation> findActiveReservationsForUpdate(@Param("userId") Long userId);
+    
     // Find all active reservations for a book
     @Query("SELECT r FROM Reservation r WHERE r.bookIsbn = :isbn AND r.status = 'ACTIVE' ORDER BY r.reservationDate ASC")
     List<Reservation> findActiveReservationsForBook(@Param("isbn") String isbn);
     
+    // Load every reservation in a given status in queue order (used to rebuild the in-memory queue index)
+    List<Reservation> findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus status);
+    
     // Find expired reservations
     @Query("SELECT r FROM Reservation r WHERE r.status = 'ACTIVE' AND r.expiryDate < :currentDate")
     List<Reservation> findExpiredReservations(@Param("currentDate") LocalDate currentDate);
     
+    // Lock the next chunk of expired reservations so the bulk update below affects exactly these rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reservation r WHERE r.status = 'ACTIVE' AND r.expiryDate < :currentDate ORDER BY r.id")
+    List<Reservation> lockExpiredReservations(@Param("currentDate") LocalDate currentDate, Pageable limit);
+    
+    // Expire a chunk of reservations in one statement (clears the persistence context so no stale entity is flushed back)
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.status = 'EXPIRED', r.updatedAt = :now WHERE r.id IN :ids AND r.status = 'ACTIVE'")
+    int expireByIds(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
     // Count active reservations for a user
     long countByUserIdAndStatus(Long userId, Reservation.ReservationStatus status);
     
+    // Counts for a set of users in one pass, from idx_reservation_user_status (used to reconcile the in-memory
+    // user counters); rows are [userId, count] and users with none are left out
+    @Query("SELECT r.userId, COUNT(r) FROM Reservation r WHERE r.userId IN :userIds AND r.status = :status GROUP BY r.userId")
+    List<Object[]> countByStatusGroupByUserId(@Param("status") Reservation.ReservationStatus status, @Param("userIds") Collection<Long> userIds);
+    
     // Count active reservations for a book
     long countByBookIsbnAndStatus(String bookIsbn, Reservation.ReservationStatus status);
     
@@ -0,0 +1,21 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.entities.UserLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface UserLockRepository extends JpaRepository<UserLock, Long> {
+    
+    // Lock the user's row for the rest of the transaction, creating it on first use
+    @Modifying
+    @Query(value = "INSERT INTO user_locks (user_id, locked_at) VALUES (:userId, :now) " +
+                   "ON DUPLICATE KEY UPDATE locked_at = :now",
+           nativeQuery = true)
+    int lock(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+}
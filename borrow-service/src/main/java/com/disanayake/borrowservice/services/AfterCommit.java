@@ -0,0 +1,27 @@
+package com.disanayake.borrowservice.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs in-memory bookkeeping (counters, indexes) only once the database change it mirrors is committed.
+ * Outside a transaction there is nothing to wait for, so the action runs right away.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.AutoRenewalNotice;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.LoanEvent;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in nightly renewal of loans that are about to fall due, so students do not have to renew them
+ * one by one at the end of term. A loan qualifies under the same rules as a manual renewal: it is
+ * ACTIVE and not overdue, nobody has an active reservation on the book, and the borrower has nothing
+ * overdue. Eligible loans are selected, locked and renewed a chunk at a time, with one UPDATE per
+ * distinct due date, and each student gets a single notice covering all of their renewed loans.
+ * Notices are returned to the caller; delivering them to students is not done here.
+ */
+@Component
+@Slf4j
+public class AutoRenewalJob {
+
+    // Loans locked and renewed per transaction
+    private static final int RENEWAL_CHUNK_SIZE = 500;
+
+    private final BorrowRecordRepository borrowRecordRepository;
+    private final LoanEventLog loanEventLog;
+    private final StudentDashboardService studentDashboardService;
+    private final UserActivityCounters userActivityCounters;
+    private final LoanDueDateIndex loanDueDateIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter renewedCounter;
+    private final Timer runTimer;
+    private final boolean enabled;
+    private final int daysAhead;
+
+    public AutoRenewalJob(BorrowRecordRepository borrowRecordRepository,
+                          LoanEventLog loanEventLog,
+                          StudentDashboardService studentDashboardService,
+                          UserActivityCounters userActivityCounters,
+                          LoanDueDateIndex loanDueDateIndex,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${loans.auto-renewal.enabled:false}") boolean enabled,
+                          @Value("${loans.auto-renewal.days-ahead:2}") int daysAhead) {
+        this.borrowRecordRepository = borrowRecordRepository;
+        this.loanEventLog = loanEventLog;
+        this.studentDashboardService = studentDashboardService;
+        this.userActivityCounters = userActivityCounters;
+        this.loanDueDateIndex = loanDueDateIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.renewedCounter = Counter.builder("loans.auto_renewed")
+                .description("Loans renewed by the auto-renewal job")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("loans.auto_renewal.run")
+                .description("Duration of each auto-renewal run")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.daysAhead = daysAhead;
+    }
+
+    // Runs nightly when loans.auto-renewal.enabled is set
+    @Scheduled(cron = "${loans.auto-renewal.cron:0 30 1 * * ?}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            renewEligibleLoans();
+        } catch (Exception e) {
+            log.error("Error during auto-renewal run", e);
+        }
+    }
+
+    // Renew every eligible loan due within the configured window and return one notice per student
+    public List<AutoRenewalNotice> renewEligibleLoans() {
+        return runTimer.record(() -> {
+            LocalDate today = LocalDate.now();
+            LocalDate dueBy = today.plusDays(daysAhead);
+            List<BorrowRecord> renewed = new ArrayList<>();
+            List<BorrowRecord> chunk;
+            long afterId = 0;
+            do {
+                long chunkAfterId = afterId;
+                chunk = transactionTemplate.execute(status -> renewChunk(chunkAfterId, today, dueBy));
+                if (!chunk.isEmpty()) {
+                    renewed.addAll(chunk);
+                    afterId = chunk.get(chunk.size() - 1).getId();
+                }
+            } while (chunk.size() == RENEWAL_CHUNK_SIZE);
+
+            renewedCounter.increment(renewed.size());
+            List<AutoRenewalNotice> notices = toNotices(renewed);
+            if (log.isDebugEnabled()) {
+                notices.forEach(notice -> log.debug("Auto-renewal notice for user {}: {} loans renewed {}",
+                        notice.getUserId(), notice.getLoans().size(), notice.getLoans().stream()
+                                .map(loan -> loan.getIsbn() + " until " + loan.getNewDueDate())
+                                .collect(Collectors.toList())));
+            }
+            if (!renewed.isEmpty()) {
+                log.info("Auto-renewed {} loans for {} users", renewed.size(), notices.size());
+            }
+            return notices;
+        });
+    }
+
+    // The returned records still carry their previous due date
+    private List<BorrowRecord> renewChunk(long afterId, LocalDate today, LocalDate dueBy) {
+        List<BorrowRecord> chunk = borrowRecordRepository.lockAutoRenewalCandidates(
+                afterId, today, dueBy, PageRequest.of(0, RENEWAL_CHUNK_SIZE));
+        if (chunk.isEmpty()) {
+            return chunk;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<LocalDate, List<Long>> idsByDueDate = chunk.stream().collect(Collectors.groupingBy(
+                BorrowRecord::getDueDate, TreeMap::new, Collectors.mapping(BorrowRecord::getId, Collectors.toList())));
+        idsByDueDate.forEach((dueDate, ids) -> {
+            LocalDate newDueDate = newDueDate(dueDate);
+            borrowRecordRepository.renewByIds(ids, newDueDate, now);
+            studentDashboardService.onLoansRenewed(ids, newDueDate);
+        });
+
+        chunk.forEach(borrowRecord -> loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.RENEWED, null,
+                "Auto-renewed, due date extended to " + newDueDate(borrowRecord.getDueDate())));
+        // RENEWED loans are not picked up by the overdue check, same as a manual renewal
+        loanDueDateIndex.onClosed(chunk.stream().map(BorrowRecord::getId).collect(Collectors.toList()));
+        userActivityCounters.recordLoansClosed(chunk.stream().map(BorrowRecord::getUserId).collect(Collectors.toList()));
+        return chunk;
+    }
+
+    private static LocalDate newDueDate(LocalDate dueDate) {
+        return dueDate.plusDays(BorrowService.LOAN_PERIOD_DAYS);
+    }
+
+    private static List<AutoRenewalNotice> toNotices(List<BorrowRecord> renewed) {
+        Map<Long, List<AutoRenewalNotice.RenewedLoan>> loansByUser = new LinkedHashMap<>();
+        for (BorrowRecord borrowRecord : renewed) {
+            loansByUser.computeIfAbsent(borrowRecord.getUserId(), userId -> new ArrayList<>())
+                    .add(AutoRenewalNotice.RenewedLoan.builder()
+                            .borrowRecordId(borrowRecord.getId())
+                            .isbn(borrowRecord.getBookIsbn())
+                            .previousDueDate(borrowRecord.getDueDate())
+                            .newDueDate(newDueDate(borrowRecord.getDueDate()))
+                            .build());
+        }
+        return loansByUser.entrySet().stream()
+                .map(entry -> AutoRenewalNotice.builder().userId(entry.getKey()).loans(entry.getValue()).build())
+                .collect(Collectors.toList());
+    }
+}
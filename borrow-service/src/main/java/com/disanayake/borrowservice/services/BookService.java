@@ -1,15 +1,32 @@
 package com.disanayake.borrowservice.services;
 
+import com.disanayake.borrowservice.dto.ApiResponse;
 import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.CopyAdjustmentResult;
+import com.disanayake.borrowservice.dto.CopyHoldResponse;
+import com.disanayake.borrowservice.dto.CopyHoldResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -20,7 +37,14 @@ public class BookService {
     @Value("${services.book-service.url}")
     private String bookServiceUrl;
     
+    // Concurrent lookups of one ISBN (a popular title) share a single book-service call
+    private final RequestCoalescer<String, BookResponse> bookLookups = new RequestCoalescer<>();
+    
     public BookResponse getBookByIsbn(String isbn) {
+        return bookLookups.load(isbn, this::fetchBookByIsbn);
+    }
+    
+    private BookResponse fetchBookByIsbn(String isbn) {
         try {
             String url = bookServiceUrl + "/api/books/" + isbn;
             log.info("Fetching book details for ISBN: {} from URL: {}", isbn, url);
@@ -70,6 +94,39 @@ public class BookService {
         }
     }
     
+    // Fetch several books in one book-service call, keyed by ISBN. Unknown ISBNs are absent from the map.
+    public Map<String, BookResponse> getBooksByIsbns(Collection<String> isbns) {
+        if (isbns.isEmpty()) {
+            return Map.of();
+        }
+        
+        try {
+            String url = UriComponentsBuilder.fromUriString(bookServiceUrl + "/api/books/batch")
+                    .queryParam("isbns", String.join(",", isbns))
+                    .toUriString();
+            log.info("Fetching {} books in one batch", isbns.size());
+            
+            ResponseEntity<ApiResponse<List<BookResponse>>> response = restTemplate.exchange(
+                    url, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<ApiResponse<List<BookResponse>>>() {});
+            
+            ApiResponse<List<BookResponse>> body = response.getBody();
+            if (body == null || !body.isSuccess() || body.getData() == null) {
+                log.warn("Batch book lookup failed for {} ISBNs", isbns.size());
+                return Map.of();
+            }
+            
+            Map<String, BookResponse> books = new HashMap<>();
+            for (BookResponse book : body.getData()) {
+                books.put(book.getIsbn(), book);
+            }
+            return books;
+        } catch (RestClientException e) {
+            log.error("Error calling book service for batch lookup of {} ISBNs", isbns.size(), e);
+            return Map.of();
+        }
+    }
+    
     public boolean isBookAvailable(String isbn) {
         BookResponse book = getBookByIsbn(isbn);
         return book != null && 
@@ -77,6 +134,80 @@ public class BookService {
                book.getAvailableCopies() > 0;
     }
     
+    // Take one copy in a single book-service call. Returns the hold (with the book) or null when the book
+    // does not exist or has no copy left; the caller must later confirm or release the hold's token.
+    public CopyHoldResponse tryReserveCopy(String isbn) {
+        try {
+            String url = bookServiceUrl + "/api/books/" + isbn + "/holds";
+            log.info("Holding a copy of ISBN: {}", isbn);
+            
+            ResponseEntity<ApiResponse<CopyHoldResponse>> response = restTemplate.exchange(
+                    url, HttpMethod.POST, null,
+                    new ParameterizedTypeReference<ApiResponse<CopyHoldResponse>>() {});
+            
+            ApiResponse<CopyHoldResponse> body = response.getBody();
+            if (body == null || !body.isSuccess() || body.getData() == null) {
+                throw new RuntimeException("Book service rejected copy hold"
+                        + (body != null ? ": " + body.getMessage() : ""));
+            }
+            return body.getData();
+        } catch (HttpClientErrorException e) {
+            log.warn("No copy of ISBN {} could be held: {}", isbn, e.getStatusCode());
+            return null;
+        } catch (RestClientException e) {
+            log.error("Error holding a copy of ISBN: {}", isbn, e);
+            throw new RuntimeException("Failed to update book availability", e);
+        }
+    }
+    
+    // Hold one copy of each ISBN in one book-service call (cart checkout). Returns the per-ISBN outcome;
+    // every successful hold must be confirmed or released like a single one.
+    public Map<String, CopyHoldResult> tryReserveCopies(Collection<String> isbns) {
+        if (isbns.isEmpty()) {
+            return Map.of();
+        }
+        
+        try {
+            String url = bookServiceUrl + "/api/books/holds/batch";
+            log.info("Holding copies of {} books in one batch", isbns.size());
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Map.of("isbns", List.copyOf(isbns)), headers);
+            
+            ResponseEntity<ApiResponse<List<CopyHoldResult>>> response = restTemplate.exchange(
+                    url, HttpMethod.POST, entity,
+                    new ParameterizedTypeReference<ApiResponse<List<CopyHoldResult>>>() {});
+            
+            ApiResponse<List<CopyHoldResult>> body = response.getBody();
+            if (body == null || !body.isSuccess() || body.getData() == null) {
+                throw new RuntimeException("Book service rejected batched copy hold"
+                        + (body != null ? ": " + body.getMessage() : ""));
+            }
+            
+            Map<String, CopyHoldResult> results = new LinkedHashMap<>();
+            for (CopyHoldResult result : body.getData()) {
+                results.put(result.getIsbn(), result);
+            }
+            return results;
+        } catch (RestClientException e) {
+            log.error("Error holding copies for ISBNs: {}", isbns, e);
+            throw new RuntimeException("Failed to update book availability", e);
+        }
+    }
+    
+    public void confirmHold(String token) {
+        String url = bookServiceUrl + "/api/books/holds/" + token + "/confirm";
+        restTemplate.exchange(url, HttpMethod.POST, null, Void.class);
+        log.info("Confirmed copy hold {}", token);
+    }
+    
+    public void releaseHold(String token) {
+        String url = bookServiceUrl + "/api/books/holds/" + token;
+        restTemplate.exchange(url, HttpMethod.DELETE, null, Void.class);
+        log.info("Released copy hold {}", token);
+    }
+    
     public void decreaseAvailableCopies(String isbn) {
         try {
             String url = bookServiceUrl + "/api/books/" + isbn + "/decrease-copies";
@@ -102,4 +233,47 @@ public class BookService {
             throw new RuntimeException("Failed to update book availability", e);
         }
     }
+    
+    // Apply several copy adjustments in one book-service call (negative delta checks copies out, positive returns them),
+    // at most once per idempotency key: book-service acknowledges a repeated key without changing the counts again.
+    // Returns the per-ISBN outcome; an ISBN missing from the result was not processed.
+    public Map<String, CopyAdjustmentResult> adjustAvailableCopies(Map<String, Integer> deltasByIsbn, String idempotencyKey) {
+        if (deltasByIsbn.isEmpty()) {
+            return Map.of();
+        }
+        
+        try {
+            String url = bookServiceUrl + "/api/books/copies/batch";
+            log.info("Adjusting available copies for {} books in one batch", deltasByIsbn.size());
+            
+            List<Map<String, Object>> adjustments = new ArrayList<>();
+            deltasByIsbn.forEach((isbn, delta) -> adjustments.add(Map.of("isbn", isbn, "delta", delta)));
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            if (idempotencyKey != null) {
+                headers.set("Idempotency-Key", idempotencyKey);
+            }
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Map.of("adjustments", adjustments), headers);
+            
+            ResponseEntity<ApiResponse<List<CopyAdjustmentResult>>> response = restTemplate.exchange(
+                    url, HttpMethod.PUT, entity,
+                    new ParameterizedTypeReference<ApiResponse<List<CopyAdjustmentResult>>>() {});
+            
+            ApiResponse<List<CopyAdjustmentResult>> body = response.getBody();
+            if (body == null || !body.isSuccess() || body.getData() == null) {
+                throw new RuntimeException("Book service rejected batched copy adjustment"
+                        + (body != null ? ": " + body.getMessage() : ""));
+            }
+            
+            Map<String, CopyAdjustmentResult> results = new LinkedHashMap<>();
+            for (CopyAdjustmentResult result : body.getData()) {
+                results.put(result.getIsbn(), result);
+            }
+            return results;
+        } catch (RestClientException e) {
+            log.error("Error adjusting available copies for ISBNs: {}", deltasByIsbn.keySet(), e);
+            throw new RuntimeException("Failed to update book availability", e);
+        }
+    }
 }
\ No newline at end of file
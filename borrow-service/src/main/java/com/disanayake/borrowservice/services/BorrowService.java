@@ -2,17 +2,36 @@ package com.disanayake.borrowservice.services;
 
 import com.disanayake.borrowservice.dto.*;
 import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.LoanEvent;
+import com.disanayake.borrowservice.repositories.BorrowRecordJdbcRepository;
 import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.BorrowRecordSpecifications;
+import com.disanayake.borrowservice.repositories.LoanEventRepository;
+import com.disanayake.borrowservice.repositories.UserLockRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,16 +43,32 @@ public class BorrowService {
     private final BookService bookService;
     private final UserValidationService userValidationService;
     private final ReservationService reservationService;
-    private final PaymentServiceClient paymentServiceClient;
+    private final BorrowRecordJdbcRepository borrowRecordJdbcRepository;
+    private final UserActivityCounters userActivityCounters;
+    private final LoanDueDateIndex loanDueDateIndex;
+    private final LoanEventLog loanEventLog;
+    private final LoanEventRepository loanEventRepository;
+    private final StudentDashboardService studentDashboardService;
+    private final CoBorrowRecommender coBorrowRecommender;
+    private final CopyHoldSettler copyHoldSettler;
+    private final IsbnLanes isbnLanes;
+    private final LoanSideEffects loanSideEffects;
+    private final UserLockRepository userLockRepository;
     
     // Maximum books a student can borrow
     private static final int MAX_BORROW_LIMIT = 5;
     // Loan period in days
-    private static final int LOAN_PERIOD_DAYS = 14;
+    static final int LOAN_PERIOD_DAYS = 14;
     // Fine per day for overdue books
-    private static final double FINE_PER_DAY = 1.0;
+    static final double FINE_PER_DAY = 1.0;
     // Maximum renewal times
     private static final int MAX_RENEWAL_COUNT = 2;
+    // Maximum page size for cursor-paginated listings
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    // Maximum page size for the filtered loan query used by batch consumers
+    private static final int MAX_QUERY_PAGE_SIZE = 1000;
+    // Keyset order shared by all cursor-paginated listings
+    private static final Sort CURSOR_ORDER = Sort.by(Sort.Order.desc("borrowDate"), Sort.Order.desc("id"));
     
     @Transactional
     public BorrowRecordResponse borrowBook(BorrowBookRequest request) {
@@ -54,17 +89,14 @@ public class BorrowService {
             throw new IllegalArgumentException("Only students can borrow books");
         }
         
-        // Check if user has reached borrow limit
-        long activeBorrows = borrowRecordRepository.countByUserIdAndStatus(
-                request.getUserId(), BorrowRecord.BorrowStatus.ACTIVE);
+        // Check if user has reached borrow limit (fast reject from the counters, enforced again under the user's lock)
+        int activeBorrows = userActivityCounters.getActiveLoans(request.getUserId());
         if (activeBorrows >= MAX_BORROW_LIMIT) {
             throw new IllegalStateException("Maximum borrow limit reached. You can borrow up to " + MAX_BORROW_LIMIT + " books.");
         }
         
         // Check if user already has this book borrowed
-        boolean alreadyBorrowed = borrowRecordRepository.findByUserIdAndBookIsbnAndStatus(
-                request.getUserId(), request.getIsbn(), BorrowRecord.BorrowStatus.ACTIVE).isPresent();
-        if (alreadyBorrowed) {
+        if (hasActiveLoan(request.getUserId(), request.getIsbn())) {
             throw new IllegalStateException("You have already borrowed this book");
         }
         
@@ -76,10 +108,24 @@ public class BorrowService {
             }
         }
         
-        // Check if book exists and is available
-        if (!bookService.isBookAvailable(request.getIsbn())) {
+        // Hold a copy: one book-service call both checks availability and takes the copy.
+        // The hold is confirmed when this transaction commits and released if it rolls back.
+        CopyHoldResponse hold = bookService.tryReserveCopy(request.getIsbn());
+        if (hold == null) {
             throw new IllegalArgumentException("Book is not available for borrowing");
         }
+        copyHoldSettler.settleOnCompletion(hold.getToken());
+        
+        // Remote calls are done: queue behind other checkouts and returns of this title for the local
+        // writes only, then re-check the duplicate and the limit under the user's lock against the latest loans
+        isbnLanes.enter(request.getIsbn());
+        List<BorrowRecord> lockedLoans = lockActiveLoans(request.getUserId());
+        if (containsIsbn(lockedLoans, request.getIsbn())) {
+            throw new IllegalStateException("You have already borrowed this book");
+        }
+        if (lockedLoans.size() >= MAX_BORROW_LIMIT) {
+            throw new IllegalStateException("Maximum borrow limit reached. You can borrow up to " + MAX_BORROW_LIMIT + " books.");
+        }
         
         // Create borrow record
         LocalDate borrowDate = LocalDate.now();
@@ -94,12 +140,13 @@ public class BorrowService {
                 .isOverdue(false)
                 .fineAmount(0.0)
                 .notes("Borrowed via system")
+                .holdToken(hold.getToken())
                 .build();
         
         BorrowRecord savedBorrowRecord = borrowRecordRepository.save(borrowRecord);
-        
-        // Decrease available copies in book service
-        bookService.decreaseAvailableCopies(request.getIsbn());
+        userActivityCounters.recordLoanTransition(request.getUserId(), null, BorrowRecord.BorrowStatus.ACTIVE);
+        loanDueDateIndex.onCheckedOut(savedBorrowRecord.getId(), savedBorrowRecord.getDueDate());
+        loanEventLog.record(savedBorrowRecord.getId(), LoanEvent.EventType.CHECKED_OUT, request.getUserId(), null);
         
         // Fulfill reservation if user had one
         reservationService.fulfillReservation(request.getUserId(), request.getIsbn());
@@ -107,7 +154,9 @@ public class BorrowService {
         log.info("Successfully created borrow record for user {} and book {}", 
                 request.getUserId(), request.getIsbn());
         
-        return mapToBorrowRecordResponse(savedBorrowRecord);
+        BorrowRecordResponse response = mapToBorrowRecordResponse(savedBorrowRecord, hold.getBook());
+        studentDashboardService.onLoanOpened(savedBorrowRecord, hold.getBook());
+        return response;
     }
     
     // NEW METHOD: Create Loan (Librarian checkout)
@@ -144,25 +193,17 @@ public class BorrowService {
             throw new IllegalArgumentException("User account is not active");
         }
         
-        // Check if user has reached borrow limit
-        long activeBorrows = borrowRecordRepository.countByUserIdAndStatus(
-                request.getUserId(), BorrowRecord.BorrowStatus.ACTIVE);
+        // Check if user has reached borrow limit (fast reject from the counters, enforced again under the user's lock)
+        int activeBorrows = userActivityCounters.getActiveLoans(request.getUserId());
         if (activeBorrows >= MAX_BORROW_LIMIT) {
             throw new IllegalStateException("Student has reached maximum borrow limit of " + MAX_BORROW_LIMIT + " books.");
         }
         
         // Check if user already has this book borrowed
-        boolean alreadyBorrowed = borrowRecordRepository.findByUserIdAndBookIsbnAndStatus(
-                request.getUserId(), request.getIsbn(), BorrowRecord.BorrowStatus.ACTIVE).isPresent();
-        if (alreadyBorrowed) {
+        if (hasActiveLoan(request.getUserId(), request.getIsbn())) {
             throw new IllegalStateException("Student has already borrowed this book");
         }
         
-        // Check if book exists and is available
-        if (!bookService.isBookAvailable(request.getIsbn())) {
-            throw new IllegalArgumentException("Book is not available for borrowing");
-        }
-        
         // Check if book is reserved by another student
         if (reservationService.hasActiveReservations(request.getIsbn())) {
             Long nextUserInQueue = reservationService.getNextUserInQueue(request.getIsbn());
@@ -171,6 +212,25 @@ public class BorrowService {
             }
         }
         
+        // Hold a copy: one book-service call both checks availability and takes the copy.
+        // The hold is confirmed when this transaction commits and released if it rolls back.
+        CopyHoldResponse hold = bookService.tryReserveCopy(request.getIsbn());
+        if (hold == null) {
+            throw new IllegalArgumentException("Book is not available for borrowing");
+        }
+        copyHoldSettler.settleOnCompletion(hold.getToken());
+        
+        // Remote calls are done: queue behind other checkouts and returns of this title for the local
+        // writes only, then re-check the duplicate and the limit under the user's lock against the latest loans
+        isbnLanes.enter(request.getIsbn());
+        List<BorrowRecord> lockedLoans = lockActiveLoans(request.getUserId());
+        if (containsIsbn(lockedLoans, request.getIsbn())) {
+            throw new IllegalStateException("Student has already borrowed this book");
+        }
+        if (lockedLoans.size() >= MAX_BORROW_LIMIT) {
+            throw new IllegalStateException("Student has reached maximum borrow limit of " + MAX_BORROW_LIMIT + " books.");
+        }
+        
         // Create borrow record
         LocalDate borrowDate = LocalDate.now();
         LocalDate dueDate = borrowDate.plusDays(LOAN_PERIOD_DAYS);
@@ -189,12 +249,13 @@ public class BorrowService {
                 .isOverdue(false)
                 .fineAmount(0.0)
                 .notes(notes)
+                .holdToken(hold.getToken())
                 .build();
         
         BorrowRecord savedBorrowRecord = borrowRecordRepository.save(borrowRecord);
-        
-        // Decrease available copies in book service
-        bookService.decreaseAvailableCopies(request.getIsbn());
+        userActivityCounters.recordLoanTransition(request.getUserId(), null, BorrowRecord.BorrowStatus.ACTIVE);
+        loanDueDateIndex.onCheckedOut(savedBorrowRecord.getId(), savedBorrowRecord.getDueDate());
+        loanEventLog.record(savedBorrowRecord.getId(), LoanEvent.EventType.CHECKED_OUT, request.getLibrarianId(), null);
         
         // Fulfill reservation if user had one
         reservationService.fulfillReservation(request.getUserId(), request.getIsbn());
@@ -202,16 +263,200 @@ public class BorrowService {
         log.info("Successfully created loan for user {} and book {} by librarian {}", 
                 request.getUserId(), request.getIsbn(), request.getLibrarianId());
         
-        return mapToBorrowRecordResponse(savedBorrowRecord);
+        BorrowRecordResponse response = mapToBorrowRecordResponse(savedBorrowRecord, hold.getBook());
+        studentDashboardService.onLoanOpened(savedBorrowRecord, hold.getBook());
+        return response;
+    }
+    
+    private boolean hasActiveLoan(Long userId, String isbn) {
+        return borrowRecordRepository.findByUserIdAndBookIsbnAndStatus(
+                userId, isbn, BorrowRecord.BorrowStatus.ACTIVE).isPresent();
+    }
+    
+    // Take the user's lock and re-read their ACTIVE loans with a locking read. The checks made before
+    // the remote calls read the transaction's snapshot, which under REPEATABLE READ cannot see a loan
+    // another request (on any instance) committed since; this read can, and with the lock held no other
+    // checkout for the user can commit one until this transaction ends.
+    private List<BorrowRecord> lockActiveLoans(Long userId) {
+        userLockRepository.lock(userId, LocalDateTime.now());
+        return borrowRecordRepository.findActiveLoansForUpdate(userId);
+    }
+    
+    private static boolean containsIsbn(List<BorrowRecord> loans, String isbn) {
+        return loans.stream().anyMatch(loan -> isbn.equals(loan.getBookIsbn()));
+    }
+    
+    // Cart checkout: librarian checks out several books for one student in a single request.
+    // Users are validated once, limits are checked against the whole cart, copies are held
+    // in one book-service call and the loans are inserted in one JDBC batch.
+    @Transactional
+    public CartCheckoutResponse checkoutCart(CartCheckoutRequest request) {
+        log.info("Processing cart checkout of {} books for user {} by librarian {}", 
+                request.getIsbns().size(), request.getUserId(), request.getLibrarianId());
+        
+        // Validate librarian
+        UserValidationResponse librarianValidation = userValidationService.validateUser(request.getLibrarianId());
+        if (!librarianValidation.isSuccess()) {
+            throw new IllegalArgumentException("Invalid librarian: " + librarianValidation.getMessage());
+        }
+        String librarianRole = librarianValidation.getData().getRole();
+        if (!"LIBRARIAN".equals(librarianRole) && !"ADMIN".equals(librarianRole)) {
+            throw new IllegalArgumentException("Only librarians and admins can create loans");
+        }
+        
+        // Validate student (role and status come from the same response, so one call is enough)
+        UserValidationResponse userValidation = userValidationService.validateUser(request.getUserId());
+        if (!userValidation.isSuccess()) {
+            throw new IllegalArgumentException("Invalid user: " + userValidation.getMessage());
+        }
+        if (!"STUDENT".equalsIgnoreCase(userValidation.getData().getRole())) {
+            throw new IllegalArgumentException("Loans can only be created for students");
+        }
+        if (!"ACTIVE".equals(userValidation.getData().getStatus())) {
+            throw new IllegalArgumentException("User account is not active");
+        }
+        
+        // One query gives both the active loan count and the books already on loan
+        List<BorrowRecord> activeLoans = borrowRecordRepository.findByUserIdAndStatus(
+                request.getUserId(), BorrowRecord.BorrowStatus.ACTIVE);
+        Set<String> borrowedIsbns = activeLoans.stream()
+                .map(BorrowRecord::getBookIsbn)
+                .collect(Collectors.toSet());
+        
+        Map<String, String> failures = new HashMap<>();
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String isbn : request.getIsbns()) {
+            if (candidates.contains(isbn) || failures.containsKey(isbn)) {
+                continue;
+            }
+            if (borrowedIsbns.contains(isbn)) {
+                failures.put(isbn, "Student has already borrowed this book");
+                continue;
+            }
+            if (reservationService.hasActiveReservations(isbn)) {
+                Long nextUserInQueue = reservationService.getNextUserInQueue(isbn);
+                if (nextUserInQueue != null && !nextUserInQueue.equals(request.getUserId())) {
+                    failures.put(isbn, "This book is reserved by another student");
+                    continue;
+                }
+            }
+            candidates.add(isbn);
+        }
+        
+        // Check the borrow limit against the whole cart
+        if (activeLoans.size() + candidates.size() > MAX_BORROW_LIMIT) {
+            throw new IllegalStateException("Cart exceeds maximum borrow limit of " + MAX_BORROW_LIMIT 
+                    + " books. Student has " + activeLoans.size() + " active loans and can borrow " 
+                    + Math.max(0, MAX_BORROW_LIMIT - activeLoans.size()) + " more.");
+        }
+        
+        // Hold all copies in one book-service round trip. Like a single checkout, every hold is confirmed
+        // through the outbox when this transaction commits and released if it rolls back.
+        Map<String, CopyHoldResult> holds = bookService.tryReserveCopies(candidates);
+        Map<String, CopyHoldResponse> held = new LinkedHashMap<>();
+        for (String isbn : candidates) {
+            CopyHoldResult result = holds.get(isbn);
+            if (result == null || !result.isSuccess() || result.getHold() == null) {
+                failures.put(isbn, result != null ? result.getMessage() : "Book is not available for borrowing");
+                continue;
+            }
+            copyHoldSettler.settleOnCompletion(result.getHold().getToken());
+            held.put(isbn, result.getHold());
+        }
+        
+        // Remote calls are done: queue behind other checkouts and returns of these titles for the local
+        // writes only, then re-check duplicates and the limit under the user's lock against the latest loans
+        isbnLanes.enterAll(held.keySet());
+        List<BorrowRecord> lockedLoans = lockActiveLoans(request.getUserId());
+        for (BorrowRecord loan : lockedLoans) {
+            if (held.containsKey(loan.getBookIsbn())) {
+                throw new IllegalStateException("Student has already borrowed book " + loan.getBookIsbn());
+            }
+        }
+        if (lockedLoans.size() + held.size() > MAX_BORROW_LIMIT) {
+            throw new IllegalStateException("Cart exceeds maximum borrow limit of " + MAX_BORROW_LIMIT 
+                    + " books. Student has " + lockedLoans.size() + " active loans and can borrow " 
+                    + Math.max(0, MAX_BORROW_LIMIT - lockedLoans.size()) + " more.");
+        }
+        
+        LocalDate borrowDate = LocalDate.now();
+        LocalDate dueDate = borrowDate.plusDays(LOAN_PERIOD_DAYS);
+        String notes = "Checked out by librarian " + librarianValidation.getData().getUsername() + " (cart checkout)";
+        if (request.getNotes() != null && !request.getNotes().trim().isEmpty()) {
+            notes += "; " + request.getNotes();
+        }
+        
+        List<BorrowRecord> newLoans = new ArrayList<>();
+        for (Map.Entry<String, CopyHoldResponse> entry : held.entrySet()) {
+            newLoans.add(BorrowRecord.builder()
+                    .userId(request.getUserId())
+                    .bookIsbn(entry.getKey())
+                    .borrowDate(borrowDate)
+                    .dueDate(dueDate)
+                    .status(BorrowRecord.BorrowStatus.ACTIVE)
+                    .isOverdue(false)
+                    .fineAmount(0.0)
+                    .notes(notes)
+                    .holdToken(entry.getValue().getToken())
+                    .build());
+        }
+        
+        borrowRecordJdbcRepository.insertAll(newLoans);
+        userActivityCounters.recordLoansCreated(request.getUserId(), newLoans.size());
+        for (BorrowRecord loan : newLoans) {
+            loanDueDateIndex.onCheckedOut(loan.getId(), loan.getDueDate());
+            loanEventLog.record(loan.getId(), LoanEvent.EventType.CHECKED_OUT, request.getLibrarianId(), null);
+        }
+        Map<String, BookResponse> books = new HashMap<>();
+        held.forEach((isbn, hold) -> books.put(isbn, hold.getBook()));
+        studentDashboardService.onLoansOpened(newLoans, books);
+        reservationService.fulfillReservations(request.getUserId(), held.keySet());
+        
+        Map<String, BorrowRecord> loansByIsbn = newLoans.stream()
+                .collect(Collectors.toMap(BorrowRecord::getBookIsbn, Function.identity()));
+        List<CartCheckoutResponse.ItemResult> items = new ArrayList<>();
+        Set<String> reported = new HashSet<>();
+        for (String isbn : request.getIsbns()) {
+            if (!reported.add(isbn)) {
+                items.add(CartCheckoutResponse.ItemResult.builder()
+                        .isbn(isbn)
+                        .success(false)
+                        .message("Duplicate ISBN in cart")
+                        .build());
+                continue;
+            }
+            BorrowRecord loan = loansByIsbn.get(isbn);
+            items.add(CartCheckoutResponse.ItemResult.builder()
+                    .isbn(isbn)
+                    .success(loan != null)
+                    .message(loan != null ? "Loan created successfully" : failures.get(isbn))
+                    .loan(loan != null ? mapToBorrowRecordResponse(loan, books.get(isbn)) : null)
+                    .build());
+        }
+        
+        log.info("Cart checkout for user {} by librarian {} created {} of {} loans", 
+                request.getUserId(), request.getLibrarianId(), newLoans.size(), request.getIsbns().size());
+        
+        return CartCheckoutResponse.builder()
+                .userId(request.getUserId())
+                .librarianId(request.getLibrarianId())
+                .requestedCount(request.getIsbns().size())
+                .checkedOutCount(newLoans.size())
+                .failedCount(request.getIsbns().size() - newLoans.size())
+                .items(items)
+                .build();
     }
     
     @Transactional
     public BorrowRecordResponse returnBook(ReturnBookRequest request) {
         log.info("Processing return request for user {} and book {}", request.getUserId(), request.getIsbn());
         
-        // Find active borrow record
-        BorrowRecord borrowRecord = borrowRecordRepository.findByUserIdAndBookIsbnAndStatus(
-                request.getUserId(), request.getIsbn(), BorrowRecord.BorrowStatus.ACTIVE)
+        // Queue behind other checkouts and returns of this title until this transaction completes
+        isbnLanes.enter(request.getIsbn());
+        
+        // Find and lock the active borrow record (a concurrent return of the same loan waits, then misses it)
+        BorrowRecord borrowRecord = borrowRecordRepository.findActiveLoanForUpdate(
+                request.getUserId(), request.getIsbn())
                 .orElseThrow(() -> new IllegalArgumentException("No active borrow record found for this user and book"));
         
         // Calculate fine if overdue
@@ -222,29 +467,26 @@ public class BorrowService {
             borrowRecord.setFineAmount(fine);
             borrowRecord.setIsOverdue(true);
             
-            // Create fine record in payment service
-            paymentServiceClient.createOverdueFine(
-                borrowRecord.getUserId(),
-                borrowRecord.getId(),
-                borrowRecord.getBookIsbn(),
-                borrowRecord.getDueDate()
-            );
+            // Create fine record in payment service once the return commits
+            loanSideEffects.createOverdueFines(List.of(borrowRecord));
             
-            log.info("Book returned late. Fine calculated: ${} for {} days. Fine record created in payment service.", 
+            log.info("Book returned late. Fine calculated: ${} for {} days. Fine record queued for payment service.", 
                     fine, overdueDays);
         }
         
         // Update borrow record
         borrowRecord.setReturnDate(today);
         borrowRecord.setStatus(BorrowRecord.BorrowStatus.RETURNED);
-        if (request.getNotes() != null && !request.getNotes().trim().isEmpty()) {
-            borrowRecord.setNotes(borrowRecord.getNotes() + "; " + request.getNotes());
-        }
         
         BorrowRecord savedBorrowRecord = borrowRecordRepository.save(borrowRecord);
+        loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.RETURNED, request.getUserId(), request.getNotes());
+        studentDashboardService.onLoansClosed(List.of(borrowRecord.getId()));
+        userActivityCounters.recordLoanTransition(borrowRecord.getUserId(), 
+                BorrowRecord.BorrowStatus.ACTIVE, BorrowRecord.BorrowStatus.RETURNED);
+        loanDueDateIndex.onClosed(borrowRecord.getId());
         
-        // Increase available copies in book service
-        bookService.increaseAvailableCopies(request.getIsbn());
+        // Increase available copies in book service once the return commits
+        loanSideEffects.returnCopies(Map.of(request.getIsbn(), 1));
         
         log.info("Successfully processed return for user {} and book {}", 
                 request.getUserId(), request.getIsbn());
@@ -252,6 +494,99 @@ public class BorrowService {
         return mapToBorrowRecordResponse(savedBorrowRecord);
     }
     
+    // Bulk return (book-drop scanning): resolves the whole batch in one query, creates fines together,
+    // saves the records in one batch and sends one aggregated copy increment per ISBN to book-service.
+    // Results are returned in input order.
+    @Transactional
+    public List<BulkReturnResult> returnBooks(List<ReturnBookRequest> requests) {
+        log.info("Processing bulk return of {} items", requests.size());
+        
+        Set<Long> userIds = requests.stream().map(ReturnBookRequest::getUserId).collect(Collectors.toSet());
+        Set<String> isbns = requests.stream().map(ReturnBookRequest::getIsbn).collect(Collectors.toSet());
+        // Queue behind checkouts and returns of the same titles, in ISBN order so batches never deadlock
+        isbnLanes.enterAll(isbns);
+        Map<String, BorrowRecord> activeRecords = borrowRecordRepository
+                .findActiveLoansForUpdate(userIds, isbns)
+                .stream()
+                .collect(Collectors.toMap(br -> returnKey(br.getUserId(), br.getBookIsbn()), Function.identity(), 
+                        (first, second) -> first));
+        
+        LocalDate today = LocalDate.now();
+        List<BulkReturnResult> results = new ArrayList<>();
+        List<BorrowRecord> returnedRecords = new ArrayList<>();
+        List<BorrowRecord> overdueRecords = new ArrayList<>();
+        Map<String, Integer> copiesToRelease = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        
+        for (ReturnBookRequest request : requests) {
+            String key = returnKey(request.getUserId(), request.getIsbn());
+            BulkReturnResult.BulkReturnResultBuilder result = BulkReturnResult.builder()
+                    .userId(request.getUserId())
+                    .isbn(request.getIsbn());
+            
+            if (!seen.add(key)) {
+                results.add(result.success(false).message("Duplicate return in batch").build());
+                continue;
+            }
+            BorrowRecord borrowRecord = activeRecords.get(key);
+            if (borrowRecord == null) {
+                results.add(result.success(false)
+                        .message("No active borrow record found for this user and book").build());
+                continue;
+            }
+            
+            // Calculate fine if overdue
+            if (today.isAfter(borrowRecord.getDueDate())) {
+                long overdueDays = ChronoUnit.DAYS.between(borrowRecord.getDueDate(), today);
+                borrowRecord.setFineAmount(overdueDays * FINE_PER_DAY);
+                borrowRecord.setIsOverdue(true);
+                overdueRecords.add(borrowRecord);
+            }
+            
+            borrowRecord.setReturnDate(today);
+            borrowRecord.setStatus(BorrowRecord.BorrowStatus.RETURNED);
+            
+            returnedRecords.add(borrowRecord);
+            loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.RETURNED, request.getUserId(), request.getNotes());
+            userActivityCounters.recordLoanTransition(borrowRecord.getUserId(), 
+                    BorrowRecord.BorrowStatus.ACTIVE, BorrowRecord.BorrowStatus.RETURNED);
+            loanDueDateIndex.onClosed(borrowRecord.getId());
+            copiesToRelease.merge(borrowRecord.getBookIsbn(), 1, Integer::sum);
+            results.add(result.success(true)
+                    .message("Book returned successfully")
+                    .borrowRecordId(borrowRecord.getId())
+                    .fineAmount(borrowRecord.getFineAmount())
+                    .build());
+        }
+        
+        borrowRecordRepository.saveAll(returnedRecords);
+        studentDashboardService.onLoansClosed(returnedRecords.stream().map(BorrowRecord::getId).collect(Collectors.toList()));
+        
+        // Fines and one aggregated copy increment per ISBN go out through the outbox after commit;
+        // a rejected ISBN does not undo the returns
+        loanSideEffects.createOverdueFines(overdueRecords);
+        loanSideEffects.returnCopies(copiesToRelease);
+        
+        log.info("Bulk return processed {} of {} items ({} with fines)", 
+                returnedRecords.size(), requests.size(), overdueRecords.size());
+        
+        return results;
+    }
+    
+    // Hold tokens, among the given ones, that a loan was checked out with (book-service asks before expiring holds).
+    // Not read-only on purpose: it must read the primary, since a lagging replica could miss a loan that just committed.
+    @Transactional
+    public List<String> findLoanedHoldTokens(Collection<String> tokens) {
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        return borrowRecordRepository.findHoldTokensIn(tokens);
+    }
+    
+    private static String returnKey(Long userId, String isbn) {
+        return userId + "|" + isbn;
+    }
+    
     @Transactional
     public BorrowRecordResponse renewLoan(RenewLoanRequest request) {
         log.info("Processing renewal request for user {} and borrow record {}", 
@@ -287,13 +622,15 @@ public class BorrowService {
         borrowRecord.setDueDate(newDueDate);
         borrowRecord.setStatus(BorrowRecord.BorrowStatus.RENEWED);
         
-        if (request.getNotes() != null && !request.getNotes().trim().isEmpty()) {
-            borrowRecord.setNotes(borrowRecord.getNotes() + "; Renewed: " + request.getNotes());
-        } else {
-            borrowRecord.setNotes(borrowRecord.getNotes() + "; Renewed on " + LocalDate.now());
-        }
-        
         BorrowRecord savedBorrowRecord = borrowRecordRepository.save(borrowRecord);
+        loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.RENEWED, request.getUserId(), 
+                request.getNotes() != null && !request.getNotes().trim().isEmpty() 
+                        ? request.getNotes() : "Due date extended to " + newDueDate);
+        studentDashboardService.onLoanUpdated(savedBorrowRecord);
+        userActivityCounters.recordLoanTransition(borrowRecord.getUserId(), 
+                BorrowRecord.BorrowStatus.ACTIVE, BorrowRecord.BorrowStatus.RENEWED);
+        // RENEWED loans are not picked up by the overdue check, same as the table scan it replaced
+        loanDueDateIndex.onClosed(borrowRecord.getId());
         
         log.info("Successfully renewed loan for user {} and book {}", 
                 request.getUserId(), borrowRecord.getBookIsbn());
@@ -301,6 +638,7 @@ public class BorrowService {
         return mapToBorrowRecordResponse(savedBorrowRecord);
     }
     
+    @Transactional(readOnly = true)
     public Page<BorrowRecordResponse> getUserBorrowHistory(Long userId, Pageable pageable) {
         // Validate user
         UserValidationResponse userValidation = userValidationService.validateUser(userId);
@@ -312,6 +650,7 @@ public class BorrowService {
         return borrowRecords.map(this::mapToBorrowRecordResponse);
     }
     
+    @Transactional(readOnly = true)
     public Page<BorrowRecordResponse> getBookBorrowHistory(String isbn, Pageable pageable) {
         // Check if book exists
         if (bookService.getBookByIsbn(isbn) == null) {
@@ -322,6 +661,41 @@ public class BorrowService {
         return borrowRecords.map(this::mapToBorrowRecordResponse);
     }
     
+    // Keyset-paginated user history: every page costs one index seek, however deep the cursor is
+    @Transactional(readOnly = true)
+    public CursorPage<BorrowRecordResponse> getUserBorrowHistory(Long userId, String cursor, int size) {
+        // Validate user
+        UserValidationResponse userValidation = userValidationService.validateUser(userId);
+        if (!userValidation.isSuccess()) {
+            throw new IllegalArgumentException("Invalid user: " + userValidation.getMessage());
+        }
+        
+        LoanCursor after = LoanCursor.decode(cursor);
+        int pageSize = clampPageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<BorrowRecord> borrowRecords = after == null
+                ? borrowRecordRepository.findUserHistoryFirstPage(userId, limit)
+                : borrowRecordRepository.findUserHistoryPageAfter(userId, after.getBorrowDate(), after.getId(), limit);
+        return toCursorPage(borrowRecords, pageSize);
+    }
+    
+    // Keyset-paginated book history
+    @Transactional(readOnly = true)
+    public CursorPage<BorrowRecordResponse> getBookBorrowHistory(String isbn, String cursor, int size) {
+        // Check if book exists
+        if (bookService.getBookByIsbn(isbn) == null) {
+            throw new IllegalArgumentException("Book not found with ISBN: " + isbn);
+        }
+        
+        LoanCursor after = LoanCursor.decode(cursor);
+        int pageSize = clampPageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<BorrowRecord> borrowRecords = after == null
+                ? borrowRecordRepository.findBookHistoryFirstPage(isbn, limit)
+                : borrowRecordRepository.findBookHistoryPageAfter(isbn, after.getBorrowDate(), after.getId(), limit);
+        return toCursorPage(borrowRecords, pageSize);
+    }
+    
     public List<BorrowRecordResponse> getUserActiveBorrows(Long userId) {
         List<BorrowRecord> activeBorrows = borrowRecordRepository.findByUserIdAndStatus(
                 userId, BorrowRecord.BorrowStatus.ACTIVE);
@@ -330,6 +704,68 @@ public class BorrowService {
                 .collect(Collectors.toList());
     }
     
+    // Audit history of a loan, oldest event first
+    @Transactional(readOnly = true)
+    public List<LoanEventResponse> getLoanEvents(Long borrowRecordId) {
+        if (!borrowRecordRepository.existsById(borrowRecordId)) {
+            throw new IllegalArgumentException("Borrow record not found");
+        }
+        
+        return loanEventRepository.findByBorrowRecordIdOrderByIdAsc(borrowRecordId).stream()
+                .map(event -> LoanEventResponse.builder()
+                        .id(event.getId())
+                        .borrowRecordId(event.getBorrowRecordId())
+                        .eventType(event.getEventType().name())
+                        .actorUserId(event.getActorUserId())
+                        .note(event.getNote())
+                        .createdAt(event.getCreatedAt())
+                        .build())
+                .collect(Collectors.toList());
+    }
+    
+    // "Students who borrowed this also borrowed", served from the in-memory co-borrow matrix
+    public List<BookRecommendation> getRecommendations(String isbn, int limit, boolean enrich) {
+        CoBorrowRecommender.TopK topK = coBorrowRecommender.getRecommendations(isbn);
+        if (topK == null) {
+            return List.of();
+        }
+        
+        int size = Math.min(Math.max(limit, 1), topK.isbns().length);
+        Map<String, BookResponse> books = enrich
+                ? bookService.getBooksByIsbns(Arrays.asList(topK.isbns()).subList(0, size))
+                : Map.of();
+        List<BookRecommendation> recommendations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            recommendations.add(BookRecommendation.builder()
+                    .isbn(topK.isbns()[i])
+                    .coBorrowCount(topK.counts()[i])
+                    .book(books.get(topK.isbns()[i]))
+                    .build());
+        }
+        return recommendations;
+    }
+    
+    // Student home page: open loans, reservations and fine estimate from the dashboard read model
+    public StudentDashboardResponse getStudentDashboard(Long userId) {
+        return studentDashboardService.getDashboard(userId);
+    }
+    
+    // Account summary served from the in-memory counters, no COUNT queries
+    public UserAccountSummary getUserAccountSummary(Long userId) {
+        int activeLoans = userActivityCounters.getActiveLoans(userId);
+        int activeReservations = userActivityCounters.getActiveReservations(userId);
+        return UserAccountSummary.builder()
+                .userId(userId)
+                .activeLoans(activeLoans)
+                .maxLoans(MAX_BORROW_LIMIT)
+                .remainingLoans(Math.max(0, MAX_BORROW_LIMIT - activeLoans))
+                .activeReservations(activeReservations)
+                .maxReservations(ReservationService.MAX_RESERVATIONS_PER_USER)
+                .remainingReservations(Math.max(0, ReservationService.MAX_RESERVATIONS_PER_USER - activeReservations))
+                .build();
+    }
+    
+    @Transactional(readOnly = true)
     public List<BorrowRecordResponse> getOverdueBooks() {
         List<BorrowRecord> overdueBooks = borrowRecordRepository.findOverdueBooks(LocalDate.now());
         return overdueBooks.stream()
@@ -337,6 +773,7 @@ public class BorrowService {
                 .collect(Collectors.toList());
     }
     
+    @Transactional(readOnly = true)
     public List<BorrowRecordResponse> getBooksDueSoon(int days) {
         LocalDate currentDate = LocalDate.now();
         LocalDate dueDate = currentDate.plusDays(days);
@@ -363,53 +800,54 @@ public class BorrowService {
         }
         
         // Update borrow record status to LOST
+        BorrowRecord.BorrowStatus previousStatus = borrowRecord.getStatus();
         borrowRecord.setStatus(BorrowRecord.BorrowStatus.LOST);
         borrowRecord.setReturnDate(LocalDate.now()); // Mark as "returned" but lost
         
-        // Add notes about who marked it as lost
-        String lostNotes = "Marked as lost";
-        if (request.getMarkedByUserId() != null) {
-            UserValidationResponse userValidation = userValidationService.validateUser(request.getMarkedByUserId());
-            if (userValidation.isSuccess()) {
-                lostNotes += " by " + userValidation.getData().getUsername();
-            }
-        }
-        if (request.getNotes() != null && !request.getNotes().trim().isEmpty()) {
-            lostNotes += "; " + request.getNotes();
-        }
-        borrowRecord.setNotes(borrowRecord.getNotes() + "; " + lostNotes);
-        
         BorrowRecord savedBorrowRecord = borrowRecordRepository.save(borrowRecord);
+        // Who marked it as lost is kept on the event as the actor
+        loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.LOST, request.getMarkedByUserId(), request.getNotes());
+        studentDashboardService.onLoansClosed(List.of(borrowRecord.getId()));
+        userActivityCounters.recordLoanTransition(borrowRecord.getUserId(), previousStatus, BorrowRecord.BorrowStatus.LOST);
+        loanDueDateIndex.onClosed(borrowRecord.getId());
         
-        // Create lost book fine in payment service
-        try {
-            paymentServiceClient.createLostBookFine(
-                borrowRecord.getUserId(),
-                borrowRecord.getId(),
-                borrowRecord.getBookIsbn(),
-                request.getReplacementCost() != null ? request.getReplacementCost() : 50.0 // Default $50 replacement cost
-            );
-            log.info("Created lost book fine record in payment service for loan ID: {}", borrowRecord.getId());
-        } catch (Exception e) {
-            log.error("Failed to create lost book fine record for loan ID: {}", borrowRecord.getId(), e);
-        }
+        // Create the lost book fine in payment service once this commits
+        loanSideEffects.createLostBookFine(borrowRecord,
+                request.getReplacementCost() != null ? request.getReplacementCost() : 50.0); // Default $50 replacement cost
         
-        // Increase available copies in book service (book is effectively returned but lost)
-        bookService.increaseAvailableCopies(borrowRecord.getBookIsbn());
+        // Increase available copies in book service (book is effectively returned but lost) once this commits
+        loanSideEffects.returnCopies(Map.of(borrowRecord.getBookIsbn(), 1));
         
         log.info("Successfully marked book as lost for borrow record ID: {}", borrowRecord.getId());
         
         return mapToBorrowRecordResponse(savedBorrowRecord);
     }
     
+    // Full scan fallback (manual /update-overdue); the scheduler uses markLoansOverdue with the due date index instead
     @Transactional
     public void updateOverdueStatus() {
-        List<BorrowRecord> overdueBooks = borrowRecordRepository.findOverdueBooks(LocalDate.now());
+        markOverdue(borrowRecordRepository.findOverdueBooks(LocalDate.now()));
+    }
+    
+    // Flag the given loans as overdue if they are still ACTIVE and past due; returns how many were flagged.
+    // Callers pass bounded chunks (see ScheduledTaskService), since every loan is loaded.
+    @Transactional
+    public int markLoansOverdue(Collection<Long> borrowRecordIds) {
+        LocalDate today = LocalDate.now();
+        List<BorrowRecord> overdueBooks = borrowRecordRepository.findAllById(borrowRecordIds).stream()
+                .filter(borrowRecord -> borrowRecord.getStatus() == BorrowRecord.BorrowStatus.ACTIVE)
+                .filter(borrowRecord -> borrowRecord.getDueDate().isBefore(today))
+                .collect(Collectors.toList());
+        return markOverdue(overdueBooks);
+    }
+    
+    private int markOverdue(List<BorrowRecord> overdueBooks) {
+        LocalDate today = LocalDate.now();
+        List<BorrowRecord> flagged = new ArrayList<>();
         
         for (BorrowRecord borrowRecord : overdueBooks) {
             if (!borrowRecord.getIsOverdue()) {
                 // Calculate fine
-                LocalDate today = LocalDate.now();
                 long overdueDays = ChronoUnit.DAYS.between(borrowRecord.getDueDate(), today);
                 double fine = overdueDays * FINE_PER_DAY;
                 
@@ -417,35 +855,113 @@ public class BorrowService {
                 borrowRecord.setFineAmount(fine);
                 borrowRecord.setStatus(BorrowRecord.BorrowStatus.OVERDUE);
                 
-                borrowRecordRepository.save(borrowRecord);
-                
-                // Create fine record in payment service for overdue books
-                try {
-                    paymentServiceClient.createOverdueFine(
-                        borrowRecord.getUserId(),
-                        borrowRecord.getId(),
-                        borrowRecord.getBookIsbn(),
-                        borrowRecord.getDueDate()
-                    );
-                    log.info("Created fine record in payment service for overdue loan ID: {}, Amount: ${}", 
-                            borrowRecord.getId(), fine);
-                } catch (Exception e) {
-                    log.error("Failed to create fine record for overdue loan ID: {}", borrowRecord.getId(), e);
-                }
+                userActivityCounters.recordLoanTransition(borrowRecord.getUserId(), 
+                        BorrowRecord.BorrowStatus.ACTIVE, BorrowRecord.BorrowStatus.OVERDUE);
+                loanDueDateIndex.onClosed(borrowRecord.getId());
+                loanEventLog.record(borrowRecord.getId(), LoanEvent.EventType.OVERDUE, null, 
+                        overdueDays + " days overdue, fine $" + fine);
+                flagged.add(borrowRecord);
                 
                 log.info("Updated overdue status for borrow record ID: {}, Fine: ${}", 
                         borrowRecord.getId(), fine);
             }
         }
+        
+        borrowRecordRepository.saveAll(flagged);
+        studentDashboardService.onLoansOverdue(flagged.stream().map(BorrowRecord::getId).collect(Collectors.toList()));
+        
+        // Create fine records in payment service for overdue books once this commits
+        loanSideEffects.createOverdueFines(flagged);
+        
+        return flagged.size();
     }
     
+    @Transactional(readOnly = true)
     public Page<BorrowRecordResponse> getAllBorrowRecords(Pageable pageable) {
         Page<BorrowRecord> borrowRecords = borrowRecordRepository.findAll(pageable);
         return borrowRecords.map(this::mapToBorrowRecordResponse);
     }
     
+    // Keyset-paginated admin listing of all loan records
+    @Transactional(readOnly = true)
+    public CursorPage<BorrowRecordResponse> getAllBorrowRecords(String cursor, int size) {
+        LoanCursor after = LoanCursor.decode(cursor);
+        int pageSize = clampPageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<BorrowRecord> borrowRecords = after == null
+                ? borrowRecordRepository.findAllFirstPage(limit)
+                : borrowRecordRepository.findAllPageAfter(after.getBorrowDate(), after.getId(), limit);
+        return toCursorPage(borrowRecords, pageSize);
+    }
+    
+    // Filtered, cursor-paginated loan query for batch consumers (e.g. late-reminders).
+    // Book enrichment is optional so callers that only need loan rows avoid book-service calls entirely.
+    // Status and due-date filters with the keyset order are served by idx_borrow_status_due_borrow_date,
+    // so a page reads only the rows of the matching (status, due_date) ranges.
+    @Transactional(readOnly = true)
+    public CursorPage<BorrowRecordResponse> queryLoans(LoanQueryCriteria criteria, boolean enrich, String cursor, int size) {
+        if (criteria.getDueFrom() != null && criteria.getDueTo() != null && criteria.getDueFrom().isAfter(criteria.getDueTo())) {
+            throw new IllegalArgumentException("dueFrom must not be after dueTo");
+        }
+        
+        LoanCursor after = LoanCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(size, MAX_QUERY_PAGE_SIZE));
+        Specification<BorrowRecord> specification = BorrowRecordSpecifications.matching(criteria);
+        if (after != null) {
+            specification = specification.and(BorrowRecordSpecifications.after(after.getBorrowDate(), after.getId()));
+        }
+        
+        List<BorrowRecord> borrowRecords = borrowRecordRepository.findBy(specification, 
+                query -> query.sortBy(CURSOR_ORDER).limit(pageSize + 1).all());
+        
+        return toCursorPage(borrowRecords, pageSize, enrich);
+    }
+    
+    private static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+    }
+    
+    // Trim the look-ahead row fetched to detect a further page and derive the next cursor from the last row
+    private CursorPage<BorrowRecordResponse> toCursorPage(List<BorrowRecord> borrowRecords, int pageSize) {
+        return toCursorPage(borrowRecords, pageSize, true);
+    }
+    
+    private CursorPage<BorrowRecordResponse> toCursorPage(List<BorrowRecord> borrowRecords, int pageSize, boolean enrich) {
+        boolean hasMore = borrowRecords.size() > pageSize;
+        List<BorrowRecord> page = hasMore ? borrowRecords.subList(0, pageSize) : borrowRecords;
+        List<BorrowRecordResponse> items = enrich
+                ? mapToBorrowRecordResponses(page)
+                : page.stream()
+                        .map(borrowRecord -> mapToBorrowRecordResponse(borrowRecord, null))
+                        .collect(Collectors.toList());
+        
+        return CursorPage.<BorrowRecordResponse>builder()
+                .items(items)
+                .size(page.size())
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? LoanCursor.after(page.get(page.size() - 1)).encode() : null)
+                .build();
+    }
+    
+    // Map a list of records, fetching all of their books from book-service in one call
+    private List<BorrowRecordResponse> mapToBorrowRecordResponses(List<BorrowRecord> borrowRecords) {
+        Set<String> isbns = borrowRecords.stream()
+                .map(BorrowRecord::getBookIsbn)
+                .collect(Collectors.toSet());
+        Map<String, BookResponse> books = bookService.getBooksByIsbns(isbns);
+        return borrowRecords.stream()
+                .map(borrowRecord -> mapToBorrowRecordResponse(borrowRecord, books.get(borrowRecord.getBookIsbn())))
+                .collect(Collectors.toList());
+    }
+    
     private BorrowRecordResponse mapToBorrowRecordResponse(BorrowRecord borrowRecord) {
-        BorrowRecordResponse response = BorrowRecordResponse.builder()
+        // Fetch book details
+        BookResponse book = bookService.getBookByIsbn(borrowRecord.getBookIsbn());
+        return mapToBorrowRecordResponse(borrowRecord, book);
+    }
+    
+    static BorrowRecordResponse mapToBorrowRecordResponse(BorrowRecord borrowRecord, BookResponse book) {
+        return BorrowRecordResponse.builder()
                 .id(borrowRecord.getId())
                 .userId(borrowRecord.getUserId())
                 .bookIsbn(borrowRecord.getBookIsbn())
@@ -458,12 +974,7 @@ public class BorrowService {
                 .notes(borrowRecord.getNotes())
                 .createdAt(borrowRecord.getCreatedAt())
                 .updatedAt(borrowRecord.getUpdatedAt())
+                .book(book)
                 .build();
-        
-        // Fetch book details
-        BookResponse book = bookService.getBookByIsbn(borrowRecord.getBookIsbn());
-        response.setBook(book);
-        
-        return response;
     }
 }
\ No newline at end of file
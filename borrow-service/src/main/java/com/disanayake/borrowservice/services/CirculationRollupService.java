@@ -0,0 +1,276 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.CirculationRollupResponse;
+import com.disanayake.borrowservice.dto.UserValidationResponse;
+import com.disanayake.borrowservice.entities.CirculationDailyRollup;
+import com.disanayake.borrowservice.entities.CirculationRollupState;
+import com.disanayake.borrowservice.entities.LoanEvent;
+import com.disanayake.borrowservice.repositories.CirculationRollupJdbcRepository;
+import com.disanayake.borrowservice.repositories.CirculationRollupJdbcRepository.LoanEventRow;
+import com.disanayake.borrowservice.repositories.CirculationRollupRepository;
+import com.disanayake.borrowservice.repositories.CirculationRollupStateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Daily circulation rollups (checkouts, returns, overdues and loan duration) per ISBN, genre and
+ * student department, and the reports read from them.
+ *
+ * The rollups are fed from loan_events behind a stored watermark: each run reads only the events
+ * after it, sums them per (day, dimension, value) in memory and adds the sums to the daily rows with
+ * one batched upsert, moving the watermark in the same transaction so every event is counted once.
+ * Reports never touch borrow_records. Genres and departments are looked up once per book or student
+ * and cached; a value that cannot be resolved is counted under UNKNOWN.
+ */
+@Service
+@Slf4j
+public class CirculationRollupService {
+
+    static final String UNKNOWN = "UNKNOWN";
+
+    // Watermark row of this pipeline in circulation_rollup_state
+    private static final String PIPELINE_NAME = "loan_events";
+    // Events folded in per transaction
+    private static final int EVENT_PAGE_SIZE = 5_000;
+    // Events are written at commit, so IDs can become visible out of order; leave recent ones for the next run
+    private static final Duration SETTLE_DELAY = Duration.ofMinutes(2);
+    // Book-service batch lookup limit
+    private static final int BOOK_LOOKUP_CHUNK_SIZE = 500;
+    // Widest date range a report may cover
+    private static final int MAX_REPORT_DAYS = 366;
+    private static final int MAX_TOP_LIMIT = 100;
+    // Width of circulation_daily_rollups.dimension_value
+    private static final int MAX_VALUE_LENGTH = 100;
+
+    private final CirculationRollupRepository circulationRollupRepository;
+    private final CirculationRollupStateRepository circulationRollupStateRepository;
+    private final CirculationRollupJdbcRepository circulationRollupJdbcRepository;
+    private final BookService bookService;
+    private final UserValidationService userValidationService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, String> genreByIsbn = new ConcurrentHashMap<>();
+    private final Map<Long, String> departmentByUser = new ConcurrentHashMap<>();
+
+    public CirculationRollupService(CirculationRollupRepository circulationRollupRepository,
+                                    CirculationRollupStateRepository circulationRollupStateRepository,
+                                    CirculationRollupJdbcRepository circulationRollupJdbcRepository,
+                                    BookService bookService,
+                                    UserValidationService userValidationService,
+                                    PlatformTransactionManager transactionManager) {
+        this.circulationRollupRepository = circulationRollupRepository;
+        this.circulationRollupStateRepository = circulationRollupStateRepository;
+        this.circulationRollupJdbcRepository = circulationRollupJdbcRepository;
+        this.bookService = bookService;
+        this.userValidationService = userValidationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // ========== Reports ==========
+
+    // One row per day and value, oldest day first
+    @Transactional(readOnly = true)
+    public List<CirculationRollupResponse> getDailyRollups(CirculationDailyRollup.Dimension dimension, LocalDate from, LocalDate to) {
+        validateRange(from, to);
+        return circulationRollupRepository
+                .findByDimensionAndRollupDateBetweenOrderByRollupDateAscDimensionValueAsc(dimension, from, to)
+                .stream()
+                .map(rollup -> toResponse(rollup.getRollupDate(), dimension, rollup.getDimensionValue(),
+                        rollup.getCheckoutCount(), rollup.getReturnCount(), rollup.getOverdueCount(), rollup.getReturnedLoanDays()))
+                .collect(Collectors.toList());
+    }
+
+    // Totals over the range per value, most checkouts first ("top borrowed titles this term")
+    @Transactional(readOnly = true)
+    public List<CirculationRollupResponse> getTopValues(CirculationDailyRollup.Dimension dimension, LocalDate from, LocalDate to, int limit) {
+        validateRange(from, to);
+        if (limit < 1 || limit > MAX_TOP_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_TOP_LIMIT);
+        }
+        return circulationRollupRepository.sumByDimensionValue(dimension, from, to, PageRequest.of(0, limit))
+                .stream()
+                .map(row -> toResponse(null, dimension, (String) row[0],
+                        ((Number) row[1]).longValue(), ((Number) row[2]).longValue(),
+                        ((Number) row[3]).longValue(), ((Number) row[4]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    private static void validateRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_REPORT_DAYS) {
+            throw new IllegalArgumentException("Date range must not exceed " + MAX_REPORT_DAYS + " days");
+        }
+    }
+
+    private static CirculationRollupResponse toResponse(LocalDate date, CirculationDailyRollup.Dimension dimension, String value,
+                                                        long checkouts, long returns, long overdues, long returnedLoanDays) {
+        return CirculationRollupResponse.builder()
+                .date(date)
+                .dimension(dimension)
+                .value(value)
+                .checkouts(checkouts)
+                .returns(returns)
+                .overdues(overdues)
+                .averageLoanDays(returns > 0 ? (double) returnedLoanDays / returns : null)
+                .build();
+    }
+
+    // ========== Rollup pipeline ==========
+
+    // Every 5 minutes, fold in the loan events recorded since the previous run
+    @Scheduled(fixedDelay = 300000, initialDelay = 60000)
+    public void scheduledRun() {
+        try {
+            rollUp();
+        } catch (Exception e) {
+            log.error("Error updating circulation rollups", e);
+        }
+    }
+
+    // Apply all settled events after the watermark; returns how many were applied
+    public synchronized int rollUp() {
+        int applied = 0;
+        while (true) {
+            long watermark = circulationRollupStateRepository.findById(PIPELINE_NAME)
+                    .map(CirculationRollupState::getLastEventId)
+                    .orElse(0L);
+            List<LoanEventRow> page = circulationRollupJdbcRepository.findEventsAfter(watermark, EVENT_PAGE_SIZE);
+            List<LoanEventRow> settled = settledPrefix(page, LocalDateTime.now().minus(SETTLE_DELAY));
+            if (settled.isEmpty()) {
+                break;
+            }
+
+            // Remote lookups happen here, outside the transaction that holds the watermark lock
+            List<CirculationDailyRollup> deltas = aggregate(settled);
+            long lastEventId = settled.get(settled.size() - 1).id();
+            Boolean committed = transactionTemplate.execute(status -> apply(watermark, lastEventId, deltas));
+            if (!Boolean.TRUE.equals(committed)) {
+                log.info("Circulation rollup watermark moved by another instance, stopping this run");
+                break;
+            }
+
+            applied += settled.size();
+            if (settled.size() < EVENT_PAGE_SIZE) {
+                break;
+            }
+        }
+
+        if (applied > 0) {
+            log.info("Circulation rollups updated with {} loan events", applied);
+        }
+        return applied;
+    }
+
+    private boolean apply(long expectedWatermark, long lastEventId, List<CirculationDailyRollup> deltas) {
+        CirculationRollupState state = circulationRollupStateRepository.lockByName(PIPELINE_NAME)
+                .orElseGet(() -> CirculationRollupState.builder().name(PIPELINE_NAME).lastEventId(0L).build());
+        if (state.getLastEventId() != expectedWatermark) {
+            return false;
+        }
+        circulationRollupJdbcRepository.addAll(deltas);
+        state.setLastEventId(lastEventId);
+        circulationRollupStateRepository.save(state);
+        return true;
+    }
+
+    // Stop at the first event that may still have lower-numbered events in flight
+    private static List<LoanEventRow> settledPrefix(List<LoanEventRow> page, LocalDateTime settledBefore) {
+        int end = 0;
+        while (end < page.size() && page.get(end).createdAt().isBefore(settledBefore)) {
+            end++;
+        }
+        return page.subList(0, end);
+    }
+
+    private List<CirculationDailyRollup> aggregate(List<LoanEventRow> events) {
+        resolveGenres(events.stream().map(LoanEventRow::bookIsbn).collect(Collectors.toSet()));
+
+        Map<String, CirculationDailyRollup> deltas = new LinkedHashMap<>();
+        for (LoanEventRow event : events) {
+            LoanEvent.EventType eventType = LoanEvent.EventType.valueOf(event.eventType());
+            if (eventType != LoanEvent.EventType.CHECKED_OUT
+                    && eventType != LoanEvent.EventType.RETURNED
+                    && eventType != LoanEvent.EventType.OVERDUE) {
+                continue;
+            }
+
+            LocalDate day = event.createdAt().toLocalDate();
+            long loanDays = eventType == LoanEvent.EventType.RETURNED
+                    ? Math.max(0, ChronoUnit.DAYS.between(event.borrowDate(), day))
+                    : 0;
+            add(deltas, day, CirculationDailyRollup.Dimension.ISBN, event.bookIsbn(), eventType, loanDays);
+            add(deltas, day, CirculationDailyRollup.Dimension.GENRE,
+                    genreByIsbn.getOrDefault(event.bookIsbn(), UNKNOWN), eventType, loanDays);
+            add(deltas, day, CirculationDailyRollup.Dimension.DEPARTMENT, department(event.userId()), eventType, loanDays);
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    private static void add(Map<String, CirculationDailyRollup> deltas, LocalDate day,
+                            CirculationDailyRollup.Dimension dimension, String value,
+                            LoanEvent.EventType eventType, long loanDays) {
+        String dimensionValue = value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) : value;
+        CirculationDailyRollup delta = deltas.computeIfAbsent(day + "|" + dimension + "|" + dimensionValue,
+                key -> CirculationDailyRollup.builder().rollupDate(day).dimension(dimension).dimensionValue(dimensionValue).build());
+        switch (eventType) {
+            case CHECKED_OUT -> delta.setCheckoutCount(delta.getCheckoutCount() + 1);
+            case RETURNED -> {
+                delta.setReturnCount(delta.getReturnCount() + 1);
+                delta.setReturnedLoanDays(delta.getReturnedLoanDays() + loanDays);
+            }
+            case OVERDUE -> delta.setOverdueCount(delta.getOverdueCount() + 1);
+            default -> {
+            }
+        }
+    }
+
+    // Look up the genres of books not seen before, a chunk of ISBNs per book-service call
+    private void resolveGenres(Set<String> isbns) {
+        List<String> missing = isbns.stream().filter(isbn -> !genreByIsbn.containsKey(isbn)).collect(Collectors.toList());
+        for (int i = 0; i < missing.size(); i += BOOK_LOOKUP_CHUNK_SIZE) {
+            Map<String, BookResponse> books = bookService.getBooksByIsbns(
+                    missing.subList(i, Math.min(i + BOOK_LOOKUP_CHUNK_SIZE, missing.size())));
+            books.forEach((isbn, book) -> {
+                if (book.getGenre() != null && !book.getGenre().isBlank()) {
+                    genreByIsbn.put(isbn, book.getGenre().trim());
+                }
+            });
+        }
+    }
+
+    // Only successful lookups are cached, so a user-service outage does not stick
+    private String department(Long userId) {
+        String cached = departmentByUser.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        UserValidationResponse response = userValidationService.validateUser(userId);
+        if (!response.isSuccess() || response.getData() == null) {
+            return UNKNOWN;
+        }
+        String department = response.getData().getDepartment();
+        department = department != null && !department.isBlank() ? department.trim() : UNKNOWN;
+        departmentByUser.put(userId, department);
+        return department;
+    }
+}
@@ -0,0 +1,157 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * "Students who borrowed this also borrowed" recommendations, served from memory.
+ *
+ * ISBNs are interned to dense int IDs and the sparse item-item co-occurrence matrix is kept as one
+ * primitive int -> count map per book. The matrix is fed incrementally: each refresh reads only the
+ * loans created since the last one (by ID), so its cost is linear in new loans. Books touched by a
+ * refresh get their top-K recomputed and published as an immutable snapshot, which makes a lookup a
+ * single map read with no locking.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CoBorrowRecommender {
+
+    // Recommendations kept per book
+    static final int TOP_K = 20;
+    // Loans read per query while catching up
+    private static final int REFRESH_PAGE_SIZE = 5_000;
+
+    private final BorrowRecordRepository borrowRecordRepository;
+
+    // Written only by refresh(), which is synchronized
+    private final Map<String, Integer> itemIds = new HashMap<>();
+    private final List<String> isbnsById = new ArrayList<>();
+    private final List<IntCountMap> coBorrowCounts = new ArrayList<>();
+    private final Map<Long, IntCountMap> itemsByUser = new HashMap<>();
+    private long lastLoanId = 0;
+
+    // Published top-K per ISBN, read without locking
+    private final Map<String, TopK> topKByIsbn = new ConcurrentHashMap<>();
+
+    // Immutable ranked neighbours of one book
+    public record TopK(String[] isbns, int[] counts) {
+    }
+
+    public TopK getRecommendations(String isbn) {
+        return topKByIsbn.get(isbn);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialLoad() {
+        refreshSafely();
+    }
+
+    // Every 5 minutes, fold in the loans created since the previous refresh
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void scheduledRefresh() {
+        refreshSafely();
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Error refreshing co-borrow recommendations", e);
+        }
+    }
+
+    public synchronized int refresh() {
+        IntCountMap dirty = new IntCountMap();
+        int applied = 0;
+        List<Object[]> page;
+        do {
+            page = borrowRecordRepository.findLoanPairsAfter(lastLoanId, PageRequest.of(0, REFRESH_PAGE_SIZE));
+            for (Object[] row : page) {
+                apply(((Number) row[1]).longValue(), (String) row[2], dirty);
+                lastLoanId = ((Number) row[0]).longValue();
+            }
+            applied += page.size();
+        } while (page.size() == REFRESH_PAGE_SIZE);
+
+        for (int slot = 0; slot < dirty.capacity(); slot++) {
+            int itemId = dirty.keyAt(slot);
+            if (itemId >= 0) {
+                topKByIsbn.put(isbnsById.get(itemId), rank(coBorrowCounts.get(itemId)));
+            }
+        }
+
+        if (applied > 0) {
+            log.info("Co-borrow recommendations refreshed with {} new loans ({} books re-ranked, {} books known)",
+                    applied, dirty.size(), isbnsById.size());
+        }
+        return applied;
+    }
+
+    // Pair the book with everything the student borrowed before; a re-borrow adds nothing
+    private void apply(Long userId, String isbn, IntCountMap dirty) {
+        int itemId = itemId(isbn);
+        IntCountMap history = itemsByUser.computeIfAbsent(userId, key -> new IntCountMap());
+        if (!history.add(itemId)) {
+            return;
+        }
+        IntCountMap itemCounts = coBorrowCounts.get(itemId);
+        for (int slot = 0; slot < history.capacity(); slot++) {
+            int otherId = history.keyAt(slot);
+            if (otherId >= 0 && otherId != itemId) {
+                itemCounts.increment(otherId);
+                coBorrowCounts.get(otherId).increment(itemId);
+                dirty.add(otherId);
+            }
+        }
+        dirty.add(itemId);
+    }
+
+    private int itemId(String isbn) {
+        Integer id = itemIds.get(isbn);
+        if (id == null) {
+            id = isbnsById.size();
+            itemIds.put(isbn, id);
+            isbnsById.add(isbn);
+            coBorrowCounts.add(new IntCountMap());
+        }
+        return id;
+    }
+
+    // Highest counts first, ties broken by lower item ID; min-heap of packed (count, id) keeps it O(n log K)
+    private TopK rank(IntCountMap counts) {
+        PriorityQueue<Long> heap = new PriorityQueue<>(TOP_K + 1);
+        for (int slot = 0; slot < counts.capacity(); slot++) {
+            int otherId = counts.keyAt(slot);
+            if (otherId >= 0) {
+                heap.add(((long) counts.countAt(slot) << 32) | (Integer.MAX_VALUE - otherId));
+                if (heap.size() > TOP_K) {
+                    heap.poll();
+                }
+            }
+        }
+
+        int size = heap.size();
+        String[] isbns = new String[size];
+        int[] rankedCounts = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            long packed = heap.poll();
+            isbns[i] = isbnsById.get(Integer.MAX_VALUE - (int) packed);
+            rankedCounts[i] = (int) (packed >>> 32);
+        }
+        return new TopK(isbns, rankedCounts);
+    }
+}
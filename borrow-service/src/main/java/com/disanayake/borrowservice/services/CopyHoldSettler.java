@@ -0,0 +1,101 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settles book-service copy holds taken during checkout.
+ *
+ * Confirmation is durable: a CONFIRM_HOLD outbox message is written in the loan's transaction, so it
+ * exists exactly when the loan does, and the outbox relay retries it until book-service accepts it.
+ * If book-service rejects the confirmation (4xx) or it runs out of attempts, the message is marked
+ * FAILED and the hold is released, so the copy is not left held for a confirmation that never comes.
+ * The loan also stores its hold token, and book-service asks for loans by token before it expires a
+ * hold, so a confirm that is still waiting in the outbox never puts the copy back on the shelf.
+ * Releasing after a rollback is best effort, off the request thread: if it never arrives,
+ * book-service expires the hold once it sees that no loan refers to it.
+ */
+@Component
+@Slf4j
+public class CopyHoldSettler {
+
+    private static final int MAX_RELEASE_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final BookService bookService;
+    private final OutboxRelay outboxRelay;
+    private final ExecutorService executor;
+
+    // Outbox payload of a hold confirmation
+    record HoldConfirmation(String token) {
+    }
+
+    public CopyHoldSettler(BookService bookService, OutboxRelay outboxRelay) {
+        this.bookService = bookService;
+        this.outboxRelay = outboxRelay;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "copy-hold-settler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        outboxRelay.register(MessageType.CONFIRM_HOLD, HoldConfirmation.class,
+                confirmation -> bookService.confirmHold(confirmation.token()),
+                confirmation -> executor.execute(() -> release(confirmation.token())));
+    }
+
+    // Confirm through the outbox if the current transaction commits, release if it rolls back
+    public void settleOnCompletion(String token) {
+        outboxRelay.enqueue(MessageType.CONFIRM_HOLD, new HoldConfirmation(token));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    executor.execute(() -> release(token));
+                }
+            }
+        });
+    }
+
+    private void release(String token) {
+        for (int attempt = 1; attempt <= MAX_RELEASE_ATTEMPTS; attempt++) {
+            try {
+                bookService.releaseHold(token);
+                return;
+            } catch (HttpClientErrorException e) {
+                // Rejected, not lost: retrying cannot change the outcome
+                log.error("Book service refused to release copy hold {}: {}", token, e.getStatusCode());
+                return;
+            } catch (RestClientException e) {
+                log.warn("Attempt {} to release copy hold {} failed", attempt, token, e);
+                if (attempt < MAX_RELEASE_ATTEMPTS) {
+                    sleepBeforeRetry(attempt);
+                }
+            }
+        }
+        log.warn("Giving up on releasing copy hold {}; book-service expires it since no loan refers to it", token);
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,182 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.ApiResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Makes write endpoints safe to retry with an Idempotency-Key header.
+ * The first request with a key runs normally and its response is kept for a limited time; a replay
+ * gets the stored response, and a duplicate that arrives while the first is still running waits for
+ * and shares its result instead of running again. Only final outcomes are kept: 2xx responses and
+ * 4xx errors that a retry cannot change. Responses that invite a retry (408, 409, 429 and every 5xx)
+ * and exceptions are dropped, so the retry runs again.
+ *
+ * A key is matched to its request by a SHA-256 of the JSON-serialized request body; reusing the key
+ * for a different body is rejected.
+ *
+ * The guarantee is per process. Entries live in this instance's memory, bounded by both TTL and
+ * count, and the oldest completed entries are evicted first. A retry that reaches another instance,
+ * or arrives after a restart, runs again. A repeated checkout is then rejected as a duplicate loan
+ * and a repeated return finds no active loan, but a repeated renewal extends the loan again.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    // How long a completed response is replayed for
+    private static final Duration TTL = Duration.ofHours(24);
+    // Maximum number of keys kept
+    private static final int MAX_ENTRIES = 10_000;
+    // Keys longer than this are rejected rather than stored
+    private static final int MAX_KEY_LENGTH = 255;
+
+    // Insertion order is also expiry order, since every entry gets the same TTL
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final ObjectMapper objectMapper;
+
+    public IdempotencyStore(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Run the action at most once per (operation, key). Without a key the action just runs.
+     * The request body is fingerprinted so a key reused for a different request is rejected with 422.
+     */
+    public <T> ResponseEntity<ApiResponse<T>> execute(String operation, String idempotencyKey, Object request,
+                                                      Supplier<ResponseEntity<ApiResponse<T>>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters"));
+        }
+
+        String key = operation + ":" + idempotencyKey;
+        byte[] fingerprint = fingerprint(request);
+        Entry entry;
+        boolean owner = false;
+
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(fingerprint, now + TTL.toMillis());
+                entries.put(key, entry);
+                owner = true;
+                evictOverflow();
+            }
+        }
+
+        if (!MessageDigest.isEqual(entry.fingerprint, fingerprint)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(ApiResponse.error(HEADER + " was already used for a different request"));
+        }
+        if (!owner) {
+            log.info("Replaying {} response for {} {}", operation, HEADER, idempotencyKey);
+            return replay(entry);
+        }
+
+        try {
+            ResponseEntity<ApiResponse<T>> response = action.get();
+            if (!isFinal(response.getStatusCode())) {
+                forget(key, entry);
+            }
+            entry.response.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            forget(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Outcomes a retry cannot change; everything else is dropped so the retry runs again
+    private static boolean isFinal(HttpStatusCode status) {
+        if (status.is2xxSuccessful()) {
+            return true;
+        }
+        return status.is4xxClientError()
+                && status.value() != HttpStatus.REQUEST_TIMEOUT.value()
+                && status.value() != HttpStatus.CONFLICT.value()
+                && status.value() != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private byte[] fingerprint(Object request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not fingerprint the request for " + HEADER, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<ApiResponse<T>> replay(Entry entry) {
+        ResponseEntity<?> stored;
+        try {
+            stored = entry.response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return ResponseEntity.status(stored.getStatusCode())
+                .header(REPLAYED_HEADER, "true")
+                .body((ApiResponse<T>) stored.getBody());
+    }
+
+    private void forget(String key, Entry entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiresAt <= now) {
+            iterator.remove();
+        }
+    }
+
+    // Drops the oldest completed entries; a request still running keeps its entry so duplicates keep waiting for it
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > MAX_ENTRIES && iterator.hasNext()) {
+            if (iterator.next().response.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] fingerprint;
+        private final long expiresAt;
+        private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        Entry(byte[] fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.disanayake.borrowservice.services;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing int -> int counter map (also used as an int set), with no boxing per entry.
+ * Keys must be non-negative. Not thread-safe.
+ */
+final class IntCountMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    IntCountMap() {
+        this(4);
+    }
+
+    IntCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // Add one to the key's count and return the new count
+    int increment(int key) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+            if (size * 3 > keys.length * 2) {
+                resize();
+                return counts[slot(key)] = 1;
+            }
+        }
+        return ++counts[slot];
+    }
+
+    // Add the key if absent; returns true if it was added
+    boolean add(int key) {
+        if (contains(key)) {
+            return false;
+        }
+        increment(key);
+        return true;
+    }
+
+    boolean contains(int key) {
+        return keys[slot(key)] == key;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Raw table access for allocation-free iteration: skip slots where keyAt returns a negative value
+    int capacity() {
+        return keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int countAt(int slot) {
+        return counts[slot];
+    }
+
+    // Index of the key's slot, or of the empty slot where it would go
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.disanayake.borrowservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-ISBN serialization lanes for checkout, return and reservation.
+ *
+ * When a popular title is released, many requests for the same ISBN arrive together and would
+ * otherwise contend on the same rows. A request enters the lane of its ISBN for its local critical
+ * section only: callers make their remote calls (user validation, copy holds) before entering, and
+ * calls that must follow the change go through the outbox after commit, so a lane is never held
+ * across a call to another service. The lane is released when the transaction completes.
+ *
+ * Each ISBN in use has its own fair lock, so work on one title never queues behind another. A lock
+ * lives in the map only while some request holds or waits for it. Requests that need several lanes
+ * enter them in ISBN order, so two carts can never wait on each other.
+ *
+ * Lanes only shape throughput: they are local to this instance and say nothing about what the
+ * transaction's snapshot can see. Correctness never depends on them. Duplicate and limit checks run
+ * under the user's row in user_locks with locking reads, returns lock the loan row they close, and
+ * the same holds with lanes disabled or with several instances. A request that gives up waiting gets
+ * a 409, which the idempotency store does not keep, so the client's retry runs again.
+ */
+@Component
+@Slf4j
+public class IsbnLanes {
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final long maxWaitMillis;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    // A fair lock and the number of requests holding or waiting for it (only changed inside the map's compute)
+    private static final class Lane {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int users;
+    }
+
+    public IsbnLanes(MeterRegistry meterRegistry,
+                     @Value("${loans.isbn-lanes.enabled:true}") boolean enabled,
+                     @Value("${loans.isbn-lanes.max-wait-ms:5000}") long maxWaitMillis) {
+        this.enabled = enabled;
+        this.maxWaitMillis = maxWaitMillis;
+        this.waitTimer = Timer.builder("loans.isbn_lane.wait")
+                .description("Time spent queued behind other requests for the same ISBN")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("loans.isbn_lane.rejected")
+                .description("Requests that gave up waiting for their ISBN lane")
+                .register(meterRegistry);
+    }
+
+    // Wait for the ISBN's lane and hold it until the current transaction commits or rolls back
+    public void enter(String isbn) {
+        enterAll(List.of(isbn));
+    }
+
+    // Enter the lanes of several ISBNs, in ISBN order, within one shared wait budget
+    public void enterAll(Collection<String> isbns) {
+        if (!enabled || isbns.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("ISBN lanes can only be entered inside a transaction");
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        try {
+            for (String isbn : new TreeSet<>(isbns)) {
+                enterLane(isbn, deadline);
+            }
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void enterLane(String isbn, long deadline) {
+        Lane lane = lanes.compute(isbn, (key, current) -> {
+            Lane entry = current != null ? current : new Lane();
+            entry.users++;
+            return entry;
+        });
+        if (lane.lock.isHeldByCurrentThread()) {
+            // Already queued for this lane earlier in the same transaction
+            leave(isbn);
+            return;
+        }
+
+        boolean acquired;
+        try {
+            acquired = lane.lock.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            leave(isbn);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for book " + isbn);
+        }
+
+        if (!acquired) {
+            leave(isbn);
+            rejectedCounter.increment();
+            log.warn("Gave up after {} ms waiting for the lane of ISBN {}", maxWaitMillis, isbn);
+            throw new IllegalStateException("Too many requests for this book right now, please try again");
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lane.lock.unlock();
+                leave(isbn);
+            }
+        });
+    }
+
+    private void leave(String isbn) {
+        lanes.computeIfPresent(isbn, (key, lane) -> --lane.users == 0 ? null : lane);
+    }
+
+    // Lanes currently held or waited for
+    int activeLanes() {
+        return lanes.size();
+    }
+}
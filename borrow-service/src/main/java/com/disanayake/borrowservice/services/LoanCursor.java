@@ -0,0 +1,55 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Seek position in a loan listing ordered by (borrow_date DESC, id DESC).
+ * Encoded as an opaque URL-safe token so clients just pass it back unchanged.
+ */
+public final class LoanCursor {
+
+    private final LocalDate borrowDate;
+    private final Long id;
+
+    private LoanCursor(LocalDate borrowDate, Long id) {
+        this.borrowDate = borrowDate;
+        this.id = id;
+    }
+
+    public static LoanCursor after(BorrowRecord borrowRecord) {
+        return new LoanCursor(borrowRecord.getBorrowDate(), borrowRecord.getId());
+    }
+
+    // Returns null for a missing token (first page)
+    public static LoanCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new LoanCursor(LocalDate.parse(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = borrowDate + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LocalDate getBorrowDate() {
+        return borrowDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,107 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of ACTIVE loan IDs bucketed by due date.
+ * The overdue tick only looks at the buckets that have passed, so finding newly overdue loans
+ * costs nothing when none are due instead of a scan of the borrow_records table.
+ * Rebuilt from the database at startup and after the daily overdue sweep (ScheduledTaskService), and
+ * updated after each committed checkout, renewal and return on this instance.
+ * Updates are one per loan state change, so a single lock keeps the two maps consistent cheaply.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LoanDueDateIndex {
+
+    private final BorrowRecordRepository borrowRecordRepository;
+
+    // Due date -> IDs of ACTIVE loans due that day
+    private final TreeMap<LocalDate, Set<Long>> buckets = new TreeMap<>();
+    // Loan ID -> due date, so a loan can be removed by ID alone
+    private final Map<Long, LocalDate> dueDates = new HashMap<>();
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        List<Object[]> activeLoans = borrowRecordRepository.findActiveLoanDueDates();
+
+        buckets.clear();
+        dueDates.clear();
+        for (Object[] row : activeLoans) {
+            add(((Number) row[0]).longValue(), (LocalDate) row[1]);
+        }
+
+        log.info("Loan due date index rebuilt with {} active loans across {} due dates",
+                dueDates.size(), buckets.size());
+    }
+
+    // IDs of loans whose due date is before the given date, oldest first
+    public synchronized List<Long> getLoansDueBefore(LocalDate date) {
+        NavigableMap<LocalDate, Set<Long>> due = buckets.headMap(date, false);
+        if (due.isEmpty()) {
+            return List.of();
+        }
+        List<Long> loanIds = new ArrayList<>();
+        due.values().forEach(loanIds::addAll);
+        return loanIds;
+    }
+
+    // Track a new ACTIVE loan once the surrounding transaction commits
+    public void onCheckedOut(Long loanId, LocalDate dueDate) {
+        AfterCommit.run(() -> add(loanId, dueDate));
+    }
+
+    // Stop tracking a loan that was returned, renewed, lost or marked overdue once the surrounding transaction commits
+    public void onClosed(Long loanId) {
+        AfterCommit.run(() -> remove(loanId));
+    }
+
+    // Stop tracking a batch of loans once the surrounding transaction commits
+    public void onClosed(Collection<Long> loanIds) {
+        List<Long> closed = new ArrayList<>(loanIds);
+        AfterCommit.run(() -> removeAll(closed));
+    }
+
+    // Stop tracking loans immediately (used by the overdue tick after its own transaction has committed)
+    public synchronized void removeAll(Collection<Long> loanIds) {
+        loanIds.forEach(this::remove);
+    }
+
+    private synchronized void add(Long loanId, LocalDate dueDate) {
+        LocalDate previous = dueDates.put(loanId, dueDate);
+        if (previous != null && !previous.equals(dueDate)) {
+            removeFromBucket(previous, loanId);
+        }
+        buckets.computeIfAbsent(dueDate, key -> new HashSet<>()).add(loanId);
+    }
+
+    private synchronized void remove(Long loanId) {
+        LocalDate dueDate = dueDates.remove(loanId);
+        if (dueDate != null) {
+            removeFromBucket(dueDate, loanId);
+        }
+    }
+
+    private void removeFromBucket(LocalDate dueDate, Long loanId) {
+        buckets.computeIfPresent(dueDate, (key, loanIds) -> {
+            loanIds.remove(loanId);
+            return loanIds.isEmpty() ? null : loanIds;
+        });
+    }
+}
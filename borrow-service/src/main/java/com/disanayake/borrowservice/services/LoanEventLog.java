@@ -0,0 +1,63 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.LoanEvent;
+import com.disanayake.borrowservice.repositories.LoanEventJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects loan events raised during a transaction and writes them to loan_events in one JDBC batch
+ * just before it commits, so a bulk operation costs one insert round trip however many loans it touches.
+ * The events commit or roll back together with the loan changes they describe.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoanEventLog {
+
+    private final LoanEventJdbcRepository loanEventJdbcRepository;
+
+    public void record(Long borrowRecordId, LoanEvent.EventType eventType, Long actorUserId, String note) {
+        LoanEvent event = LoanEvent.builder()
+                .borrowRecordId(borrowRecordId)
+                .eventType(eventType)
+                .actorUserId(actorUserId)
+                .note(note != null && !note.trim().isEmpty() ? note : null)
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            loanEventJdbcRepository.insertAll(List.of(event));
+            return;
+        }
+        pendingEvents().add(event);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<LoanEvent> pendingEvents() {
+        List<LoanEvent> pending = (List<LoanEvent>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+
+        List<LoanEvent> events = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, events);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                loanEventJdbcRepository.insertAll(events);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(LoanEventLog.this);
+            }
+        });
+        return events;
+    }
+}
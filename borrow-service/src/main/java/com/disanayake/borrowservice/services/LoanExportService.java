@@ -0,0 +1,105 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Streams loan listings as NDJSON straight from a forward-only database cursor.
+ * Rows are enriched with book details one chunk at a time and written out before the next chunk is read,
+ * so memory use stays flat however many loans match.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LoanExportService {
+
+    // Rows enriched and written per batch book lookup
+    private static final int EXPORT_CHUNK_SIZE = 200;
+
+    private final BorrowRecordRepository borrowRecordRepository;
+    private final BookService bookService;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    public long exportOverdueBooks(OutputStream out) {
+        LocalDate today = LocalDate.now();
+        return export(() -> borrowRecordRepository.streamOverdueBooks(today), out);
+    }
+
+    public long exportBooksDueSoon(int days, OutputStream out) {
+        LocalDate currentDate = LocalDate.now();
+        return export(() -> borrowRecordRepository.streamBooksDueSoon(currentDate, currentDate.plusDays(days)), out);
+    }
+
+    private long export(Supplier<Stream<BorrowRecord>> query, OutputStream out) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        Long exported = transactionTemplate.execute(status -> {
+            long count = 0;
+            List<BorrowRecord> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+            try (Stream<BorrowRecord> borrowRecords = query.get()) {
+                for (BorrowRecord borrowRecord : (Iterable<BorrowRecord>) borrowRecords::iterator) {
+                    chunk.add(borrowRecord);
+                    if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                        count += writeChunk(chunk, out);
+                    }
+                }
+                count += writeChunk(chunk, out);
+            }
+            return count;
+        });
+
+        log.info("Exported {} loan records as NDJSON", exported);
+        return exported != null ? exported : 0;
+    }
+
+    private int writeChunk(List<BorrowRecord> chunk, OutputStream out) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> isbns = chunk.stream()
+                .map(BorrowRecord::getBookIsbn)
+                .collect(Collectors.toSet());
+        Map<String, BookResponse> books = bookService.getBooksByIsbns(isbns);
+
+        try {
+            for (BorrowRecord borrowRecord : chunk) {
+                out.write(objectMapper.writeValueAsBytes(
+                        BorrowService.mapToBorrowRecordResponse(borrowRecord, books.get(borrowRecord.getBookIsbn()))));
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write loan export", e);
+        }
+
+        // Detach the written rows so the persistence context does not grow with the export
+        int written = chunk.size();
+        chunk.forEach(entityManager::detach);
+        chunk.clear();
+        return written;
+    }
+}
@@ -0,0 +1,84 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.CopyAdjustmentResult;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import com.disanayake.borrowservice.services.PaymentServiceClient.CreateFineRequestDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remote side effects of closing loans: copies going back to book-service and overdue and lost book
+ * fines going to payment-service.
+ *
+ * Both are written to the outbox in the transaction that changes the loans, so a return or an overdue
+ * transition commits together with the promise to make its remote calls, and none of those calls runs
+ * while the transaction (or an ISBN lane) is open. Deliveries are retried until they succeed, so each
+ * one is idempotent on the remote side: a copy return carries an idempotency key fixed when it is
+ * written, and payment-service skips loans that already have a fine.
+ */
+@Component
+@Slf4j
+public class LoanSideEffects {
+
+    private final BookService bookService;
+    private final PaymentServiceClient paymentServiceClient;
+    private final OutboxRelay outboxRelay;
+
+    // Outbox payload of a batched copy return
+    record CopyReturn(String idempotencyKey, Map<String, Integer> deltas) {
+    }
+
+    // Outbox payload of a fine batch, priced when the loans were closed
+    record FineBatch(List<CreateFineRequestDto> fines) {
+    }
+
+    public LoanSideEffects(BookService bookService, PaymentServiceClient paymentServiceClient, OutboxRelay outboxRelay) {
+        this.bookService = bookService;
+        this.paymentServiceClient = paymentServiceClient;
+        this.outboxRelay = outboxRelay;
+        outboxRelay.register(MessageType.RETURN_COPIES, CopyReturn.class, this::deliver);
+        outboxRelay.register(MessageType.CREATE_FINES, FineBatch.class,
+                batch -> paymentServiceClient.createFines(batch.fines()));
+    }
+
+    // Give copies back to book-service (one per returned loan, summed per ISBN) once the transaction commits
+    public void returnCopies(Map<String, Integer> copiesByIsbn) {
+        if (copiesByIsbn.isEmpty()) {
+            return;
+        }
+        outboxRelay.enqueue(MessageType.RETURN_COPIES,
+                new CopyReturn(UUID.randomUUID().toString(), new LinkedHashMap<>(copiesByIsbn)));
+    }
+
+    // Create overdue fines for the given loans once the transaction commits, in batches payment-service accepts
+    public void createOverdueFines(List<BorrowRecord> overdueRecords) {
+        List<CreateFineRequestDto> fines = paymentServiceClient.overdueFineRequests(overdueRecords);
+        for (int from = 0; from < fines.size(); from += PaymentServiceClient.FINE_BATCH_SIZE) {
+            List<CreateFineRequestDto> chunk = fines.subList(from,
+                    Math.min(from + PaymentServiceClient.FINE_BATCH_SIZE, fines.size()));
+            outboxRelay.enqueue(MessageType.CREATE_FINES, new FineBatch(List.copyOf(chunk)));
+        }
+    }
+
+    // Create the lost book fine of a loan once the transaction commits
+    public void createLostBookFine(BorrowRecord lostRecord, double replacementCost) {
+        outboxRelay.enqueue(MessageType.CREATE_FINES,
+                new FineBatch(List.of(paymentServiceClient.lostBookFineRequest(lostRecord, replacementCost))));
+    }
+
+    private void deliver(CopyReturn copyReturn) {
+        Map<String, CopyAdjustmentResult> results =
+                bookService.adjustAvailableCopies(copyReturn.deltas(), copyReturn.idempotencyKey());
+        // A rejected increment (book deleted, already at its total) cannot succeed on retry
+        results.values().stream()
+                .filter(result -> !result.isSuccess())
+                .forEach(result -> log.warn("Book service rejected copy return of {} for ISBN {}: {}",
+                        result.getDelta(), result.getIsbn(), result.getMessage()));
+    }
+}
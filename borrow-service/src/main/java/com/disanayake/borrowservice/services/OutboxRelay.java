@@ -0,0 +1,250 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.OutboxMessage;
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import com.disanayake.borrowservice.repositories.OutboxMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Transactional outbox for calls to book-service and payment-service.
+ *
+ * A message is written in the same transaction as the local change that needs the remote call, so it
+ * exists exactly when that change commits. Right after the commit it is handed to a small delivery
+ * pool; anything that pool does not get through (remote failure, crash, restart) is picked up by the
+ * poller and retried with exponential backoff until the remote side accepts it, then deleted.
+ * Only failures that may pass are retried (5xx, I/O errors, 408 and 429). A message the remote side
+ * rejects with any other 4xx, whose payload cannot be read, or that fails outbox.max-attempts times
+ * is marked FAILED, logged as an error and handed to the failure callback of its type, if any.
+ * A delivery first claims its message with a conditional UPDATE that pushes the next attempt out by a
+ * lease, so several instances can poll the same table. Delivery is at-least-once: every handler must
+ * be idempotent on the remote side.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    // Messages delivered per poll
+    private static final int POLL_BATCH_SIZE = 100;
+    // How long a claimed message is left to its relay before another one may retry it
+    private static final long LEASE_SECONDS = 60;
+    // Upper bound on the wait between two attempts at the same message
+    private static final long MAX_BACKOFF_SECONDS = 300;
+    // Failed attempts logged as warnings before they are logged as errors
+    private static final int QUIET_ATTEMPTS = 3;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final int maxAttempts;
+    private final Map<MessageType, Consumer<String>> handlers = new EnumMap<>(MessageType.class);
+    private final Map<MessageType, Consumer<String>> failureHandlers = new EnumMap<>(MessageType.class);
+    private final Counter deliveredCounter;
+    private final Counter failedCounter;
+    private final Counter abandonedCounter;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       ObjectMapper objectMapper,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.delivery-threads:4}") int deliveryThreads,
+                       @Value("${outbox.max-attempts:20}") int maxAttempts) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.executor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deliveredCounter = Counter.builder("outbox.delivered")
+                .description("Outbox messages delivered to another service")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.delivery.failed")
+                .description("Failed outbox delivery attempts")
+                .register(meterRegistry);
+        this.abandonedCounter = Counter.builder("outbox.failed")
+                .description("Outbox messages marked FAILED and no longer retried")
+                .register(meterRegistry);
+    }
+
+    // Handlers are registered by the components that enqueue the message type, at construction time
+    public <T> void register(MessageType type, Class<T> payloadType, Consumer<T> handler) {
+        register(type, payloadType, handler, payload -> { });
+    }
+
+    // Same, with a callback run once if the message is marked FAILED (e.g. to undo what it was meant to complete)
+    public <T> void register(MessageType type, Class<T> payloadType, Consumer<T> handler, Consumer<T> onFailed) {
+        handlers.put(type, payload -> handler.accept(read(payload, payloadType)));
+        failureHandlers.put(type, payload -> onFailed.accept(read(payload, payloadType)));
+    }
+
+    // Write a message in the current transaction; it is delivered once the transaction commits
+    public void enqueue(MessageType type, Object payload) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Outbox messages can only be written inside a transaction");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Long id = outboxMessageRepository.save(OutboxMessage.builder()
+                .type(type)
+                .payload(write(payload))
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build()).getId();
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    executor.execute(() -> deliver(id));
+                } catch (RejectedExecutionException e) {
+                    log.debug("Outbox message {} left for the poller", id);
+                }
+            }
+        });
+    }
+
+    // Every few seconds, retry the messages whose next attempt is due
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:5000}")
+    public void deliverDue() {
+        try {
+            List<Long> due;
+            do {
+                due = outboxMessageRepository.findDueIds(LocalDateTime.now(), PageRequest.of(0, POLL_BATCH_SIZE));
+                due.forEach(this::deliver);
+            } while (due.size() == POLL_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("Error delivering outbox messages", e);
+        }
+    }
+
+    // Claim, deliver and delete one message; a failure schedules the next attempt or marks the message FAILED
+    void deliver(Long id) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = transactionTemplate.execute(status ->
+                outboxMessageRepository.claim(id, now, now.plusSeconds(LEASE_SECONDS)) == 1
+                        ? outboxMessageRepository.findById(id).orElse(null)
+                        : null);
+        if (message == null) {
+            return;
+        }
+
+        try {
+            Consumer<String> handler = handlers.get(message.getType());
+            if (handler == null) {
+                throw new IllegalStateException("No handler registered for " + message.getType());
+            }
+            handler.accept(message.getPayload());
+        } catch (Exception e) {
+            failedCounter.increment();
+            int attempts = message.getAttempts() + 1;
+            String error = String.valueOf(e.getMessage());
+            String lastError = error.substring(0, Math.min(500, error.length()));
+            if (isRejected(e) || attempts >= maxAttempts) {
+                log.error("Giving up on {} outbox message {} after {} attempts, marked FAILED: {}",
+                        message.getType(), id, attempts, e.getMessage());
+                transactionTemplate.executeWithoutResult(status -> outboxMessageRepository.markFailed(id, lastError));
+                abandonedCounter.increment();
+                onFailed(message);
+                return;
+            }
+            long backoffSeconds = Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts, 16));
+            if (attempts <= QUIET_ATTEMPTS) {
+                log.warn("Attempt {} to deliver {} outbox message {} failed, retrying in {}s: {}",
+                        attempts, message.getType(), id, backoffSeconds, e.getMessage());
+            } else {
+                log.error("Attempt {} to deliver {} outbox message {} failed, retrying in {}s: {}",
+                        attempts, message.getType(), id, backoffSeconds, e.getMessage());
+            }
+            transactionTemplate.executeWithoutResult(status -> outboxMessageRepository.reschedule(id,
+                    LocalDateTime.now().plusSeconds(backoffSeconds), lastError));
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> outboxMessageRepository.deleteById(id));
+        deliveredCounter.increment();
+    }
+
+    private void onFailed(OutboxMessage message) {
+        Consumer<String> failureHandler = failureHandlers.get(message.getType());
+        if (failureHandler == null) {
+            return;
+        }
+        try {
+            failureHandler.accept(message.getPayload());
+        } catch (Exception e) {
+            log.error("Failure callback of {} outbox message {} failed", message.getType(), message.getId(), e);
+        }
+    }
+
+    // A 4xx other than 408 and 429, or a payload this version cannot read, fails the same way on every retry
+    private static boolean isRejected(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnreadablePayloadException) {
+                return true;
+            }
+            if (cause instanceof HttpClientErrorException clientError) {
+                HttpStatus status = HttpStatus.resolve(clientError.getStatusCode().value());
+                return status != HttpStatus.REQUEST_TIMEOUT && status != HttpStatus.TOO_MANY_REQUESTS;
+            }
+        }
+        return false;
+    }
+
+    private String write(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize outbox payload " + payload.getClass().getSimpleName(), e);
+        }
+    }
+
+    private <T> T read(String payload, Class<T> payloadType) {
+        try {
+            return objectMapper.readValue(payload, payloadType);
+        } catch (JsonProcessingException e) {
+            throw new UnreadablePayloadException("Cannot read " + payloadType.getSimpleName() + " outbox payload", e);
+        }
+    }
+
+    private static final class UnreadablePayloadException extends IllegalStateException {
+
+        UnreadablePayloadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -1,17 +1,23 @@
 package com.disanayake.borrowservice.services;
 
 import com.disanayake.borrowservice.dto.ApiResponse;
+import com.disanayake.borrowservice.entities.BorrowRecord;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -19,74 +25,71 @@ import java.time.temporal.ChronoUnit;
 public class PaymentServiceClient {
     
     private final RestTemplate restTemplate = new RestTemplate();
-    private static final String PAYMENT_SERVICE_URL = "http://localhost:8084/api/payments";
     private static final double FINE_PER_DAY = 1.0;
+    // Fines sent per call to the batch endpoint (payment-service accepts at most 1000)
+    static final int FINE_BATCH_SIZE = 500;
     
-    public void createOverdueFine(Long userId, Long borrowRecordId, String bookIsbn, LocalDate dueDate) {
-        try {
-            log.info("Creating overdue fine for user {} and borrow record {}", userId, borrowRecordId);
-            
-            // Calculate fine amount based on days overdue
-            long daysOverdue = ChronoUnit.DAYS.between(dueDate, LocalDate.now());
-            BigDecimal fineAmount = BigDecimal.valueOf(daysOverdue * FINE_PER_DAY);
-            
-            CreateFineRequestDto request = CreateFineRequestDto.builder()
-                    .userId(userId)
-                    .borrowRecordId(borrowRecordId)
-                    .bookIsbn(bookIsbn)
-                    .type("OVERDUE")
-                    .amount(fineAmount)
-                    .description("Overdue fine for " + daysOverdue + " days")
-                    .notes("Automatically generated overdue fine")
-                    .build();
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<CreateFineRequestDto> entity = new HttpEntity<>(request, headers);
-            
-            restTemplate.postForObject(PAYMENT_SERVICE_URL + "/fines", entity, ApiResponse.class);
-            log.info("Successfully created overdue fine for user {} with amount {}", userId, fineAmount);
-            
-        } catch (Exception e) {
-            log.error("Failed to create overdue fine for user {} and borrow record {}: {}", 
-                    userId, borrowRecordId, e.getMessage());
-            // Don't throw exception to avoid breaking the return process
+    @Value("${services.payment-service.url:http://localhost:8084}")
+    private String paymentServiceUrl;
+    
+    // Overdue fines for the given loans, priced for the days elapsed since each due date
+    public List<CreateFineRequestDto> overdueFineRequests(List<BorrowRecord> overdueRecords) {
+        List<CreateFineRequestDto> requests = new ArrayList<>(overdueRecords.size());
+        for (BorrowRecord borrowRecord : overdueRecords) {
+            requests.add(overdueFineRequest(borrowRecord.getUserId(), borrowRecord.getId(),
+                    borrowRecord.getBookIsbn(), borrowRecord.getDueDate()));
         }
+        return requests;
     }
     
-    public void createLostBookFine(Long userId, Long borrowRecordId, String bookIsbn, Double replacementCost) {
-        try {
-            log.info("Creating lost book fine for user {} and borrow record {}", userId, borrowRecordId);
-            
-            BigDecimal fineAmount = BigDecimal.valueOf(replacementCost);
-            
-            CreateFineRequestDto request = CreateFineRequestDto.builder()
-                    .userId(userId)
-                    .borrowRecordId(borrowRecordId)
-                    .bookIsbn(bookIsbn)
-                    .type("LOST_BOOK")
-                    .amount(fineAmount)
-                    .description("Lost book replacement fine")
-                    .notes("Automatically generated lost book fine")
-                    .build();
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<CreateFineRequestDto> entity = new HttpEntity<>(request, headers);
-            
-            restTemplate.postForObject(PAYMENT_SERVICE_URL + "/fines", entity, ApiResponse.class);
-            log.info("Successfully created lost book fine for user {} with amount {}", userId, fineAmount);
-            
-        } catch (Exception e) {
-            log.error("Failed to create lost book fine for user {} and borrow record {}: {}", 
-                    userId, borrowRecordId, e.getMessage());
-            // Don't throw exception to avoid breaking the process
+    // Send a batch of at most FINE_BATCH_SIZE fines. Throws if payment-service does not accept it, so the
+    // outbox retries; payment-service skips loans that already have a fine, which makes retries safe.
+    public void createFines(List<CreateFineRequestDto> fines) {
+        if (fines.isEmpty()) {
+            return;
         }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, List<CreateFineRequestDto>>> entity = new HttpEntity<>(Map.of("fines", fines), headers);
+        ApiResponse<?> response = restTemplate.postForObject(
+                paymentServiceUrl + "/api/payments/fines/batch", entity, ApiResponse.class);
+        if (response == null || !response.isSuccess()) {
+            throw new RestClientException("Payment service rejected fine batch of " + fines.size()
+                    + (response != null ? ": " + response.getMessage() : ""));
+        }
+        log.info("Fine batch of {}: {}", fines.size(), response.getMessage());
+    }
+    
+    // Overdue fine for the days elapsed since the due date
+    private CreateFineRequestDto overdueFineRequest(Long userId, Long borrowRecordId, String bookIsbn, LocalDate dueDate) {
+        long daysOverdue = ChronoUnit.DAYS.between(dueDate, LocalDate.now());
+        return CreateFineRequestDto.builder()
+                .userId(userId)
+                .borrowRecordId(borrowRecordId)
+                .bookIsbn(bookIsbn)
+                .type("OVERDUE")
+                .amount(BigDecimal.valueOf(daysOverdue * FINE_PER_DAY))
+                .description("Overdue fine for " + daysOverdue + " days")
+                .notes("Automatically generated overdue fine")
+                .build();
+    }
+    
+    // Lost book fine for the replacement cost of the loan's copy
+    public CreateFineRequestDto lostBookFineRequest(BorrowRecord borrowRecord, double replacementCost) {
+        return CreateFineRequestDto.builder()
+                .userId(borrowRecord.getUserId())
+                .borrowRecordId(borrowRecord.getId())
+                .bookIsbn(borrowRecord.getBookIsbn())
+                .type("LOST_BOOK")
+                .amount(BigDecimal.valueOf(replacementCost))
+                .description("Lost book replacement fine")
+                .notes("Automatically generated lost book fine")
+                .build();
     }
     
     public boolean hasUserPendingFines(Long userId) {
         try {
-            String url = PAYMENT_SERVICE_URL + "/fines/user/" + userId + "/has-pending";
+            String url = paymentServiceUrl + "/api/payments/fines/user/" + userId + "/has-pending";
             ApiResponse<?> response = restTemplate.getForObject(url, ApiResponse.class);
             return response != null && response.isSuccess() && Boolean.TRUE.equals(response.getData());
         } catch (Exception e) {
@@ -0,0 +1,48 @@
+package com.disanayake.borrowservice.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Collapses concurrent loads of the same key into one call: the first caller runs the loader and
+ * every caller that arrives while it is in flight waits for, and shares, its result or exception.
+ * Nothing is cached once the call completes, so a caller never sees a result older than the
+ * in-flight call it joined.
+ */
+final class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return join(existing);
+        }
+
+        try {
+            V value = loader.apply(key);
+            call.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
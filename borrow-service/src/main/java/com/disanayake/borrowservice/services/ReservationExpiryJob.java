@@ -0,0 +1,109 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Expires ACTIVE reservations past their expiry date with one bulk UPDATE per chunk instead of
+ * loading and saving them one at a time. Each chunk commits on its own, so a large backlog never
+ * holds locks for long, and the queue index, user counters and dashboard read model are updated
+ * once per chunk.
+ */
+@Component
+@Slf4j
+public class ReservationExpiryJob {
+
+    // Reservations locked and expired per transaction
+    private static final int EXPIRY_CHUNK_SIZE = 500;
+
+    private final ReservationRepository reservationRepository;
+    private final ReservationQueueIndex reservationQueueIndex;
+    private final UserActivityCounters userActivityCounters;
+    private final StudentDashboardService studentDashboardService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expiredCounter;
+    private final Timer runTimer;
+
+    public ReservationExpiryJob(ReservationRepository reservationRepository,
+                                ReservationQueueIndex reservationQueueIndex,
+                                UserActivityCounters userActivityCounters,
+                                StudentDashboardService studentDashboardService,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry) {
+        this.reservationRepository = reservationRepository;
+        this.reservationQueueIndex = reservationQueueIndex;
+        this.userActivityCounters = userActivityCounters;
+        this.studentDashboardService = studentDashboardService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expiredCounter = Counter.builder("reservations.expired")
+                .description("Reservations moved from ACTIVE to EXPIRED by the expiry job")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("reservations.expiry.run")
+                .description("Duration of each reservation expiry run")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs at five past every hour. Reservations expire by date, so most runs find nothing to do
+     * and cost one index seek on (status, expiry_date).
+     */
+    @Scheduled(cron = "0 5 * * * ?")
+    public void scheduledRun() {
+        try {
+            expireReservations();
+        } catch (Exception e) {
+            log.error("Error during reservation expiry run", e);
+        }
+    }
+
+    // Expire everything that is due and return the affected reservations so callers can notify in a batch
+    public List<Reservation> expireReservations() {
+        return runTimer.record(() -> {
+            LocalDate today = LocalDate.now();
+            List<Reservation> expired = new ArrayList<>();
+            List<Reservation> chunk;
+            do {
+                chunk = transactionTemplate.execute(status -> expireChunk(today));
+                expired.addAll(chunk);
+            } while (chunk.size() == EXPIRY_CHUNK_SIZE);
+
+            expiredCounter.increment(expired.size());
+            if (!expired.isEmpty()) {
+                log.info("Expired {} reservations", expired.size());
+                log.debug("Expired reservation IDs: {}", expired.stream().map(Reservation::getId).collect(Collectors.toList()));
+            }
+            return expired;
+        });
+    }
+
+    private List<Reservation> expireChunk(LocalDate today) {
+        List<Reservation> chunk = reservationRepository.lockExpiredReservations(today, PageRequest.of(0, EXPIRY_CHUNK_SIZE));
+        if (chunk.isEmpty()) {
+            return chunk;
+        }
+
+        List<Long> ids = chunk.stream().map(Reservation::getId).collect(Collectors.toList());
+        reservationRepository.expireByIds(ids, LocalDateTime.now());
+        chunk.forEach(reservation -> reservation.setStatus(Reservation.ReservationStatus.EXPIRED));
+
+        studentDashboardService.onReservationsClosed(ids);
+        reservationQueueIndex.onRemoved(chunk);
+        userActivityCounters.recordReservationsClosed(chunk.stream().map(Reservation::getUserId).collect(Collectors.toList()));
+        return chunk;
+    }
+}
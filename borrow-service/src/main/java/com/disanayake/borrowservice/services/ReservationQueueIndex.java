@@ -0,0 +1,188 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of ACTIVE reservations per ISBN, kept in FIFO order.
+ * Lets checkout and renewal check the reservation queue without hitting the database.
+ * Updated after each change committed on this instance, and reloaded from the reservations table at
+ * startup and every minute, which picks up reservations created, cancelled, fulfilled or expired by
+ * other instances. A reload builds the new queues aside and swaps them in, replaying the local changes
+ * that committed while it ran, so readers never see an empty or half-built index.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationQueueIndex {
+
+    private final ReservationRepository reservationRepository;
+
+    // ISBN -> (reservation ID -> user ID), in queue order
+    private final Map<String, IsbnQueue> queues = new ConcurrentHashMap<>();
+
+    // Local changes committed while a reload runs (null otherwise), replayed onto the reloaded queues
+    private List<Consumer<Map<String, IsbnQueue>>> changesDuringReload;
+
+    @PostConstruct
+    public void rebuild() {
+        int reservations = reload();
+        log.info("Reservation queue index rebuilt with {} active reservations across {} books",
+                reservations, queues.size());
+    }
+
+    @Scheduled(fixedDelayString = "${reservations.queue-index.reload-ms:60000}",
+               initialDelayString = "${reservations.queue-index.reload-ms:60000}")
+    public void scheduledReload() {
+        try {
+            int reservations = reload();
+            log.debug("Reservation queue index reloaded with {} active reservations", reservations);
+        } catch (Exception e) {
+            log.error("Error reloading the reservation queue index", e);
+        }
+    }
+
+    // Replace the queues with the database state; returns the number of active reservations loaded
+    synchronized int reload() {
+        synchronized (queues) {
+            changesDuringReload = new ArrayList<>();
+        }
+        try {
+            List<Reservation> activeReservations = reservationRepository
+                    .findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus.ACTIVE);
+            Map<String, IsbnQueue> reloaded = new HashMap<>();
+            for (Reservation reservation : activeReservations) {
+                add(reloaded, reservation.getBookIsbn(), reservation.getId(), reservation.getUserId());
+            }
+
+            synchronized (queues) {
+                changesDuringReload.forEach(change -> change.accept(reloaded));
+                queues.putAll(reloaded);
+                queues.keySet().retainAll(reloaded.keySet());
+            }
+            return activeReservations.size();
+        } finally {
+            synchronized (queues) {
+                changesDuringReload = null;
+            }
+        }
+    }
+
+    // Check if book has active reservations
+    public boolean hasActiveReservations(String isbn) {
+        IsbnQueue queue = queues.get(isbn);
+        return queue != null && !queue.isEmpty();
+    }
+
+    // Get the user at the head of the queue, or null if nobody is waiting
+    public Long getNextUserInQueue(String isbn) {
+        IsbnQueue queue = queues.get(isbn);
+        return queue != null ? queue.head() : null;
+    }
+
+    // 1-based position of a reservation in its book's queue, or 0 if it is not queued
+    public int getQueuePosition(String isbn, Long reservationId) {
+        IsbnQueue queue = queues.get(isbn);
+        return queue != null ? queue.position(reservationId) : 0;
+    }
+
+    // Record a new ACTIVE reservation once the surrounding transaction commits
+    public void onReserved(Reservation reservation) {
+        String isbn = reservation.getBookIsbn();
+        Long reservationId = reservation.getId();
+        Long userId = reservation.getUserId();
+        AfterCommit.run(() -> add(isbn, reservationId, userId));
+    }
+
+    // Drop a reservation that was cancelled, fulfilled or expired once the surrounding transaction commits
+    public void onRemoved(Reservation reservation) {
+        String isbn = reservation.getBookIsbn();
+        Long reservationId = reservation.getId();
+        AfterCommit.run(() -> remove(isbn, reservationId));
+    }
+
+    // Drop a batch of reservations (bulk expiry) once the surrounding transaction commits
+    public void onRemoved(Collection<Reservation> reservations) {
+        List<Reservation> removed = List.copyOf(reservations);
+        AfterCommit.run(() -> removed.forEach(reservation -> remove(reservation.getBookIsbn(), reservation.getId())));
+    }
+
+    private void add(String isbn, Long reservationId, Long userId) {
+        apply(target -> add(target, isbn, reservationId, userId));
+    }
+
+    private void remove(String isbn, Long reservationId) {
+        apply(target -> remove(target, isbn, reservationId));
+    }
+
+    private void apply(Consumer<Map<String, IsbnQueue>> change) {
+        synchronized (queues) {
+            change.accept(queues);
+            if (changesDuringReload != null) {
+                changesDuringReload.add(change);
+            }
+        }
+    }
+
+    private static void add(Map<String, IsbnQueue> target, String isbn, Long reservationId, Long userId) {
+        target.computeIfAbsent(isbn, key -> new IsbnQueue()).add(reservationId, userId);
+    }
+
+    private static void remove(Map<String, IsbnQueue> target, String isbn, Long reservationId) {
+        IsbnQueue queue = target.get(isbn);
+        if (queue != null) {
+            queue.remove(reservationId);
+            if (queue.isEmpty()) {
+                target.remove(isbn);
+            }
+        }
+    }
+
+    private static final class IsbnQueue {
+
+        private final LinkedHashMap<Long, Long> userIdsByReservationId = new LinkedHashMap<>();
+
+        synchronized void add(Long reservationId, Long userId) {
+            userIdsByReservationId.putIfAbsent(reservationId, userId);
+        }
+
+        synchronized void remove(Long reservationId) {
+            userIdsByReservationId.remove(reservationId);
+        }
+
+        synchronized Long head() {
+            Iterator<Long> userIds = userIdsByReservationId.values().iterator();
+            return userIds.hasNext() ? userIds.next() : null;
+        }
+
+        synchronized int position(Long reservationId) {
+            int position = 1;
+            for (Long queuedId : userIdsByReservationId.keySet()) {
+                if (queuedId.equals(reservationId)) {
+                    return position;
+                }
+                position++;
+            }
+            return 0;
+        }
+
+        synchronized boolean isEmpty() {
+            return userIdsByReservationId.isEmpty();
+        }
+    }
+}
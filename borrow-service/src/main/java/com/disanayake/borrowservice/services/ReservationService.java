@@ -3,6 +3,7 @@ package com.disanayake.borrowservice.services;
 import com.disanayake.borrowservice.dto.*;
 import com.disanayake.borrowservice.entities.Reservation;
 import com.disanayake.borrowservice.repositories.ReservationRepository;
+import com.disanayake.borrowservice.repositories.UserLockRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -11,6 +12,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -23,8 +26,13 @@ public class ReservationService {
     private final ReservationRepository reservationRepository;
     private final UserValidationService userValidationService;
     private final BookService bookService;
+    private final ReservationQueueIndex reservationQueueIndex;
+    private final UserActivityCounters userActivityCounters;
+    private final StudentDashboardService studentDashboardService;
+    private final IsbnLanes isbnLanes;
+    private final UserLockRepository userLockRepository;
     
-    private static final int MAX_RESERVATIONS_PER_USER = 5;
+    static final int MAX_RESERVATIONS_PER_USER = 5;
     private static final int RESERVATION_EXPIRY_DAYS = 7;
     
     // Student reserves a book
@@ -47,22 +55,30 @@ public class ReservationService {
             throw new IllegalArgumentException("User account is not active");
         }
         
+        // Check reservation limit (fast reject from the counters, enforced again under the user's lock)
+        if (userActivityCounters.getActiveReservations(request.getUserId()) >= MAX_RESERVATIONS_PER_USER) {
+            throw new IllegalStateException("User has reached maximum reservation limit of " + MAX_RESERVATIONS_PER_USER);
+        }
+        
         // Validate book
         BookResponse book = bookService.getBookByIsbn(request.getIsbn());
         if (book == null) {
             throw new IllegalArgumentException("Book not found with ISBN: " + request.getIsbn());
         }
         
+        // Queue behind other reservations and checkouts of this title until this transaction completes,
+        // then check the user's reservations under their lock with a read that sees the latest commits
+        isbnLanes.enter(request.getIsbn());
+        userLockRepository.lock(request.getUserId(), LocalDateTime.now());
+        List<Reservation> activeReservations = reservationRepository.findActiveReservationsForUpdate(request.getUserId());
+        
         // Check if user already has an active reservation for this book
-        if (reservationRepository.findByUserIdAndBookIsbnAndStatus(
-                request.getUserId(), request.getIsbn(), Reservation.ReservationStatus.ACTIVE).isPresent()) {
+        if (activeReservations.stream().anyMatch(r -> r.getBookIsbn().equals(request.getIsbn()))) {
             throw new IllegalStateException("User already has an active reservation for this book");
         }
         
-        // Check reservation limit
-        long activeReservations = reservationRepository.countByUserIdAndStatus(
-                request.getUserId(), Reservation.ReservationStatus.ACTIVE);
-        if (activeReservations >= MAX_RESERVATIONS_PER_USER) {
+        // Check reservation limit against the latest reservations
+        if (activeReservations.size() >= MAX_RESERVATIONS_PER_USER) {
             throw new IllegalStateException("User has reached maximum reservation limit of " + MAX_RESERVATIONS_PER_USER);
         }
         
@@ -77,12 +93,16 @@ public class ReservationService {
                 .build();
         
         reservation = reservationRepository.save(reservation);
+        reservationQueueIndex.onReserved(reservation);
+        userActivityCounters.recordReservationTransition(reservation.getUserId(), null, Reservation.ReservationStatus.ACTIVE);
+        studentDashboardService.onReservationOpened(reservation, book);
         
         log.info("Reservation created successfully with ID: {}", reservation.getId());
         return mapToReservationResponse(reservation, book);
     }
     
     // Get user's reservations
+    @Transactional(readOnly = true)
     public Page<ReservationResponse> getUserReservations(Long userId, Pageable pageable) {
         // Validate user
         UserValidationResponse userValidation = userValidationService.validateUser(userId);
@@ -147,6 +167,10 @@ public class ReservationService {
         
         reservation.setStatus(Reservation.ReservationStatus.CANCELLED);
         reservation = reservationRepository.save(reservation);
+        reservationQueueIndex.onRemoved(reservation);
+        userActivityCounters.recordReservationTransition(userId, 
+                Reservation.ReservationStatus.ACTIVE, Reservation.ReservationStatus.CANCELLED);
+        studentDashboardService.onReservationsClosed(List.of(reservationId));
         
         BookResponse book = bookService.getBookByIsbn(reservation.getBookIsbn());
         log.info("Reservation {} cancelled successfully", reservationId);
@@ -162,43 +186,50 @@ public class ReservationService {
             if (reservation.getBookIsbn().equals(isbn)) {
                 reservation.setStatus(Reservation.ReservationStatus.FULFILLED);
                 reservationRepository.save(reservation);
+                reservationQueueIndex.onRemoved(reservation);
+                userActivityCounters.recordReservationTransition(userId, 
+                        Reservation.ReservationStatus.ACTIVE, Reservation.ReservationStatus.FULFILLED);
+                studentDashboardService.onReservationsClosed(List.of(reservation.getId()));
                 log.info("Reservation {} fulfilled for user {} and book {}", reservation.getId(), userId, isbn);
                 break;
             }
         }
     }
     
-    // Update expired reservations
-    public void updateExpiredReservations() {
-        List<Reservation> expiredReservations = reservationRepository.findExpiredReservations(LocalDate.now());
-        
-        for (Reservation reservation : expiredReservations) {
-            reservation.setStatus(Reservation.ReservationStatus.EXPIRED);
-            reservationRepository.save(reservation);
-            log.info("Reservation {} expired for user {} and book {}", 
-                    reservation.getId(), reservation.getUserId(), reservation.getBookIsbn());
+    // Fulfill the user's reservations for several books at once - called by cart checkout
+    public void fulfillReservations(Long userId, Collection<String> isbns) {
+        List<Reservation> fulfilled = reservationRepository.findByUserIdAndStatus(userId, Reservation.ReservationStatus.ACTIVE)
+                .stream()
+                .filter(reservation -> isbns.contains(reservation.getBookIsbn()))
+                .collect(Collectors.toList());
+        
+        for (Reservation reservation : fulfilled) {
+            reservation.setStatus(Reservation.ReservationStatus.FULFILLED);
+            reservationQueueIndex.onRemoved(reservation);
+            userActivityCounters.recordReservationTransition(userId, 
+                    Reservation.ReservationStatus.ACTIVE, Reservation.ReservationStatus.FULFILLED);
         }
+        reservationRepository.saveAll(fulfilled);
+        studentDashboardService.onReservationsClosed(fulfilled.stream().map(Reservation::getId).collect(Collectors.toList()));
         
-        log.info("Updated {} expired reservations", expiredReservations.size());
+        if (!fulfilled.isEmpty()) {
+            log.info("Fulfilled {} reservations for user {}", fulfilled.size(), userId);
+        }
     }
     
     // Get next user in reservation queue for a book
+    // Served from the in-memory queue index, so no query is issued on the checkout path
     public Long getNextUserInQueue(String isbn) {
-        List<Reservation> activeReservations = reservationRepository.findActiveReservationsForBook(isbn);
-        
-        if (!activeReservations.isEmpty()) {
-            return activeReservations.get(0).getUserId(); // First in queue
-        }
-        
-        return null;
+        return reservationQueueIndex.getNextUserInQueue(isbn);
     }
     
     // Check if book has active reservations
     public boolean hasActiveReservations(String isbn) {
-        return reservationRepository.countByBookIsbnAndStatus(isbn, Reservation.ReservationStatus.ACTIVE) > 0;
+        return reservationQueueIndex.hasActiveReservations(isbn);
     }
     
     // Get all reservations (for admin/librarian)
+    @Transactional(readOnly = true)
     public Page<ReservationResponse> getAllReservations(Pageable pageable) {
         Page<Reservation> reservations = reservationRepository.findAll(pageable);
         
@@ -1,42 +1,72 @@
 package com.disanayake.borrowservice.services;
 
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ScheduledTaskService {
     
     private final BorrowService borrowService;
+    private final LoanDueDateIndex loanDueDateIndex;
+    private final BorrowRecordRepository borrowRecordRepository;
+    
+    // Loans flagged per transaction
+    static final int OVERDUE_CHUNK_SIZE = 500;
     
     /**
-     * Runs every day at 2:00 AM to check for overdue books and create fines
+     * Runs every minute and flags loans whose due date has just passed, using the in-memory due date index.
+     * Costs nothing when no loan has gone past due, so it replaces the hourly table scan; the daily
+     * overdue sweep below catches loans the index does not know about.
      */
-    @Scheduled(cron = "0 0 2 * * ?")
-    public void checkOverdueBooks() {
-        log.info("Starting daily overdue books check...");
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void overdueTick() {
+        List<Long> dueLoanIds = loanDueDateIndex.getLoansDueBefore(LocalDate.now());
+        if (dueLoanIds.isEmpty()) {
+            return;
+        }
+        log.info("Processing {} loans that have gone past due...", dueLoanIds.size());
         try {
-            borrowService.updateOverdueStatus();
-            log.info("Daily overdue books check completed successfully");
+            int flagged = markOverdueInChunks(dueLoanIds);
+            log.info("Overdue tick completed: {} loans flagged as overdue", flagged);
         } catch (Exception e) {
-            log.error("Error during daily overdue books check", e);
+            log.error("Error during overdue tick", e);
         }
     }
     
     /**
-     * Runs every hour during business hours (9 AM to 6 PM) to check for overdue books
+     * Daily backstop for the tick: flags every ACTIVE loan past due in the database, including loans
+     * checked out on another instance or whose index update was lost between commit and callback,
+     * then rebuilds the due date index so the tick tracks such loans from now on.
      */
-    @Scheduled(cron = "0 0 9-18 * * MON-FRI")
-    public void hourlyOverdueCheck() {
-        log.info("Starting hourly overdue books check...");
+    @Scheduled(cron = "${loans.overdue-sweep.cron:0 15 0 * * ?}")
+    public void overdueSweep() {
         try {
-            borrowService.updateOverdueStatus();
-            log.info("Hourly overdue books check completed successfully");
+            List<Long> overdueLoanIds = borrowRecordRepository.findOverdueLoanIds(LocalDate.now());
+            int flagged = markOverdueInChunks(overdueLoanIds);
+            loanDueDateIndex.rebuild();
+            log.info("Overdue sweep completed: {} loans flagged as overdue", flagged);
         } catch (Exception e) {
-            log.error("Error during hourly overdue books check", e);
+            log.error("Error during overdue sweep", e);
+        }
+    }
+    
+    // One transaction per chunk; a chunk is dropped from the index once committed, including loans that were
+    // no longer ACTIVE. A failed chunk stops the run and stays in the index for the next tick.
+    int markOverdueInChunks(List<Long> loanIds) {
+        int flagged = 0;
+        for (int from = 0; from < loanIds.size(); from += OVERDUE_CHUNK_SIZE) {
+            List<Long> chunk = loanIds.subList(from, Math.min(from + OVERDUE_CHUNK_SIZE, loanIds.size()));
+            flagged += borrowService.markLoansOverdue(chunk);
+            loanDueDateIndex.removeAll(chunk);
         }
+        return flagged;
     }
 }
\ No newline at end of file
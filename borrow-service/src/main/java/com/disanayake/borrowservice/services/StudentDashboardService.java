@@ -0,0 +1,215 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.StudentDashboardResponse;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.DashboardItem;
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.DashboardItemRepository;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains and serves the student dashboard read model (student_dashboard_items).
+ * Loan and reservation changes update it in the same transaction, with book details copied in at
+ * the time the loan or reservation is made, so reading a dashboard is one indexed query with no
+ * user-service or book-service calls. Queue positions and fine estimates change with time and
+ * other students' actions, so they are computed on read from memory.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StudentDashboardService {
+
+    // Loan statuses that keep a book on the student's dashboard
+    private static final Set<BorrowRecord.BorrowStatus> OPEN_LOAN_STATUSES = EnumSet.of(
+            BorrowRecord.BorrowStatus.ACTIVE, BorrowRecord.BorrowStatus.RENEWED, BorrowRecord.BorrowStatus.OVERDUE);
+    // Book-service batch lookup limit
+    private static final int BOOK_LOOKUP_CHUNK_SIZE = 500;
+
+    private final DashboardItemRepository dashboardItemRepository;
+    private final BorrowRecordRepository borrowRecordRepository;
+    private final ReservationRepository reservationRepository;
+    private final ReservationQueueIndex reservationQueueIndex;
+    private final BookService bookService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Transactional(readOnly = true)
+    public StudentDashboardResponse getDashboard(Long userId) {
+        LocalDate today = LocalDate.now();
+        List<StudentDashboardResponse.LoanItem> loans = new ArrayList<>();
+        List<StudentDashboardResponse.ReservationItem> reservations = new ArrayList<>();
+        double outstandingFineEstimate = 0.0;
+
+        for (DashboardItem item : dashboardItemRepository.findByUserIdOrderByDueDateAscIdAsc(userId)) {
+            if (item.getItemType() == DashboardItem.ItemType.LOAN) {
+                long daysOverdue = today.isAfter(item.getDueDate()) ? ChronoUnit.DAYS.between(item.getDueDate(), today) : 0;
+                double fineEstimate = daysOverdue * BorrowService.FINE_PER_DAY;
+                outstandingFineEstimate += fineEstimate;
+                loans.add(StudentDashboardResponse.LoanItem.builder()
+                        .borrowRecordId(item.getRefId())
+                        .isbn(item.getBookIsbn())
+                        .title(item.getBookTitle())
+                        .author(item.getBookAuthor())
+                        .borrowDate(item.getStartDate())
+                        .dueDate(item.getDueDate())
+                        .status(item.getStatus())
+                        .daysOverdue(daysOverdue)
+                        .fineEstimate(fineEstimate)
+                        .build());
+            } else {
+                reservations.add(StudentDashboardResponse.ReservationItem.builder()
+                        .reservationId(item.getRefId())
+                        .isbn(item.getBookIsbn())
+                        .title(item.getBookTitle())
+                        .author(item.getBookAuthor())
+                        .reservationDate(item.getStartDate())
+                        .expiryDate(item.getDueDate())
+                        .queuePosition(reservationQueueIndex.getQueuePosition(item.getBookIsbn(), item.getRefId()))
+                        .build());
+            }
+        }
+
+        return StudentDashboardResponse.builder()
+                .userId(userId)
+                .loans(loans)
+                .reservations(reservations)
+                .outstandingFineEstimate(outstandingFineEstimate)
+                .build();
+    }
+
+    // ========== Incremental updates, called inside the loan/reservation transaction ==========
+
+    public void onLoansOpened(Collection<BorrowRecord> borrowRecords, Map<String, BookResponse> books) {
+        dashboardItemRepository.saveAll(borrowRecords.stream()
+                .map(borrowRecord -> loanItem(borrowRecord, books.get(borrowRecord.getBookIsbn())))
+                .collect(Collectors.toList()));
+    }
+
+    public void onLoanOpened(BorrowRecord borrowRecord, BookResponse book) {
+        dashboardItemRepository.save(loanItem(borrowRecord, book));
+    }
+
+    // Renewal moves the due date; the overdue transition only changes the status
+    public void onLoanUpdated(BorrowRecord borrowRecord) {
+        dashboardItemRepository.updateLoan(borrowRecord.getId(), borrowRecord.getStatus().name(), borrowRecord.getDueDate());
+    }
+
+    // Bulk renewal: every loan in the batch gets the same new due date
+    public void onLoansRenewed(Collection<Long> borrowRecordIds, LocalDate newDueDate) {
+        if (!borrowRecordIds.isEmpty()) {
+            dashboardItemRepository.updateLoans(borrowRecordIds, BorrowRecord.BorrowStatus.RENEWED.name(), newDueDate);
+        }
+    }
+
+    public void onLoansOverdue(Collection<Long> borrowRecordIds) {
+        if (!borrowRecordIds.isEmpty()) {
+            dashboardItemRepository.updateLoanStatus(borrowRecordIds, BorrowRecord.BorrowStatus.OVERDUE.name());
+        }
+    }
+
+    public void onLoansClosed(Collection<Long> borrowRecordIds) {
+        if (!borrowRecordIds.isEmpty()) {
+            dashboardItemRepository.deleteByItemTypeAndRefIdIn(DashboardItem.ItemType.LOAN, borrowRecordIds);
+        }
+    }
+
+    public void onReservationOpened(Reservation reservation, BookResponse book) {
+        dashboardItemRepository.save(reservationItem(reservation, book));
+    }
+
+    public void onReservationsClosed(Collection<Long> reservationIds) {
+        if (!reservationIds.isEmpty()) {
+            dashboardItemRepository.deleteByItemTypeAndRefIdIn(DashboardItem.ItemType.RESERVATION, reservationIds);
+        }
+    }
+
+    // ========== Backfill ==========
+
+    // Populate the read model on first start after it is introduced
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (dashboardItemRepository.count() > 0) {
+            return;
+        }
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> rebuild());
+        } catch (Exception e) {
+            log.error("Failed to backfill student dashboard read model", e);
+        }
+    }
+
+    // Recreate every row from the loan and reservation tables, looking books up in batches
+    @Transactional
+    public void rebuild() {
+        List<BorrowRecord> openLoans = borrowRecordRepository.findByStatusIn(OPEN_LOAN_STATUSES);
+        List<Reservation> activeReservations = reservationRepository
+                .findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus.ACTIVE);
+
+        List<String> isbns = new ArrayList<>();
+        openLoans.forEach(borrowRecord -> isbns.add(borrowRecord.getBookIsbn()));
+        activeReservations.forEach(reservation -> isbns.add(reservation.getBookIsbn()));
+        List<String> distinctIsbns = isbns.stream().distinct().collect(Collectors.toList());
+        Map<String, BookResponse> books = new HashMap<>();
+        for (int i = 0; i < distinctIsbns.size(); i += BOOK_LOOKUP_CHUNK_SIZE) {
+            books.putAll(bookService.getBooksByIsbns(
+                    distinctIsbns.subList(i, Math.min(i + BOOK_LOOKUP_CHUNK_SIZE, distinctIsbns.size()))));
+        }
+
+        List<DashboardItem> items = new ArrayList<>();
+        openLoans.forEach(borrowRecord -> items.add(loanItem(borrowRecord, books.get(borrowRecord.getBookIsbn()))));
+        activeReservations.forEach(reservation -> items.add(reservationItem(reservation, books.get(reservation.getBookIsbn()))));
+
+        dashboardItemRepository.deleteAllInBatch();
+        dashboardItemRepository.saveAll(items);
+        log.info("Student dashboard read model rebuilt with {} loans and {} reservations",
+                openLoans.size(), activeReservations.size());
+    }
+
+    private static DashboardItem loanItem(BorrowRecord borrowRecord, BookResponse book) {
+        return DashboardItem.builder()
+                .userId(borrowRecord.getUserId())
+                .itemType(DashboardItem.ItemType.LOAN)
+                .refId(borrowRecord.getId())
+                .bookIsbn(borrowRecord.getBookIsbn())
+                .bookTitle(book != null ? book.getTitle() : null)
+                .bookAuthor(book != null ? book.getAuthor() : null)
+                .startDate(borrowRecord.getBorrowDate())
+                .dueDate(borrowRecord.getDueDate())
+                .status(borrowRecord.getStatus().name())
+                .build();
+    }
+
+    private static DashboardItem reservationItem(Reservation reservation, BookResponse book) {
+        return DashboardItem.builder()
+                .userId(reservation.getUserId())
+                .itemType(DashboardItem.ItemType.RESERVATION)
+                .refId(reservation.getId())
+                .bookIsbn(reservation.getBookIsbn())
+                .bookTitle(book != null ? book.getTitle() : null)
+                .bookAuthor(book != null ? book.getAuthor() : null)
+                .startDate(reservation.getReservationDate())
+                .dueDate(reservation.getExpiryDate())
+                .status(reservation.getStatus().name())
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-user counts of ACTIVE loans and ACTIVE reservations, so the account summary and the early limit
+ * checks are O(1) lookups instead of a COUNT query each time.
+ * A user's counts are loaded from the database on first use, moved by each committed status change
+ * and periodically reconciled against the tables to correct any drift.
+ *
+ * The counts are per instance and miss other instances' changes until the next reconcile, so they
+ * only reject requests that are certainly over a limit. The limits themselves are enforced against
+ * the tables, under the user's row in user_locks (see BorrowService and ReservationService).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserActivityCounters {
+
+    private final BorrowRecordRepository borrowRecordRepository;
+    private final ReservationRepository reservationRepository;
+
+    // Users per reconcile query
+    static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    private final Map<Long, Counts> countsByUserId = new ConcurrentHashMap<>();
+
+    public int getActiveLoans(Long userId) {
+        return counts(userId).activeLoans.get();
+    }
+
+    public int getActiveReservations(Long userId) {
+        return counts(userId).activeReservations.get();
+    }
+
+    // Record a loan status change (from is null for a new loan) once the surrounding transaction commits
+    public void recordLoanTransition(Long userId, BorrowRecord.BorrowStatus from, BorrowRecord.BorrowStatus to) {
+        int delta = delta(from == BorrowRecord.BorrowStatus.ACTIVE, to == BorrowRecord.BorrowStatus.ACTIVE);
+        if (delta != 0) {
+            AfterCommit.run(() -> adjust(userId, delta, 0));
+        }
+    }
+
+    // Record several new ACTIVE loans for one user at once (cart checkout)
+    public void recordLoansCreated(Long userId, int count) {
+        if (count > 0) {
+            AfterCommit.run(() -> adjust(userId, count, 0));
+        }
+    }
+
+    // Record a batch of ACTIVE loans leaving that state (bulk renewal), one entry per loan
+    public void recordLoansClosed(Collection<Long> userIds) {
+        Map<Long, Integer> closedByUser = new HashMap<>();
+        userIds.forEach(userId -> closedByUser.merge(userId, 1, Integer::sum));
+        AfterCommit.run(() -> closedByUser.forEach((userId, closed) -> adjust(userId, -closed, 0)));
+    }
+
+    // Record a reservation status change (from is null for a new reservation) once the surrounding transaction commits
+    public void recordReservationTransition(Long userId, Reservation.ReservationStatus from, Reservation.ReservationStatus to) {
+        int delta = delta(from == Reservation.ReservationStatus.ACTIVE, to == Reservation.ReservationStatus.ACTIVE);
+        if (delta != 0) {
+            AfterCommit.run(() -> adjust(userId, 0, delta));
+        }
+    }
+
+    // Record a batch of ACTIVE reservations leaving that state (bulk expiry), one entry per reservation
+    public void recordReservationsClosed(Collection<Long> userIds) {
+        Map<Long, Integer> closedByUser = new HashMap<>();
+        userIds.forEach(userId -> closedByUser.merge(userId, 1, Integer::sum));
+        AfterCommit.run(() -> closedByUser.forEach((userId, closed) -> adjust(userId, 0, -closed)));
+    }
+
+    // Every 15 minutes, overwrite the loaded users' counts with the real ones: two indexed GROUP BY
+    // queries per chunk of loaded users, never a scan over every user
+    @Scheduled(fixedDelay = 900000, initialDelay = 900000)
+    public void reconcile() {
+        if (countsByUserId.isEmpty()) {
+            return;
+        }
+
+        List<Long> userIds = new ArrayList<>(countsByUserId.keySet());
+        int corrected = 0;
+        for (int from = 0; from < userIds.size(); from += RECONCILE_CHUNK_SIZE) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + RECONCILE_CHUNK_SIZE, userIds.size()));
+            Map<Long, Integer> loans = toMap(borrowRecordRepository.countByStatusGroupByUserId(BorrowRecord.BorrowStatus.ACTIVE, chunk));
+            Map<Long, Integer> reservations = toMap(reservationRepository.countByStatusGroupByUserId(Reservation.ReservationStatus.ACTIVE, chunk));
+
+            for (Long userId : chunk) {
+                Counts counts = countsByUserId.get(userId);
+                if (counts == null) {
+                    continue;
+                }
+                int actualLoans = loans.getOrDefault(userId, 0);
+                int actualReservations = reservations.getOrDefault(userId, 0);
+                boolean drifted = counts.activeLoans.getAndSet(actualLoans) != actualLoans;
+                drifted |= counts.activeReservations.getAndSet(actualReservations) != actualReservations;
+                if (drifted) {
+                    corrected++;
+                }
+            }
+        }
+
+        if (corrected > 0) {
+            log.warn("Reconciled user counters: corrected {} of {} users", corrected, countsByUserId.size());
+        } else {
+            log.debug("Reconciled user counters for {} users, no drift", countsByUserId.size());
+        }
+    }
+
+    private Counts counts(Long userId) {
+        Counts counts = countsByUserId.get(userId);
+        if (counts != null) {
+            return counts;
+        }
+        // Load outside the map so a slow query does not block other users; the first loader wins
+        Counts loaded = new Counts(
+                (int) borrowRecordRepository.countByUserIdAndStatus(userId, BorrowRecord.BorrowStatus.ACTIVE),
+                (int) reservationRepository.countByUserIdAndStatus(userId, Reservation.ReservationStatus.ACTIVE));
+        Counts existing = countsByUserId.putIfAbsent(userId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    // Only users already loaded are adjusted; anyone else reads fresh counts on first use
+    private void adjust(Long userId, int loanDelta, int reservationDelta) {
+        Counts counts = countsByUserId.get(userId);
+        if (counts == null) {
+            return;
+        }
+        if (loanDelta != 0) {
+            counts.activeLoans.updateAndGet(value -> Math.max(0, value + loanDelta));
+        }
+        if (reservationDelta != 0) {
+            counts.activeReservations.updateAndGet(value -> Math.max(0, value + reservationDelta));
+        }
+    }
+
+    private static int delta(boolean wasActive, boolean isActive) {
+        return (isActive ? 1 : 0) - (wasActive ? 1 : 0);
+    }
+
+    private static Map<Long, Integer> toMap(List<Object[]> rows) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        }
+        return counts;
+    }
+
+    private static final class Counts {
+
+        private final AtomicInteger activeLoans;
+        private final AtomicInteger activeReservations;
+
+        Counts(int activeLoans, int activeReservations) {
+            this.activeLoans = new AtomicInteger(activeLoans);
+            this.activeReservations = new AtomicInteger(activeReservations);
+        }
+    }
+}
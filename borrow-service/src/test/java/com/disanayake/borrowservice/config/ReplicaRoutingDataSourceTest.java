@@ -0,0 +1,82 @@
+package com.disanayake.borrowservice.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private DataSource replica;
+    private DataSource primary;
+    private Connection replicaConnection;
+    private Connection primaryConnection;
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        replica = mock(DataSource.class);
+        primary = mock(DataSource.class);
+        replicaConnection = mock(Connection.class);
+        primaryConnection = mock(Connection.class);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection("reporting", "secret")).thenReturn(replicaConnection);
+        when(primary.getConnection("reporting", "secret")).thenReturn(primaryConnection);
+        routing = new ReplicaRoutingDataSource(replica, primary, 10);
+    }
+
+    @Test
+    void readsUsePrimaryUntilReplicaPassesCheck() throws SQLException {
+        assertSame(primaryConnection, routing.getConnection());
+        assertSame(primaryConnection, routing.getConnection("reporting", "secret"));
+    }
+
+    @Test
+    void readsUseReplicaWithinLagTolerance() throws SQLException {
+        replicaReports(3L);
+        routing.checkReplica();
+
+        assertTrue(routing.isReplicaUsable());
+        assertSame(replicaConnection, routing.getConnection());
+        assertSame(replicaConnection, routing.getConnection("reporting", "secret"));
+    }
+
+    @Test
+    void laggingReplicaIsTakenOutOfRotation() throws SQLException {
+        replicaReports(3L);
+        routing.checkReplica();
+        replicaReports(60L);
+        routing.checkReplica();
+
+        assertFalse(routing.isReplicaUsable());
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void credentialedConnectionFallsBackToPrimaryWhenReplicaRefuses() throws SQLException {
+        replicaReports(0L);
+        routing.checkReplica();
+        when(replica.getConnection("reporting", "secret")).thenThrow(new SQLException("refused"));
+
+        assertSame(primaryConnection, routing.getConnection("reporting", "secret"));
+        assertFalse(routing.isReplicaUsable());
+    }
+
+    private void replicaReports(Long lagSeconds) throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet status = mock(ResultSet.class);
+        when(replicaConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery("SHOW REPLICA STATUS")).thenReturn(status);
+        when(status.next()).thenReturn(true);
+        when(status.getLong("Seconds_Behind_Source")).thenReturn(lagSeconds);
+        when(status.wasNull()).thenReturn(false);
+    }
+}
@@ -0,0 +1,489 @@
+package com.disanayake.borrowservice.perf;
+
+import com.disanayake.borrowservice.repositories.OutboxMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test of the checkout, renew and return flow. Boots the whole service, with book-,
+ * user- and payment-service replaced by in-process stubs, and drives each operation over HTTP from a
+ * pool of concurrent clients. Reports throughput, p50/p99 latency and SQL statements per operation,
+ * counting the statements of outbox deliveries the operation caused.
+ *
+ * A second scenario measures a single hot key: every client checks out, returns and then reserves
+ * the same ISBN, as when a course textbook is released. Those requests queue in the ISBN's lane
+ * (IsbnLanes); run once more with PERF_ISBN_LANES=false to compare against the database alone.
+ *
+ * It is tagged "perf" and left out of the normal build; run it with the perf profile:
+ * mvn test -Pperf -Dtest=CheckoutReturnLoadTest
+ * Without PERF_DB_URL it runs against an in-memory H2 database in MySQL mode, and fails when an
+ * operation issues more SQL statements per request than its committed baseline in
+ * perf/checkout-return-baseline.properties allows (PERF_STATEMENT_TOLERANCE, default 0.05). The
+ * counts shift a little from run to run with how the concurrent clients interleave (lock waits,
+ * outbox retries), so compare them before and after a change rather than against a fixed number.
+ * p99 latency is only checked against a real MySQL database, given with PERF_DB_URL on the machine
+ * the baselines were recorded on, and fails when slower than its baseline by more than
+ * PERF_TOLERANCE (default 0.25), e.g.
+ * PERF_DB_URL=jdbc:mysql://localhost:3306/borrow_perf_test?createDatabaseIfNotExist=true
+ * PERF_DB_USERNAME=root PERF_DB_PASSWORD=password mvn test -Pperf -Dtest=CheckoutReturnLoadTest
+ *
+ * The test never writes to the source tree. PERF_RECORD_BASELINE=true measures without comparing and
+ * writes the baselines of the database in use to target/perf/; review them and copy them into
+ * src/test/resources/perf/ after an intended change.
+ * Load shape: PERF_STUDENTS (200), PERF_LOANS_PER_STUDENT (3), PERF_CONCURRENCY (16), PERF_STUB_LATENCY_MS (5),
+ * PERF_HOT_STUDENTS (200).
+ */
+@Tag("perf")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(CheckoutReturnLoadTest.StatementCountingConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CheckoutReturnLoadTest {
+
+    private static final String BASELINE_RESOURCE = "/perf/checkout-return-baseline.properties";
+    private static final Path RECORDED_BASELINE_FILE = Path.of("target/perf/checkout-return-baseline.properties");
+    private static final String DB_URL = System.getenv("PERF_DB_URL");
+    // Baselines are kept per database: statement counts can differ with the dialect, latency differs by far
+    private static final String DATABASE = DB_URL == null || DB_URL.isBlank() ? "h2" : "mysql";
+
+    private static final long LIBRARIAN_ID = 1L;
+    private static final int STUDENTS = intEnv("PERF_STUDENTS", 200);
+    // At least two: the first loan of each student is renewed, the rest are returned (a renewed loan is no longer ACTIVE)
+    private static final int LOANS_PER_STUDENT = Math.max(2, intEnv("PERF_LOANS_PER_STUDENT", 3));
+    private static final int CONCURRENCY = intEnv("PERF_CONCURRENCY", 16);
+    private static final int WARMUP_STUDENTS = 20;
+    private static final int HOT_STUDENTS = intEnv("PERF_HOT_STUDENTS", 200);
+    private static final String HOT_CHECKOUT_ISBN = "9789990000001";
+    private static final String HOT_RESERVE_ISBN = "9789990000002";
+    private static final double TOLERANCE = Double.parseDouble(System.getenv().getOrDefault("PERF_TOLERANCE", "0.25"));
+    private static final double STATEMENT_TOLERANCE =
+            Double.parseDouble(System.getenv().getOrDefault("PERF_STATEMENT_TOLERANCE", "0.05"));
+    private static final boolean RECORD_BASELINE = "true".equalsIgnoreCase(System.getenv("PERF_RECORD_BASELINE"));
+    // Longest wait for the outbox deliveries of one measured run
+    private static final long OUTBOX_DRAIN_TIMEOUT_MILLIS = 30_000;
+
+    private static final ServiceStubs STUBS = ServiceStubs.start(intEnv("PERF_STUB_LATENCY_MS", 5), LIBRARIAN_ID);
+    private static final AtomicLong STATEMENTS = new AtomicLong();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.application.name", () -> "borrow-service-perf");
+        if ("h2".equals(DATABASE)) {
+            registry.add("spring.datasource.url",
+                    () -> "jdbc:h2:mem:borrow_perf;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+            registry.add("spring.datasource.driver-class-name", () -> "org.h2.Driver");
+            registry.add("spring.datasource.username", () -> "sa");
+            registry.add("spring.datasource.password", () -> "");
+            registry.add("spring.jpa.database-platform", () -> "org.hibernate.dialect.H2Dialect");
+        } else {
+            registry.add("spring.datasource.url", () -> DB_URL);
+            registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("PERF_DB_USERNAME", "root"));
+            registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("PERF_DB_PASSWORD", ""));
+        }
+        // One pool, so every statement is counted exactly once
+        registry.add("datasource.replica.url", () -> "");
+        registry.add("server.port", () -> "0");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> Math.max(10, CONCURRENCY));
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("services.user-service.url", STUBS::url);
+        registry.add("services.book-service.url", STUBS::url);
+        registry.add("services.payment-service.url", STUBS::url);
+        registry.add("loans.isbn-lanes.enabled", () -> System.getenv().getOrDefault("PERF_ISBN_LANES", "true"));
+        // Per-request DEBUG logging would dominate the measurements
+        registry.add("logging.level.com.disanayake.borrowservice", () -> "WARN");
+        registry.add("logging.level.org.springframework.web", () -> "WARN");
+    }
+
+    @AfterAll
+    void stopStubs() {
+        STUBS.stop();
+    }
+
+    @Test
+    void checkoutRenewAndReturnStayWithinBaseline() throws Exception {
+        // Warm up the JIT, connection pools and caches on students that are not measured
+        List<Loan> warmup = loans(STUDENTS + 1, WARMUP_STUDENTS);
+        run("checkout", warmup, this::checkout);
+        run("return", warmup, this::returnBook);
+
+        List<Loan> loans = loans(1, STUDENTS);
+        List<Loan> firstLoans = new ArrayList<>();
+        List<Loan> otherLoans = new ArrayList<>();
+        for (int i = 0; i < loans.size(); i++) {
+            (i % LOANS_PER_STUDENT == 0 ? firstLoans : otherLoans).add(loans.get(i));
+        }
+
+        Map<String, OperationStats> results = new LinkedHashMap<>();
+        results.put("checkout", run("checkout", loans, this::checkout));
+        results.put("renew", run("renew", firstLoans, this::renew));
+        results.put("return", run("return", otherLoans, this::returnBook));
+
+        results.values().forEach(stats -> System.out.println(stats.summary()));
+        results.values().forEach(stats -> assertEquals(0, stats.failures(),
+                stats.operation() + " had failed requests: " + stats.firstFailure()));
+        compareWithBaseline(results);
+    }
+
+    @Test
+    void hotIsbnStaysWithinBaseline() throws Exception {
+        // Students numbered after the ones used by the other scenario, all on one title
+        int firstStudent = STUDENTS + WARMUP_STUDENTS + 1;
+        List<Loan> checkouts = new ArrayList<>();
+        List<Loan> reservations = new ArrayList<>();
+        for (int student = firstStudent; student < firstStudent + HOT_STUDENTS; student++) {
+            checkouts.add(new Loan(LIBRARIAN_ID + student, HOT_CHECKOUT_ISBN));
+            reservations.add(new Loan(LIBRARIAN_ID + student, HOT_RESERVE_ISBN));
+        }
+
+        Map<String, OperationStats> results = new LinkedHashMap<>();
+        results.put("hot-checkout", run("hot-checkout", checkouts, this::checkout));
+        results.put("hot-return", run("hot-return", checkouts, this::returnBook));
+        results.put("hot-reserve", run("hot-reserve", reservations, this::reserve));
+
+        results.values().forEach(stats -> System.out.println(stats.summary()));
+        Timer laneWait = meterRegistry.find("loans.isbn_lane.wait").timer();
+        if (laneWait != null && laneWait.count() > 0) {
+            System.out.printf("ISBN lane wait: mean %.2f ms, max %.2f ms over %d requests%n",
+                    laneWait.mean(TimeUnit.MILLISECONDS), laneWait.max(TimeUnit.MILLISECONDS), laneWait.count());
+        }
+        results.values().forEach(stats -> assertEquals(0, stats.failures(),
+                stats.operation() + " had failed requests: " + stats.firstFailure()));
+        compareWithBaseline(results);
+    }
+
+    // ========== Operations ==========
+
+    private String checkout(Loan loan) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/api/loans/checkout", Map.of(
+                "userId", loan.userId, "isbn", loan.isbn, "librarianId", LIBRARIAN_ID));
+        if (response.statusCode() != 201) {
+            return response.statusCode() + " " + response.body();
+        }
+        loan.borrowRecordId = objectMapper.readTree(response.body()).path("data").path("id").asLong();
+        return null;
+    }
+
+    private String renew(Loan loan) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/api/loans/renew", Map.of(
+                "userId", loan.userId, "borrowRecordId", loan.borrowRecordId));
+        return response.statusCode() == 200 ? null : response.statusCode() + " " + response.body();
+    }
+
+    private String returnBook(Loan loan) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/api/loans/return", Map.of(
+                "userId", loan.userId, "isbn", loan.isbn));
+        return response.statusCode() == 200 ? null : response.statusCode() + " " + response.body();
+    }
+
+    private String reserve(Loan loan) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/api/loans/reserve", Map.of(
+                "userId", loan.userId, "isbn", loan.isbn));
+        return response.statusCode() == 201 ? null : response.statusCode() + " " + response.body();
+    }
+
+    private HttpResponse<String> post(String path, Map<String, Object> body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // ========== Load generator ==========
+
+    @FunctionalInterface
+    private interface Operation {
+        // Returns null on success, otherwise a description of the failure
+        String apply(Loan loan) throws Exception;
+    }
+
+    private OperationStats run(String name, List<Loan> loans, Operation operation) throws Exception {
+        long[] latencies = new long[loans.size()];
+        AtomicInteger failures = new AtomicInteger();
+        List<String> failureMessages = new ArrayList<>();
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            long statementsBefore = STATEMENTS.get();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(loans.size());
+            for (int i = 0; i < loans.size(); i++) {
+                int index = i;
+                futures.add(clients.submit(() -> {
+                    long begin = System.nanoTime();
+                    String failure;
+                    try {
+                        failure = operation.apply(loans.get(index));
+                    } catch (Exception e) {
+                        failure = e.toString();
+                    }
+                    latencies[index] = System.nanoTime() - begin;
+                    if (failure != null) {
+                        failures.incrementAndGet();
+                        synchronized (failureMessages) {
+                            failureMessages.add(failure);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            long statements = STATEMENTS.get() - statementsBefore - drainOutbox();
+
+            Arrays.sort(latencies);
+            return new OperationStats(name, loans.size(), elapsed, percentile(latencies, 50), percentile(latencies, 99),
+                    (double) statements / loans.size(), failures.get(),
+                    failureMessages.isEmpty() ? null : failureMessages.get(0));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    // Wait until the outbox deliveries the run caused are done, so their statements count towards it.
+    // Returns the statements spent polling, which do not.
+    private long drainOutbox() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + OUTBOX_DRAIN_TIMEOUT_MILLIS;
+        long polls = 0;
+        while (true) {
+            polls++;
+            if (outboxMessageRepository.count() == 0) {
+                return polls;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Outbox not delivered within " + OUTBOX_DRAIN_TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static List<Loan> loans(int firstStudent, int students) {
+        List<Loan> loans = new ArrayList<>(students * LOANS_PER_STUDENT);
+        for (int student = firstStudent; student < firstStudent + students; student++) {
+            for (int book = 0; book < LOANS_PER_STUDENT; book++) {
+                loans.add(new Loan(LIBRARIAN_ID + student, String.format("978%010d", student * 10L + book)));
+            }
+        }
+        return loans;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static final class Loan {
+
+        private final long userId;
+        private final String isbn;
+        private volatile long borrowRecordId;
+
+        Loan(long userId, String isbn) {
+            this.userId = userId;
+            this.isbn = isbn;
+        }
+    }
+
+    private record OperationStats(String operation, int requests, long elapsedNanos, long p50Nanos, long p99Nanos,
+                                  double statementsPerRequest, int failures, String firstFailure) {
+
+        double throughput() {
+            return requests / (elapsedNanos / 1e9);
+        }
+
+        double p99Millis() {
+            return p99Nanos / 1e6;
+        }
+
+        String summary() {
+            return String.format("%-8s %6d requests  %8.1f req/s  p50 %7.2f ms  p99 %7.2f ms  %5.1f SQL statements/request  %d failures",
+                    operation, requests, throughput(), p50Nanos / 1e6, p99Millis(), statementsPerRequest, failures);
+        }
+    }
+
+    // ========== Baseline ==========
+
+    private void compareWithBaseline(Map<String, OperationStats> results) throws IOException {
+        if (RECORD_BASELINE) {
+            recordBaseline(results);
+            return;
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = CheckoutReturnLoadTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            if (in != null) {
+                baseline.load(in);
+            }
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (OperationStats stats : results.values()) {
+            String statementsKey = DATABASE + "." + stats.operation() + ".statements";
+            String stored = baseline.getProperty(statementsKey);
+            if (stored == null) {
+                regressions.add("No baseline " + statementsKey + "; record one with PERF_RECORD_BASELINE=true");
+            } else if (stats.statementsPerRequest() > Double.parseDouble(stored) * (1 + STATEMENT_TOLERANCE)) {
+                regressions.add(String.format("%s issues %.2f SQL statements/request, baseline %s (tolerance %.0f%%)",
+                        stats.operation(), stats.statementsPerRequest(), stored, STATEMENT_TOLERANCE * 100));
+            }
+
+            // Latency is only comparable on the machine and database the baseline was recorded on
+            if ("mysql".equals(DATABASE)) {
+                String latencyKey = DATABASE + "." + stats.operation() + ".p99.ms";
+                stored = baseline.getProperty(latencyKey);
+                if (stored == null) {
+                    regressions.add("No baseline " + latencyKey + "; record one with PERF_RECORD_BASELINE=true");
+                } else if (stats.p99Millis() > Double.parseDouble(stored) * (1 + TOLERANCE)) {
+                    regressions.add(String.format("%s p99 %.2f ms exceeds baseline %s ms by more than %.0f%%",
+                            stats.operation(), stats.p99Millis(), stored, TOLERANCE * 100));
+                }
+            }
+        }
+        assertTrue(regressions.isEmpty(), String.join("\n", regressions));
+    }
+
+    // Merge this run's measurements into target/perf/ (both scenarios write to the same file)
+    private static synchronized void recordBaseline(Map<String, OperationStats> results) throws IOException {
+        Properties baseline = new Properties();
+        if (Files.exists(RECORDED_BASELINE_FILE)) {
+            try (var reader = Files.newBufferedReader(RECORDED_BASELINE_FILE)) {
+                baseline.load(reader);
+            }
+        }
+        for (OperationStats stats : results.values()) {
+            baseline.setProperty(DATABASE + "." + stats.operation() + ".statements",
+                    String.format(Locale.ROOT, "%.2f", stats.statementsPerRequest()));
+            if ("mysql".equals(DATABASE)) {
+                baseline.setProperty(DATABASE + "." + stats.operation() + ".p99.ms",
+                        String.format(Locale.ROOT, "%.2f", stats.p99Millis()));
+            }
+        }
+
+        StringBuilder content = new StringBuilder()
+                .append("# Baselines for CheckoutReturnLoadTest at its default load shape, per database:\n")
+                .append("# SQL statements per request and, for MySQL, p99 latency in ms (checked with -Pperf)\n");
+        new TreeMap<>(baseline).forEach((key, value) -> content.append(key).append('=').append(value).append('\n'));
+        Files.createDirectories(RECORDED_BASELINE_FILE.getParent());
+        Files.writeString(RECORDED_BASELINE_FILE, content);
+        System.out.println("Recorded baselines in " + RECORDED_BASELINE_FILE.toAbsolutePath());
+    }
+
+    // ========== SQL statement counting ==========
+
+    @TestConfiguration
+    static class StatementCountingConfig {
+
+        // Wrap the connection pool so every statement the service prepares, through JPA or JDBC, is counted.
+        // Only the pool itself: DataSources layered over it (routing, lazy proxies) would count its statements again.
+        @Bean
+        static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof HikariDataSource dataSource ? new StatementCountingDataSource(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    private static final class StatementCountingDataSource extends DelegatingDataSource {
+
+        StatementCountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("prepareStatement") || name.equals("createStatement") || name.equals("prepareCall")) {
+                            STATEMENTS.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.disanayake.borrowservice.perf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stand-ins for user-, book- and payment-service on one local port. Every call
+ * borrow-service makes gets a canned success after a fixed delay that stands for the network and
+ * remote processing time. User IDs up to librarianMaxId are librarians; all others are active students,
+ * and every book is available.
+ */
+final class ServiceStubs {
+
+    private static final Pattern USER = Pattern.compile("/api/users/(\\d+)");
+    private static final Pattern BOOK = Pattern.compile("/api/books/([^/]+)");
+    private static final Pattern HOLD = Pattern.compile("/api/books/([^/]+)/holds");
+    private static final Pattern SETTLE_HOLD = Pattern.compile("/api/books/holds/[^/]+(/confirm)?");
+    private static final Pattern COPIES = Pattern.compile("/api/books/[^/]+/(decrease|increase)-copies");
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]+)\"");
+    private static final Pattern PENDING_FINES = Pattern.compile("/api/payments/fines/user/\\d+/has-pending");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final long librarianMaxId;
+
+    private ServiceStubs(long latencyMillis, long librarianMaxId) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.librarianMaxId = librarianMaxId;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // One thread per in-flight call, so the simulated latency overlaps like real remote calls
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    static ServiceStubs start(long latencyMillis, long librarianMaxId) {
+        try {
+            ServiceStubs stubs = new ServiceStubs(latencyMillis, librarianMaxId);
+            stubs.server.start();
+            return stubs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start service stubs", e);
+        }
+    }
+
+    String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            sleep();
+
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Matcher matcher;
+            if ("GET".equals(method) && (matcher = USER.matcher(path)).matches()) {
+                respond(exchange, 200, success(user(Long.parseLong(matcher.group(1)))));
+            } else if ("GET".equals(method) && path.equals("/api/books/batch")) {
+                String isbns = exchange.getRequestURI().getQuery().replaceFirst("^isbns=", "");
+                respond(exchange, 200, success(Arrays.stream(isbns.split(","))
+                        .map(ServiceStubs::book)
+                        .collect(Collectors.joining(",", "[", "]"))));
+            } else if ("GET".equals(method) && (matcher = BOOK.matcher(path)).matches()) {
+                respond(exchange, 200, success(book(matcher.group(1))));
+            } else if ("POST".equals(method) && path.equals("/api/books/holds/batch")) {
+                respond(exchange, 200, success(QUOTED.matcher(body.substring(body.indexOf('[')))
+                        .results()
+                        .map(isbn -> "{\"isbn\":\"" + isbn.group(1) + "\",\"success\":true,\"hold\":" + hold(isbn.group(1)) + "}")
+                        .collect(Collectors.joining(",", "[", "]"))));
+            } else if ("POST".equals(method) && (matcher = HOLD.matcher(path)).matches()) {
+                respond(exchange, 201, success(hold(matcher.group(1))));
+            } else if (("POST".equals(method) || "DELETE".equals(method)) && SETTLE_HOLD.matcher(path).matches()) {
+                respond(exchange, 200, success("null"));
+            } else if ("PUT".equals(method) && COPIES.matcher(path).matches()) {
+                respond(exchange, 200, success("null"));
+            } else if ("PUT".equals(method) && path.equals("/api/books/copies/batch")) {
+                respond(exchange, 200, success("[]"));
+            } else if ("POST".equals(method) && path.equals("/api/payments/fines")) {
+                respond(exchange, 201, success("null"));
+            } else if ("POST".equals(method) && path.equals("/api/payments/fines/batch")) {
+                respond(exchange, 200, success("[]"));
+            } else if ("GET".equals(method) && PENDING_FINES.matcher(path).matches()) {
+                respond(exchange, 200, success("false"));
+            } else {
+                respond(exchange, 404, "{\"success\":false,\"message\":\"No stub for " + method + " " + path + "\"}");
+            }
+        }
+    }
+
+    private void sleep() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String user(long id) {
+        String role = id <= librarianMaxId ? "LIBRARIAN" : "STUDENT";
+        return "{\"id\":" + id + ",\"username\":\"user" + id + "\",\"email\":\"user" + id + "@example.com\"," +
+                "\"role\":\"" + role + "\",\"status\":\"ACTIVE\",\"department\":\"Load Testing\"}";
+    }
+
+    private static String book(String isbn) {
+        return "{\"isbn\":\"" + isbn + "\",\"title\":\"Book " + isbn + "\",\"author\":\"Perf Author\"," +
+                "\"genre\":\"Testing\",\"totalCopies\":1000000,\"availableCopies\":1000000,\"status\":\"AVAILABLE\"}";
+    }
+
+    private static String hold(String isbn) {
+        return "{\"token\":\"" + UUID.randomUUID() + "\",\"isbn\":\"" + isbn + "\",\"status\":\"HELD\"," +
+                "\"book\":" + book(isbn) + "}";
+    }
+
+    private static String success(String data) {
+        return "{\"success\":true,\"message\":\"OK\",\"data\":" + data + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.disanayake.borrowservice.repositories;
+
+import com.disanayake.borrowservice.dto.LoanQueryCriteria;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.BorrowRecord.BorrowStatus;
+import com.disanayake.borrowservice.entities.Reservation.ReservationStatus;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Seeds a realistic volume of loans and reservations into a local MySQL database, calls each filtered
+ * repository query the service uses and runs EXPLAIN on the SQL Hibernate prepared for it, with the
+ * values it bound. Fails if any query falls back to a full scan.
+ *
+ * Needs a throwaway database, so it only runs when QUERY_PLAN_DB_URL is set, e.g.
+ * QUERY_PLAN_DB_URL=jdbc:mysql://localhost:3306/borrow_plan_test?createDatabaseIfNotExist=true
+ * QUERY_PLAN_DB_USERNAME=root QUERY_PLAN_DB_PASSWORD=password mvn test -Dtest=QueryPlanRegressionTest
+ */
+@DataJpaTest
+@Import(QueryPlanRegressionTest.StatementCapturingConfig.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfEnvironmentVariable(named = "QUERY_PLAN_DB_URL", matches = ".+")
+class QueryPlanRegressionTest {
+
+    private static final int USERS = 2_000;
+    private static final int BOOKS = 5_000;
+    private static final int BORROW_RECORDS = 100_000;
+    private static final int RESERVATIONS = 20_000;
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 1);
+
+    private static final List<CapturedStatement> CAPTURED = new CopyOnWriteArrayList<>();
+    private static final AtomicBoolean CAPTURING = new AtomicBoolean();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BorrowRecordRepository borrowRecordRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("QUERY_PLAN_DB_URL"));
+        registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("QUERY_PLAN_DB_USERNAME", "root"));
+        registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("QUERY_PLAN_DB_PASSWORD", ""));
+        // Build the schema from the entity mappings so the declared @Index annotations are what gets tested
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @BeforeAll
+    void seed() {
+        LocalDateTime now = LocalDateTime.now();
+
+        // Most loans are long returned; a small share are active, overdue or lost
+        List<Object[]> borrowRows = new ArrayList<>(BORROW_RECORDS);
+        for (int i = 0; i < BORROW_RECORDS; i++) {
+            LocalDate borrowDate = TODAY.minusDays(i % 1_500);
+            String status = i % 50 == 0 ? "ACTIVE" : i % 97 == 0 ? "OVERDUE" : i % 499 == 0 ? "LOST" : "RETURNED";
+            LocalDate returnDate = "RETURNED".equals(status) ? borrowDate.plusDays(i % 20) : null;
+            double fine = i % 40 == 0 ? (i % 7) + 1.0 : 0.0;
+            borrowRows.add(new Object[] {
+                    (long) (i % USERS) + 1, isbn(i % BOOKS), Date.valueOf(borrowDate), Date.valueOf(borrowDate.plusDays(14)),
+                    returnDate != null ? Date.valueOf(returnDate) : null, status, "OVERDUE".equals(status), fine,
+                    "Seeded loan", Timestamp.valueOf(now), Timestamp.valueOf(now)
+            });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO borrow_records (user_id, book_isbn, borrow_date, due_date, return_date, status, " +
+                "is_overdue, fine_amount, notes, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                borrowRows);
+
+        List<Object[]> reservationRows = new ArrayList<>(RESERVATIONS);
+        for (int i = 0; i < RESERVATIONS; i++) {
+            LocalDate reservationDate = TODAY.minusDays(i % 400);
+            String status = i % 25 == 0 ? "ACTIVE" : i % 3 == 0 ? "EXPIRED" : i % 3 == 1 ? "FULFILLED" : "CANCELLED";
+            reservationRows.add(new Object[] {
+                    (long) (i % USERS) + 1, isbn((i * 7) % BOOKS), Date.valueOf(reservationDate),
+                    Date.valueOf(reservationDate.plusDays(7)), status, Timestamp.valueOf(now), Timestamp.valueOf(now)
+            });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO reservations (user_id, book_isbn, reservation_date, expiry_date, status, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                reservationRows);
+
+        jdbcTemplate.execute("ANALYZE TABLE borrow_records, reservations");
+    }
+
+    // The filtered repository queries the service runs, called with sample arguments; their SQL is captured as Hibernate generates it
+    static Stream<Arguments> repositoryQueries() {
+        String isbn = isbn(123);
+        PageRequest page = PageRequest.of(0, 10);
+        PageRequest firstPage = PageRequest.of(0, 11);
+        return Stream.of(
+                query("findActiveLoanForUpdate", (loans, reservations) -> loans.findActiveLoanForUpdate(42L, isbn)),
+                query("findActiveLoansForUpdate(userId)", (loans, reservations) -> loans.findActiveLoansForUpdate(42L)),
+                query("findActiveLoansForUpdate(userIds, isbns)", (loans, reservations) ->
+                        loans.findActiveLoansForUpdate(List.of(42L, 43L, 44L), List.of(isbn, isbn(124)))),
+                query("findByUserIdAndBookIsbnAndStatus", (loans, reservations) ->
+                        loans.findByUserIdAndBookIsbnAndStatus(42L, isbn, BorrowStatus.ACTIVE)),
+                query("findByUserIdAndStatus", (loans, reservations) -> loans.findByUserIdAndStatus(42L, BorrowStatus.ACTIVE)),
+                query("countByUserIdAndStatus", (loans, reservations) -> loans.countByUserIdAndStatus(42L, BorrowStatus.ACTIVE)),
+                query("countByStatusGroupByUserId", (loans, reservations) ->
+                        loans.countByStatusGroupByUserId(BorrowStatus.ACTIVE, List.of(42L, 43L, 44L))),
+                query("findHoldTokensIn", (loans, reservations) -> loans.findHoldTokensIn(List.of("hold-1", "hold-2"))),
+                query("findByUserIdOrderByBorrowDateDesc", (loans, reservations) ->
+                        loans.findByUserIdOrderByBorrowDateDesc(42L, page)),
+                query("findByBookIsbnOrderByBorrowDateDesc", (loans, reservations) ->
+                        loans.findByBookIsbnOrderByBorrowDateDesc(isbn, page)),
+                query("findUserHistoryFirstPage", (loans, reservations) -> loans.findUserHistoryFirstPage(42L, firstPage)),
+                query("findUserHistoryPageAfter", (loans, reservations) ->
+                        loans.findUserHistoryPageAfter(42L, TODAY, 5_000L, firstPage)),
+                query("findBookHistoryFirstPage", (loans, reservations) -> loans.findBookHistoryFirstPage(isbn, firstPage)),
+                query("findBookHistoryPageAfter", (loans, reservations) ->
+                        loans.findBookHistoryPageAfter(isbn, TODAY, 5_000L, firstPage)),
+                query("findAllFirstPage", (loans, reservations) -> loans.findAllFirstPage(firstPage)),
+                query("findAllPageAfter", (loans, reservations) ->
+                        loans.findAllPageAfter(TODAY.minusDays(1_400), 5_000L, firstPage)),
+                query("findOverdueLoanIds", (loans, reservations) -> loans.findOverdueLoanIds(TODAY)),
+                query("findOverdueBooks", (loans, reservations) -> loans.findOverdueBooks(TODAY)),
+                query("findBooksDueSoon", (loans, reservations) -> loans.findBooksDueSoon(TODAY, TODAY.plusDays(3))),
+                query("findActiveLoanDueDates", (loans, reservations) -> loans.findActiveLoanDueDates()),
+                query("streamOverdueBooks", (loans, reservations) -> {
+                    try (Stream<BorrowRecord> overdue = loans.streamOverdueBooks(TODAY)) {
+                        overdue.count();
+                    }
+                }),
+                query("lockAutoRenewalCandidates", (loans, reservations) ->
+                        loans.lockAutoRenewalCandidates(0L, TODAY, TODAY.plusDays(2), PageRequest.of(0, 500))),
+                query("queryLoans(status, due range)", (loans, reservations) -> queryLoans(loans, LoanQueryCriteria.builder()
+                        .statuses(Set.of(BorrowStatus.ACTIVE))
+                        .dueFrom(TODAY)
+                        .dueTo(TODAY.plusDays(3))
+                        .build())),
+                query("queryLoans(user)", (loans, reservations) ->
+                        queryLoans(loans, LoanQueryCriteria.builder().userId(42L).build())),
+                query("queryLoans(isbn)", (loans, reservations) ->
+                        queryLoans(loans, LoanQueryCriteria.builder().isbn(isbn).build())),
+                query("reservations.findActiveReservationsForUpdate", (loans, reservations) ->
+                        reservations.findActiveReservationsForUpdate(42L)),
+                query("reservations.findByUserIdAndStatus", (loans, reservations) ->
+                        reservations.findByUserIdAndStatus(42L, ReservationStatus.ACTIVE)),
+                query("reservations.findByUserIdOrderByReservationDateDesc", (loans, reservations) ->
+                        reservations.findByUserIdOrderByReservationDateDesc(42L, page)),
+                query("reservations.findActiveReservationsForBook", (loans, reservations) ->
+                        reservations.findActiveReservationsForBook(isbn)),
+                query("reservations.findByStatusOrderByReservationDateAscIdAsc", (loans, reservations) ->
+                        reservations.findByStatusOrderByReservationDateAscIdAsc(ReservationStatus.ACTIVE)),
+                query("reservations.lockExpiredReservations", (loans, reservations) ->
+                        reservations.lockExpiredReservations(TODAY, PageRequest.of(0, 500))),
+                query("reservations.countByStatusGroupByUserId", (loans, reservations) ->
+                        reservations.countByStatusGroupByUserId(ReservationStatus.ACTIVE, List.of(42L, 43L, 44L)))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("repositoryQueries")
+    void queryUsesAnIndex(String queryName, RepositoryCall call) {
+        List<CapturedStatement> statements = capture(call);
+        assertFalse(statements.isEmpty(), "No SELECT captured for " + queryName);
+
+        for (CapturedStatement statement : statements) {
+            List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + statement.sql(), statement.parameters());
+            assertFalse(plan.isEmpty(), "No plan returned for " + queryName);
+
+            for (Map<String, Object> step : plan) {
+                Object table = step.get("table");
+                if (!"borrow_records".equals(table) && !"reservations".equals(table)) {
+                    continue;
+                }
+                Object accessType = step.get("type");
+                String description = queryName + " plan for [" + statement.sql() + "]: " + plan;
+                assertNotEquals("ALL", accessType, "Full table scan in " + description);
+                assertNotEquals("index", accessType, "Full index scan in " + description);
+            }
+        }
+    }
+
+    // Runs the call in a transaction (the locking reads need one) and returns the SELECTs it prepared
+    private List<CapturedStatement> capture(RepositoryCall call) {
+        CAPTURED.clear();
+        CAPTURING.set(true);
+        try {
+            transactionTemplate.executeWithoutResult(status -> call.run(borrowRecordRepository, reservationRepository));
+        } finally {
+            CAPTURING.set(false);
+        }
+        return CAPTURED.stream()
+                .filter(statement -> statement.sql().stripLeading().regionMatches(true, 0, "select", 0, 6))
+                .toList();
+    }
+
+    private static void queryLoans(BorrowRecordRepository loans, LoanQueryCriteria criteria) {
+        loans.findBy(BorrowRecordSpecifications.matching(criteria)
+                        .and(BorrowRecordSpecifications.after(TODAY.minusDays(100), 5_000L)),
+                query -> query.sortBy(Sort.by(Sort.Order.desc("borrowDate"), Sort.Order.desc("id"))).limit(101).all());
+    }
+
+    private static Arguments query(String name, RepositoryCall call) {
+        return Arguments.of(name, call);
+    }
+
+    @FunctionalInterface
+    interface RepositoryCall {
+        void run(BorrowRecordRepository loans, ReservationRepository reservations);
+    }
+
+    private record CapturedStatement(String sql, Object[] parameters) {
+    }
+
+    private static String isbn(int book) {
+        return String.format("978-%010d", book);
+    }
+
+    // ========== SQL capture ==========
+
+    @TestConfiguration
+    static class StatementCapturingConfig {
+
+        // Wrap the connection pool so the SQL Hibernate prepares, and the values bound to it, can be explained as-is
+        @Bean
+        static BeanPostProcessor statementCapturingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof HikariDataSource dataSource ? new StatementCapturingDataSource(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    private static final class StatementCapturingDataSource extends DelegatingDataSource {
+
+        StatementCapturingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return capturing(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return capturing(super.getConnection(username, password));
+        }
+
+        private static Connection capturing(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(method, connection, args);
+                        if (CAPTURING.get() && method.getName().equals("prepareStatement") && args[0] instanceof String sql) {
+                            return capturing((PreparedStatement) result, sql);
+                        }
+                        return result;
+                    });
+        }
+
+        // Records the statement with its parameters once it is executed; setNull binds a null
+        private static PreparedStatement capturing(PreparedStatement statement, String sql) {
+            Map<Integer, Object> parameters = new TreeMap<>();
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                            parameters.put(index, name.equals("setNull") ? null : args[1]);
+                        } else if (name.startsWith("execute")) {
+                            CAPTURED.add(new CapturedStatement(sql, parameters.values().toArray()));
+                        }
+                        return invoke(method, statement, args);
+                    });
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.CartCheckoutRequest;
+import com.disanayake.borrowservice.dto.CartCheckoutResponse;
+import com.disanayake.borrowservice.dto.CopyHoldResponse;
+import com.disanayake.borrowservice.dto.CopyHoldResult;
+import com.disanayake.borrowservice.dto.UserValidationResponse;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.repositories.BorrowRecordJdbcRepository;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.UserLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BorrowServiceCartCheckoutTest {
+
+    @Mock private BorrowRecordRepository borrowRecordRepository;
+    @Mock private BookService bookService;
+    @Mock private UserValidationService userValidationService;
+    @Mock private ReservationService reservationService;
+    @Mock private BorrowRecordJdbcRepository borrowRecordJdbcRepository;
+    @Mock private UserActivityCounters userActivityCounters;
+    @Mock private LoanDueDateIndex loanDueDateIndex;
+    @Mock private LoanEventLog loanEventLog;
+    @Mock private StudentDashboardService studentDashboardService;
+    @Mock private CopyHoldSettler copyHoldSettler;
+    @Mock private IsbnLanes isbnLanes;
+    @Mock private UserLockRepository userLockRepository;
+    @InjectMocks private BorrowService borrowService;
+
+    @BeforeEach
+    void setUp() {
+        when(userValidationService.validateUser(1L)).thenReturn(user(1L, "LIBRARIAN"));
+        when(userValidationService.validateUser(2L)).thenReturn(user(2L, "STUDENT"));
+        when(borrowRecordRepository.findByUserIdAndStatus(2L, BorrowRecord.BorrowStatus.ACTIVE)).thenReturn(List.of());
+    }
+
+    @Test
+    void cartHoldsCopiesInOneCallAndLoansCarryTheirHoldTokens() {
+        Map<String, CopyHoldResult> holds = new LinkedHashMap<>();
+        holds.put("111", held("111", "t-111"));
+        holds.put("222", CopyHoldResult.builder().isbn("222").success(false).message("No available copies for book: B").build());
+        when(bookService.tryReserveCopies(Set.of("111", "222"))).thenReturn(holds);
+
+        CartCheckoutResponse response = borrowService.checkoutCart(cart("111", "222"));
+
+        assertEquals(1, response.getCheckedOutCount());
+        assertEquals("No available copies for book: B", response.getItems().get(1).getMessage());
+        InOrder order = inOrder(bookService, copyHoldSettler, isbnLanes, userLockRepository, borrowRecordRepository,
+                borrowRecordJdbcRepository);
+        order.verify(bookService).tryReserveCopies(any());
+        order.verify(copyHoldSettler).settleOnCompletion("t-111");
+        order.verify(isbnLanes).enterAll(Set.of("111"));
+        order.verify(userLockRepository).lock(eq(2L), any());
+        order.verify(borrowRecordRepository).findActiveLoansForUpdate(2L);
+        ArgumentCaptor<List<BorrowRecord>> loans = captureInsertedLoans(order);
+        assertEquals("t-111", loans.getValue().get(0).getHoldToken());
+        verify(copyHoldSettler, never()).settleOnCompletion("t-222");
+        verify(bookService, never()).adjustAvailableCopies(any(), any());
+    }
+
+    @Test
+    void loanCommittedWhileHoldingRollsTheCartBack() {
+        when(bookService.tryReserveCopies(Set.of("111"))).thenReturn(Map.of("111", held("111", "t-111")));
+        // The snapshot read still sees no loan; only the locking read sees the one committed meanwhile
+        when(borrowRecordRepository.findActiveLoansForUpdate(2L))
+                .thenReturn(List.of(BorrowRecord.builder().userId(2L).bookIsbn("111").build()));
+
+        assertThrows(IllegalStateException.class, () -> borrowService.checkoutCart(cart("111")));
+
+        verify(copyHoldSettler).settleOnCompletion("t-111");
+        verifyNoInteractions(borrowRecordJdbcRepository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<List<BorrowRecord>> captureInsertedLoans(InOrder order) {
+        ArgumentCaptor<List<BorrowRecord>> loans = ArgumentCaptor.forClass(List.class);
+        order.verify(borrowRecordJdbcRepository).insertAll(loans.capture());
+        return loans;
+    }
+
+    private static CartCheckoutRequest cart(String... isbns) {
+        return new CartCheckoutRequest(2L, 1L, List.of(isbns), null);
+    }
+
+    private static CopyHoldResult held(String isbn, String token) {
+        BookResponse book = new BookResponse();
+        book.setIsbn(isbn);
+        return CopyHoldResult.builder()
+                .isbn(isbn)
+                .success(true)
+                .hold(CopyHoldResponse.builder().token(token).isbn(isbn).status("HELD").book(book).build())
+                .build();
+    }
+
+    private static UserValidationResponse user(Long id, String role) {
+        return UserValidationResponse.builder()
+                .success(true)
+                .data(UserValidationResponse.UserData.builder()
+                        .id(id).username("user" + id).role(role).status("ACTIVE").build())
+                .build();
+    }
+}
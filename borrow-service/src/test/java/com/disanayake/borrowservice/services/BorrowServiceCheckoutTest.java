@@ -0,0 +1,115 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.BorrowBookRequest;
+import com.disanayake.borrowservice.dto.CopyHoldResponse;
+import com.disanayake.borrowservice.dto.CreateLoanRequest;
+import com.disanayake.borrowservice.dto.UserValidationResponse;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.UserLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BorrowServiceCheckoutTest {
+
+    @Mock private BorrowRecordRepository borrowRecordRepository;
+    @Mock private BookService bookService;
+    @Mock private UserValidationService userValidationService;
+    @Mock private ReservationService reservationService;
+    @Mock private UserActivityCounters userActivityCounters;
+    @Mock private CopyHoldSettler copyHoldSettler;
+    @Mock private IsbnLanes isbnLanes;
+    @Mock private UserLockRepository userLockRepository;
+    @InjectMocks private BorrowService borrowService;
+
+    @BeforeEach
+    void setUp() {
+        when(userValidationService.validateUser(1L)).thenReturn(user(1L, "LIBRARIAN"));
+        when(userValidationService.validateUser(2L)).thenReturn(user(2L, "STUDENT"));
+        when(userValidationService.isStudent(2L)).thenReturn(true);
+        when(borrowRecordRepository.findByUserIdAndBookIsbnAndStatus(2L, "111", BorrowRecord.BorrowStatus.ACTIVE))
+                .thenReturn(Optional.empty());
+        when(bookService.tryReserveCopy("111")).thenReturn(hold("t-111"));
+        // Another request commits a loan of the same book while this one waits for its lane. The
+        // transaction's snapshot read keeps answering "no loan"; only the locking read sees it.
+        doAnswer(invocation -> {
+            when(borrowRecordRepository.findActiveLoansForUpdate(2L))
+                    .thenReturn(List.of(BorrowRecord.builder().id(9L).userId(2L).bookIsbn("111")
+                            .status(BorrowRecord.BorrowStatus.ACTIVE).build()));
+            return null;
+        }).when(isbnLanes).enter("111");
+    }
+
+    @Test
+    void loanCommittedWhileQueuedBlocksTheBorrow() {
+        assertThrows(IllegalStateException.class,
+                () -> borrowService.borrowBook(new BorrowBookRequest(2L, "111")));
+
+        assertNoLoanAfterTheLockedReCheck();
+    }
+
+    @Test
+    void loanCommittedWhileQueuedBlocksTheLibrarianCheckout() {
+        assertThrows(IllegalStateException.class,
+                () -> borrowService.createLoan(new CreateLoanRequest(2L, "111", 1L, null)));
+
+        assertNoLoanAfterTheLockedReCheck();
+    }
+
+    @Test
+    void loansCommittedElsewhereCountTowardsTheLimit() {
+        // This instance's counters still say 0, another instance has checked out five books meanwhile
+        doNothing().when(isbnLanes).enter("111");
+        when(borrowRecordRepository.findActiveLoansForUpdate(2L)).thenReturn(IntStream.range(0, 5)
+                .mapToObj(i -> BorrowRecord.builder().id((long) i).userId(2L).bookIsbn("isbn-" + i)
+                        .status(BorrowRecord.BorrowStatus.ACTIVE).build())
+                .toList());
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> borrowService.borrowBook(new BorrowBookRequest(2L, "111")));
+
+        assertTrue(error.getMessage().startsWith("Maximum borrow limit reached"));
+        assertNoLoanAfterTheLockedReCheck();
+    }
+
+    private void assertNoLoanAfterTheLockedReCheck() {
+        InOrder order = inOrder(isbnLanes, userLockRepository, borrowRecordRepository);
+        order.verify(isbnLanes).enter("111");
+        order.verify(userLockRepository).lock(eq(2L), any());
+        order.verify(borrowRecordRepository).findActiveLoansForUpdate(2L);
+        verify(copyHoldSettler).settleOnCompletion("t-111");
+        verify(borrowRecordRepository, never()).save(any());
+    }
+
+    private static CopyHoldResponse hold(String token) {
+        BookResponse book = new BookResponse();
+        book.setIsbn("111");
+        return CopyHoldResponse.builder().token(token).isbn("111").status("HELD").book(book).build();
+    }
+
+    private static UserValidationResponse user(Long id, String role) {
+        return UserValidationResponse.builder()
+                .success(true)
+                .data(UserValidationResponse.UserData.builder()
+                        .id(id).username("user" + id).role(role).status("ACTIVE").build())
+                .build();
+    }
+}
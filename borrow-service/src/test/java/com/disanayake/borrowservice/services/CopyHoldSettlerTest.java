@@ -0,0 +1,89 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CopyHoldSettlerTest {
+
+    private BookService bookService;
+    private OutboxRelay outboxRelay;
+    private CopyHoldSettler settler;
+
+    @BeforeEach
+    void setUp() {
+        bookService = mock(BookService.class);
+        outboxRelay = mock(OutboxRelay.class);
+        settler = new CopyHoldSettler(bookService, outboxRelay);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        TransactionSynchronizationManager.clearSynchronization();
+        settler.shutdown();
+    }
+
+    @Test
+    void confirmationIsWrittenToTheOutboxWithTheLoan() {
+        settler.settleOnCompletion("t-1");
+
+        verify(outboxRelay).enqueue(MessageType.CONFIRM_HOLD, new CopyHoldSettler.HoldConfirmation("t-1"));
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    void committedLoanIsNotReleased() {
+        settler.settleOnCompletion("t-1");
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(bookService, after(200).never()).releaseHold(any());
+    }
+
+    @Test
+    void rolledBackLoanReleasesItsHold() {
+        settler.settleOnCompletion("t-1");
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(bookService, timeout(1000)).releaseHold("t-1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void outboxMessageConfirmsTheHold() {
+        ArgumentCaptor<Consumer<CopyHoldSettler.HoldConfirmation>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(outboxRelay).register(eq(MessageType.CONFIRM_HOLD), eq(CopyHoldSettler.HoldConfirmation.class),
+                handler.capture(), any());
+
+        handler.getValue().accept(new CopyHoldSettler.HoldConfirmation("t-1"));
+
+        verify(bookService).confirmHold("t-1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedConfirmationReleasesTheHold() {
+        ArgumentCaptor<Consumer<CopyHoldSettler.HoldConfirmation>> onFailed = ArgumentCaptor.forClass(Consumer.class);
+        verify(outboxRelay).register(eq(MessageType.CONFIRM_HOLD), eq(CopyHoldSettler.HoldConfirmation.class),
+                any(), onFailed.capture());
+
+        onFailed.getValue().accept(new CopyHoldSettler.HoldConfirmation("t-1"));
+
+        verify(bookService, timeout(1000)).releaseHold("t-1");
+        verify(bookService, never()).confirmHold(any());
+    }
+
+    private static void complete(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+    }
+}
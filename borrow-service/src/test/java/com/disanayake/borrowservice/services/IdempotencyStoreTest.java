@@ -0,0 +1,168 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(new ObjectMapper());
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void requestWithoutAKeyAlwaysRuns() {
+        store.execute("checkout", null, "body", ok());
+        store.execute("checkout", " ", "body", ok());
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void retryWithTheSameKeyReplaysTheFirstResponse() {
+        ResponseEntity<ApiResponse<String>> first = store.execute("checkout", "key-1", "body", ok());
+        ResponseEntity<ApiResponse<String>> replay = store.execute("checkout", "key-1", "body", ok());
+
+        assertEquals(1, runs.get());
+        assertSame(first.getBody(), replay.getBody());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    void keysAreScopedPerOperation() {
+        store.execute("checkout", "key-1", "body", ok());
+        store.execute("return", "key-1", "body", ok());
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRejected() {
+        store.execute("checkout", "key-1", "body", ok());
+
+        ResponseEntity<ApiResponse<String>> response = store.execute("checkout", "key-1", "other body", ok());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void bodiesWithTheSameHashCodeAreStillDifferentRequests() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        store.execute("checkout", "key-1", "Aa", ok());
+
+        ResponseEntity<ApiResponse<String>> response = store.execute("checkout", "key-1", "BB", ok());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+    }
+
+    @Test
+    void finalClientErrorsAreReplayedButRetryableOnesAreNot() {
+        store.execute("checkout", "key-1", "body", status(HttpStatus.BAD_REQUEST));
+        ResponseEntity<ApiResponse<String>> replay = store.execute("checkout", "key-1", "body", ok());
+        assertEquals(HttpStatus.BAD_REQUEST, replay.getStatusCode());
+
+        store.execute("checkout", "key-2", "body", status(HttpStatus.CONFLICT));
+        assertEquals(HttpStatus.OK, store.execute("checkout", "key-2", "body", ok()).getStatusCode());
+
+        store.execute("checkout", "key-3", "body", status(HttpStatus.TOO_MANY_REQUESTS));
+        assertEquals(HttpStatus.OK, store.execute("checkout", "key-3", "body", ok()).getStatusCode());
+        assertEquals(5, runs.get());
+    }
+
+    @Test
+    void overflowNeverEvictsARequestStillRunning() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<ApiResponse<String>>> first = CompletableFuture.supplyAsync(() ->
+                store.execute("checkout", "slow", "body", () -> {
+                    running.countDown();
+                    await(finish);
+                    return ok().get();
+                }));
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 10_000; i++) {
+            store.execute("checkout", "key-" + i, "body", ok());
+        }
+
+        CompletableFuture<ResponseEntity<ApiResponse<String>>> duplicate = CompletableFuture.supplyAsync(() ->
+                store.execute("checkout", "slow", "body", ok()));
+        Thread.sleep(100);
+        assertFalse(duplicate.isDone());
+        finish.countDown();
+
+        assertSame(first.get(1, TimeUnit.SECONDS).getBody(), duplicate.get(1, TimeUnit.SECONDS).getBody());
+        assertEquals(10_001, runs.get());
+    }
+
+    @Test
+    void overlongKeyIsRejectedWithoutRunning() {
+        ResponseEntity<ApiResponse<String>> response = store.execute("checkout", "k".repeat(256), "body", ok());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void serverErrorsAndExceptionsAreNotKept() {
+        store.execute("checkout", "key-1", "body", () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.<String>error("down"));
+        });
+        assertEquals(HttpStatus.OK, store.execute("checkout", "key-1", "body", ok()).getStatusCode());
+
+        assertThrows(IllegalStateException.class, () -> store.execute("renew", "key-2", "body", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(HttpStatus.OK, store.execute("renew", "key-2", "body", ok()).getStatusCode());
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void duplicateArrivingMidFlightSharesTheFirstResult() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<ApiResponse<String>>> first = CompletableFuture.supplyAsync(() ->
+                store.execute("checkout", "key-1", "body", () -> {
+                    running.countDown();
+                    await(finish);
+                    return ok().get();
+                }));
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+
+        CompletableFuture<ResponseEntity<ApiResponse<String>>> duplicate = CompletableFuture.supplyAsync(() ->
+                store.execute("checkout", "key-1", "body", ok()));
+        Thread.sleep(100);
+        assertFalse(duplicate.isDone());
+        finish.countDown();
+
+        assertSame(first.get(1, TimeUnit.SECONDS).getBody(), duplicate.get(1, TimeUnit.SECONDS).getBody());
+        assertEquals(1, runs.get());
+    }
+
+    private Supplier<ResponseEntity<ApiResponse<String>>> ok() {
+        return () -> ResponseEntity.ok(ApiResponse.success("run " + runs.incrementAndGet()));
+    }
+
+    private Supplier<ResponseEntity<ApiResponse<String>>> status(HttpStatus status) {
+        return () -> ResponseEntity.status(status).body(ApiResponse.error("run " + runs.incrementAndGet()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
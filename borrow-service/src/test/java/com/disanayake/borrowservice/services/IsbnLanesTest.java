@@ -0,0 +1,120 @@
+package com.disanayake.borrowservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsbnLanesTest {
+
+    private IsbnLanes lanes;
+
+    @BeforeEach
+    void setUp() {
+        lanes = new IsbnLanes(new SimpleMeterRegistry(), true, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void enteringOutsideATransactionIsRejected() {
+        assertThrows(IllegalStateException.class, () -> lanes.enter("isbn-1"));
+    }
+
+    @Test
+    void laneIsReleasedAndForgottenWhenTheTransactionCompletes() {
+        TransactionSynchronizationManager.initSynchronization();
+        lanes.enterAll(List.of("isbn-2", "isbn-1", "isbn-2"));
+        lanes.enter("isbn-1");
+        assertEquals(2, lanes.activeLanes());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(0, lanes.activeLanes());
+    }
+
+    @Test
+    void sameIsbnWaitsForTheHolderAndGivesUpAfterMaxWait() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<Void> holder = inTransaction(() -> {
+            lanes.enter("isbn-1");
+            entered.countDown();
+            await(finish);
+        });
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+
+        TransactionSynchronizationManager.initSynchronization();
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> lanes.enter("isbn-1"));
+        assertTrue(rejected.getMessage().contains("Too many requests"));
+
+        finish.countDown();
+        holder.get(1, TimeUnit.SECONDS);
+        assertEquals(0, lanes.activeLanes());
+    }
+
+    @Test
+    void otherIsbnsAreNotBlockedByAHeldLane() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<Void> holder = inTransaction(() -> {
+            lanes.enter("isbn-1");
+            entered.countDown();
+            await(finish);
+        });
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+
+        TransactionSynchronizationManager.initSynchronization();
+        assertDoesNotThrow(() -> lanes.enterAll(List.of("isbn-2", "isbn-3")));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        finish.countDown();
+        holder.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void disabledLanesNeverBlock() {
+        IsbnLanes disabled = new IsbnLanes(new SimpleMeterRegistry(), false, 200);
+
+        assertDoesNotThrow(() -> disabled.enter("isbn-1"));
+        assertEquals(0, disabled.activeLanes());
+    }
+
+    private CompletableFuture<Void> inTransaction(Runnable work) {
+        return CompletableFuture.runAsync(() -> {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                work.run();
+                complete(TransactionSynchronization.STATUS_COMMITTED);
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        });
+    }
+
+    private static void complete(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
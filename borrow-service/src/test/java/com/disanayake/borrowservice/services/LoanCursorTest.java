@@ -0,0 +1,54 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanCursorTest {
+
+    @Test
+    void cursorRoundTripsThroughItsToken() {
+        LoanCursor cursor = LoanCursor.after(BorrowRecord.builder().id(42L).borrowDate(LocalDate.of(2026, 1, 31)).build());
+
+        LoanCursor decoded = LoanCursor.decode(cursor.encode());
+
+        assertEquals(LocalDate.of(2026, 1, 31), decoded.getBorrowDate());
+        assertEquals(42L, decoded.getId());
+    }
+
+    @Test
+    void tokenIsUrlSafeWithoutPadding() {
+        String token = LoanCursor.after(BorrowRecord.builder().id(Long.MAX_VALUE).borrowDate(LocalDate.of(2026, 12, 1)).build())
+                .encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    void missingTokenMeansTheFirstPage() {
+        assertNull(LoanCursor.decode(null));
+        assertNull(LoanCursor.decode(""));
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        assertInvalid("not base64!");
+        assertInvalid(encode("2026-01-31"));
+        assertInvalid(encode("yesterday:42"));
+        assertInvalid(encode("2026-01-31:forty-two"));
+    }
+
+    private static void assertInvalid(String token) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> LoanCursor.decode(token));
+        assertEquals("Invalid cursor", error.getMessage());
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
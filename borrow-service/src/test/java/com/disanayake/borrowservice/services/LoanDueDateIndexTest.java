@@ -0,0 +1,107 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LoanDueDateIndexTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 3, 10);
+
+    private BorrowRecordRepository borrowRecordRepository;
+    private LoanDueDateIndex index;
+
+    @BeforeEach
+    void setUp() {
+        borrowRecordRepository = mock(BorrowRecordRepository.class);
+        when(borrowRecordRepository.findActiveLoanDueDates()).thenReturn(List.of(
+                new Object[] {1L, TODAY.minusDays(3)},
+                new Object[] {2L, TODAY.minusDays(1)},
+                new Object[] {3L, TODAY},
+                new Object[] {4L, TODAY.plusDays(5)}));
+        index = new LoanDueDateIndex(borrowRecordRepository);
+        index.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void onlyLoansDueBeforeTheDateAreReturnedOldestFirst() {
+        assertEquals(List.of(1L, 2L), index.getLoansDueBefore(TODAY));
+        assertEquals(List.of(), index.getLoansDueBefore(TODAY.minusDays(3)));
+    }
+
+    @Test
+    void renewedLoanIsNoLongerTracked() {
+        // renewLoan and AutoRenewalJob move the loan to RENEWED, which the overdue check does not flag
+        TransactionSynchronizationManager.initSynchronization();
+        index.onClosed(1L);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(List.of(2L), index.getLoansDueBefore(TODAY));
+        assertEquals(List.of(2L, 3L, 4L), index.getLoansDueBefore(TODAY.plusDays(30)));
+    }
+
+    @Test
+    void batchRenewalStopsTrackingEveryLoanInTheChunk() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onClosed(List.of(1L, 4L));
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(List.of(2L, 3L), index.getLoansDueBefore(TODAY.plusDays(30)));
+    }
+
+    @Test
+    void changesWaitForTheTransactionToCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onClosed(1L);
+        index.onCheckedOut(5L, TODAY.minusDays(10));
+        assertEquals(List.of(1L, 2L), index.getLoansDueBefore(TODAY));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(List.of(5L, 2L), index.getLoansDueBefore(TODAY));
+    }
+
+    @Test
+    void rolledBackChangesAreNeverApplied() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onClosed(List.of(1L, 2L));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(List.of(1L, 2L), index.getLoansDueBefore(TODAY));
+    }
+
+    @Test
+    void removedLoansAreForgottenAndUnknownIdsIgnored() {
+        index.removeAll(List.of(1L, 2L, 99L));
+
+        assertEquals(List.of(), index.getLoansDueBefore(TODAY));
+        assertEquals(List.of(3L, 4L), index.getLoansDueBefore(TODAY.plusDays(6)));
+    }
+
+    @Test
+    void rebuildReplacesTheIndexWithTheDatabaseState() {
+        when(borrowRecordRepository.findActiveLoanDueDates()).thenReturn(List.<Object[]>of(new Object[] {7L, TODAY.minusDays(2)}));
+
+        index.rebuild();
+
+        assertEquals(List.of(7L), index.getLoansDueBefore(TODAY.plusDays(30)));
+    }
+}
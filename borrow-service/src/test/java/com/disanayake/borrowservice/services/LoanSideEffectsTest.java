@@ -0,0 +1,117 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.CopyAdjustmentResult;
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import com.disanayake.borrowservice.services.PaymentServiceClient.CreateFineRequestDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LoanSideEffectsTest {
+
+    private BookService bookService;
+    private PaymentServiceClient paymentServiceClient;
+    private OutboxRelay outboxRelay;
+    private LoanSideEffects sideEffects;
+
+    @BeforeEach
+    void setUp() {
+        bookService = mock(BookService.class);
+        paymentServiceClient = mock(PaymentServiceClient.class);
+        outboxRelay = mock(OutboxRelay.class);
+        sideEffects = new LoanSideEffects(bookService, paymentServiceClient, outboxRelay);
+    }
+
+    @Test
+    void copyReturnIsWrittenToTheOutboxWithAFixedKey() {
+        sideEffects.returnCopies(Map.of("isbn-1", 2));
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(outboxRelay).enqueue(eq(MessageType.RETURN_COPIES), payload.capture());
+        LoanSideEffects.CopyReturn copyReturn = (LoanSideEffects.CopyReturn) payload.getValue();
+        assertNotNull(copyReturn.idempotencyKey());
+        assertEquals(Map.of("isbn-1", 2), copyReturn.deltas());
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    void nothingIsWrittenForAnEmptyReturn() {
+        sideEffects.returnCopies(Map.of());
+        sideEffects.createOverdueFines(List.of());
+
+        verify(outboxRelay, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void retriedCopyReturnReusesItsIdempotencyKey() {
+        Consumer<LoanSideEffects.CopyReturn> handler = registeredHandler(MessageType.RETURN_COPIES);
+        when(bookService.adjustAvailableCopies(anyMap(), eq("key-1"))).thenReturn(Map.of("isbn-1",
+                CopyAdjustmentResult.builder().isbn("isbn-1").delta(1).success(false).message("at total").build()));
+        LoanSideEffects.CopyReturn copyReturn = new LoanSideEffects.CopyReturn("key-1", Map.of("isbn-1", 1));
+
+        handler.accept(copyReturn);
+        handler.accept(copyReturn);
+
+        verify(bookService, times(2)).adjustAvailableCopies(Map.of("isbn-1", 1), "key-1");
+    }
+
+    @Test
+    void failedCopyReturnPropagatesSoTheOutboxRetries() {
+        Consumer<LoanSideEffects.CopyReturn> handler = registeredHandler(MessageType.RETURN_COPIES);
+        when(bookService.adjustAvailableCopies(anyMap(), any())).thenThrow(new RuntimeException("book-service down"));
+
+        assertThrows(RuntimeException.class,
+                () -> handler.accept(new LoanSideEffects.CopyReturn("key-1", Map.of("isbn-1", 1))));
+    }
+
+    @Test
+    void overdueFinesAreSplitIntoBatchesPaymentServiceAccepts() {
+        List<BorrowRecord> overdue = new ArrayList<>();
+        List<CreateFineRequestDto> fines = new ArrayList<>();
+        for (long id = 1; id <= PaymentServiceClient.FINE_BATCH_SIZE + 1; id++) {
+            overdue.add(BorrowRecord.builder().id(id).build());
+            fines.add(CreateFineRequestDto.builder().borrowRecordId(id).build());
+        }
+        when(paymentServiceClient.overdueFineRequests(overdue)).thenReturn(fines);
+
+        sideEffects.createOverdueFines(overdue);
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(outboxRelay, times(2)).enqueue(eq(MessageType.CREATE_FINES), payloads.capture());
+        assertEquals(PaymentServiceClient.FINE_BATCH_SIZE,
+                ((LoanSideEffects.FineBatch) payloads.getAllValues().get(0)).fines().size());
+        assertEquals(1, ((LoanSideEffects.FineBatch) payloads.getAllValues().get(1)).fines().size());
+        verify(paymentServiceClient, never()).createFines(any());
+    }
+
+    @Test
+    void lostBookFineIsWrittenToTheOutbox() {
+        BorrowRecord lost = BorrowRecord.builder().id(9L).userId(3L).bookIsbn("isbn-9").build();
+        CreateFineRequestDto fine = CreateFineRequestDto.builder().borrowRecordId(9L).type("LOST_BOOK").build();
+        when(paymentServiceClient.lostBookFineRequest(lost, 35.0)).thenReturn(fine);
+
+        sideEffects.createLostBookFine(lost, 35.0);
+
+        verify(outboxRelay).enqueue(MessageType.CREATE_FINES, new LoanSideEffects.FineBatch(List.of(fine)));
+        verify(paymentServiceClient, never()).createFines(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Consumer<T> registeredHandler(MessageType type) {
+        ArgumentCaptor<Consumer<T>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(outboxRelay).register(eq(type), any(), handler.capture());
+        return handler.getValue();
+    }
+}
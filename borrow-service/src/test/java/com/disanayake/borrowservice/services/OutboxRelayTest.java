@@ -0,0 +1,211 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.OutboxMessage;
+import com.disanayake.borrowservice.entities.OutboxMessage.MessageType;
+import com.disanayake.borrowservice.repositories.OutboxMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    record Payload(String token) {
+    }
+
+    private OutboxMessageRepository repository;
+    private OutboxRelay relay;
+    private final List<String> delivered = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OutboxMessageRepository.class);
+        relay = new OutboxRelay(repository, new ObjectMapper(), mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry(), 1, 5);
+        relay.register(MessageType.CONFIRM_HOLD, Payload.class, payload -> {
+            if (payload.token().startsWith("fail")) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE, "book-service unavailable");
+            }
+            if (payload.token().startsWith("busy")) {
+                throw new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS, "slow down");
+            }
+            if (payload.token().startsWith("reject")) {
+                // Wrapped, the way BookService reports RestClientExceptions
+                throw new RuntimeException("Failed to confirm hold",
+                        new HttpClientErrorException(HttpStatus.CONFLICT, "hold expired"));
+            }
+            delivered.add(payload.token());
+        }, payload -> failed.add(payload.token()));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        relay.shutdown();
+    }
+
+    @Test
+    void enqueueOutsideTransactionIsRejected() {
+        assertThrows(IllegalStateException.class, () -> relay.enqueue(MessageType.CONFIRM_HOLD, new Payload("t-1")));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void enqueueWritesTheMessageInTheCurrentTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        when(repository.save(any())).thenAnswer(invocation -> {
+            OutboxMessage message = invocation.getArgument(0);
+            message.setId(7L);
+            return message;
+        });
+
+        relay.enqueue(MessageType.CONFIRM_HOLD, new Payload("t-1"));
+
+        ArgumentCaptor<OutboxMessage> saved = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(repository).save(saved.capture());
+        assertEquals(MessageType.CONFIRM_HOLD, saved.getValue().getType());
+        assertEquals("{\"token\":\"t-1\"}", saved.getValue().getPayload());
+        assertEquals(0, saved.getValue().getAttempts());
+        // Nothing is delivered before the transaction commits
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        assertTrue(delivered.isEmpty());
+    }
+
+    @Test
+    void deliveredMessageIsDeleted() {
+        claimable(1L, "t-1", 0);
+
+        relay.deliver(1L);
+
+        assertEquals(List.of("t-1"), delivered);
+        verify(repository).deleteById(1L);
+        verify(repository, never()).reschedule(any(), any(), any());
+    }
+
+    @Test
+    void failedDeliveryIsRescheduledWithBackoffAndKept() {
+        claimable(2L, "fail-1", 3);
+        LocalDateTime before = LocalDateTime.now();
+
+        relay.deliver(2L);
+
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).reschedule(eq(2L), nextAttempt.capture(), eq("503 book-service unavailable"));
+        // Fourth failure waits 2^4 seconds
+        assertFalse(nextAttempt.getValue().isBefore(before.plusSeconds(16)));
+        verify(repository, never()).deleteById(any());
+        verify(repository, never()).markFailed(any(), any());
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void rejectedDeliveryIsMarkedFailedWithoutRetrying() {
+        claimable(6L, "reject-6", 0);
+
+        relay.deliver(6L);
+
+        verify(repository).markFailed(6L, "Failed to confirm hold");
+        verify(repository, never()).reschedule(any(), any(), any());
+        verify(repository, never()).deleteById(any());
+        assertEquals(List.of("reject-6"), failed);
+    }
+
+    @Test
+    void tooManyRequestsIsRetried() {
+        claimable(7L, "busy-7", 0);
+
+        relay.deliver(7L);
+
+        verify(repository).reschedule(eq(7L), any(), anyString());
+        verify(repository, never()).markFailed(any(), any());
+    }
+
+    @Test
+    void lastAllowedAttemptMarksTheMessageFailed() {
+        claimable(8L, "fail-8", 4);
+
+        relay.deliver(8L);
+
+        verify(repository).markFailed(eq(8L), anyString());
+        verify(repository, never()).reschedule(any(), any(), any());
+        assertEquals(List.of("fail-8"), failed);
+    }
+
+    @Test
+    void unreadablePayloadIsMarkedFailed() {
+        when(repository.claim(eq(9L), any(), any())).thenReturn(1);
+        when(repository.findById(9L)).thenReturn(Optional.of(OutboxMessage.builder()
+                .id(9L)
+                .type(MessageType.CONFIRM_HOLD)
+                .payload("not json")
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .createdAt(LocalDateTime.now())
+                .build()));
+
+        relay.deliver(9L);
+
+        verify(repository).markFailed(eq(9L), anyString());
+        verify(repository, never()).reschedule(any(), any(), any());
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void messageClaimedElsewhereIsNotDeliveredTwice() {
+        when(repository.claim(eq(3L), any(), any())).thenReturn(0);
+
+        relay.deliver(3L);
+
+        assertTrue(delivered.isEmpty());
+        verify(repository, never()).findById(any());
+        verify(repository, never()).deleteById(any());
+    }
+
+    @Test
+    void pollerDeliversEveryDueMessage() {
+        when(repository.findDueIds(any(), any())).thenReturn(List.of(4L, 5L));
+        claimable(4L, "t-4", 0);
+        claimable(5L, "fail-5", 0);
+
+        relay.deliverDue();
+
+        assertEquals(List.of("t-4"), delivered);
+        verify(repository).deleteById(4L);
+        verify(repository).reschedule(eq(5L), any(), anyString());
+    }
+
+    private void claimable(Long id, String token, int attempts) {
+        when(repository.claim(eq(id), any(), any())).thenReturn(1);
+        when(repository.findById(id)).thenReturn(Optional.of(OutboxMessage.builder()
+                .id(id)
+                .type(MessageType.CONFIRM_HOLD)
+                .payload("{\"token\":\"" + token + "\"}")
+                .attempts(attempts)
+                .nextAttemptAt(LocalDateTime.now())
+                .createdAt(LocalDateTime.now())
+                .build()));
+    }
+}
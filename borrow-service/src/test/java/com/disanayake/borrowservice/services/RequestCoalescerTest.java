@@ -0,0 +1,68 @@
+package com.disanayake.borrowservice.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> coalescer.load("isbn-1", key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "book " + key;
+        }));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> coalescer.load("isbn-1", key -> {
+            loads.incrementAndGet();
+            return "second load";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("book isbn-1", first.get(1, TimeUnit.SECONDS));
+        assertEquals("book isbn-1", second.get(1, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void nothingIsCachedOnceTheCallCompletes() {
+        AtomicInteger loads = new AtomicInteger();
+
+        coalescer.load("isbn-1", key -> "v" + loads.incrementAndGet());
+
+        assertEquals("v2", coalescer.load("isbn-1", key -> "v" + loads.incrementAndGet()));
+    }
+
+    @Test
+    void failureIsRethrownAndNotRemembered() {
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> coalescer.load("isbn-1", key -> {
+                    throw new IllegalStateException("book-service down");
+                }));
+        assertEquals("book-service down", failure.getMessage());
+
+        assertEquals("ok", coalescer.load("isbn-1", key -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
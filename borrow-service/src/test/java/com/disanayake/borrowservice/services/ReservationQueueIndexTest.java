@@ -0,0 +1,103 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReservationQueueIndexTest {
+
+    private ReservationRepository reservationRepository;
+    private ReservationQueueIndex index;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository = mock(ReservationRepository.class);
+        when(reservationRepository.findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus.ACTIVE))
+                .thenReturn(List.of(reservation(1L, "111", 10L), reservation(2L, "111", 20L), reservation(3L, "222", 30L)));
+        index = new ReservationQueueIndex(reservationRepository);
+        index.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void queueKeepsTheDatabaseOrderAndNewReservationsJoinAtTheBack() {
+        index.onReserved(reservation(4L, "111", 40L));
+
+        assertEquals(10L, index.getNextUserInQueue("111"));
+        assertEquals(1, index.getQueuePosition("111", 1L));
+        assertEquals(2, index.getQueuePosition("111", 2L));
+        assertEquals(3, index.getQueuePosition("111", 4L));
+        assertEquals(0, index.getQueuePosition("111", 3L));
+    }
+
+    @Test
+    void removingTheHeadMovesEveryoneUpAndAnEmptyQueueDisappears() {
+        index.onRemoved(reservation(1L, "111", 10L));
+        index.onRemoved(List.of(reservation(3L, "222", 30L)));
+
+        assertEquals(20L, index.getNextUserInQueue("111"));
+        assertEquals(1, index.getQueuePosition("111", 2L));
+        assertFalse(index.hasActiveReservations("222"));
+        assertNull(index.getNextUserInQueue("222"));
+    }
+
+    @Test
+    void changesWaitForTheTransactionToCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.onRemoved(reservation(1L, "111", 10L));
+        assertEquals(10L, index.getNextUserInQueue("111"));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(20L, index.getNextUserInQueue("111"));
+    }
+
+    @Test
+    void reloadPicksUpChangesMadeByOtherInstances() {
+        // Another instance fulfilled reservation 1 and took a reservation on a new book
+        when(reservationRepository.findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus.ACTIVE))
+                .thenReturn(List.of(reservation(2L, "111", 20L), reservation(3L, "222", 30L), reservation(5L, "333", 50L)));
+
+        index.reload();
+
+        assertEquals(20L, index.getNextUserInQueue("111"));
+        assertEquals(0, index.getQueuePosition("111", 1L));
+        assertEquals(50L, index.getNextUserInQueue("333"));
+    }
+
+    @Test
+    void localChangesCommittedDuringAReloadAreKept() {
+        when(reservationRepository.findByStatusOrderByReservationDateAscIdAsc(Reservation.ReservationStatus.ACTIVE))
+                .thenAnswer(invocation -> {
+                    // Commits land after the reload read the table
+                    index.onReserved(reservation(6L, "444", 60L));
+                    index.onRemoved(reservation(3L, "222", 30L));
+                    return List.of(reservation(1L, "111", 10L), reservation(3L, "222", 30L));
+                });
+
+        index.reload();
+
+        assertEquals(60L, index.getNextUserInQueue("444"));
+        assertFalse(index.hasActiveReservations("222"));
+        assertEquals(10L, index.getNextUserInQueue("111"));
+    }
+
+    private static Reservation reservation(Long id, String isbn, Long userId) {
+        return Reservation.builder().id(id).bookIsbn(isbn).userId(userId).status(Reservation.ReservationStatus.ACTIVE).build();
+    }
+}
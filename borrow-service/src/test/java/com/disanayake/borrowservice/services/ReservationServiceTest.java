@@ -0,0 +1,81 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.dto.BookResponse;
+import com.disanayake.borrowservice.dto.ReserveBookRequest;
+import com.disanayake.borrowservice.dto.UserValidationResponse;
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import com.disanayake.borrowservice.repositories.UserLockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReservationServiceTest {
+
+    @Mock private ReservationRepository reservationRepository;
+    @Mock private UserValidationService userValidationService;
+    @Mock private BookService bookService;
+    @Mock private UserActivityCounters userActivityCounters;
+    @Mock private IsbnLanes isbnLanes;
+    @Mock private UserLockRepository userLockRepository;
+    @InjectMocks private ReservationService reservationService;
+
+    @BeforeEach
+    void setUp() {
+        when(userValidationService.validateUser(2L)).thenReturn(UserValidationResponse.builder()
+                .success(true)
+                .data(UserValidationResponse.UserData.builder().id(2L).role("STUDENT").status("ACTIVE").build())
+                .build());
+        BookResponse book = new BookResponse();
+        book.setIsbn("111");
+        when(bookService.getBookByIsbn("111")).thenReturn(book);
+        when(reservationRepository.findByUserIdAndBookIsbnAndStatus(2L, "111", Reservation.ReservationStatus.ACTIVE))
+                .thenReturn(Optional.empty());
+    }
+
+    @Test
+    void reservationCommittedMeanwhileIsSeenByTheLockedRead() {
+        when(reservationRepository.findActiveReservationsForUpdate(2L)).thenReturn(List.of(reservation("111")));
+
+        assertThrows(IllegalStateException.class,
+                () -> reservationService.reserveBook(new ReserveBookRequest(2L, "111", null)));
+
+        InOrder order = inOrder(isbnLanes, userLockRepository, reservationRepository);
+        order.verify(isbnLanes).enter("111");
+        order.verify(userLockRepository).lock(eq(2L), any());
+        order.verify(reservationRepository).findActiveReservationsForUpdate(2L);
+        verify(reservationRepository, never()).save(any());
+    }
+
+    @Test
+    void reservationLimitCountsReservationsTheCountersHaveNotSeen() {
+        when(userActivityCounters.getActiveReservations(2L)).thenReturn(0);
+        when(reservationRepository.findActiveReservationsForUpdate(2L)).thenReturn(List.of(
+                reservation("a"), reservation("b"), reservation("c"), reservation("d"), reservation("e")));
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> reservationService.reserveBook(new ReserveBookRequest(2L, "111", null)));
+
+        assertEquals("User has reached maximum reservation limit of 5", error.getMessage());
+        verify(reservationRepository, never()).save(any());
+    }
+
+    private static Reservation reservation(String isbn) {
+        return Reservation.builder().userId(2L).bookIsbn(isbn).status(Reservation.ReservationStatus.ACTIVE).build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ScheduledTaskServiceTest {
+
+    private BorrowService borrowService;
+    private LoanDueDateIndex loanDueDateIndex;
+    private BorrowRecordRepository borrowRecordRepository;
+    private ScheduledTaskService scheduledTaskService;
+
+    @BeforeEach
+    void setUp() {
+        borrowService = mock(BorrowService.class);
+        loanDueDateIndex = mock(LoanDueDateIndex.class);
+        borrowRecordRepository = mock(BorrowRecordRepository.class);
+        scheduledTaskService = new ScheduledTaskService(borrowService, loanDueDateIndex, borrowRecordRepository);
+    }
+
+    @Test
+    void dueBacklogIsFlaggedOneChunkAtATime() {
+        List<Long> backlog = ids(ScheduledTaskService.OVERDUE_CHUNK_SIZE + 1);
+        when(loanDueDateIndex.getLoansDueBefore(LocalDate.now())).thenReturn(backlog);
+        when(borrowService.markLoansOverdue(anyList())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+
+        scheduledTaskService.overdueTick();
+
+        List<Long> first = backlog.subList(0, ScheduledTaskService.OVERDUE_CHUNK_SIZE);
+        List<Long> rest = backlog.subList(ScheduledTaskService.OVERDUE_CHUNK_SIZE, backlog.size());
+        InOrder order = inOrder(borrowService, loanDueDateIndex);
+        order.verify(borrowService).markLoansOverdue(first);
+        order.verify(loanDueDateIndex).removeAll(first);
+        order.verify(borrowService).markLoansOverdue(rest);
+        order.verify(loanDueDateIndex).removeAll(rest);
+    }
+
+    @Test
+    void failedChunkStaysInTheIndex() {
+        List<Long> backlog = ids(ScheduledTaskService.OVERDUE_CHUNK_SIZE + 1);
+        when(loanDueDateIndex.getLoansDueBefore(LocalDate.now())).thenReturn(backlog);
+        when(borrowService.markLoansOverdue(anyList())).thenReturn(0).thenThrow(new RuntimeException("db down"));
+
+        scheduledTaskService.overdueTick();
+
+        verify(loanDueDateIndex, times(1)).removeAll(anyList());
+    }
+
+    @Test
+    void sweepFlagsLoansTheIndexNeverSawAndRebuildsIt() {
+        when(borrowRecordRepository.findOverdueLoanIds(LocalDate.now())).thenReturn(List.of(41L, 42L));
+        when(borrowService.markLoansOverdue(List.of(41L, 42L))).thenReturn(2);
+
+        scheduledTaskService.overdueSweep();
+
+        InOrder order = inOrder(borrowService, loanDueDateIndex);
+        order.verify(borrowService).markLoansOverdue(List.of(41L, 42L));
+        order.verify(loanDueDateIndex).rebuild();
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toList();
+    }
+}
@@ -0,0 +1,89 @@
+package com.disanayake.borrowservice.services;
+
+import com.disanayake.borrowservice.entities.BorrowRecord;
+import com.disanayake.borrowservice.entities.Reservation;
+import com.disanayake.borrowservice.repositories.BorrowRecordRepository;
+import com.disanayake.borrowservice.repositories.ReservationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class UserActivityCountersTest {
+
+    private BorrowRecordRepository borrowRecordRepository;
+    private ReservationRepository reservationRepository;
+    private UserActivityCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        borrowRecordRepository = mock(BorrowRecordRepository.class);
+        reservationRepository = mock(ReservationRepository.class);
+        counters = new UserActivityCounters(borrowRecordRepository, reservationRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void countsMoveOnlyWhenTheTransactionCommits() {
+        when(borrowRecordRepository.countByUserIdAndStatus(1L, BorrowRecord.BorrowStatus.ACTIVE)).thenReturn(2L);
+        assertEquals(2, counters.getActiveLoans(1L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        counters.recordLoanTransition(1L, null, BorrowRecord.BorrowStatus.ACTIVE);
+        assertEquals(2, counters.getActiveLoans(1L));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(3, counters.getActiveLoans(1L));
+    }
+
+    @Test
+    void reconcileOnlyCountsLoadedUsersInChunks() {
+        int users = UserActivityCounters.RECONCILE_CHUNK_SIZE + 1;
+        for (long userId = 1; userId <= users; userId++) {
+            counters.getActiveLoans(userId);
+        }
+        when(borrowRecordRepository.countByStatusGroupByUserId(eq(BorrowRecord.BorrowStatus.ACTIVE), anyCollection()))
+                .thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(1).contains(7L)
+                        ? List.<Object[]>of(new Object[] {7L, 4L})
+                        : List.of());
+
+        counters.reconcile();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(borrowRecordRepository, times(2)).countByStatusGroupByUserId(any(), chunks.capture());
+        verify(reservationRepository, times(2)).countByStatusGroupByUserId(eq(Reservation.ReservationStatus.ACTIVE), anyCollection());
+        Set<Long> reconciled = new HashSet<>();
+        chunks.getAllValues().forEach(chunk -> {
+            assertTrue(chunk.size() <= UserActivityCounters.RECONCILE_CHUNK_SIZE);
+            reconciled.addAll(chunk);
+        });
+        assertEquals(users, reconciled.size());
+        assertEquals(4, counters.getActiveLoans(7L));
+    }
+
+    @Test
+    void reconcileWithNoLoadedUsersRunsNoQuery() {
+        counters.reconcile();
+
+        verifyNoInteractions(borrowRecordRepository, reservationRepository);
+    }
+}
@@ -0,0 +1,17 @@
+package com.kuruneru.latereminders.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanPageDto {
+    private List<LoanDto> items;
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.kuruneru.latereminders.service.external;
 
 import com.kuruneru.latereminders.dto.ApiResponse;
 import com.kuruneru.latereminders.dto.LoanDto;
+import com.kuruneru.latereminders.dto.LoanPageDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -21,6 +23,9 @@ public class BorrowServiceClient {
     
     private final RestTemplate restTemplate;
     
+    // Page size used when pulling loans from the borrow service query endpoint
+    private static final int QUERY_PAGE_SIZE = 500;
+    
     @Value("${library-reminders.services.borrow-service-url}")
     private String borrowServiceUrl;
     
@@ -29,25 +34,9 @@ public class BorrowServiceClient {
      */
     public List<LoanDto> getActiveLoans() {
         try {
-            String url = borrowServiceUrl + "/api/loans?status=ACTIVE&size=1000";
-            log.debug("Fetching active loans from: {}", url);
-            
-            ResponseEntity<ApiResponse<List<LoanDto>>> response = restTemplate.exchange(
-                url,
-                HttpMethod.GET,
-                null,
-                new ParameterizedTypeReference<ApiResponse<List<LoanDto>>>() {}
-            );
-            
-            if (response.getBody() != null && response.getBody().isSuccess()) {
-                List<LoanDto> loans = response.getBody().getData();
-                log.info("Successfully fetched {} active loans", loans != null ? loans.size() : 0);
-                return loans != null ? loans : List.of();
-            } else {
-                log.warn("Failed to fetch active loans: {}", 
-                    response.getBody() != null ? response.getBody().getMessage() : "No response body");
-                return List.of();
-            }
+            List<LoanDto> loans = queryLoans("status=ACTIVE,RENEWED");
+            log.info("Successfully fetched {} active loans", loans.size());
+            return loans;
         } catch (Exception e) {
             log.error("Error fetching active loans from borrow service", e);
             return List.of();
@@ -89,31 +78,49 @@ public class BorrowServiceClient {
      */
     public List<LoanDto> getLoansDueTomorrow() {
         try {
-            LocalDateTime tomorrow = LocalDateTime.now().plusDays(1);
-            String tomorrowDate = tomorrow.toLocalDate().toString();
-            
-            String url = borrowServiceUrl + "/api/loans?dueDate=" + tomorrowDate + "&size=1000";
-            log.debug("Fetching loans due tomorrow from: {}", url);
+            String tomorrowDate = LocalDateTime.now().plusDays(1).toLocalDate().toString();
+            List<LoanDto> loans = queryLoans("status=ACTIVE,RENEWED&dueFrom=" + tomorrowDate + "&dueTo=" + tomorrowDate);
+            log.info("Successfully fetched {} loans due tomorrow", loans.size());
+            return loans;
+        } catch (Exception e) {
+            log.error("Error fetching loans due tomorrow from borrow service", e);
+            return List.of();
+        }
+    }
+    
+    /**
+     * Pull every loan matching the filter from the borrow service query endpoint,
+     * following continuation cursors. Loans come enriched with their book, since
+     * reminder emails and reminder logs show the title.
+     */
+    private List<LoanDto> queryLoans(String filter) {
+        List<LoanDto> loans = new ArrayList<>();
+        String cursor = null;
+        
+        do {
+            String url = borrowServiceUrl + "/api/loans/query?" + filter + "&enrich=true&size=" + QUERY_PAGE_SIZE
+                    + (cursor != null ? "&cursor=" + cursor : "");
+            log.debug("Querying loans from: {}", url);
             
-            ResponseEntity<ApiResponse<List<LoanDto>>> response = restTemplate.exchange(
+            ResponseEntity<ApiResponse<LoanPageDto>> response = restTemplate.exchange(
                 url,
                 HttpMethod.GET,
                 null,
-                new ParameterizedTypeReference<ApiResponse<List<LoanDto>>>() {}
+                new ParameterizedTypeReference<ApiResponse<LoanPageDto>>() {}
             );
             
-            if (response.getBody() != null && response.getBody().isSuccess()) {
-                List<LoanDto> loans = response.getBody().getData();
-                log.info("Successfully fetched {} loans due tomorrow", loans != null ? loans.size() : 0);
-                return loans != null ? loans : List.of();
-            } else {
-                log.warn("Failed to fetch loans due tomorrow: {}", 
-                    response.getBody() != null ? response.getBody().getMessage() : "No response body");
-                return List.of();
+            ApiResponse<LoanPageDto> body = response.getBody();
+            if (body == null || !body.isSuccess() || body.getData() == null) {
+                throw new IllegalStateException("Loan query failed: " 
+                    + (body != null ? body.getMessage() : "No response body"));
             }
-        } catch (Exception e) {
-            log.error("Error fetching loans due tomorrow from borrow service", e);
-            return List.of();
-        }
+            
+            if (body.getData().getItems() != null) {
+                loans.addAll(body.getData().getItems());
+            }
+            cursor = body.getData().isHasMore() ? body.getData().getNextCursor() : null;
+        } while (cursor != null);
+        
+        return loans;
     }
 }
\ No newline at end of file
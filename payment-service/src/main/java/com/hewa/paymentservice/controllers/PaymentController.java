@@ -42,6 +42,24 @@ public class PaymentController {
         }
     }
     
+    // Create many fines in one call (borrow-service's overdue sweep); each item reports its own outcome
+    @PostMapping("/fines/batch")
+    public ResponseEntity<ApiResponse<List<FineBatchItemResult>>> createFines(@Valid @RequestBody CreateFineBatchRequest request) {
+        try {
+            List<FineBatchItemResult> results = paymentService.createFines(request);
+            long created = results.stream().filter(FineBatchItemResult::isSuccess).count();
+            return ResponseEntity.ok(ApiResponse.success(
+                    created + " of " + results.size() + " fines created", results));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error creating fines in batch", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to create fines: " + e.getMessage()));
+        }
+    }
+    
     // Process payment for a fine
     @PostMapping("/fines/pay")
     public ResponseEntity<ApiResponse<FineResponse>> processPayment(@Valid @RequestBody ProcessPaymentRequest request) {
@@ -122,8 +140,8 @@ public class PaymentController {
         }
     }
     
-    // Check if user has pending fines
-    @GetMapping("/user/{userId}/has-pending")
+    // Check if user has pending fines (borrow-service calls the /fines/user/... form)
+    @GetMapping({"/user/{userId}/has-pending", "/fines/user/{userId}/has-pending"})
     public ResponseEntity<ApiResponse<Boolean>> hasUserPendingFines(@PathVariable Long userId) {
         try {
             boolean hasPendingFines = paymentService.hasUserPendingFines(userId);
@@ -213,10 +231,31 @@ public class PaymentController {
         try {
             PaymentSummaryResponse summary = paymentService.getPaymentSummaryByDateRange(startDate, endDate);
             return ResponseEntity.ok(ApiResponse.success("Payment summary retrieved successfully", summary));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             log.error("Error fetching payment summary by date range", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(ApiResponse.error("Failed to fetch payment summary: " + e.getMessage()));
         }
     }
+    
+    // Rebuild the daily rollups behind the range summaries (back-fill, or repair after manual data fixes)
+    @PostMapping("/payments/summary/rollups/rebuild")
+    public ResponseEntity<ApiResponse<Integer>> rebuildDailyRollups(
+            @RequestParam String startDate,
+            @RequestParam String endDate) {
+        try {
+            int rows = paymentService.rebuildDailyRollups(startDate, endDate);
+            return ResponseEntity.ok(ApiResponse.success("Daily rollups rebuilt successfully", rows));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error rebuilding daily rollups", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to rebuild daily rollups: " + e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.hewa.paymentservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CreateFineBatchRequest {
+    
+    @NotEmpty(message = "At least one fine is required")
+    @Size(max = 1000, message = "At most 1000 fines per batch")
+    private List<@Valid CreateFineRequest> fines;
+}
\ No newline at end of file
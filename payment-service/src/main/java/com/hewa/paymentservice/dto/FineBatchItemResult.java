@@ -0,0 +1,17 @@
+package com.hewa.paymentservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FineBatchItemResult {
+    private Long borrowRecordId;
+    private boolean success;
+    private String message;
+    private FineResponse fine; // Only set when the fine was created
+}
\ No newline at end of file
@@ -10,7 +10,15 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "fines")
+@Table(name = "fines", indexes = {
+        // Cover the summary aggregates so they are answered from the index
+        @Index(name = "idx_fine_type_status", columnList = "type, status, amount"),
+        @Index(name = "idx_fine_created_date", columnList = "created_date"),
+        // A user's fines by status, and the fine balance reconcile over a range of users
+        @Index(name = "idx_fine_user_status", columnList = "user_id, status, amount"),
+        // At most one fine per borrow record; databases that predate it are cleaned up by FineDuplicateCleanup
+        @Index(name = "uk_fine_borrow_record", columnList = "borrow_record_id", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -10,7 +10,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        // Cover the summary aggregates so they are answered from the index
+        @Index(name = "idx_payment_status_method", columnList = "status, method, amount"),
+        @Index(name = "idx_payment_date", columnList = "payment_date")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
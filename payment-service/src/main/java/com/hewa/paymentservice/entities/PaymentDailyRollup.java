@@ -0,0 +1,56 @@
+package com.hewa.paymentservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// One slot of the totals for one day: completed payments per method by payment date (kind PAYMENT,
+// status COMPLETED), or fines per type and current status by creation date (kind FINE). A day's total is
+// the sum of its slots; writers pick a slot at random so today's rows are not one lock everybody waits on.
+@Entity
+@Table(name = "payment_daily_rollup_slots", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_payment_rollup_day_slot",
+                columnNames = {"rollup_date", "kind", "category", "status", "slot"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentDailyRollup {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Kind kind;
+    
+    @Column(nullable = false, length = 20)
+    private String category; // Payment method or fine type
+    
+    @Column(nullable = false, length = 20)
+    private String status;
+    
+    @Column(nullable = false)
+    private int slot;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(name = "entry_count", nullable = false)
+    private long entryCount;
+    
+    public enum Kind {
+        PAYMENT,
+        FINE
+    }
+}
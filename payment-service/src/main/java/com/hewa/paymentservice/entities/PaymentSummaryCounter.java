@@ -0,0 +1,56 @@
+package com.hewa.paymentservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One slot of a running total behind the payment summary: completed payments per method (kind PAYMENT,
+// status COMPLETED) or fines per type and status (kind FINE). A total is the sum of its slots; writers
+// pick a slot at random so concurrent fines and payments of the same kind do not queue on one row.
+// Updated in the same transaction as the fine or payment it counts.
+@Entity
+@Table(name = "payment_summary_counter_slots", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_summary_counter_slot", columnNames = {"kind", "category", "status", "slot"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentSummaryCounter {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Kind kind;
+    
+    @Column(nullable = false, length = 20)
+    private String category; // Payment method or fine type
+    
+    @Column(nullable = false, length = 20)
+    private String status;
+    
+    @Column(nullable = false)
+    private int slot;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(name = "entry_count", nullable = false)
+    private long entryCount;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    public enum Kind {
+        PAYMENT,
+        FINE
+    }
+}
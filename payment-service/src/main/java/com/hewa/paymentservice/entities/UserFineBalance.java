@@ -0,0 +1,34 @@
+package com.hewa.paymentservice.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A user's outstanding (PENDING) fines, kept in step with the fines table so balance and
+// has-pending checks are a primary key lookup. A user without a row owes nothing.
+@Entity
+@Table(name = "user_fine_balances")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserFineBalance {
+    
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(name = "outstanding_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal outstandingAmount;
+    
+    @Column(name = "pending_count", nullable = false)
+    private long pendingCount;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,117 @@
+package com.hewa.paymentservice.repositories;
+
+import com.hewa.paymentservice.entities.Fine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Plain JDBC access for bulk fine inserts (IDENTITY keys disable Hibernate insert batching) and for the
+// one-fine-per-borrow-record unique index
+@Repository
+@RequiredArgsConstructor
+public class FineJdbcRepository {
+    
+    public static final String BORROW_RECORD_UNIQUE_INDEX = "uk_fine_borrow_record";
+    // Non-unique index the unique one replaces
+    public static final String BORROW_RECORD_LEGACY_INDEX = "idx_fine_borrow_record";
+    
+    // A fine for a borrow record that already has one is skipped (uk_fine_borrow_record)
+    private static final String INSERT_SQL =
+            "INSERT INTO fines (user_id, borrow_record_id, book_isbn, type, amount, status, created_date, description, notes) " +
+            "VALUES (:userId, :borrowRecordId, :bookIsbn, :type, :amount, :status, :createdDate, :description, :notes) " +
+            "ON DUPLICATE KEY UPDATE id = id";
+    
+    private static final String SELECT_IDS_SQL =
+            "SELECT id, borrow_record_id FROM fines WHERE borrow_record_id IN (:borrowRecordIds)";
+    
+    // Unsettled fines that duplicate a better fine for the same borrow record: a settled fine is kept over an
+    // unsettled one, and otherwise the oldest. Settled duplicates are never deleted, payments point at them.
+    private static final String DELETE_UNSETTLED_DUPLICATES_SQL =
+            "DELETE d FROM fines d JOIN fines k ON k.borrow_record_id = d.borrow_record_id AND k.id <> d.id " +
+            "WHERE d.status IN ('PENDING', 'CANCELLED') AND (k.status NOT IN ('PENDING', 'CANCELLED') OR k.id < d.id)";
+    
+    private static final String COUNT_DUPLICATED_SQL =
+            "SELECT COUNT(*) FROM (SELECT borrow_record_id FROM fines GROUP BY borrow_record_id HAVING COUNT(*) > 1) d";
+    
+    private static final String INDEX_EXISTS_SQL =
+            "SELECT COUNT(*) FROM information_schema.statistics " +
+            "WHERE table_schema = DATABASE() AND table_name = 'fines' AND index_name = :indexName";
+    
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    
+    // Insert the fines in one JDBC batch, skipping those whose borrow record already has a fine, and return the
+    // ones inserted with their generated IDs (createdDate and status must be set). The inserted rows are read
+    // back in the caller's transaction, which must be REPEATABLE READ and must already have looked for
+    // existing fines of these borrow records: its snapshot then shows its own inserts and no other fine for them.
+    public List<Fine> insertAllSkippingExisting(List<Fine> fines) {
+        if (fines.isEmpty()) {
+            return List.of();
+        }
+        
+        SqlParameterSource[] batchArgs = new SqlParameterSource[fines.size()];
+        for (int i = 0; i < fines.size(); i++) {
+            Fine fine = fines.get(i);
+            batchArgs[i] = new MapSqlParameterSource()
+                    .addValue("userId", fine.getUserId())
+                    .addValue("borrowRecordId", fine.getBorrowRecordId())
+                    .addValue("bookIsbn", fine.getBookIsbn())
+                    .addValue("type", fine.getType().name())
+                    .addValue("amount", fine.getAmount())
+                    .addValue("status", fine.getStatus().name())
+                    .addValue("createdDate", fine.getCreatedDate())
+                    .addValue("description", fine.getDescription())
+                    .addValue("notes", fine.getNotes());
+        }
+        
+        jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+        
+        Map<Long, Long> idsByBorrowRecord = new HashMap<>();
+        jdbcTemplate.query(SELECT_IDS_SQL,
+                new MapSqlParameterSource("borrowRecordIds", fines.stream().map(Fine::getBorrowRecordId).toList()),
+                rs -> {
+                    idsByBorrowRecord.put(rs.getLong("borrow_record_id"), rs.getLong("id"));
+                });
+        
+        List<Fine> inserted = new ArrayList<>();
+        for (Fine fine : fines) {
+            Long id = idsByBorrowRecord.get(fine.getBorrowRecordId());
+            if (id != null) {
+                fine.setId(id);
+                inserted.add(fine);
+            }
+        }
+        return inserted;
+    }
+    
+    public int deleteUnsettledDuplicates() {
+        return jdbcTemplate.getJdbcTemplate().update(DELETE_UNSETTLED_DUPLICATES_SQL);
+    }
+    
+    // Borrow records that still have more than one fine
+    public int countDuplicatedBorrowRecords() {
+        Integer count = jdbcTemplate.getJdbcTemplate().queryForObject(COUNT_DUPLICATED_SQL, Integer.class);
+        return count != null ? count : 0;
+    }
+    
+    public boolean indexExists(String indexName) {
+        Integer count = jdbcTemplate.queryForObject(INDEX_EXISTS_SQL,
+                new MapSqlParameterSource("indexName", indexName), Integer.class);
+        return count != null && count > 0;
+    }
+    
+    public void createBorrowRecordUniqueIndex() {
+        jdbcTemplate.getJdbcTemplate().execute(
+                "ALTER TABLE fines ADD UNIQUE INDEX " + BORROW_RECORD_UNIQUE_INDEX + " (borrow_record_id)");
+    }
+    
+    public void dropLegacyBorrowRecordIndex() {
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE fines DROP INDEX " + BORROW_RECORD_LEGACY_INDEX);
+    }
+}
\ No newline at end of file
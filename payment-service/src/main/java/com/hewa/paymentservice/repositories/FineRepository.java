@@ -10,6 +10,7 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +26,10 @@ public interface FineRepository extends JpaRepository<Fine, Long> {
     // Find fine by borrow record ID
     Optional<Fine> findByBorrowRecordId(Long borrowRecordId);
     
+    // Borrow record IDs among the given ones that already have a fine (dedupes a batch in one query)
+    @Query("SELECT f.borrowRecordId FROM Fine f WHERE f.borrowRecordId IN :borrowRecordIds")
+    List<Long> findBorrowRecordIdsIn(@Param("borrowRecordIds") Collection<Long> borrowRecordIds);
+    
     // Find all pending fines for a user
     List<Fine> findByUserIdAndStatusOrderByCreatedDateDesc(Long userId, Fine.FineStatus status);
     
@@ -41,6 +46,13 @@ public interface FineRepository extends JpaRepository<Fine, Long> {
     // Check if user has any pending fines
     boolean existsByUserIdAndStatus(Long userId, Fine.FineStatus status);
     
+    // Check if any fine has the given status
+    boolean existsByStatus(Fine.FineStatus status);
+    
     // Find fines by date range (for payment summaries)
     List<Fine> findByCreatedDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+    
+    // Fine totals per type and status (for payment summaries); rows are [type, status, SUM(amount), COUNT]
+    @Query("SELECT f.type, f.status, SUM(f.amount), COUNT(f) FROM Fine f GROUP BY f.type, f.status")
+    List<Object[]> sumFinesByTypeAndStatus();
 }
\ No newline at end of file
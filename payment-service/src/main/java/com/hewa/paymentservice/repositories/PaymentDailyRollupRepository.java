@@ -0,0 +1,68 @@
+package com.hewa.paymentservice.repositories;
+
+import com.hewa.paymentservice.entities.PaymentDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PaymentDailyRollupRepository extends JpaRepository<PaymentDailyRollup, Long> {
+    
+    // Add to one slot of a day's total in one statement, creating the slot on first use
+    @Modifying
+    @Query(value = "INSERT INTO payment_daily_rollup_slots (rollup_date, kind, category, status, slot, amount, entry_count) " +
+                   "VALUES (:day, :kind, :category, :status, :slot, :amount, :count) " +
+                   "ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount), entry_count = entry_count + VALUES(entry_count)",
+           nativeQuery = true)
+    int add(@Param("day") LocalDate day, @Param("kind") String kind, @Param("category") String category,
+            @Param("status") String status, @Param("slot") int slot,
+            @Param("amount") BigDecimal amount, @Param("count") long count);
+    
+    // Totals over a date range; rows are [kind, category, status, SUM(amount), SUM(entryCount)]
+    @Query("SELECT r.kind, r.category, r.status, SUM(r.amount), SUM(r.entryCount) FROM PaymentDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :startDate AND :endDate GROUP BY r.kind, r.category, r.status")
+    List<Object[]> sumBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    // Amount per kind over a date range (for trends); rows are [kind, SUM(amount)]
+    @Query("SELECT r.kind, SUM(r.amount) FROM PaymentDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :startDate AND :endDate GROUP BY r.kind")
+    List<Object[]> sumAmountByKindBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    // Earliest day a reconcile has to cover; each is null when its table is empty
+    @Query("SELECT MIN(r.rollupDate) FROM PaymentDailyRollup r")
+    LocalDate findFirstRollupDay();
+    
+    @Query("SELECT MIN(f.createdDate) FROM Fine f")
+    LocalDateTime findFirstFineCreated();
+    
+    @Query("SELECT MIN(p.paymentDate) FROM Payment p")
+    LocalDateTime findFirstPaymentDate();
+    
+    // Back-fill: drop the days being rebuilt, then recompute them from the raw tables in the database
+    @Modifying
+    @Query("DELETE FROM PaymentDailyRollup r WHERE r.rollupDate BETWEEN :startDate AND :endDate")
+    int deleteBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    @Modifying
+    @Query(value = "INSERT INTO payment_daily_rollup_slots (rollup_date, kind, category, status, slot, amount, entry_count) " +
+                   "SELECT DATE(payment_date), 'PAYMENT', method, 'COMPLETED', 0, SUM(amount), COUNT(*) FROM payments " +
+                   "WHERE status = 'COMPLETED' AND payment_date >= :start AND payment_date < :end " +
+                   "GROUP BY DATE(payment_date), method",
+           nativeQuery = true)
+    int insertPaymentTotals(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    
+    @Modifying
+    @Query(value = "INSERT INTO payment_daily_rollup_slots (rollup_date, kind, category, status, slot, amount, entry_count) " +
+                   "SELECT DATE(created_date), 'FINE', type, status, 0, SUM(amount), COUNT(*) FROM fines " +
+                   "WHERE created_date >= :start AND created_date < :end " +
+                   "GROUP BY DATE(created_date), type, status",
+           nativeQuery = true)
+    int insertFineTotals(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
@@ -42,4 +42,9 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     
     // Find payments by date range (for payment summaries)
     List<Payment> findByPaymentDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+    
+    // Completed payment totals per method (for payment summaries); rows are [method, SUM(amount), COUNT]
+    @Query("SELECT p.method, SUM(p.amount), COUNT(p) FROM Payment p " +
+           "WHERE p.status = 'COMPLETED' GROUP BY p.method")
+    List<Object[]> sumCompletedPaymentsByMethod();
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.hewa.paymentservice.repositories;
+
+import com.hewa.paymentservice.entities.PaymentSummaryCounter;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface PaymentSummaryCounterRepository extends JpaRepository<PaymentSummaryCounter, Long> {
+    
+    // Add to one slot of a counter in one statement, creating the slot on first use
+    @Modifying
+    @Query(value = "INSERT INTO payment_summary_counter_slots (kind, category, status, slot, amount, entry_count, updated_at) " +
+                   "VALUES (:kind, :category, :status, :slot, :amount, :count, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount), " +
+                   "entry_count = entry_count + VALUES(entry_count), updated_at = VALUES(updated_at)",
+           nativeQuery = true)
+    int add(@Param("kind") String kind, @Param("category") String category, @Param("status") String status,
+            @Param("slot") int slot, @Param("amount") BigDecimal amount, @Param("count") long count);
+    
+    // Every counter with its slots summed; rows are [kind, category, status, SUM(amount), SUM(entryCount)]
+    @Query("SELECT c.kind, c.category, c.status, SUM(c.amount), SUM(c.entryCount) FROM PaymentSummaryCounter c " +
+           "GROUP BY c.kind, c.category, c.status")
+    List<Object[]> sumSlots();
+    
+    // Lock every counter so no fine or payment can change them while they are re-verified
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM PaymentSummaryCounter c")
+    List<PaymentSummaryCounter> lockAll();
+}
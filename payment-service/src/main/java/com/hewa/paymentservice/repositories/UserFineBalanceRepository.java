@@ -0,0 +1,58 @@
+package com.hewa.paymentservice.repositories;
+
+import com.hewa.paymentservice.entities.UserFineBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+
+@Repository
+public interface UserFineBalanceRepository extends JpaRepository<UserFineBalance, Long> {
+    
+    // Add to a user's balance in one statement, creating the row on first use
+    @Modifying
+    @Query(value = "INSERT INTO user_fine_balances (user_id, outstanding_amount, pending_count, updated_at) " +
+                   "VALUES (:userId, :amount, :count, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE outstanding_amount = outstanding_amount + VALUES(outstanding_amount), " +
+                   "pending_count = pending_count + VALUES(pending_count), updated_at = VALUES(updated_at)",
+           nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("amount") BigDecimal amount, @Param("count") long count);
+    
+    // Seed every balance from the pending fines (used once, when the ledger is introduced)
+    @Modifying
+    @Query(value = "INSERT INTO user_fine_balances (user_id, outstanding_amount, pending_count, updated_at) " +
+                   "SELECT user_id, SUM(amount), COUNT(*), NOW() FROM fines WHERE status = 'PENDING' GROUP BY user_id " +
+                   "ON DUPLICATE KEY UPDATE outstanding_amount = VALUES(outstanding_amount), " +
+                   "pending_count = VALUES(pending_count), updated_at = VALUES(updated_at)",
+           nativeQuery = true)
+    int seedFromPendingFines();
+    
+    // Overwrite the balances of the users in a range of ids that have pending fines with their recomputed totals
+    @Modifying
+    @Query(value = "INSERT INTO user_fine_balances (user_id, outstanding_amount, pending_count, updated_at) " +
+                   "SELECT user_id, SUM(amount), COUNT(*), NOW() FROM fines " +
+                   "WHERE status = 'PENDING' AND user_id BETWEEN :fromUserId AND :toUserId GROUP BY user_id " +
+                   "ON DUPLICATE KEY UPDATE outstanding_amount = VALUES(outstanding_amount), " +
+                   "pending_count = VALUES(pending_count), updated_at = VALUES(updated_at)",
+           nativeQuery = true)
+    int recomputeFromPendingFines(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId);
+    
+    // Zero the balances of the users in a range of ids that no longer have any pending fine
+    @Modifying
+    @Query(value = "UPDATE user_fine_balances b SET b.outstanding_amount = 0, b.pending_count = 0, b.updated_at = NOW() " +
+                   "WHERE b.user_id BETWEEN :fromUserId AND :toUserId " +
+                   "AND (b.outstanding_amount <> 0 OR b.pending_count <> 0) " +
+                   "AND NOT EXISTS (SELECT 1 FROM fines f WHERE f.user_id = b.user_id AND f.status = 'PENDING')",
+           nativeQuery = true)
+    int clearWithoutPendingFines(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId);
+    
+    // Highest user id with a balance or a fine, the end of the reconcile; null when there are neither
+    @Query("SELECT MAX(b.userId) FROM UserFineBalance b")
+    Long findMaxUserId();
+    
+    @Query("SELECT MAX(f.userId) FROM Fine f")
+    Long findMaxFineUserId();
+}
@@ -0,0 +1,77 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.repositories.FineJdbcRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Puts the one-fine-per-borrow-record unique index on databases created before it existed.
+ *
+ * Schema update cannot add the index while the fines table holds duplicates, which the old
+ * check-then-insert let concurrent requests create. At startup, before the summary counters are
+ * verified, the unsettled duplicates are deleted (keeping a settled fine, otherwise the oldest), the
+ * daily rollups and fine balances are rebuilt if anything was deleted, and the index is created in
+ * place of the old non-unique one. Borrow records with more than one settled fine are left for a
+ * librarian to resolve; the index is retried on the next start.
+ */
+@Component
+@Slf4j
+public class FineDuplicateCleanup {
+
+    private final FineJdbcRepository fineJdbcRepository;
+    private final PaymentDailyRollups paymentDailyRollups;
+    private final UserFineLedger userFineLedger;
+    private final TransactionTemplate transactionTemplate;
+
+    public FineDuplicateCleanup(FineJdbcRepository fineJdbcRepository,
+                                PaymentDailyRollups paymentDailyRollups,
+                                UserFineLedger userFineLedger,
+                                PlatformTransactionManager transactionManager) {
+        this.fineJdbcRepository = fineJdbcRepository;
+        this.paymentDailyRollups = paymentDailyRollups;
+        this.userFineLedger = userFineLedger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void ensureUniqueAtStartup() {
+        try {
+            ensureUnique();
+        } catch (Exception e) {
+            log.error("Error adding the unique borrow record index to fines", e);
+        }
+    }
+
+    // Returns true once the unique index is in place
+    public boolean ensureUnique() {
+        if (!fineJdbcRepository.indexExists(FineJdbcRepository.BORROW_RECORD_UNIQUE_INDEX)) {
+            int deleted = transactionTemplate.execute(status -> fineJdbcRepository.deleteUnsettledDuplicates());
+            if (deleted > 0) {
+                log.warn("Deleted {} duplicate unsettled fines for borrow records that already had a fine", deleted);
+                paymentDailyRollups.rebuildHistory();
+                userFineLedger.reconcile();
+            }
+
+            int duplicated = fineJdbcRepository.countDuplicatedBorrowRecords();
+            if (duplicated > 0) {
+                log.error("{} borrow records have more than one settled fine; resolve them to enable the unique index",
+                        duplicated);
+                return false;
+            }
+            fineJdbcRepository.createBorrowRecordUniqueIndex();
+            log.info("Added unique index {} to fines", FineJdbcRepository.BORROW_RECORD_UNIQUE_INDEX);
+        }
+
+        if (fineJdbcRepository.indexExists(FineJdbcRepository.BORROW_RECORD_LEGACY_INDEX)) {
+            fineJdbcRepository.dropLegacyBorrowRecordIndex();
+        }
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,218 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.Payment;
+import com.hewa.paymentservice.entities.PaymentDailyRollup.Kind;
+import com.hewa.paymentservice.repositories.PaymentDailyRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Per-day payment and fine totals, so a date-range summary sums at most a few rows per day instead of
+ * loading every payment and fine in the range.
+ *
+ * Payments count on the day they were made. Fines count on the day they were created, under their
+ * current status, so paying or waiving a fine moves it between statuses on its creation day. The rows
+ * are kept up to date in the same transaction as createFine, processPayment and waiveFine, each write
+ * going to a random one of a few slots per day so concurrent writers rarely share a row lock. Any range
+ * of days can be rebuilt from the raw tables and an empty table is back-filled with the whole history
+ * at startup. The last few days are rebuilt nightly, so drift from changes made behind the service's
+ * back does not last there; older days keep their totals until a rebuild of their range is asked for.
+ */
+@Component
+@Slf4j
+public class PaymentDailyRollups {
+
+    // Start of the history rebuilt by a full back-fill
+    private static final LocalDate HISTORY_START = LocalDate.of(2000, 1, 1);
+    private static final String COMPLETED = Payment.PaymentStatus.COMPLETED.name();
+
+    private final PaymentDailyRollupRepository rollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int slots;
+    private final int reconcileChunkDays;
+    private final int reconcileDays;
+
+    public PaymentDailyRollups(PaymentDailyRollupRepository rollupRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${payments.rollups.slots:8}") int slots,
+                               @Value("${payments.rollups.reconcile-chunk-days:31}") int reconcileChunkDays,
+                               @Value("${payments.rollups.reconcile-days:2}") int reconcileDays) {
+        if (slots < 1 || reconcileChunkDays < 1 || reconcileDays < 1) {
+            throw new IllegalArgumentException(
+                    "payments.rollups.slots, reconcile-chunk-days and reconcile-days must be at least 1");
+        }
+        this.rollupRepository = rollupRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.slots = slots;
+        this.reconcileChunkDays = reconcileChunkDays;
+        this.reconcileDays = reconcileDays;
+    }
+
+    public void onFineCreated(Fine fine) {
+        addFine(fine, fine.getStatus(), fine.getAmount(), 1);
+    }
+
+    // Fines created together are folded into one rollup update per day, type and status
+    public void onFinesCreated(List<Fine> fines) {
+        Map<List<Object>, List<Fine>> groups = fines.stream()
+                .collect(Collectors.groupingBy(fine ->
+                        List.of(fine.getCreatedDate().toLocalDate(), fine.getType(), fine.getStatus())));
+        groups.forEach((key, group) -> addFine(group.get(0), group.get(0).getStatus(),
+                group.stream().map(Fine::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add), group.size()));
+    }
+
+    // Move a fine from its previous status to its current one, on the day it was created
+    public void onFineStatusChanged(Fine fine, Fine.FineStatus previousStatus) {
+        addFine(fine, previousStatus, fine.getAmount().negate(), -1);
+        addFine(fine, fine.getStatus(), fine.getAmount(), 1);
+    }
+
+    public void onPaymentCompleted(Payment payment) {
+        rollupRepository.add(payment.getPaymentDate().toLocalDate(), Kind.PAYMENT.name(),
+                payment.getMethod().name(), COMPLETED, randomSlot(), payment.getAmount(), 1);
+    }
+
+    private void addFine(Fine fine, Fine.FineStatus status, BigDecimal amount, long count) {
+        rollupRepository.add(fine.getCreatedDate().toLocalDate(), Kind.FINE.name(),
+                fine.getType().name(), status.name(), randomSlot(), amount, count);
+    }
+
+    private int randomSlot() {
+        return ThreadLocalRandom.current().nextInt(slots);
+    }
+
+    // Totals over the days from startDate to endDate inclusive
+    SummaryTotals getTotals(LocalDate startDate, LocalDate endDate) {
+        List<Object[]> paymentRows = new ArrayList<>();
+        List<Object[]> fineRows = new ArrayList<>();
+        for (Object[] row : rollupRepository.sumBetween(startDate, endDate)) {
+            long count = ((Number) row[4]).longValue();
+            if (count == 0) {
+                continue;
+            }
+            if (row[0] == Kind.PAYMENT) {
+                paymentRows.add(new Object[] {Payment.PaymentMethod.valueOf((String) row[1]), row[3], count});
+            } else {
+                fineRows.add(new Object[] {
+                        Fine.FineType.valueOf((String) row[1]), Fine.FineStatus.valueOf((String) row[2]), row[3], count});
+            }
+        }
+        return new SummaryTotals(paymentRows, fineRows);
+    }
+
+    // Completed payment amount and issued fine amount over the days from startDate to endDate inclusive
+    Map<Kind, BigDecimal> getAmounts(LocalDate startDate, LocalDate endDate) {
+        Map<Kind, BigDecimal> amounts = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            amounts.put(kind, BigDecimal.ZERO);
+        }
+        for (Object[] row : rollupRepository.sumAmountByKindBetween(startDate, endDate)) {
+            amounts.put((Kind) row[0], (BigDecimal) row[1]);
+        }
+        return amounts;
+    }
+
+    // Recompute the days from startDate to endDate inclusive from the payment and fine tables
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+        int rows = rebuildDays(startDate, endDate);
+        log.info("Rebuilt payment daily rollups from {} to {} ({} rows)", startDate, endDate, rows);
+        return rows;
+    }
+
+    // The slots of each day are replaced by a single slot 0 holding the recomputed total
+    private int rebuildDays(LocalDate startDate, LocalDate endDate) {
+        return transactionTemplate.execute(status -> {
+            rollupRepository.deleteBetween(startDate, endDate);
+            return rollupRepository.insertPaymentTotals(startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay())
+                    + rollupRepository.insertFineTotals(startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay());
+        });
+    }
+
+    // Rebuild the trailing reconcile-days days up to today (the nightly job)
+    public int reconcile() {
+        LocalDate today = LocalDate.now();
+        LocalDate first = today.minusDays(reconcileDays - 1L);
+        int rows = rebuildInChunks(first, today);
+        log.info("Reconciled payment daily rollups from {} to {} ({} rows)", first, today, rows);
+        return rows;
+    }
+
+    // Rebuild every day from the first fine, payment or rollup up to today, for changes that reach back
+    // further than the nightly window (e.g. deleting duplicate fines)
+    public int rebuildHistory() {
+        LocalDate today = LocalDate.now();
+        LocalDate first = firstDay(today);
+        int rows = rebuildInChunks(first, today);
+        log.info("Rebuilt payment daily rollups from {} to {} ({} rows)", first, today, rows);
+        return rows;
+    }
+
+    // One transaction per chunk of days so a fine or payment written meanwhile only waits for the chunk
+    // covering its day
+    private int rebuildInChunks(LocalDate first, LocalDate last) {
+        int rows = 0;
+        for (LocalDate start = first; !start.isAfter(last); start = start.plusDays(reconcileChunkDays)) {
+            LocalDate end = start.plusDays(reconcileChunkDays - 1L);
+            rows += rebuildDays(start, end.isAfter(last) ? last : end);
+        }
+        return rows;
+    }
+
+    private LocalDate firstDay(LocalDate today) {
+        LocalDate first = today;
+        LocalDate firstRollup = rollupRepository.findFirstRollupDay();
+        LocalDateTime firstFine = rollupRepository.findFirstFineCreated();
+        LocalDateTime firstPayment = rollupRepository.findFirstPaymentDate();
+        if (firstRollup != null && firstRollup.isBefore(first)) {
+            first = firstRollup;
+        }
+        if (firstFine != null && firstFine.toLocalDate().isBefore(first)) {
+            first = firstFine.toLocalDate();
+        }
+        if (firstPayment != null && firstPayment.toLocalDate().isBefore(first)) {
+            first = firstPayment.toLocalDate();
+        }
+        return first;
+    }
+
+    @Scheduled(cron = "${payments.rollups.reconcile-cron:0 45 2 * * ?}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("Error reconciling payment daily rollups", e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (rollupRepository.count() == 0) {
+                log.info("Payment daily rollups are empty, back-filling the whole history");
+                rebuild(HISTORY_START, LocalDate.now());
+            }
+        } catch (Exception e) {
+            log.error("Error back-filling payment daily rollups", e);
+        }
+    }
+}
@@ -3,19 +3,31 @@ package com.hewa.paymentservice.services;
 import com.hewa.paymentservice.dto.*;
 import com.hewa.paymentservice.entities.Fine;
 import com.hewa.paymentservice.entities.Payment;
+import com.hewa.paymentservice.entities.PaymentDailyRollup;
+import com.hewa.paymentservice.repositories.FineJdbcRepository;
 import com.hewa.paymentservice.repositories.FineRepository;
 import com.hewa.paymentservice.repositories.PaymentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -25,7 +37,14 @@ import java.util.stream.Collectors;
 public class PaymentService {
     
     private final FineRepository fineRepository;
+    private final FineJdbcRepository fineJdbcRepository;
     private final PaymentRepository paymentRepository;
+    private final PaymentSummaryCounters paymentSummaryCounters;
+    private final PaymentDailyRollups paymentDailyRollups;
+    private final UserFineLedger userFineLedger;
+    
+    // Length of the periods compared by the trends of the overall summary
+    private static final int TREND_PERIOD_DAYS = 30;
     
     @Transactional
     public FineResponse createFine(CreateFineRequest request) {
@@ -47,12 +66,108 @@ public class PaymentService {
                 .notes(request.getNotes())
                 .build();
         
-        Fine savedFine = fineRepository.save(fine);
+        Fine savedFine;
+        try {
+            savedFine = fineRepository.save(fine);
+        } catch (DataIntegrityViolationException e) {
+            // Another request created the fine after the check above (uk_fine_borrow_record)
+            throw new IllegalArgumentException("Fine already exists for this borrow record");
+        }
+        paymentSummaryCounters.onFineCreated(savedFine);
+        paymentDailyRollups.onFineCreated(savedFine);
+        userFineLedger.onFineCreated(savedFine);
         log.info("Successfully created fine with ID {} for user {}", savedFine.getId(), request.getUserId());
         
         return mapToFineResponse(savedFine);
     }
     
+    // Create many fines at once (borrow-service's overdue sweep). Existing fines are found with one IN query
+    // and the new ones are inserted in one JDBC batch; each command gets its own result, in request order.
+    // A fine another request creates for the same borrow record in the meantime is skipped by the unique
+    // index, which needs this transaction to be REPEATABLE READ (see FineJdbcRepository).
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public List<FineBatchItemResult> createFines(CreateFineBatchRequest request) {
+        List<CreateFineRequest> commands = request.getFines();
+        log.info("Creating batch of {} fines", commands.size());
+        
+        Set<Long> existingBorrowRecordIds = new HashSet<>(fineRepository.findBorrowRecordIdsIn(
+                commands.stream().map(CreateFineRequest::getBorrowRecordId).collect(Collectors.toSet())));
+        
+        FineBatchItemResult[] results = new FineBatchItemResult[commands.size()];
+        List<Fine> newFines = new ArrayList<>();
+        List<Integer> newFinePositions = new ArrayList<>();
+        Set<Long> batchBorrowRecordIds = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        
+        for (int i = 0; i < commands.size(); i++) {
+            CreateFineRequest command = commands.get(i);
+            Long borrowRecordId = command.getBorrowRecordId();
+            Fine.FineType type = parseFineType(command.getType());
+            
+            String failure = null;
+            if (existingBorrowRecordIds.contains(borrowRecordId)) {
+                failure = "Fine already exists for this borrow record";
+            } else if (type == null) {
+                failure = "Invalid fine type: " + command.getType();
+            } else if (!batchBorrowRecordIds.add(borrowRecordId)) {
+                failure = "Duplicate borrow record in batch";
+            }
+            if (failure != null) {
+                results[i] = FineBatchItemResult.builder()
+                        .borrowRecordId(borrowRecordId)
+                        .success(false)
+                        .message(failure)
+                        .build();
+                continue;
+            }
+            
+            newFines.add(Fine.builder()
+                    .userId(command.getUserId())
+                    .borrowRecordId(borrowRecordId)
+                    .bookIsbn(command.getBookIsbn())
+                    .type(type)
+                    .amount(command.getAmount())
+                    .status(Fine.FineStatus.PENDING)
+                    .createdDate(now)
+                    .description(command.getDescription())
+                    .notes(command.getNotes())
+                    .build());
+            newFinePositions.add(i);
+        }
+        
+        List<Fine> insertedFines = fineJdbcRepository.insertAllSkippingExisting(newFines);
+        paymentSummaryCounters.onFinesCreated(insertedFines);
+        paymentDailyRollups.onFinesCreated(insertedFines);
+        userFineLedger.onFinesCreated(insertedFines);
+        
+        for (int j = 0; j < newFines.size(); j++) {
+            Fine fine = newFines.get(j);
+            results[newFinePositions.get(j)] = fine.getId() != null
+                    ? FineBatchItemResult.builder()
+                            .borrowRecordId(fine.getBorrowRecordId())
+                            .success(true)
+                            .message("Fine created successfully")
+                            .fine(mapToFineResponse(fine))
+                            .build()
+                    : FineBatchItemResult.builder()
+                            .borrowRecordId(fine.getBorrowRecordId())
+                            .success(false)
+                            .message("Fine already exists for this borrow record")
+                            .build();
+        }
+        log.info("Created {} of {} fines in batch", insertedFines.size(), commands.size());
+        
+        return Arrays.asList(results);
+    }
+    
+    private Fine.FineType parseFineType(String type) {
+        try {
+            return Fine.FineType.valueOf(type.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
     @Transactional
     public FineResponse processPayment(ProcessPaymentRequest request) {
         log.info("Processing payment for fine {} by user {}", request.getFineId(), request.getUserId());
@@ -89,11 +204,16 @@ public class PaymentService {
                 .build();
         
         paymentRepository.save(payment);
+        paymentSummaryCounters.onPaymentCompleted(payment);
+        paymentDailyRollups.onPaymentCompleted(payment);
         
         // Update fine status
         fine.setStatus(Fine.FineStatus.PAID);
         fine.setPaidDate(LocalDateTime.now());
         Fine updatedFine = fineRepository.save(fine);
+        paymentSummaryCounters.onFineStatusChanged(updatedFine, Fine.FineStatus.PENDING);
+        paymentDailyRollups.onFineStatusChanged(updatedFine, Fine.FineStatus.PENDING);
+        userFineLedger.onFineSettled(updatedFine);
         
         log.info("Successfully processed payment for fine {} by user {}", request.getFineId(), request.getUserId());
         
@@ -124,6 +244,9 @@ public class PaymentService {
         }
         
         Fine updatedFine = fineRepository.save(fine);
+        paymentSummaryCounters.onFineStatusChanged(updatedFine, Fine.FineStatus.PENDING);
+        paymentDailyRollups.onFineStatusChanged(updatedFine, Fine.FineStatus.PENDING);
+        userFineLedger.onFineSettled(updatedFine);
         
         log.info("Successfully waived fine {} by librarian {}", request.getFineId(), request.getWaivedBy());
         
@@ -143,7 +266,7 @@ public class PaymentService {
     }
     
     public BigDecimal getUserOutstandingFines(Long userId) {
-        return fineRepository.getTotalOutstandingFinesByUserId(userId);
+        return userFineLedger.getBalance(userId).outstandingAmount();
     }
     
     public Page<FineResponse> getAllFines(Pageable pageable) {
@@ -164,7 +287,8 @@ public class PaymentService {
     }
     
     public boolean hasUserPendingFines(Long userId) {
-        return fineRepository.existsByUserIdAndStatus(userId, Fine.FineStatus.PENDING);
+        // Gates checkouts, so read the ledger row rather than a balance cached for up to the TTL
+        return userFineLedger.getCurrentBalance(userId).pendingCount() > 0;
     }
     
     private String generateTransactionId() {
@@ -192,114 +316,117 @@ public class PaymentService {
     }
     
     // Get payment summary for loans page
+    @Transactional(readOnly = true)
     public PaymentSummaryResponse getPaymentSummary() {
         log.info("Generating payment summary");
         
-        // Get all payments and fines statistics
-        List<Payment> allPayments = paymentRepository.findAll();
-        List<Fine> allFines = fineRepository.findAll();
+        // Read the running totals: a few rows per method and per fine type/status, whatever the history size
+        SummaryTotals totals = paymentSummaryCounters.getTotals();
         
-        return buildPaymentSummary(allPayments, allFines);
+        // Trends compare the last TREND_PERIOD_DAYS days with the period before
+        LocalDate today = LocalDate.now();
+        return buildPaymentSummary(totals, today.minusDays(TREND_PERIOD_DAYS - 1), today);
     }
     
     // Get payment summary by date range
+    @Transactional(readOnly = true)
     public PaymentSummaryResponse getPaymentSummaryByDateRange(String startDate, String endDate) {
         log.info("Generating payment summary for date range: {} to {}", startDate, endDate);
         
-        LocalDateTime start = LocalDateTime.parse(startDate + "T00:00:00");
-        LocalDateTime end = LocalDateTime.parse(endDate + "T23:59:59");
+        LocalDate start = LocalDate.parse(startDate);
+        LocalDate end = LocalDate.parse(endDate);
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
         
-        List<Payment> payments = paymentRepository.findByPaymentDateBetween(start, end);
-        List<Fine> fines = fineRepository.findByCreatedDateBetween(start, end);
+        // Sum the daily rollups: at most a few rows per day of the range
+        return buildPaymentSummary(paymentDailyRollups.getTotals(start, end), start, end);
+    }
+    
+    // Recompute the daily rollups of a date range from the payment and fine tables
+    public int rebuildDailyRollups(String startDate, String endDate) {
+        log.info("Rebuilding payment daily rollups from {} to {}", startDate, endDate);
+        return paymentDailyRollups.rebuild(LocalDate.parse(startDate), LocalDate.parse(endDate));
+    }
+    
+    // Build the summary from the totals, with trends comparing the days from trendStart to trendEnd
+    // against the same number of days just before them
+    private PaymentSummaryResponse buildPaymentSummary(SummaryTotals totals, LocalDate trendStart, LocalDate trendEnd) {
+        long periodDays = ChronoUnit.DAYS.between(trendStart, trendEnd) + 1;
+        Map<PaymentDailyRollup.Kind, BigDecimal> current = paymentDailyRollups.getAmounts(trendStart, trendEnd);
+        Map<PaymentDailyRollup.Kind, BigDecimal> previous = paymentDailyRollups.getAmounts(
+                trendStart.minusDays(periodDays), trendStart.minusDays(1));
         
-        return buildPaymentSummary(payments, fines);
+        return buildPaymentSummary(totals.paymentRows(), totals.fineRows(),
+                percentageChange(previous.get(PaymentDailyRollup.Kind.PAYMENT), current.get(PaymentDailyRollup.Kind.PAYMENT)),
+                percentageChange(previous.get(PaymentDailyRollup.Kind.FINE), current.get(PaymentDailyRollup.Kind.FINE)));
+    }
+    
+    // Change from previous to current in percent; zero when there is nothing to compare against
+    private static BigDecimal percentageChange(BigDecimal previous, BigDecimal current) {
+        if (previous.compareTo(BigDecimal.ZERO) == 0) {
+            return BigDecimal.ZERO;
+        }
+        return current.subtract(previous)
+                .multiply(BigDecimal.valueOf(100))
+                .divide(previous, 2, RoundingMode.HALF_UP);
     }
     
-    private PaymentSummaryResponse buildPaymentSummary(List<Payment> payments, List<Fine> fines) {
+    // Build the summary from aggregate rows: payment rows are [method, amount, count] of COMPLETED payments,
+    // fine rows are [type, status, amount, count]
+    private PaymentSummaryResponse buildPaymentSummary(List<Object[]> paymentRows, List<Object[]> fineRows,
+                                                       BigDecimal paymentTrend, BigDecimal fineTrend) {
         // Calculate payment statistics
-        BigDecimal totalPaymentsAmount = payments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.COMPLETED)
-                .map(Payment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        long totalPaymentsCount = payments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.COMPLETED)
-                .count();
-        
-        // Calculate fine statistics
-        BigDecimal totalPendingFines = fines.stream()
-                .filter(f -> f.getStatus() == Fine.FineStatus.PENDING)
-                .map(Fine::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        long totalPendingFinesCount = fines.stream()
-                .filter(f -> f.getStatus() == Fine.FineStatus.PENDING)
-                .count();
+        BigDecimal totalPaymentsAmount = BigDecimal.ZERO;
+        long totalPaymentsCount = 0;
+        for (Object[] row : paymentRows) {
+            totalPaymentsAmount = totalPaymentsAmount.add((BigDecimal) row[1]);
+            totalPaymentsCount += ((Number) row[2]).longValue();
+        }
         
         // Calculate payment method breakdown
-        Map<String, PaymentSummaryResponse.PaymentMethodSummary> paymentMethodBreakdown = payments.stream()
-                .filter(p -> p.getStatus() == Payment.PaymentStatus.COMPLETED)
-                .collect(Collectors.groupingBy(
-                        p -> p.getMethod().toString(),
-                        Collectors.collectingAndThen(
-                                Collectors.toList(),
-                                list -> {
-                                    BigDecimal amount = list.stream()
-                                            .map(Payment::getAmount)
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                                    long count = list.size();
-                                    BigDecimal percentage = totalPaymentsAmount.compareTo(BigDecimal.ZERO) > 0 
-                                            ? amount.divide(totalPaymentsAmount, 4, BigDecimal.ROUND_HALF_UP).multiply(BigDecimal.valueOf(100))
-                                            : BigDecimal.ZERO;
-                                    
-                                    return PaymentSummaryResponse.PaymentMethodSummary.builder()
-                                            .amount(amount)
-                                            .count(count)
-                                            .percentage(percentage)
-                                            .build();
-                                }
-                        )
-                ));
-        
-        // Calculate fine type breakdown
-        Map<String, PaymentSummaryResponse.FineTypeSummary> fineTypeBreakdown = fines.stream()
-                .collect(Collectors.groupingBy(
-                        f -> f.getType().toString(),
-                        Collectors.collectingAndThen(
-                                Collectors.toList(),
-                                list -> {
-                                    BigDecimal totalAmount = list.stream()
-                                            .map(Fine::getAmount)
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                                    long totalCount = list.size();
-                                    
-                                    BigDecimal paidAmount = list.stream()
-                                            .filter(f -> f.getStatus() == Fine.FineStatus.PAID)
-                                            .map(Fine::getAmount)
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                                    long paidCount = list.stream()
-                                            .filter(f -> f.getStatus() == Fine.FineStatus.PAID)
-                                            .count();
-                                    
-                                    BigDecimal pendingAmount = list.stream()
-                                            .filter(f -> f.getStatus() == Fine.FineStatus.PENDING)
-                                            .map(Fine::getAmount)
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                                    long pendingCount = list.stream()
-                                            .filter(f -> f.getStatus() == Fine.FineStatus.PENDING)
-                                            .count();
-                                    
-                                    return PaymentSummaryResponse.FineTypeSummary.builder()
-                                            .totalAmount(totalAmount)
-                                            .totalCount(totalCount)
-                                            .paidAmount(paidAmount)
-                                            .paidCount(paidCount)
-                                            .pendingAmount(pendingAmount)
-                                            .pendingCount(pendingCount)
-                                            .build();
-                                }
-                        )
-                ));
+        Map<String, PaymentSummaryResponse.PaymentMethodSummary> paymentMethodBreakdown = new HashMap<>();
+        for (Object[] row : paymentRows) {
+            BigDecimal amount = (BigDecimal) row[1];
+            BigDecimal percentage = totalPaymentsAmount.compareTo(BigDecimal.ZERO) > 0 
+                    ? amount.divide(totalPaymentsAmount, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
+                    : BigDecimal.ZERO;
+            
+            paymentMethodBreakdown.put(row[0].toString(), PaymentSummaryResponse.PaymentMethodSummary.builder()
+                    .amount(amount)
+                    .count(((Number) row[2]).longValue())
+                    .percentage(percentage)
+                    .build());
+        }
+        
+        // Calculate fine statistics and fine type breakdown
+        BigDecimal totalPendingFines = BigDecimal.ZERO;
+        long totalPendingFinesCount = 0;
+        Map<String, PaymentSummaryResponse.FineTypeSummary> fineTypeBreakdown = new HashMap<>();
+        for (Object[] row : fineRows) {
+            Fine.FineStatus status = (Fine.FineStatus) row[1];
+            BigDecimal amount = (BigDecimal) row[2];
+            long count = ((Number) row[3]).longValue();
+            
+            PaymentSummaryResponse.FineTypeSummary typeSummary = fineTypeBreakdown.computeIfAbsent(row[0].toString(),
+                    type -> PaymentSummaryResponse.FineTypeSummary.builder()
+                            .totalAmount(BigDecimal.ZERO).totalCount(0L)
+                            .paidAmount(BigDecimal.ZERO).paidCount(0L)
+                            .pendingAmount(BigDecimal.ZERO).pendingCount(0L)
+                            .build());
+            typeSummary.setTotalAmount(typeSummary.getTotalAmount().add(amount));
+            typeSummary.setTotalCount(typeSummary.getTotalCount() + count);
+            
+            if (status == Fine.FineStatus.PAID) {
+                typeSummary.setPaidAmount(typeSummary.getPaidAmount().add(amount));
+                typeSummary.setPaidCount(typeSummary.getPaidCount() + count);
+            } else if (status == Fine.FineStatus.PENDING) {
+                typeSummary.setPendingAmount(typeSummary.getPendingAmount().add(amount));
+                typeSummary.setPendingCount(typeSummary.getPendingCount() + count);
+                totalPendingFines = totalPendingFines.add(amount);
+                totalPendingFinesCount += count;
+            }
+        }
         
         return PaymentSummaryResponse.builder()
                 .totalPaymentsAmount(totalPaymentsAmount)
@@ -310,8 +437,8 @@ public class PaymentService {
                 .totalCompletedPaymentsCount(totalPaymentsCount)
                 .paymentMethodBreakdown(paymentMethodBreakdown)
                 .fineTypeBreakdown(fineTypeBreakdown)
-                .paymentTrend(BigDecimal.ZERO) // TODO: Calculate actual trend
-                .fineTrend(BigDecimal.ZERO) // TODO: Calculate actual trend
+                .paymentTrend(paymentTrend)
+                .fineTrend(fineTrend)
                 .build();
     }
 }
\ No newline at end of file
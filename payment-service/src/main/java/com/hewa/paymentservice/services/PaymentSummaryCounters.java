@@ -0,0 +1,214 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.Payment;
+import com.hewa.paymentservice.entities.PaymentSummaryCounter;
+import com.hewa.paymentservice.entities.PaymentSummaryCounter.Kind;
+import com.hewa.paymentservice.repositories.FineRepository;
+import com.hewa.paymentservice.repositories.PaymentRepository;
+import com.hewa.paymentservice.repositories.PaymentSummaryCounterRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Running totals behind the payment summary, so reading it costs the same whatever the history size.
+ *
+ * createFine, processPayment and waiveFine add to the counters in their own transaction, which keeps
+ * the totals exact as long as nothing changes fines or payments behind the service's back. Each counter
+ * is split into a few slots and every write goes to a random one, so fines and payments committed at the
+ * same time rarely wait on the same row lock; reads sum the slots. To catch drift (manual fixes,
+ * restores), the counters are recomputed from the raw tables at startup and then hourly, and any that
+ * drifted are overwritten. A fresh deployment is seeded by the startup check.
+ */
+@Component
+@Slf4j
+public class PaymentSummaryCounters {
+
+    private static final String COMPLETED = Payment.PaymentStatus.COMPLETED.name();
+
+    private final PaymentSummaryCounterRepository counterRepository;
+    private final PaymentRepository paymentRepository;
+    private final FineRepository fineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int slots;
+
+    public PaymentSummaryCounters(PaymentSummaryCounterRepository counterRepository,
+                                  PaymentRepository paymentRepository,
+                                  FineRepository fineRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${payments.summary.counter-slots:16}") int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("payments.summary.counter-slots must be at least 1");
+        }
+        this.counterRepository = counterRepository;
+        this.paymentRepository = paymentRepository;
+        this.fineRepository = fineRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.slots = slots;
+    }
+
+    public void onFineCreated(Fine fine) {
+        addFine(fine.getType(), fine.getStatus(), fine.getAmount(), 1);
+    }
+
+    // Fines created together are folded into one counter update per type and status
+    public void onFinesCreated(List<Fine> fines) {
+        Map<List<Object>, List<Fine>> groups = fines.stream()
+                .collect(Collectors.groupingBy(fine -> List.of(fine.getType(), fine.getStatus())));
+        groups.forEach((key, group) -> addFine(group.get(0).getType(), group.get(0).getStatus(),
+                group.stream().map(Fine::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add), group.size()));
+    }
+
+    // Move a fine from its previous status to its current one
+    public void onFineStatusChanged(Fine fine, Fine.FineStatus previousStatus) {
+        addFine(fine.getType(), previousStatus, fine.getAmount().negate(), -1);
+        addFine(fine.getType(), fine.getStatus(), fine.getAmount(), 1);
+    }
+
+    public void onPaymentCompleted(Payment payment) {
+        counterRepository.add(Kind.PAYMENT.name(), payment.getMethod().name(), COMPLETED, randomSlot(),
+                payment.getAmount(), 1);
+    }
+
+    private void addFine(Fine.FineType type, Fine.FineStatus status, BigDecimal amount, long count) {
+        counterRepository.add(Kind.FINE.name(), type.name(), status.name(), randomSlot(), amount, count);
+    }
+
+    private int randomSlot() {
+        return ThreadLocalRandom.current().nextInt(slots);
+    }
+
+    SummaryTotals getTotals() {
+        List<Object[]> paymentRows = new ArrayList<>();
+        List<Object[]> fineRows = new ArrayList<>();
+        for (Object[] row : counterRepository.sumSlots()) {
+            long count = ((Number) row[4]).longValue();
+            if (count == 0) {
+                continue;
+            }
+            if (row[0] == Kind.PAYMENT) {
+                paymentRows.add(new Object[] {Payment.PaymentMethod.valueOf((String) row[1]), row[3], count});
+            } else {
+                fineRows.add(new Object[] {
+                        Fine.FineType.valueOf((String) row[1]), Fine.FineStatus.valueOf((String) row[2]), row[3], count});
+            }
+        }
+        return new SummaryTotals(paymentRows, fineRows);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyAtStartup() {
+        verifySafely();
+    }
+
+    @Scheduled(cron = "${payments.summary.verify-cron:0 15 * * * ?}")
+    public void scheduledVerify() {
+        verifySafely();
+    }
+
+    private void verifySafely() {
+        try {
+            int corrected = verify();
+            if (corrected > 0) {
+                log.warn("Corrected {} payment summary counters that did not match the payment and fine tables", corrected);
+            } else {
+                log.debug("Payment summary counters verified");
+            }
+        } catch (Exception e) {
+            log.error("Error verifying payment summary counters", e);
+        }
+    }
+
+    // Recompute every counter from the raw tables and overwrite the ones that differ. The counters are
+    // locked first, so fines and payments written meanwhile wait and are counted on top of the result.
+    // Returns the number of counters (not slots) that were corrected.
+    public int verify() {
+        return transactionTemplate.execute(status -> {
+            Map<String, List<PaymentSummaryCounter>> counters = new HashMap<>();
+            for (PaymentSummaryCounter slot : counterRepository.lockAll()) {
+                counters.computeIfAbsent(key(slot.getKind(), slot.getCategory(), slot.getStatus()),
+                        key -> new ArrayList<>()).add(slot);
+            }
+
+            List<PaymentSummaryCounter> corrected = new ArrayList<>();
+            int correctedCounters = 0;
+            for (Object[] row : paymentRepository.sumCompletedPaymentsByMethod()) {
+                List<PaymentSummaryCounter> slots = counters.remove(key(Kind.PAYMENT, row[0].toString(), COMPLETED));
+                correctedCounters += correct(Kind.PAYMENT, row[0].toString(), COMPLETED, slots,
+                        (BigDecimal) row[1], ((Number) row[2]).longValue(), corrected);
+            }
+            for (Object[] row : fineRepository.sumFinesByTypeAndStatus()) {
+                List<PaymentSummaryCounter> slots = counters.remove(key(Kind.FINE, row[0].toString(), row[1].toString()));
+                correctedCounters += correct(Kind.FINE, row[0].toString(), row[1].toString(), slots,
+                        (BigDecimal) row[2], ((Number) row[3]).longValue(), corrected);
+            }
+
+            // Whatever is left counts rows that no longer exist
+            for (List<PaymentSummaryCounter> slots : counters.values()) {
+                PaymentSummaryCounter any = slots.get(0);
+                correctedCounters += correct(any.getKind(), any.getCategory(), any.getStatus(), slots,
+                        BigDecimal.ZERO, 0, corrected);
+            }
+
+            counterRepository.saveAll(corrected);
+            return correctedCounters;
+        });
+    }
+
+    // Put the recomputed total in slot 0 and empty the other slots, if the slots do not already add up to it
+    private int correct(Kind kind, String category, String status, List<PaymentSummaryCounter> slots,
+                        BigDecimal amount, long count, List<PaymentSummaryCounter> corrected) {
+        List<PaymentSummaryCounter> current = slots != null ? slots : List.of();
+        BigDecimal currentAmount = current.stream().map(PaymentSummaryCounter::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        long currentCount = current.stream().mapToLong(PaymentSummaryCounter::getEntryCount).sum();
+        if (currentAmount.compareTo(amount) == 0 && currentCount == count) {
+            return 0;
+        }
+        log.info("Payment summary counter {} {} {} was {} / {}, recomputed as {} / {}",
+                kind, category, status, currentAmount, currentCount, amount, count);
+
+        LocalDateTime now = LocalDateTime.now();
+        PaymentSummaryCounter first = current.stream()
+                .filter(slot -> slot.getSlot() == 0)
+                .findFirst()
+                .orElseGet(() -> PaymentSummaryCounter.builder()
+                        .kind(kind)
+                        .category(category)
+                        .status(status)
+                        .slot(0)
+                        .build());
+        for (PaymentSummaryCounter slot : current) {
+            if (slot != first && (slot.getAmount().signum() != 0 || slot.getEntryCount() != 0)) {
+                slot.setAmount(BigDecimal.ZERO);
+                slot.setEntryCount(0);
+                slot.setUpdatedAt(now);
+                corrected.add(slot);
+            }
+        }
+        first.setAmount(amount);
+        first.setEntryCount(count);
+        first.setUpdatedAt(now);
+        corrected.add(first);
+        return 1;
+    }
+
+    private static String key(Kind kind, String category, String status) {
+        return kind + ":" + category + ":" + status;
+    }
+}
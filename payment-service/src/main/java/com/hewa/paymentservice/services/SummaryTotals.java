@@ -0,0 +1,11 @@
+package com.hewa.paymentservice.services;
+
+import java.util.List;
+
+/**
+ * Totals in the shape the payment summary is built from: payment rows are [method, amount, count] of
+ * COMPLETED payments, fine rows are [type, status, amount, count]. Produced by the summary counters,
+ * the daily rollups and the raw aggregate queries alike.
+ */
+record SummaryTotals(List<Object[]> paymentRows, List<Object[]> fineRows) {
+}
@@ -0,0 +1,209 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.UserFineBalance;
+import com.hewa.paymentservice.repositories.FineRepository;
+import com.hewa.paymentservice.repositories.UserFineBalanceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user outstanding fine balance, so the balance and has-pending checks borrow-service makes on
+ * checkout are a single-key lookup instead of a SUM or EXISTS over the user's fines.
+ *
+ * The ledger row is adjusted in the same transaction as the fine it reflects (created, paid or waived)
+ * and the user's cache entry is invalidated once that transaction commits. Every cache entry carries
+ * a version that an invalidation bumps; a read that raced with an invalidation or an eviction does not
+ * store its result, so a value loaded before a commit is never cached after it. Entries also expire
+ * after a short TTL to bound staleness when several instances share the database, and the cache keeps
+ * at most max-users users, dropping the least recently used. The has-pending check gates checkouts,
+ * so it reads the row itself rather than a balance another instance may have changed since.
+ *
+ * Rows are per user, so writers only share one when they touch the same user's fines, and a batch
+ * of fines folds into one update per user. What the ledger cannot see are fines changed behind the
+ * service's back (manual fixes, restores), so every balance is recomputed from the pending fines
+ * nightly, one range of user ids per transaction.
+ */
+@Component
+@Slf4j
+public class UserFineLedger {
+
+    private final UserFineBalanceRepository balanceRepository;
+    private final FineRepository fineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long ttlNanos;
+    private final int maxCachedUsers;
+    private final int reconcileChunkUsers;
+
+    // Least recently used first, guarded by itself
+    private final LinkedHashMap<Long, CachedBalance> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // Entries dropped to stay within maxCachedUsers (guarded by cache); an evicted entry takes its version with it
+    private long evictions;
+
+    // balance is null once invalidated; version only ever grows for a user
+    private record CachedBalance(long version, Balance balance, long loadedAt) {
+    }
+
+    public record Balance(BigDecimal outstandingAmount, long pendingCount) {
+        static final Balance NONE = new Balance(BigDecimal.ZERO, 0);
+    }
+
+    public UserFineLedger(UserFineBalanceRepository balanceRepository,
+                          FineRepository fineRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${payments.balance-cache.ttl-seconds:30}") long ttlSeconds,
+                          @Value("${payments.balance-cache.max-users:100000}") int maxCachedUsers,
+                          @Value("${payments.balance-ledger.reconcile-chunk-users:1000}") int reconcileChunkUsers) {
+        if (maxCachedUsers < 1 || reconcileChunkUsers < 1) {
+            throw new IllegalArgumentException(
+                    "payments.balance-cache.max-users and balance-ledger.reconcile-chunk-users must be at least 1");
+        }
+        this.balanceRepository = balanceRepository;
+        this.fineRepository = fineRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.maxCachedUsers = maxCachedUsers;
+        this.reconcileChunkUsers = reconcileChunkUsers;
+    }
+
+    public void onFineCreated(Fine fine) {
+        if (fine.getStatus() == Fine.FineStatus.PENDING) {
+            adjust(fine.getUserId(), fine.getAmount(), 1);
+        }
+    }
+
+    // Fines created together cost one ledger update per user
+    public void onFinesCreated(List<Fine> fines) {
+        Map<Long, List<Fine>> pendingByUser = fines.stream()
+                .filter(fine -> fine.getStatus() == Fine.FineStatus.PENDING)
+                .collect(Collectors.groupingBy(Fine::getUserId));
+        pendingByUser.forEach((userId, userFines) -> balanceRepository.add(userId,
+                userFines.stream().map(Fine::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add), userFines.size()));
+        Set<Long> userIds = pendingByUser.keySet();
+        AfterCommit.run(() -> userIds.forEach(this::invalidate));
+    }
+
+    // A PENDING fine was paid or waived
+    public void onFineSettled(Fine fine) {
+        adjust(fine.getUserId(), fine.getAmount().negate(), -1);
+    }
+
+    private void adjust(Long userId, BigDecimal amount, long count) {
+        balanceRepository.add(userId, amount, count);
+        AfterCommit.run(() -> invalidate(userId));
+    }
+
+    public Balance getBalance(Long userId) {
+        long version;
+        long evictionsAtLoad;
+        synchronized (cache) {
+            CachedBalance cached = cache.get(userId);
+            if (cached != null && cached.balance() != null && System.nanoTime() - cached.loadedAt() < ttlNanos) {
+                return cached.balance();
+            }
+            version = cached != null ? cached.version() : 0;
+            evictionsAtLoad = evictions;
+        }
+
+        Balance balance = getCurrentBalance(userId);
+
+        // Only store the result if nothing invalidated or evicted the entry while it was loading
+        synchronized (cache) {
+            CachedBalance current = cache.get(userId);
+            if (evictions == evictionsAtLoad && (current != null ? current.version() : 0) == version) {
+                cache.put(userId, new CachedBalance(version, balance, System.nanoTime()));
+                evictOverflow();
+            }
+        }
+        return balance;
+    }
+
+    // The balance as the ledger row holds it now, bypassing the cache
+    public Balance getCurrentBalance(Long userId) {
+        return balanceRepository.findById(userId)
+                .map(row -> new Balance(row.getOutstandingAmount(), row.getPendingCount()))
+                .orElse(Balance.NONE);
+    }
+
+    private void invalidate(Long userId) {
+        synchronized (cache) {
+            CachedBalance current = cache.get(userId);
+            cache.put(userId, new CachedBalance(current != null ? current.version() + 1 : 1, null, 0));
+            evictOverflow();
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedBalance> iterator = cache.values().iterator();
+        while (cache.size() > maxCachedUsers) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    // Seed the ledger from the pending fines the first time the service starts with it
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedIfEmpty() {
+        try {
+            if (balanceRepository.count() == 0 && fineRepository.existsByStatus(Fine.FineStatus.PENDING)) {
+                int users = transactionTemplate.execute(status -> balanceRepository.seedFromPendingFines());
+                synchronized (cache) {
+                    cache.replaceAll((key, current) -> new CachedBalance(current.version() + 1, null, 0));
+                }
+                log.info("Seeded fine balances for {} users from pending fines", users);
+            }
+        } catch (Exception e) {
+            log.error("Error seeding user fine balances", e);
+        }
+    }
+
+    // Recompute every balance from the pending fines. Each range of user ids is its own transaction, so
+    // a fine created or settled meanwhile only waits for the range its user is in; the cached balances
+    // of a range are dropped once it commits. Returns the affected row count the database reports.
+    public int reconcile() {
+        long maxUserId = Math.max(orZero(balanceRepository.findMaxUserId()), orZero(balanceRepository.findMaxFineUserId()));
+        int rows = 0;
+        for (long from = 0; from <= maxUserId; from += reconcileChunkUsers) {
+            long fromUserId = from;
+            long toUserId = from + reconcileChunkUsers - 1;
+            rows += transactionTemplate.execute(status ->
+                    balanceRepository.recomputeFromPendingFines(fromUserId, toUserId)
+                            + balanceRepository.clearWithoutPendingFines(fromUserId, toUserId));
+            synchronized (cache) {
+                cache.replaceAll((userId, current) -> userId >= fromUserId && userId <= toUserId
+                        ? new CachedBalance(current.version() + 1, null, 0)
+                        : current);
+            }
+        }
+        return rows;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+
+    @Scheduled(cron = "${payments.balance-ledger.reconcile-cron:0 30 2 * * ?}")
+    public void scheduledReconcile() {
+        try {
+            int rows = reconcile();
+            log.info("Reconciled user fine balances with their pending fines ({} rows)", rows);
+        } catch (Exception e) {
+            log.error("Error reconciling user fine balances", e);
+        }
+    }
+}
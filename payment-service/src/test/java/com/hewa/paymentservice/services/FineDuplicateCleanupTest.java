@@ -0,0 +1,71 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.repositories.FineJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FineDuplicateCleanupTest {
+
+    private FineJdbcRepository fineJdbcRepository;
+    private PaymentDailyRollups paymentDailyRollups;
+    private UserFineLedger userFineLedger;
+    private FineDuplicateCleanup cleanup;
+
+    @BeforeEach
+    void setUp() {
+        fineJdbcRepository = mock(FineJdbcRepository.class);
+        paymentDailyRollups = mock(PaymentDailyRollups.class);
+        userFineLedger = mock(UserFineLedger.class);
+        cleanup = new FineDuplicateCleanup(fineJdbcRepository, paymentDailyRollups, userFineLedger,
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void existingUniqueIndexOnlyRetiresTheOldOne() {
+        when(fineJdbcRepository.indexExists(FineJdbcRepository.BORROW_RECORD_UNIQUE_INDEX)).thenReturn(true);
+        when(fineJdbcRepository.indexExists(FineJdbcRepository.BORROW_RECORD_LEGACY_INDEX)).thenReturn(true);
+
+        assertTrue(cleanup.ensureUnique());
+
+        verify(fineJdbcRepository, never()).deleteUnsettledDuplicates();
+        verify(fineJdbcRepository, never()).createBorrowRecordUniqueIndex();
+        verify(fineJdbcRepository).dropLegacyBorrowRecordIndex();
+    }
+
+    @Test
+    void duplicatesAreDeletedAndTheTotalsRebuiltBeforeTheIndexIsAdded() {
+        when(fineJdbcRepository.deleteUnsettledDuplicates()).thenReturn(3);
+
+        assertTrue(cleanup.ensureUnique());
+
+        InOrder order = inOrder(fineJdbcRepository, paymentDailyRollups, userFineLedger);
+        order.verify(fineJdbcRepository).deleteUnsettledDuplicates();
+        order.verify(paymentDailyRollups).rebuildHistory();
+        order.verify(userFineLedger).reconcile();
+        order.verify(fineJdbcRepository).createBorrowRecordUniqueIndex();
+    }
+
+    @Test
+    void cleanTableGetsTheIndexWithoutARebuild() {
+        assertTrue(cleanup.ensureUnique());
+
+        verify(fineJdbcRepository).createBorrowRecordUniqueIndex();
+        verifyNoInteractions(paymentDailyRollups, userFineLedger);
+        verify(fineJdbcRepository, never()).dropLegacyBorrowRecordIndex();
+    }
+
+    @Test
+    void settledDuplicatesKeepTheIndexOff() {
+        when(fineJdbcRepository.countDuplicatedBorrowRecords()).thenReturn(2);
+
+        assertFalse(cleanup.ensureUnique());
+
+        verify(fineJdbcRepository, never()).createBorrowRecordUniqueIndex();
+        verify(fineJdbcRepository, never()).dropLegacyBorrowRecordIndex();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.Payment;
+import com.hewa.paymentservice.entities.PaymentDailyRollup.Kind;
+import com.hewa.paymentservice.repositories.PaymentDailyRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentDailyRollupsTest {
+
+    private PaymentDailyRollupRepository rollupRepository;
+    private PaymentDailyRollups rollups;
+
+    @BeforeEach
+    void setUp() {
+        rollupRepository = mock(PaymentDailyRollupRepository.class);
+        rollups = new PaymentDailyRollups(rollupRepository, mock(PlatformTransactionManager.class), 4, 31, 2);
+    }
+
+    @Test
+    void writesToOneDayAreSpreadOverTheConfiguredSlots() {
+        LocalDateTime created = LocalDateTime.of(2026, 3, 2, 10, 0);
+        Fine fine = Fine.builder().type(Fine.FineType.OVERDUE).status(Fine.FineStatus.PENDING)
+                .amount(new BigDecimal("1.50")).createdDate(created).build();
+        for (int i = 0; i < 200; i++) {
+            rollups.onFineCreated(fine);
+        }
+
+        ArgumentCaptor<Integer> slots = ArgumentCaptor.forClass(Integer.class);
+        verify(rollupRepository, times(200)).add(eq(created.toLocalDate()), eq("FINE"), eq("OVERDUE"), eq("PENDING"),
+                slots.capture(), eq(new BigDecimal("1.50")), eq(1L));
+        Set<Integer> used = new HashSet<>(slots.getAllValues());
+        assertTrue(used.size() > 1);
+        assertTrue(used.stream().allMatch(slot -> slot >= 0 && slot < 4));
+    }
+
+    @Test
+    void paymentCountsOnTheDayItWasMade() {
+        LocalDateTime paid = LocalDateTime.of(2026, 3, 5, 23, 59);
+        rollups.onPaymentCompleted(Payment.builder().method(Payment.PaymentMethod.CARD)
+                .amount(new BigDecimal("8.00")).paymentDate(paid).build());
+
+        verify(rollupRepository).add(eq(paid.toLocalDate()), eq("PAYMENT"), eq("CARD"), eq("COMPLETED"), anyInt(),
+                eq(new BigDecimal("8.00")), eq(1L));
+    }
+
+    @Test
+    void totalsSkipEmptyRows() {
+        LocalDate day = LocalDate.of(2026, 3, 1);
+        when(rollupRepository.sumBetween(day, day)).thenReturn(List.of(
+                new Object[] {Kind.PAYMENT, "CASH", "COMPLETED", new BigDecimal("12.00"), 2L},
+                new Object[] {Kind.FINE, "DAMAGE", "PAID", BigDecimal.ZERO, 0L}));
+
+        SummaryTotals totals = rollups.getTotals(day, day);
+
+        assertEquals(1, totals.paymentRows().size());
+        assertTrue(totals.fineRows().isEmpty());
+    }
+
+    @Test
+    void rebuildRejectsAnInvertedRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> rollups.rebuild(LocalDate.of(2026, 3, 2), LocalDate.of(2026, 3, 1)));
+        verifyNoInteractions(rollupRepository);
+    }
+
+    @Test
+    void reconcileOnlyRebuildsTheTrailingDays() {
+        LocalDate today = LocalDate.now();
+        when(rollupRepository.findFirstFineCreated()).thenReturn(today.minusDays(400).atTime(9, 0));
+        when(rollupRepository.insertFineTotals(any(), any())).thenReturn(3);
+
+        assertEquals(3, rollups.reconcile());
+
+        verify(rollupRepository).deleteBetween(today.minusDays(1), today);
+        verify(rollupRepository).insertFineTotals(today.minusDays(1).atStartOfDay(), today.plusDays(1).atStartOfDay());
+        verify(rollupRepository, times(1)).deleteBetween(any(), any());
+        verify(rollupRepository, never()).findFirstFineCreated();
+    }
+
+    @Test
+    void historyRebuildStartsAtTheFirstFineInChunks() {
+        LocalDate today = LocalDate.now();
+        when(rollupRepository.findFirstRollupDay()).thenReturn(today.minusDays(5));
+        when(rollupRepository.findFirstFineCreated()).thenReturn(today.minusDays(40).atTime(9, 0));
+        when(rollupRepository.insertFineTotals(any(), any())).thenReturn(3);
+
+        assertEquals(6, rollups.rebuildHistory());
+
+        InOrder order = inOrder(rollupRepository);
+        order.verify(rollupRepository).deleteBetween(today.minusDays(40), today.minusDays(10));
+        order.verify(rollupRepository).insertFineTotals(today.minusDays(40).atStartOfDay(), today.minusDays(9).atStartOfDay());
+        order.verify(rollupRepository).deleteBetween(today.minusDays(9), today);
+        order.verify(rollupRepository).insertFineTotals(today.minusDays(9).atStartOfDay(), today.plusDays(1).atStartOfDay());
+        verify(rollupRepository, times(2)).deleteBetween(any(), any());
+    }
+
+    @Test
+    void historyRebuildOfAnEmptyHistoryOnlyCoversToday() {
+        rollups.rebuildHistory();
+
+        verify(rollupRepository).deleteBetween(LocalDate.now(), LocalDate.now());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.dto.CreateFineBatchRequest;
+import com.hewa.paymentservice.dto.CreateFineRequest;
+import com.hewa.paymentservice.dto.FineBatchItemResult;
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.repositories.FineJdbcRepository;
+import com.hewa.paymentservice.repositories.FineRepository;
+import com.hewa.paymentservice.repositories.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentServiceCreateFinesTest {
+
+    @Mock private FineRepository fineRepository;
+    @Mock private FineJdbcRepository fineJdbcRepository;
+    @Mock private PaymentRepository paymentRepository;
+    @Mock private PaymentSummaryCounters paymentSummaryCounters;
+    @Mock private PaymentDailyRollups paymentDailyRollups;
+    @Mock private UserFineLedger userFineLedger;
+    @InjectMocks private PaymentService paymentService;
+
+    @Test
+    void existingAndRepeatedBorrowRecordsAreRejectedBeforeInserting() {
+        when(fineRepository.findBorrowRecordIdsIn(anyCollection())).thenReturn(List.of(10L));
+        when(fineJdbcRepository.insertAllSkippingExisting(any())).thenAnswer(invocation -> inserted(invocation.getArgument(0)));
+
+        List<FineBatchItemResult> results = paymentService.createFines(batch(10L, 11L, 11L));
+
+        assertEquals("Fine already exists for this borrow record", results.get(0).getMessage());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals("Duplicate borrow record in batch", results.get(2).getMessage());
+        List<Fine> attempted = attemptedFines();
+        assertEquals(1, attempted.size());
+        assertEquals(11L, attempted.get(0).getBorrowRecordId());
+    }
+
+    @Test
+    void fineCreatedConcurrentlyIsReportedAndNotCountedTwice() {
+        when(fineRepository.findBorrowRecordIdsIn(anyCollection())).thenReturn(List.of());
+        // Another request committed a fine for 21 between the pre-check and the insert
+        when(fineJdbcRepository.insertAllSkippingExisting(any())).thenAnswer(invocation -> {
+            List<Fine> fines = invocation.getArgument(0);
+            return inserted(fines.subList(0, 1));
+        });
+
+        List<FineBatchItemResult> results = paymentService.createFines(batch(20L, 21L));
+
+        assertTrue(results.get(0).isSuccess());
+        assertNotNull(results.get(0).getFine());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("Fine already exists for this borrow record", results.get(1).getMessage());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Fine>> counted = ArgumentCaptor.forClass(List.class);
+        verify(paymentSummaryCounters).onFinesCreated(counted.capture());
+        assertEquals(List.of(20L), counted.getValue().stream().map(Fine::getBorrowRecordId).toList());
+        verify(userFineLedger).onFinesCreated(counted.getValue());
+        verify(paymentDailyRollups).onFinesCreated(counted.getValue());
+    }
+
+    @Test
+    void singleFineLosingTheRaceIsAnAlreadyExistsError() {
+        when(fineRepository.findByBorrowRecordId(30L)).thenReturn(Optional.empty());
+        when(fineRepository.save(any())).thenThrow(new DataIntegrityViolationException("uk_fine_borrow_record"));
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> paymentService.createFine(request(30L)));
+
+        assertEquals("Fine already exists for this borrow record", error.getMessage());
+        verifyNoInteractions(paymentSummaryCounters, paymentDailyRollups, userFineLedger);
+    }
+
+    private List<Fine> attemptedFines() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Fine>> attempted = ArgumentCaptor.forClass(List.class);
+        verify(fineJdbcRepository).insertAllSkippingExisting(attempted.capture());
+        return attempted.getValue();
+    }
+
+    private static List<Fine> inserted(List<Fine> fines) {
+        fines.forEach(fine -> fine.setId(fine.getBorrowRecordId() + 1000));
+        return List.copyOf(fines);
+    }
+
+    private static CreateFineBatchRequest batch(Long... borrowRecordIds) {
+        return CreateFineBatchRequest.builder()
+                .fines(Arrays.stream(borrowRecordIds).map(PaymentServiceCreateFinesTest::request).toList())
+                .build();
+    }
+
+    private static CreateFineRequest request(Long borrowRecordId) {
+        return CreateFineRequest.builder()
+                .userId(1L)
+                .borrowRecordId(borrowRecordId)
+                .bookIsbn("isbn-" + borrowRecordId)
+                .type("OVERDUE")
+                .amount(new BigDecimal("1.00"))
+                .build();
+    }
+}
\ No newline at end of file
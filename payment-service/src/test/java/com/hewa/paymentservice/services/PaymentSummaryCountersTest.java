@@ -0,0 +1,147 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.Payment;
+import com.hewa.paymentservice.entities.PaymentSummaryCounter;
+import com.hewa.paymentservice.entities.PaymentSummaryCounter.Kind;
+import com.hewa.paymentservice.repositories.FineRepository;
+import com.hewa.paymentservice.repositories.PaymentRepository;
+import com.hewa.paymentservice.repositories.PaymentSummaryCounterRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentSummaryCountersTest {
+
+    private PaymentSummaryCounterRepository counterRepository;
+    private PaymentRepository paymentRepository;
+    private FineRepository fineRepository;
+    private PaymentSummaryCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        counterRepository = mock(PaymentSummaryCounterRepository.class);
+        paymentRepository = mock(PaymentRepository.class);
+        fineRepository = mock(FineRepository.class);
+        counters = new PaymentSummaryCounters(counterRepository, paymentRepository, fineRepository,
+                mock(PlatformTransactionManager.class), 4);
+    }
+
+    @Test
+    void writesAreSpreadOverTheConfiguredSlots() {
+        Payment payment = Payment.builder().method(Payment.PaymentMethod.CASH).amount(new BigDecimal("5.00")).build();
+        for (int i = 0; i < 200; i++) {
+            counters.onPaymentCompleted(payment);
+        }
+
+        ArgumentCaptor<Integer> slots = ArgumentCaptor.forClass(Integer.class);
+        verify(counterRepository, times(200)).add(eq("PAYMENT"), eq("CASH"), eq("COMPLETED"), slots.capture(),
+                eq(new BigDecimal("5.00")), eq(1L));
+        Set<Integer> used = new HashSet<>(slots.getAllValues());
+        assertTrue(used.size() > 1);
+        assertTrue(used.stream().allMatch(slot -> slot >= 0 && slot < 4));
+    }
+
+    @Test
+    void statusChangeMovesTheFineBetweenCounters() {
+        Fine fine = fine(Fine.FineStatus.PAID, "2.50");
+
+        counters.onFineStatusChanged(fine, Fine.FineStatus.PENDING);
+
+        verify(counterRepository).add(eq("FINE"), eq("OVERDUE"), eq("PENDING"), anyInt(), eq(new BigDecimal("-2.50")), eq(-1L));
+        verify(counterRepository).add(eq("FINE"), eq("OVERDUE"), eq("PAID"), anyInt(), eq(new BigDecimal("2.50")), eq(1L));
+    }
+
+    @Test
+    void totalsAreTheSummedSlotsWithoutEmptyCounters() {
+        when(counterRepository.sumSlots()).thenReturn(List.of(
+                new Object[] {Kind.PAYMENT, "CARD", "COMPLETED", new BigDecimal("30.00"), 3L},
+                new Object[] {Kind.FINE, "OVERDUE", "PENDING", new BigDecimal("4.00"), 2L},
+                new Object[] {Kind.FINE, "OVERDUE", "WAIVED", BigDecimal.ZERO, 0L}));
+
+        SummaryTotals totals = counters.getTotals();
+
+        assertEquals(1, totals.paymentRows().size());
+        assertArrayEquals(new Object[] {Payment.PaymentMethod.CARD, new BigDecimal("30.00"), 3L}, totals.paymentRows().get(0));
+        assertEquals(1, totals.fineRows().size());
+        assertArrayEquals(new Object[] {Fine.FineType.OVERDUE, Fine.FineStatus.PENDING, new BigDecimal("4.00"), 2L},
+                totals.fineRows().get(0));
+    }
+
+    @Test
+    void slotsThatAddUpAreLeftAlone() {
+        when(counterRepository.lockAll()).thenReturn(List.of(
+                slot(Kind.FINE, "OVERDUE", "PENDING", 1, "3.00", 2),
+                slot(Kind.FINE, "OVERDUE", "PENDING", 3, "1.00", 1)));
+        when(fineRepository.sumFinesByTypeAndStatus()).thenReturn(List.<Object[]>of(
+                new Object[] {Fine.FineType.OVERDUE, Fine.FineStatus.PENDING, new BigDecimal("4.00"), 3L}));
+
+        assertEquals(0, counters.verify());
+        verify(counterRepository).saveAll(List.of());
+    }
+
+    @Test
+    void driftedCounterIsRewrittenIntoSlotZero() {
+        PaymentSummaryCounter drifted = slot(Kind.FINE, "OVERDUE", "PENDING", 2, "9.00", 5);
+        PaymentSummaryCounter gone = slot(Kind.FINE, "DAMAGE", "PENDING", 0, "7.00", 1);
+        when(counterRepository.lockAll()).thenReturn(List.of(drifted, gone));
+        when(fineRepository.sumFinesByTypeAndStatus()).thenReturn(List.<Object[]>of(
+                new Object[] {Fine.FineType.OVERDUE, Fine.FineStatus.PENDING, new BigDecimal("4.00"), 3L}));
+        when(paymentRepository.sumCompletedPaymentsByMethod()).thenReturn(List.<Object[]>of(
+                new Object[] {Payment.PaymentMethod.CASH, new BigDecimal("10.00"), 1L}));
+
+        assertEquals(3, counters.verify());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PaymentSummaryCounter>> saved = ArgumentCaptor.forClass(List.class);
+        verify(counterRepository).saveAll(saved.capture());
+        assertEquals(0, drifted.getEntryCount());
+        assertEquals(0, drifted.getAmount().signum());
+        assertEquals(0, gone.getEntryCount());
+        PaymentSummaryCounter overdue = find(saved.getValue(), "OVERDUE", 0);
+        assertEquals(new BigDecimal("4.00"), overdue.getAmount());
+        assertEquals(3, overdue.getEntryCount());
+        PaymentSummaryCounter cash = find(saved.getValue(), "CASH", 0);
+        assertEquals(new BigDecimal("10.00"), cash.getAmount());
+        verify(counterRepository, never()).add(anyString(), anyString(), anyString(), anyInt(), any(), anyLong());
+    }
+
+    @Test
+    void atLeastOneSlotIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new PaymentSummaryCounters(counterRepository,
+                paymentRepository, fineRepository, mock(PlatformTransactionManager.class), 0));
+    }
+
+    private static PaymentSummaryCounter find(List<PaymentSummaryCounter> saved, String category, int slot) {
+        return saved.stream()
+                .filter(counter -> counter.getCategory().equals(category) && counter.getSlot() == slot)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static PaymentSummaryCounter slot(Kind kind, String category, String status, int slot,
+                                              String amount, long count) {
+        return PaymentSummaryCounter.builder()
+                .kind(kind).category(category).status(status).slot(slot)
+                .amount(new BigDecimal(amount)).entryCount(count)
+                .build();
+    }
+
+    private static Fine fine(Fine.FineStatus status, String amount) {
+        return Fine.builder().type(Fine.FineType.OVERDUE).status(status).amount(new BigDecimal(amount)).build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.hewa.paymentservice.services;
+
+import com.hewa.paymentservice.entities.Fine;
+import com.hewa.paymentservice.entities.UserFineBalance;
+import com.hewa.paymentservice.repositories.FineRepository;
+import com.hewa.paymentservice.repositories.UserFineBalanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class UserFineLedgerTest {
+
+    private UserFineBalanceRepository balanceRepository;
+    private UserFineLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        balanceRepository = mock(UserFineBalanceRepository.class);
+        ledger = new UserFineLedger(balanceRepository, mock(FineRepository.class),
+                mock(PlatformTransactionManager.class), 30, 2, 1000);
+    }
+
+    @Test
+    void finesCreatedTogetherAreOneUpdatePerUser() {
+        ledger.onFinesCreated(List.of(
+                fine(1L, "2.00", Fine.FineStatus.PENDING),
+                fine(1L, "3.00", Fine.FineStatus.PENDING),
+                fine(2L, "1.00", Fine.FineStatus.PENDING),
+                fine(3L, "4.00", Fine.FineStatus.PAID)));
+
+        verify(balanceRepository).add(1L, new BigDecimal("5.00"), 2);
+        verify(balanceRepository).add(2L, new BigDecimal("1.00"), 1);
+        verifyNoMoreInteractions(balanceRepository);
+    }
+
+    @Test
+    void balanceIsCachedUntilTheUsersFinesChange() {
+        when(balanceRepository.findById(1L)).thenReturn(Optional.of(balance(1L, "5.00", 1)));
+
+        ledger.getBalance(1L);
+        ledger.getBalance(1L);
+        verify(balanceRepository, times(1)).findById(1L);
+
+        ledger.onFineSettled(fine(1L, "5.00", Fine.FineStatus.PAID));
+        ledger.getBalance(1L);
+        verify(balanceRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void leastRecentlyUsedBalanceIsDroppedBeyondTheLimit() {
+        when(balanceRepository.findById(anyLong())).thenReturn(Optional.empty());
+
+        ledger.getBalance(1L);
+        ledger.getBalance(2L);
+        ledger.getBalance(1L);
+        ledger.getBalance(3L);
+        ledger.getBalance(1L);
+        ledger.getBalance(2L);
+
+        verify(balanceRepository, times(1)).findById(1L);
+        verify(balanceRepository, times(2)).findById(2L);
+        verify(balanceRepository, times(1)).findById(3L);
+    }
+
+    @Test
+    void currentBalanceAlwaysReadsTheRow() {
+        when(balanceRepository.findById(1L)).thenReturn(Optional.of(balance(1L, "5.00", 1)));
+
+        ledger.getBalance(1L);
+        assertEquals(1, ledger.getCurrentBalance(1L).pendingCount());
+        assertEquals(1, ledger.getCurrentBalance(1L).pendingCount());
+
+        verify(balanceRepository, times(3)).findById(1L);
+    }
+
+    @Test
+    void reconcileWalksEveryRangeOfUserIds() {
+        when(balanceRepository.findMaxUserId()).thenReturn(1500L);
+        when(balanceRepository.findMaxFineUserId()).thenReturn(2100L);
+        when(balanceRepository.recomputeFromPendingFines(anyLong(), anyLong())).thenReturn(2);
+        when(balanceRepository.clearWithoutPendingFines(anyLong(), anyLong())).thenReturn(1);
+
+        assertEquals(9, ledger.reconcile());
+
+        InOrder order = inOrder(balanceRepository);
+        order.verify(balanceRepository).recomputeFromPendingFines(0, 999);
+        order.verify(balanceRepository).clearWithoutPendingFines(0, 999);
+        order.verify(balanceRepository).recomputeFromPendingFines(1000, 1999);
+        order.verify(balanceRepository).clearWithoutPendingFines(1000, 1999);
+        order.verify(balanceRepository).recomputeFromPendingFines(2000, 2999);
+        order.verify(balanceRepository).clearWithoutPendingFines(2000, 2999);
+    }
+
+    @Test
+    void reconcileDropsTheCachedBalances() {
+        when(balanceRepository.findById(7L))
+                .thenReturn(Optional.of(balance(7L, "9.00", 3)))
+                .thenReturn(Optional.empty());
+        when(balanceRepository.findMaxFineUserId()).thenReturn(7L);
+
+        assertEquals(new BigDecimal("9.00"), ledger.getBalance(7L).outstandingAmount());
+        ledger.reconcile();
+
+        UserFineLedger.Balance reconciled = ledger.getBalance(7L);
+        assertEquals(BigDecimal.ZERO, reconciled.outstandingAmount());
+        assertEquals(0, reconciled.pendingCount());
+    }
+
+    @Test
+    void reconcileOfAnEmptyLedgerStillChecksTheFirstRange() {
+        assertEquals(0, ledger.reconcile());
+
+        verify(balanceRepository).recomputeFromPendingFines(0, 999);
+        verify(balanceRepository).clearWithoutPendingFines(0, 999);
+    }
+
+    private static Fine fine(Long userId, String amount, Fine.FineStatus status) {
+        return Fine.builder()
+                .userId(userId)
+                .type(Fine.FineType.OVERDUE)
+                .status(status)
+                .amount(new BigDecimal(amount))
+                .createdDate(LocalDateTime.now())
+                .build();
+    }
+
+    private static UserFineBalance balance(Long userId, String amount, long count) {
+        return UserFineBalance.builder()
+                .userId(userId)
+                .outstandingAmount(new BigDecimal(amount))
+                .pendingCount(count)
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+}
\ No newline at end of file